@@ -0,0 +1,138 @@
+package com.mps.pearl.bench;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.mps.pearl.metrics.Metrics;
+import com.mps.pearl.net.AdmissionControl;
+import com.mps.pearl.net.CoordinatorServer;
+import com.mps.pearl.net.NioCoordinatorServer;
+import com.mps.pearl.net.TcpHeartbeatChannel;
+import com.mps.pearl.net.ThreadCoordinatorServer;
+import com.mps.pearl.util.Constant;
+import com.mps.pearl.util.Logger;
+
+/**
+ * This class checks the admission control of the Coordinator ( Server
+ * Node ) under more Followers than its in-flight budget. The Followers keep
+ * pinging over their persistent channels, the pings beyond the budget get
+ * busy replies, and the Coordinator accepts a single connection for each
+ * Follower whatever the number of pings : the accept churn stays flat.
+ *
+ * Exits with 1 if a server mode accepted more connections than Followers,
+ * or sent no busy reply although the Followers saturate its budget.
+ *
+ * Usage : AdmissionChurnBenchmark [followers] [max inflight] [seconds] [port]
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+public class AdmissionChurnBenchmark {
+
+	/**
+	 * Host of the Coordinator
+	 */
+	private static final String HOST = "127.0.0.1";
+
+	public static void main(String[] args) throws Exception {
+		int followers = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+		int limit = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+		int port = args.length > 3 ? Integer.parseInt(args[3]) : 7100;
+		Logger.setLevel(Logger.LEVEL_OFF);
+
+		System.out.println("mode, followers, max inflight, pings, busy, accepts");
+		boolean isFlat = run(Constant.SERVER_MODE_THREAD, followers, limit, seconds, port);
+		isFlat &= run(Constant.SERVER_MODE_NIO, followers, limit, seconds, port + 1);
+
+		// the Threads of the TaskExecutor keep the JVM alive
+		System.exit(isFlat ? 0 : 1);
+	}
+
+	/**
+	 * Runs the Followers against a server mode
+	 * @return True, if the Coordinator accepted one connection by Follower, and sent busy replies
+	 */
+	private static boolean run(String mode, int followers, int limit, int seconds, final int port) throws Exception {
+		AdmissionControl admission = new AdmissionControl(Constant.SERVER_BACKLOG, limit, Constant.SERVER_BUSY_RETRY_MILLIS);
+		final CoordinatorServer server = Constant.SERVER_MODE_NIO.equals(mode)
+				? new NioCoordinatorServer(Integer.MAX_VALUE, 1, HOST, port, 0, admission)
+				: new ThreadCoordinatorServer(Integer.MAX_VALUE, 1, HOST, port, 0, admission);
+		Thread serverThread = new Thread("Coordinator") {
+			@Override
+			public void run() {
+				try {
+					server.run();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		};
+		serverThread.start();
+		waitForServer(port);
+
+		Metrics metrics = Metrics.getInstance();
+		long acceptsBefore = metrics.getServerAccepts().getCount();
+		long busyBefore = metrics.getPingBusy().getCount();
+		final AtomicLong pings = new AtomicLong();
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		final CountDownLatch done = new CountDownLatch(followers);
+
+		for (int i = 0; i < followers; i++) {
+			final TcpHeartbeatChannel channel = new TcpHeartbeatChannel(i, 2000, 1000);
+			new Thread("Follower-" + i) {
+				@Override
+				public void run() {
+					try {
+						while (System.nanoTime() < deadline) {
+							long lastReplyNanos = channel.getLastReplyNanos();
+							channel.ping(HOST, port, 0);
+							// a ping held back by a busy reply sends nothing
+							if (channel.getLastReplyNanos() != lastReplyNanos) pings.incrementAndGet();
+							Thread.sleep(1);
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						channel.close();
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+		done.await();
+
+		long accepts = metrics.getServerAccepts().getCount() - acceptsBefore;
+		long busy = metrics.getPingBusy().getCount() - busyBefore;
+		server.stop();
+		serverThread.join(TimeUnit.SECONDS.toMillis(5));
+
+		System.out.println(mode + ", " + followers + ", " + limit + ", " + pings.get() + ", " + busy + ", " + accepts);
+		if (accepts > followers) {
+			System.out.println("FAIL " + mode + " : " + accepts + " connections accepted for " + followers + " Followers");
+			return false;
+		}
+		if (followers > limit && busy == 0) {
+			System.out.println("FAIL " + mode + " : no busy reply for " + followers + " Followers and " + limit + " pings in flight");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Waits until the Coordinator accepts connections, the probe connection is not counted
+	 */
+	private static void waitForServer(int port) throws InterruptedException {
+		for (int attempt = 0; attempt < 100; attempt++) {
+			TcpHeartbeatChannel channel = new TcpHeartbeatChannel(-1, 1000);
+			boolean isUp = channel.ping(HOST, port, 0);
+			channel.close();
+			if (isUp) return;
+			Thread.sleep(50);
+		}
+		throw new IllegalStateException("Coordinator did not start on port " + port);
+	}
+}
@@ -0,0 +1,516 @@
+package com.mps.pearl.bench;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.mps.pearl.core.Node;
+import com.mps.pearl.core.NodeManager;
+import com.mps.pearl.core.Resource;
+import com.mps.pearl.metrics.Metrics;
+import com.mps.pearl.net.InMemoryTransport;
+import com.mps.pearl.util.Constant;
+import com.mps.pearl.util.Logger;
+import com.mps.pearl.util.Settings;
+
+/**
+ * This class injects the faults of a script into a System of simulated
+ * Nodes in a single JVM over the in-memory transport, and reports for
+ * each scenario of the script the time to detect the failure of the
+ * Coordinator, the time to the new Coordinator and the messages sent, as
+ * a row of a CSV file. The scheduled abort of the Coordinator is turned
+ * off, the faults of the script are the only ones.
+ *
+ * A script holds scenarios, each one a name, a duration and its faults
+ * at offsets in milliseconds from the start of the scenario :
+ *
+ * scenario <name> <duration millis>
+ * at <millis> crash <nodes>                  the Nodes stop, a crashed Coordinator is cut off until detected
+ * at <millis> pause <nodes> <millis>         the messages of the Nodes are held for the time, as in a long GC,
+ *                                            the links of the Nodes are then cleared
+ * at <millis> partition <nodes>              the Nodes are cut off from the other Nodes
+ * at <millis> link <nodes> <latency> <jitter> <loss>   the links of the Nodes are slow or lossy
+ * at <millis> heal                           the partitions and the slow links are removed
+ * at <millis> restart <nodes>                the crashed Nodes join the System again
+ *
+ * The Nodes are coordinator, random, all, crashed, an Id, a range 1-5 or
+ * a list 1,3,5. Lines which begin with # are comments. Each scenario
+ * starts from a healed System with a Coordinator, the crashed Nodes are
+ * restarted between two scenarios.
+ *
+ * Usage : ChaosBenchmark [script] [report csv] [nodes] [ping interval millis] [pull | gossip | push]
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+public class ChaosBenchmark {
+
+	/**
+	 * Host of the simulated Nodes, each Node has its Id as port
+	 */
+	private static final String HOST = "10.0.0.1";
+
+	/**
+	 * Time between two observations of the Coordinator
+	 */
+	private static final long POLL_MILLIS = 1;
+
+	/**
+	 * Ping intervals to wait for a steady System between two scenarios
+	 */
+	private static final int SETTLE_PING_INTERVALS = 5;
+
+	/**
+	 * Header of the CSV report
+	 */
+	private static final String CSV_HEADER = "scenario,nodes,faults,coordinator_before,coordinator_after,detection_ms,"
+			+ "new_coordinator_ms,terminations,elections,fast_failovers,fallbacks,suspicions,lease_deferrals,messages_sent,messages_lost";
+
+	/**
+	 * Number of Nodes of the System
+	 */
+	private static int sNodes;
+
+	/**
+	 * Interval in milliseconds between two pings
+	 */
+	private static long sIntervalMillis;
+
+	/**
+	 * The transport of the System
+	 */
+	private static InMemoryTransport sTransport;
+
+	/**
+	 * The crashed Nodes, by Id
+	 */
+	private static final Map<Integer, Node> sCrashed = new HashMap<Integer, Node>();
+
+	/**
+	 * The links set by the faults, as pairs of the Ids of a sender and a receiver
+	 */
+	private static final Set<Long> sLinks = new LinkedHashSet<Long>();
+
+	/**
+	 * The end of the pauses of the paused Nodes, by Id, read from System.nanoTime()
+	 */
+	private static final Map<Integer, Long> sPaused = new HashMap<Integer, Long>();
+
+	/**
+	 * Random generator of the random Nodes
+	 */
+	private static final Random sRandom = new Random();
+
+	/**
+	 * The console, the standard output receives the e, c and t messages of the Nodes
+	 */
+	private static PrintStream sConsole;
+
+	public static void main(String[] args) throws Exception {
+		String script = args.length > 0 ? args[0] : "bench/chaos_scenarios.txt";
+		String report = args.length > 1 ? args[1] : "chaos_report.csv";
+		sNodes = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		sIntervalMillis = args.length > 3 ? Long.parseLong(args[3]) : 200;
+		String heartbeatMode = args.length > 4 ? args[4] : Constant.HEARTBEAT_MODE_PULL;
+
+		List<Scenario> scenarios = parse(script);
+
+		sConsole = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+				// discard the e, c and t messages of the Nodes
+			}
+		}));
+
+		Logger.setLevel(Logger.LEVEL_OFF);
+		Settings settings = Settings.getInstance();
+		settings.set(Constant.KEY_TRANSPORT, Constant.TRANSPORT_MEMORY);
+		settings.set(Constant.KEY_PING_INTERVAL_MILLIS, String.valueOf(sIntervalMillis));
+		settings.set(Constant.KEY_HEARTBEAT_MODE, heartbeatMode);
+		settings.set(Constant.KEY_SERVER_ABORT_SECONDS, "0");
+
+		for (int id = 1; id <= sNodes; id++)
+			Resource.getInstance().add(new Node(id, HOST, String.valueOf(id)));
+
+		sTransport = InMemoryTransport.getInstance();
+		NodeManager.getInstance().init();
+
+		sConsole.println("nodes " + sNodes + ", ping interval " + sIntervalMillis + " ms, heartbeat " + heartbeatMode
+				+ ", " + scenarios.size() + " scenarios from " + script);
+		sConsole.println(CSV_HEADER);
+
+		try (PrintWriter csv = new PrintWriter(new FileWriter(report))) {
+			csv.println(CSV_HEADER);
+			for (Scenario scenario : scenarios) {
+				if (!settle()) sConsole.println(scenario.name + " : no Coordinator before the scenario");
+				String row = run(scenario);
+				csv.println(row);
+				csv.flush();
+				sConsole.println(row);
+			}
+		}
+		sConsole.println("report " + report);
+		System.exit(0);
+	}
+
+	/**
+	 * Runs the faults of a scenario and observes the Coordinator until the
+	 * end of the scenario
+	 *
+	 * @return the row of the scenario in the CSV report
+	 */
+	private static String run(Scenario scenario) throws InterruptedException {
+		NodeManager manager = NodeManager.getInstance();
+		Metrics metrics = Metrics.getInstance();
+		long elections = metrics.getElections().getCount();
+		long fastFailovers = metrics.getFastFailovers().getCount();
+		long fallbacks = metrics.getFailoverFallbacks().getCount();
+		long suspicions = metrics.getSuspicions().getCount();
+		long deferrals = metrics.getLeaseDeferrals().getCount();
+		long sent = sTransport.getSentCount();
+		long lost = sTransport.getLostCount();
+
+		Node before = manager.getServerNode();
+		long lastTerminatedNanos = manager.getTerminatedNanos();
+		long startNanos = System.nanoTime();
+		long endNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(scenario.durationMillis);
+		long faultNanos = 0;
+		long detectionNanos = 0;
+		long coordinatorNanos = 0;
+		int terminations = 0;
+		int next = 0;
+
+		while (System.nanoTime() < endNanos) {
+			long now = System.nanoTime();
+			while (next < scenario.faults.size()
+					&& now - startNanos >= TimeUnit.MILLISECONDS.toNanos(scenario.faults.get(next).atMillis)) {
+				if (faultNanos == 0) faultNanos = now;
+				inject(scenario.faults.get(next++));
+			}
+			resume(now);
+
+			long terminatedNanos = manager.getTerminatedNanos();
+			if (terminatedNanos != lastTerminatedNanos) {
+				lastTerminatedNanos = terminatedNanos;
+				terminations++;
+				if (detectionNanos == 0 && faultNanos != 0) detectionNanos = terminatedNanos;
+			}
+			Node serverNode = manager.getServerNode();
+			if (coordinatorNanos == 0 && faultNanos != 0 && serverNode != null && serverNode != before
+					&& !serverNode.isDownFlag()) {
+				coordinatorNanos = System.nanoTime();
+			}
+			TimeUnit.MILLISECONDS.sleep(POLL_MILLIS);
+		}
+		Node after = manager.getServerNode();
+
+		return scenario.name + "," + Resource.getInstance().size() + "," + scenario.faults.size() + "," + id(before)
+				+ "," + id(after) + "," + millis(faultNanos, detectionNanos) + "," + millis(faultNanos, coordinatorNanos)
+				+ "," + terminations + "," + (metrics.getElections().getCount() - elections)
+				+ "," + (metrics.getFastFailovers().getCount() - fastFailovers)
+				+ "," + (metrics.getFailoverFallbacks().getCount() - fallbacks)
+				+ "," + (metrics.getSuspicions().getCount() - suspicions)
+				+ "," + (metrics.getLeaseDeferrals().getCount() - deferrals)
+				+ "," + (sTransport.getSentCount() - sent) + "," + (sTransport.getLostCount() - lost);
+	}
+
+	/**
+	 * Injects a fault into the System
+	 */
+	private static void inject(Fault fault) {
+		List<Integer> ids = fault.args.length > 0 ? resolve(fault.args[0]) : Collections.<Integer> emptyList();
+		if (fault.action.equals("crash")) {
+			for (int id : ids)
+				crash(id);
+		} else if (fault.action.equals("pause")) {
+			long pauseMillis = Long.parseLong(fault.args[1]);
+			for (int id : ids) {
+				setLinks(id, pauseMillis, 0, 0);
+				sPaused.put(id, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pauseMillis));
+			}
+		} else if (fault.action.equals("partition")) {
+			for (int id : ids)
+				for (int other = 1; other <= sNodes; other++)
+					if (!ids.contains(other)) setLink(id, other, 0, 0, 1);
+		} else if (fault.action.equals("link")) {
+			long latencyMillis = Long.parseLong(fault.args[1]);
+			long jitterMillis = Long.parseLong(fault.args[2]);
+			double loss = Double.parseDouble(fault.args[3]);
+			if (fault.args[0].equals("all")) sTransport.setDefaultLink(latencyMillis, jitterMillis, loss);
+			else for (int id : ids)
+				setLinks(id, latencyMillis, jitterMillis, loss);
+		} else if (fault.action.equals("heal")) {
+			heal();
+		} else if (fault.action.equals("restart")) {
+			for (int id : ids)
+				restart(id);
+		} else {
+			throw new IllegalArgumentException("Unknown fault " + fault);
+		}
+	}
+
+	/**
+	 * Crashes a Node. The Other Nodes leave a crashed Node at once, but a
+	 * crashed Coordinator is only cut off : the Other Nodes detect it.
+	 */
+	private static void crash(int id) {
+		Node node = Resource.getInstance().getNode(id);
+		if (node == null) return;
+		sCrashed.put(id, node);
+		setLinks(id, 0, 0, 1);
+		if (node != NodeManager.getInstance().getServerNode()) NodeManager.getInstance().leave(node);
+	}
+
+	/**
+	 * Restarts a crashed Node, which joins the System as a new Node
+	 */
+	private static void restart(int id) {
+		Node node = sCrashed.remove(id);
+		if (node == null) return;
+		removeLinks(id);
+		// a Coordinator never detected resumes its role
+		if (Resource.getInstance().getNode(id) == node) return;
+		NodeManager.getInstance().join(new Node(id, HOST, String.valueOf(id)));
+	}
+
+	/**
+	 * Ends the pauses which are over, the messages sent meanwhile are still held
+	 */
+	private static void resume(long nowNanos) {
+		if (sPaused.isEmpty()) return;
+		for (Integer id : new ArrayList<Integer>(sPaused.keySet())) {
+			if (nowNanos - sPaused.get(id) < 0) continue;
+			sPaused.remove(id);
+			removeLinks(id);
+			if (sCrashed.containsKey(id)) setLinks(id, 0, 0, 1);
+		}
+	}
+
+	/**
+	 * Removes the partitions, the slow links and the pauses, the crashed Nodes stay cut off
+	 */
+	private static void heal() {
+		sPaused.clear();
+		for (long link : sLinks)
+			sTransport.removeLink((int) (link >> 32), (int) link);
+		sLinks.clear();
+		Settings settings = Settings.getInstance();
+		sTransport.setDefaultLink(settings.getLong(Constant.KEY_MEMORY_LATENCY_MILLIS, Constant.MEMORY_LATENCY_MILLIS),
+				settings.getLong(Constant.KEY_MEMORY_JITTER_MILLIS, Constant.MEMORY_JITTER_MILLIS),
+				settings.getDouble(Constant.KEY_MEMORY_LOSS, Constant.MEMORY_LOSS));
+		for (int id : sCrashed.keySet())
+			setLinks(id, 0, 0, 1);
+	}
+
+	/**
+	 * Heals the System, restarts the crashed Nodes and the terminated ones,
+	 * and waits for a Coordinator and a few ping intervals
+	 *
+	 * @return True, if a Coordinator is bound
+	 */
+	private static boolean settle() throws InterruptedException {
+		heal();
+		for (int id : new ArrayList<Integer>(sCrashed.keySet()))
+			restart(id);
+		// the Coordinators terminated by a pause or a partition
+		for (int id = 1; id <= sNodes; id++)
+			if (Resource.getInstance().getNode(id) == null) NodeManager.getInstance().join(new Node(id, HOST, String.valueOf(id)));
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SETTLE_PING_INTERVALS * sIntervalMillis * 10);
+		while (NodeManager.getInstance().getServerNode() == null && System.nanoTime() < deadline) {
+			TimeUnit.MILLISECONDS.sleep(POLL_MILLIS);
+		}
+		TimeUnit.MILLISECONDS.sleep(SETTLE_PING_INTERVALS * sIntervalMillis);
+		return NodeManager.getInstance().getServerNode() != null;
+	}
+
+	/**
+	 * Sets the links from and to a Node
+	 */
+	private static void setLinks(int id, long latencyMillis, long jitterMillis, double loss) {
+		for (int other = 1; other <= sNodes; other++) {
+			if (other == id) continue;
+			setLink(id, other, latencyMillis, jitterMillis, loss);
+			setLink(other, id, latencyMillis, jitterMillis, loss);
+		}
+	}
+
+	/**
+	 * Sets the link from a sender Node to a receiver Node
+	 */
+	private static void setLink(int fromId, int toId, long latencyMillis, long jitterMillis, double loss) {
+		sTransport.setLink(fromId, toId, latencyMillis, jitterMillis, loss);
+		sLinks.add(((long) fromId << 32) | (toId & 0xFFFFFFFFL));
+	}
+
+	/**
+	 * Removes the links from and to a Node
+	 */
+	private static void removeLinks(int id) {
+		for (int other = 1; other <= sNodes; other++) {
+			sTransport.removeLink(id, other);
+			sTransport.removeLink(other, id);
+			sLinks.remove(((long) id << 32) | (other & 0xFFFFFFFFL));
+			sLinks.remove(((long) other << 32) | (id & 0xFFFFFFFFL));
+		}
+	}
+
+	/**
+	 * Returns the Ids of the Nodes of a fault
+	 */
+	private static List<Integer> resolve(String nodes) {
+		List<Integer> ids = new ArrayList<Integer>();
+		if (nodes.equals("coordinator")) {
+			Node serverNode = NodeManager.getInstance().getServerNode();
+			if (serverNode != null) ids.add(serverNode.getId());
+		} else if (nodes.equals("random")) {
+			List<Node> running = new ArrayList<Node>(Resource.getInstance().getNodes());
+			running.remove(NodeManager.getInstance().getServerNode());
+			if (!running.isEmpty()) ids.add(running.get(sRandom.nextInt(running.size())).getId());
+		} else if (nodes.equals("all")) {
+			for (int id = 1; id <= sNodes; id++)
+				ids.add(id);
+		} else if (nodes.equals("crashed")) {
+			ids.addAll(sCrashed.keySet());
+		} else {
+			for (String part : nodes.split(",")) {
+				int dash = part.indexOf('-');
+				if (dash < 0) {
+					ids.add(Integer.parseInt(part));
+					continue;
+				}
+				for (int id = Integer.parseInt(part.substring(0, dash)); id <= Integer.parseInt(part.substring(dash + 1)); id++)
+					ids.add(id);
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * Reads the scenarios of a script
+	 */
+	private static List<Scenario> parse(String script) throws IOException {
+		List<Scenario> scenarios = new ArrayList<Scenario>();
+		try (BufferedReader reader = new BufferedReader(new FileReader(script))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) continue;
+				String[] tokens = line.split("\\s+");
+				if (tokens[0].equals("scenario") && tokens.length == 3) {
+					scenarios.add(new Scenario(tokens[1], Long.parseLong(tokens[2])));
+				} else if (tokens[0].equals("at") && tokens.length >= 3 && !scenarios.isEmpty()) {
+					String[] faultArgs = new String[tokens.length - 3];
+					System.arraycopy(tokens, 3, faultArgs, 0, faultArgs.length);
+					scenarios.get(scenarios.size() - 1).faults.add(new Fault(Long.parseLong(tokens[1]), tokens[2], faultArgs));
+				} else {
+					throw new IOException("Invalid line of " + script + " : " + line);
+				}
+			}
+		}
+		for (Scenario scenario : scenarios) {
+			Collections.sort(scenario.faults, new Comparator<Fault>() {
+				@Override
+				public int compare(Fault a, Fault b) {
+					return Long.compare(a.atMillis, b.atMillis);
+				}
+			});
+		}
+		return scenarios;
+	}
+
+	/**
+	 * Returns the Id of a Node, or - if none
+	 */
+	private static String id(Node node) {
+		return node == null ? "-" : String.valueOf(node.getId());
+	}
+
+	/**
+	 * Returns the milliseconds from a fault to an event, or - if the event did not happen
+	 */
+	private static String millis(long faultNanos, long eventNanos) {
+		if (faultNanos == 0 || eventNanos == 0) return "-";
+		return String.valueOf(TimeUnit.NANOSECONDS.toMillis(Math.max(0, eventNanos - faultNanos)));
+	}
+
+	/**
+	 * This class holds a scenario of the script
+	 */
+	private static class Scenario {
+
+		/**
+		 * Name of the scenario
+		 */
+		final String name;
+
+		/**
+		 * Time in milliseconds the System is observed
+		 */
+		final long durationMillis;
+
+		/**
+		 * The faults, by offset
+		 */
+		final List<Fault> faults = new ArrayList<Fault>();
+
+		/**
+		 * Creates a Scenario object.
+		 */
+		Scenario(String name, long durationMillis) {
+			this.name = name;
+			this.durationMillis = durationMillis;
+		}
+	}
+
+	/**
+	 * This class holds a fault of a scenario
+	 */
+	private static class Fault {
+
+		/**
+		 * Offset in milliseconds of the fault from the start of the scenario
+		 */
+		final long atMillis;
+
+		/**
+		 * The action of the fault
+		 */
+		final String action;
+
+		/**
+		 * The arguments of the action
+		 */
+		final String[] args;
+
+		/**
+		 * Creates a Fault object.
+		 */
+		Fault(long atMillis, String action, String[] args) {
+			this.atMillis = atMillis;
+			this.action = action;
+			this.args = args;
+		}
+
+		@Override
+		public String toString() {
+			return "at " + atMillis + " " + action + " " + Arrays.toString(args);
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package com.mps.pearl.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import com.mps.pearl.net.Message;
+import com.mps.pearl.net.MessageCodec;
+
+/**
+ * This class compares the encode / decode cost of a ping and its reply
+ * with the binary MessageCodec against the former writeUTF() strings.
+ * For each path it prints the round trips per second and the bytes
+ * allocated for each round trip by the measuring Thread.
+ *
+ * Usage : CodecBenchmark [iterations]
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+public class CodecBenchmark {
+
+	/**
+	 * Address of the Coordinator in the former reply
+	 */
+	private static final String IP_ADDRESS = "ukko024.hpc.cs.helsinki.fi";
+
+	/**
+	 * Port of the Coordinator in the former reply
+	 */
+	private static final String PORT = "4444";
+
+	/**
+	 * Sink to keep the results alive
+	 */
+	private static long sSink;
+
+	public static void main(String[] args) throws IOException {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+
+		// warm up both paths
+		utf(iterations / 10);
+		binary(iterations / 10);
+
+		System.out.println("path, round trips/sec, bytes allocated/round trip");
+		measure("utf", iterations);
+		measure("binary", iterations);
+		System.out.println("(sink " + sSink + ")");
+	}
+
+	/**
+	 * Measures one path
+	 */
+	private static void measure(String path, int iterations) throws IOException {
+		long allocatedBefore = allocatedBytes();
+		long start = System.nanoTime();
+		if ("utf".equals(path)) utf(iterations);
+		else binary(iterations);
+		long elapsed = System.nanoTime() - start;
+		long allocated = allocatedBytes() - allocatedBefore;
+
+		System.out.println(path + ", " + (long) (iterations / (elapsed / 1e9)) + ", "
+				+ (allocated < 0 ? "n/a" : String.valueOf(allocated / iterations)));
+	}
+
+	/**
+	 * Former path : writeUTF() of the ping and of the reply built for each ping
+	 */
+	private static void utf(int iterations) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		DataOutputStream out = new DataOutputStream(bytes);
+		for (int i = 0; i < iterations; i++) {
+			bytes.reset();
+			out.writeUTF("Is Active?");
+			out.writeUTF("SERVER: ACTIVE " + "[" + IP_ADDRESS + ":" + PORT + "]");
+
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+			sSink += in.readUTF().length() + in.readUTF().length();
+		}
+	}
+
+	/**
+	 * Binary path : MessageCodec with reused messages and buffer
+	 */
+	private static void binary(int iterations) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(2 * MessageCodec.HEADER_SIZE);
+		Message ping = new Message();
+		Message reply = new Message();
+		for (int i = 0; i < iterations; i++) {
+			buffer.clear();
+			MessageCodec.encode(ping.set(Message.TYPE_PING, 108, 1, i), buffer);
+			MessageCodec.encode(reply.set(Message.TYPE_ACTIVE, 135, 1, i), buffer);
+
+			buffer.flip();
+			MessageCodec.decode(buffer, ping);
+			MessageCodec.decode(buffer, reply);
+			sSink += ping.getSequence() + reply.getSenderId();
+		}
+	}
+
+	/**
+	 * Returns the bytes allocated by the current Thread, or -1 if the
+	 * Java runtime can not tell
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+}
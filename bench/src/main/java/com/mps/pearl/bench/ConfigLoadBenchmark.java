@@ -0,0 +1,126 @@
+package com.mps.pearl.bench;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import com.mps.pearl.ConfigFileReader;
+import com.mps.pearl.core.Membership;
+import com.mps.pearl.core.Node;
+import com.mps.pearl.core.Resource;
+
+/**
+ * This class compares the load of a large membership file by the former
+ * line reader, which splits each line with a regex and creates a Node for
+ * each member, against the memory mapped tokenizer of the ConfigFileReader,
+ * which keeps the members as a Membership. For each path it prints the
+ * load time and the bytes allocated by the loading Thread.
+ *
+ * Usage : ConfigLoadBenchmark [members] [rounds]
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+public class ConfigLoadBenchmark {
+
+	/**
+	 * Sink to keep the results alive
+	 */
+	private static long sSink;
+
+	public static void main(String[] args) throws IOException {
+		int members = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		File file = File.createTempFile("membership", ".txt");
+		file.deleteOnExit();
+		write(file, members);
+		System.out.println("members " + members + ", file " + file.length() + " bytes");
+
+		// warm up both paths
+		for (int round = 0; round < rounds; round++) {
+			split(file);
+			mapped(file);
+		}
+
+		System.out.println("path, millis/load, bytes allocated/load");
+		measure("split", file, rounds);
+		measure("mapped", file, rounds);
+		System.out.println("(sink " + sSink + ")");
+		System.exit(0);
+	}
+
+	/**
+	 * Writes a membership file, one member per line
+	 */
+	private static void write(File file, int members) throws IOException {
+		try (BufferedWriter out = new BufferedWriter(new FileWriter(file))) {
+			out.write("# generated membership\n");
+			out.write("ping.interval.millis 5000\n");
+			for (int id = 1; id <= members; id++) {
+				out.write(id + " 10." + (id >> 16 & 0xFF) + "." + (id >> 8 & 0xFF) + "." + (id & 0xFF) + " "
+						+ (4000 + id % 50000) + "\n");
+			}
+		}
+	}
+
+	/**
+	 * Measures one path
+	 */
+	private static void measure(String path, File file, int rounds) throws IOException {
+		long allocatedBefore = allocatedBytes();
+		long start = System.nanoTime();
+		for (int round = 0; round < rounds; round++) {
+			if ("split".equals(path)) split(file);
+			else mapped(file);
+		}
+		long elapsed = System.nanoTime() - start;
+		long allocated = allocatedBytes() - allocatedBefore;
+
+		System.out.println(path + ", " + String.format("%.1f", elapsed / 1e6 / rounds) + ", "
+				+ (allocated < 0 ? "n/a" : String.valueOf(allocated / rounds)));
+	}
+
+	/**
+	 * Former path : a String and a regex split for each line, a Node for each member
+	 */
+	private static void split(File file) throws IOException {
+		Resource resource = new Resource();
+		try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+			for (String line; (line = br.readLine()) != null;) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) continue;
+				String[] tokens = line.split("\\s+");
+				if (!Character.isDigit(tokens[0].charAt(0))) continue;
+				resource.add(new Node(Integer.parseInt(tokens[0]), tokens[1], tokens[2]));
+			}
+		}
+		sSink += resource.size();
+	}
+
+	/**
+	 * Mapped path : the tokenizer of the ConfigFileReader, without a Node
+	 */
+	private static void mapped(File file) throws IOException {
+		ConfigFileReader reader = new ConfigFileReader();
+		Membership membership = reader.parse(reader.readContent(file.getPath()));
+		sSink += membership.size() + membership.getRecord(membership.getHighestId()).getPort().length();
+	}
+
+	/**
+	 * Returns the bytes allocated by the current Thread, or -1 if the
+	 * Java runtime can not tell
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+}
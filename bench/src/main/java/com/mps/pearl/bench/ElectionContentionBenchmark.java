@@ -0,0 +1,144 @@
+package com.mps.pearl.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.mps.pearl.core.Election;
+import com.mps.pearl.core.Node;
+
+/**
+ * This class measures the contention on the election path. Each Thread
+ * plays a Node which joins the Election in a loop. The last Node to join
+ * ends the Election, and the new Coordinator fails at once, so the
+ * Nodes keep electing.
+ *
+ * Two implementations are compared for a doubling number of Nodes :
+ * the former Election, a LinkedHashMap mutated under one global lock
+ * (monitor), and the Election snapshot moved with compare and set (cas).
+ *
+ * Usage : ElectionContentionBenchmark [max nodes] [seconds]
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+public class ElectionContentionBenchmark {
+
+	/**
+	 * Host of the simulated Nodes
+	 */
+	private static final String HOST = "127.0.0.1";
+
+	public static void main(String[] args) throws Exception {
+		int maxNodes = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+				// discard the c messages of the Elections
+			}
+		}));
+
+		console.println("nodes, monitor joins/sec, cas joins/sec, monitor elections, cas elections");
+		for (int nodes = 1; nodes <= maxNodes; nodes *= 2) {
+			long[] monitor = run(false, nodes, seconds);
+			long[] cas = run(true, nodes, seconds);
+			console.println(nodes + ", " + monitor[0] / seconds + ", " + cas[0] / seconds + ", " + monitor[1] + ", " + cas[1]);
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Runs the Nodes on one implementation
+	 * @return the number of joins and the number of Elections
+	 */
+	private static long[] run(final boolean isCas, final int nodes, int seconds) throws InterruptedException {
+		final Election election = new Election();
+		final MonitorElection monitorElection = new MonitorElection();
+		final AtomicLong joins = new AtomicLong();
+		final AtomicLong elections = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+		final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+		Thread[] threads = new Thread[nodes];
+		for (int i = 0; i < nodes; i++) {
+			final Node node = new Node(i, HOST, String.valueOf(7000 + i));
+			threads[i] = new Thread("Node-" + i) {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					long count = 0;
+					while ((count & 0xFF) != 0 || System.nanoTime() < end) {
+						Node coordinator;
+						if (isCas) {
+							Election.State state = election.join(node);
+							coordinator = state.getPhase() == Election.Phase.ELECTING ? election.endElection(state, nodes) : null;
+						} else {
+							coordinator = monitorElection.join(node, nodes);
+						}
+						if (coordinator != null) {
+							// the new Coordinator fails at once
+							coordinator.setDownFlag(true);
+							elections.incrementAndGet();
+						}
+						count++;
+					}
+					joins.addAndGet(count);
+				}
+			};
+			threads[i].start();
+		}
+		start.countDown();
+		for (Thread thread : threads) thread.join();
+		return new long[] { joins.get(), elections.get() };
+	}
+
+	/**
+	 * The former Election : a LinkedHashMap of the joined Nodes, mutated
+	 * under one global lock
+	 */
+	private static class MonitorElection {
+
+		/**
+		 * The global lock of the Election
+		 */
+		private final Object lock = new Object();
+
+		/**
+		 * The Nodes of the running Election, in joining order
+		 */
+		private final LinkedHashMap<Integer, Node> electionNodeList = new LinkedHashMap<Integer, Node>();
+
+		/**
+		 * Joins the Election, and ends it if all the Nodes have joined
+		 * @return the new Coordinator, or null
+		 */
+		Node join(Node node, int runningNodes) {
+			synchronized (lock) {
+				if (electionNodeList.isEmpty() || electionNodeList.keySet().iterator().next() >= node.getId()) {
+					if (electionNodeList.get(node.getId()) == null) electionNodeList.put(node.getId(), node);
+					if (electionNodeList.size() == runningNodes) {
+						Node coordinator = electionNodeList.values().iterator().next();
+						System.out.println("c " + coordinator.getId());
+						electionNodeList.clear();
+						return coordinator;
+					}
+				} else {
+					electionNodeList.clear();
+					electionNodeList.put(node.getId(), node);
+				}
+				return null;
+			}
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package com.mps.pearl.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import com.mps.pearl.core.ElectionGroup;
+import com.mps.pearl.core.GroupManager;
+import com.mps.pearl.core.Node;
+import com.mps.pearl.core.NodeManager;
+import com.mps.pearl.core.Resource;
+import com.mps.pearl.metrics.Metrics;
+import com.mps.pearl.net.InMemoryTransport;
+import com.mps.pearl.util.Constant;
+import com.mps.pearl.util.Logger;
+import com.mps.pearl.util.Settings;
+
+/**
+ * This class runs a System of simulated Nodes with many election groups
+ * in a single JVM over the in-memory transport. The Coordinator of the
+ * System is aborted every SERVER_ABORT_EVERY_SECONDS, and with it the
+ * groups it coordinates, which elect new Coordinators among their members.
+ * The run reports the frames of group heartbeats, one for each pair of
+ * Nodes each period whatever the number of groups, and the group Elections.
+ *
+ * Usage : GroupClusterBenchmark [nodes] [groups] [group size] [ping interval millis] [failovers]
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+public class GroupClusterBenchmark {
+
+	/**
+	 * Host of the simulated Nodes, each Node has its Id as port
+	 */
+	private static final String HOST = "10.0.0.1";
+
+	public static void main(String[] args) throws Exception {
+		int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		int groups = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		int groupSize = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		long intervalMillis = args.length > 3 ? Long.parseLong(args[3]) : 100;
+		int failovers = args.length > 4 ? Integer.parseInt(args[4]) : 3;
+
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+				// discard the e, c and t messages of the Nodes
+			}
+		}));
+
+		Logger.setLevel(Logger.LEVEL_OFF);
+		Settings settings = Settings.getInstance();
+		settings.set(Constant.KEY_TRANSPORT, Constant.TRANSPORT_MEMORY);
+		settings.set(Constant.KEY_PING_INTERVAL_MILLIS, String.valueOf(intervalMillis));
+		settings.set(Constant.KEY_ELECTION_GROUPS, String.valueOf(groups));
+		settings.set(Constant.KEY_ELECTION_GROUP_SIZE, String.valueOf(groupSize));
+
+		for (int id = 1; id <= nodes; id++)
+			Resource.getInstance().add(new Node(id, HOST, String.valueOf(id)));
+
+		InMemoryTransport transport = InMemoryTransport.getInstance();
+		long start = System.nanoTime();
+		NodeManager.getInstance().init();
+
+		console.println("nodes " + nodes + ", groups " + groups + " of " + groupSize + ", ping interval " + intervalMillis + " ms");
+		console.println("failover, aborted coordinator, groups to elect, millis to elect them");
+
+		long deadline = start + TimeUnit.SECONDS.toNanos((Constant.SERVER_ABORT_EVERY_SECONDS + 60) * (failovers + 1));
+		Node coordinator = NodeManager.getInstance().getServerNode();
+		int failover = 0;
+		while (failover < failovers && System.nanoTime() < deadline) {
+			TimeUnit.MILLISECONDS.sleep(1);
+			if (NodeManager.getInstance().getServerNode() != null) continue;
+
+			// the Coordinator was aborted, wait for the groups it coordinated
+			long abortNanos = System.nanoTime();
+			int orphans = countOrphans();
+			while (countOrphans() > 0 && System.nanoTime() < deadline) {
+				TimeUnit.MILLISECONDS.sleep(1);
+			}
+			failover++;
+			console.println(failover + ", " + coordinator.getId() + ", " + orphans + ", "
+					+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - abortNanos));
+
+			while (NodeManager.getInstance().getServerNode() == null && System.nanoTime() < deadline) {
+				TimeUnit.MILLISECONDS.sleep(1);
+			}
+			coordinator = NodeManager.getInstance().getServerNode();
+		}
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		Metrics metrics = Metrics.getInstance();
+		console.println(String.format("messages/s %.0f, per node %.1f, group frames/s per node %.1f",
+				transport.getSentCount() / seconds, transport.getSentCount() / seconds / nodes,
+				metrics.getGroupFrames().getCount() / seconds / nodes));
+		console.println("endpoints " + nodes + ", timers " + nodes + " for " + groups + " groups");
+		console.println("group.elections " + metrics.getGroupElections().getCount());
+		console.println("group.election.duration " + metrics.getGroupElectionDuration());
+		if (failover < failovers) console.println("only " + failover + " failovers before the deadline");
+		System.exit(0);
+	}
+
+	/**
+	 * Returns the number of groups whose Coordinator is not running
+	 */
+	private static int countOrphans() {
+		int orphans = 0;
+		for (ElectionGroup group : GroupManager.getInstance().getGroups()) {
+			Node coordinator = Resource.getInstance().getNode(group.getCoordinatorId());
+			if (coordinator == null || coordinator.isDownFlag()) orphans++;
+		}
+		return orphans;
+	}
+}
@@ -0,0 +1,147 @@
+package com.mps.pearl.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class checks the takeover of a higher Node which starts late, with
+ * one process by Node and the Election over the wire. The lower Nodes
+ * elect their Coordinator first, then the highest member starts, and all
+ * the processes must print it as their last Coordinator.
+ *
+ * Exits with 1 if a process did not take the highest member as its
+ * Coordinator in time.
+ *
+ * Usage : LateCoordinatorBenchmark [seconds] [port]
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+public class LateCoordinatorBenchmark {
+
+	/**
+	 * Host of the Nodes
+	 */
+	private static final String HOST = "127.0.0.1";
+
+	/**
+	 * Ids of the members, the highest one starts last
+	 */
+	private static final int[] IDS = { 108, 105, 115, 135 };
+
+	/**
+	 * Time in milliseconds between two reads of the outputs
+	 */
+	private static final long POLL_MILLIS = 100;
+
+	public static void main(String[] args) throws Exception {
+		int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 15;
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : 7400;
+
+		File config = File.createTempFile("late", ".txt");
+		config.deleteOnExit();
+		PrintWriter writer = new PrintWriter(config, "UTF-8");
+		writer.println("ping.interval.millis 500");
+		// no Coordinator aborts while the check runs
+		writer.println("server.abort.seconds 3600");
+		for (int index = 0; index < IDS.length; index++) writer.println(IDS[index] + " " + HOST + " " + (port + index));
+		writer.close();
+
+		Map<Integer, File> outputs = new LinkedHashMap<Integer, File>();
+		List<Process> processes = new ArrayList<Process>();
+		boolean isTakenOver = false;
+		try {
+			int lateId = IDS[IDS.length - 1];
+			int runningId = IDS[IDS.length - 2];
+			for (int index = 0; index < IDS.length - 1; index++) processes.add(start(config, IDS[index], outputs));
+			if (!await(outputs, runningId, seconds)) {
+				System.out.println("FAIL the running Nodes did not elect " + runningId);
+			} else {
+				long startNanos = System.nanoTime();
+				processes.add(start(config, lateId, outputs));
+				isTakenOver = await(outputs, lateId, seconds);
+				System.out.println("late Node " + lateId + ", taken over " + isTakenOver + ", after "
+						+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms");
+			}
+			for (Map.Entry<Integer, File> output : outputs.entrySet()) {
+				System.out.println(output.getKey() + " : " + views(output.getValue()));
+			}
+		} finally {
+			for (Process process : processes) process.destroy();
+			for (File output : outputs.values()) output.delete();
+		}
+		if (!isTakenOver) System.out.println("FAIL the late Node " + IDS[IDS.length - 1] + " did not take over");
+		System.exit(isTakenOver ? 0 : 1);
+	}
+
+	/**
+	 * Starts the process of a Node, its output goes to a temporary file
+	 */
+	private static Process start(File config, int id, Map<Integer, File> outputs) throws IOException {
+		File output = File.createTempFile("late" + id, ".log");
+		outputs.put(id, output);
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "App",
+				config.getAbsolutePath(), String.valueOf(id));
+		builder.redirectErrorStream(true);
+		builder.redirectOutput(output);
+		builder.redirectInput(ProcessBuilder.Redirect.from(new File(isWindows() ? "NUL" : "/dev/null")));
+		return builder.start();
+	}
+
+	/**
+	 * Waits until every started Node prints a Coordinator as its last one
+	 * @return True, if they all did in time
+	 */
+	private static boolean await(Map<Integer, File> outputs, int coordinatorId, int seconds)
+			throws IOException, InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		while (System.nanoTime() < deadline) {
+			boolean isDecided = true;
+			for (File output : outputs.values()) {
+				isDecided &= ("c " + coordinatorId).equals(lastCoordinator(output));
+			}
+			if (isDecided) return true;
+			Thread.sleep(POLL_MILLIS);
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the last c message of the output of a Node, or null
+	 */
+	private static String lastCoordinator(File output) throws IOException {
+		String last = null;
+		for (String line : Files.readAllLines(output.toPath(), Charset.forName("UTF-8"))) {
+			if (line.startsWith("c ")) last = line.trim();
+		}
+		return last;
+	}
+
+	/**
+	 * Returns the e, c and t messages of the output of a Node
+	 */
+	private static List<String> views(File output) throws IOException {
+		List<String> views = new ArrayList<String>();
+		for (String line : Files.readAllLines(output.toPath(), Charset.forName("UTF-8"))) {
+			if (line.startsWith("e ") || line.startsWith("c ") || line.startsWith("t ")) views.add(line.trim());
+		}
+		return views;
+	}
+
+	/**
+	 * Returns True on Windows, where the null device has another name
+	 */
+	private static boolean isWindows() {
+		return System.getProperty("os.name").startsWith("Windows");
+	}
+}
@@ -0,0 +1,112 @@
+package com.mps.pearl.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import com.mps.pearl.core.Node;
+import com.mps.pearl.core.NodeManager;
+import com.mps.pearl.core.Resource;
+import com.mps.pearl.metrics.Metrics;
+import com.mps.pearl.net.InMemoryTransport;
+import com.mps.pearl.util.Constant;
+import com.mps.pearl.util.Logger;
+import com.mps.pearl.util.Settings;
+
+/**
+ * This class runs a whole System of simulated Nodes in a single JVM over
+ * the in-memory transport, and measures the failovers of the Coordinator,
+ * aborted every SERVER_ABORT_EVERY_SECONDS, and the heartbeat load. A
+ * failover is the time from the abort of the Coordinator to the binding
+ * of the new Coordinator, elected by all the running Nodes.
+ *
+ * In the gossip heartbeat mode the Nodes probe each other instead of
+ * pinging the Coordinator, and the abort reaches the Nodes by gossip.
+ *
+ * Usage : MemoryClusterBenchmark [nodes] [ping interval millis] [failovers] [latency millis] [loss] [pull | gossip | push]
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+public class MemoryClusterBenchmark {
+
+	/**
+	 * Host of the simulated Nodes, each Node has its Id as port
+	 */
+	private static final String HOST = "10.0.0.1";
+
+	/**
+	 * Time between two observations of the Coordinator
+	 */
+	private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	public static void main(String[] args) throws Exception {
+		int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		long intervalMillis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+		int failovers = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+		long latencyMillis = args.length > 3 ? Long.parseLong(args[3]) : 0;
+		double loss = args.length > 4 ? Double.parseDouble(args[4]) : 0.0;
+		String heartbeatMode = args.length > 5 ? args[5] : Constant.HEARTBEAT_MODE_PULL;
+
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+				// discard the e, c and t messages of the Nodes
+			}
+		}));
+
+		Logger.setLevel(Logger.LEVEL_OFF);
+		Settings settings = Settings.getInstance();
+		settings.set(Constant.KEY_TRANSPORT, Constant.TRANSPORT_MEMORY);
+		settings.set(Constant.KEY_PING_INTERVAL_MILLIS, String.valueOf(intervalMillis));
+		settings.set(Constant.KEY_MEMORY_LATENCY_MILLIS, String.valueOf(latencyMillis));
+		settings.set(Constant.KEY_MEMORY_LOSS, String.valueOf(loss));
+		settings.set(Constant.KEY_HEARTBEAT_MODE, heartbeatMode);
+
+		for (int id = 1; id <= nodes; id++)
+			Resource.getInstance().add(new Node(id, HOST, String.valueOf(id)));
+
+		InMemoryTransport transport = InMemoryTransport.getInstance();
+		long start = System.nanoTime();
+		NodeManager.getInstance().init();
+
+		console.println("nodes " + nodes + ", ping interval " + intervalMillis + " ms, latency " + latencyMillis
+				+ " ms, loss " + loss + ", heartbeat " + heartbeatMode);
+		console.println("failover, coordinator, running nodes, millis");
+
+		// the run ends after the last failover, or if an Election never ends
+		long deadline = start + TimeUnit.SECONDS.toNanos((Constant.SERVER_ABORT_EVERY_SECONDS + 60) * (failovers + 1));
+		Node coordinator = NodeManager.getInstance().getServerNode();
+		long abortNanos = 0;
+		int failover = 0;
+		while (failover < failovers && System.nanoTime() < deadline) {
+			TimeUnit.NANOSECONDS.sleep(POLL_NANOS);
+			Node serverNode = NodeManager.getInstance().getServerNode();
+			if (serverNode == coordinator) continue;
+
+			if (serverNode == null) {
+				// the Coordinator was aborted
+				abortNanos = System.nanoTime();
+			} else if (abortNanos != 0) {
+				failover++;
+				console.println(failover + ", " + serverNode.getId() + ", " + Resource.getInstance().size() + ", "
+						+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - abortNanos));
+			}
+			coordinator = serverNode;
+		}
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		console.println(String.format("messages/s %.0f, per node %.1f, lost %d of %d", transport.getSentCount() / seconds,
+				transport.getSentCount() / seconds / nodes, transport.getLostCount(), transport.getSentCount()));
+		Metrics metrics = Metrics.getInstance();
+		console.println("election.duration " + metrics.getElectionDuration());
+		console.println("election.messages " + metrics.getElectionMessages());
+		console.println("failure.detection " + metrics.getDetectionDelay());
+		console.println("election.count " + metrics.getElections().getCount() + ", failure.suspicions "
+				+ metrics.getSuspicions().getCount() + ", lease.deferrals " + metrics.getLeaseDeferrals().getCount());
+		if (failover < failovers) console.println("only " + failover + " failovers before the deadline");
+		System.exit(0);
+	}
+}
@@ -0,0 +1,146 @@
+package com.mps.pearl.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.mps.pearl.net.NioCoordinatorServer;
+import com.mps.pearl.net.TcpHeartbeatChannel;
+import com.mps.pearl.util.Constant;
+import com.mps.pearl.util.TaskExecutor;
+
+/**
+ * This class measures how many simulated Nodes a single JVM can host for
+ * each execution mode before the heartbeat deadlines are missed. Each
+ * simulated Node is a task of a TaskExecutor which pings a loopback
+ * Coordinator over a kept open channel, then sleeps until its next ping,
+ * in the same way a Node blocks on its Socket.
+ *
+ * The number of Nodes is doubled until more than 1% of the heartbeats
+ * miss their deadline, or the maximum number of Nodes is reached.
+ *
+ * Usage : NodeScalingBenchmark [max nodes] [period millis] [seconds] [port]
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+public class NodeScalingBenchmark {
+
+	/**
+	 * Host of the Coordinator
+	 */
+	private static final String HOST = "127.0.0.1";
+
+	/**
+	 * Ratio of missed heartbeats which ends the benchmark of a mode
+	 */
+	private static final double MAX_MISS_RATIO = 0.01;
+
+	/**
+	 * Number of Nodes of the first round
+	 */
+	private static final int FIRST_ROUND_NODES = 250;
+
+	public static void main(String[] args) throws Exception {
+		int maxNodes = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+		int periodMillis = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		int port = args.length > 3 ? Integer.parseInt(args[3]) : 7100;
+
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+				// discard the debugging output of the Nodes
+			}
+		}));
+
+		final NioCoordinatorServer server = new NioCoordinatorServer(Integer.MAX_VALUE, HOST, port);
+		Thread serverThread = new Thread("Coordinator") {
+			@Override
+			public void run() {
+				try {
+					server.run();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		};
+		serverThread.start();
+		Thread.sleep(200);
+
+		console.println("mode, nodes, heartbeats, missed, miss %");
+		for (String mode : new String[] { Constant.EXECUTION_MODE_PLATFORM, Constant.EXECUTION_MODE_VIRTUAL }) {
+			TaskExecutor executor = new TaskExecutor(mode);
+			int reached = 0;
+			for (int nodes = FIRST_ROUND_NODES; nodes <= maxNodes; nodes *= 2) {
+				long[] result = round(executor, nodes, port, periodMillis, seconds);
+				double missRatio = result[0] == 0 ? 1 : (double) result[1] / result[0];
+				console.println(executor.getMode() + ", " + nodes + ", " + result[0] + ", " + result[1]
+						+ ", " + String.format("%.2f", missRatio * 100));
+				if (missRatio > MAX_MISS_RATIO) break;
+				reached = nodes;
+			}
+			console.println(executor.getMode() + " reached " + reached + " nodes");
+			executor.shutdown();
+		}
+
+		server.stop();
+		System.exit(0);
+	}
+
+	/**
+	 * Runs one round with a number of simulated Nodes
+	 * @return the number of heartbeats and the number of missed heartbeats
+	 */
+	private static long[] round(TaskExecutor executor, int nodes, final int port, final int periodMillis, int seconds)
+			throws InterruptedException {
+		final AtomicLong heartbeats = new AtomicLong();
+		final AtomicLong missed = new AtomicLong();
+		final long period = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+		final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+		List<Future<?>> tasks = new ArrayList<Future<?>>(nodes);
+		for (int i = 0; i < nodes; i++) {
+			final int nodeId = i;
+			final long offset = period * i / nodes;
+			tasks.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					TcpHeartbeatChannel channel = new TcpHeartbeatChannel(nodeId, periodMillis);
+					try {
+						long next = System.nanoTime() + offset;
+						while (next < end) {
+							long sleep = next - System.nanoTime();
+							if (sleep > 0) TimeUnit.NANOSECONDS.sleep(sleep);
+
+							boolean isActive = channel.ping(HOST, port, 0);
+							heartbeats.incrementAndGet();
+							// the heartbeat must complete before the next one is due
+							if (!isActive || System.nanoTime() > next + period) missed.incrementAndGet();
+							next += period;
+						}
+					} catch (InterruptedException e) {
+						// round is over
+					} finally {
+						channel.close();
+					}
+				}
+			}));
+		}
+
+		for (Future<?> task : tasks) {
+			try {
+				task.get();
+			} catch (Exception e) {
+				missed.incrementAndGet();
+			}
+		}
+		return new long[] { heartbeats.get(), missed.get() };
+	}
+}
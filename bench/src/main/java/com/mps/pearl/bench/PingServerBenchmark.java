@@ -0,0 +1,175 @@
+package com.mps.pearl.bench;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.mps.pearl.core.Node;
+import com.mps.pearl.core.NodeManager;
+import com.mps.pearl.net.Message;
+import com.mps.pearl.net.MessageCodec;
+import com.mps.pearl.util.Constant;
+import com.mps.pearl.util.Settings;
+
+/**
+ * This class measures the ping throughput and the reply latency of the
+ * Coordinator ( Server Node ) for each server mode. A number of Clients
+ * ping the Coordinator over loopback in the same way a Node does, one
+ * connection for each ping, and the pings/sec and the p50 / p99 reply
+ * latency are printed for each mode.
+ *
+ * Usage : PingServerBenchmark [clients] [seconds] [port]
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+public class PingServerBenchmark {
+
+	/**
+	 * Host of the Coordinator
+	 */
+	private static final String HOST = "127.0.0.1";
+
+	/**
+	 * Max number of latency samples recorded by each Client
+	 */
+	private static final int MAX_SAMPLES = 1 << 20;
+
+	public static void main(String[] args) throws Exception {
+		int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int port = args.length > 2 ? Integer.parseInt(args[2]) : 7000;
+
+		System.out.println("mode, clients, pings, pings/sec, p50 us, p99 us");
+		run(Constant.SERVER_MODE_THREAD, clients, seconds, port);
+		run(Constant.SERVER_MODE_NIO, clients, seconds, port + 1);
+
+		// the Threads of the TaskExecutor keep the JVM alive
+		System.exit(0);
+	}
+
+	/**
+	 * Runs the benchmark for a server mode
+	 */
+	private static void run(String mode, int clients, int seconds, final int port) throws Exception {
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+				// discard the debugging output of the Nodes
+			}
+		}));
+
+		Settings.getInstance().set(Constant.KEY_SERVER_MODE, mode);
+
+		final Node server = new Node(Integer.MAX_VALUE, HOST, String.valueOf(port));
+		NodeManager.getInstance().setServerNode(server);
+		server.setServerListening(true);
+
+		Thread serverThread = new Thread("Coordinator") {
+			@Override
+			public void run() {
+				server.serverHandler();
+			}
+		};
+		serverThread.start();
+		waitForServer(port);
+
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		final long[][] samples = new long[clients][];
+		final int[] counts = new int[clients];
+		final CountDownLatch done = new CountDownLatch(clients);
+
+		for (int i = 0; i < clients; i++) {
+			final int client = i;
+			samples[client] = new long[MAX_SAMPLES];
+			new Thread("Client-" + client) {
+				@Override
+				public void run() {
+					try {
+						while (System.nanoTime() < deadline && counts[client] < MAX_SAMPLES) {
+							long start = System.nanoTime();
+							ping(port);
+							samples[client][counts[client]++] = System.nanoTime() - start;
+						}
+					} catch (IOException e) {
+						e.printStackTrace();
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+		done.await();
+
+		// stop the Coordinator, a last connection releases a blocking accept()
+		server.setServerListening(false);
+		try {
+			ping(port);
+		} catch (IOException e) {
+			// the Coordinator is already gone
+		}
+		serverThread.join(TimeUnit.SECONDS.toMillis(5));
+		System.setOut(console);
+
+		int total = 0;
+		for (int count : counts) total += count;
+		long[] latencies = new long[total];
+		int offset = 0;
+		for (int i = 0; i < clients; i++) {
+			System.arraycopy(samples[i], 0, latencies, offset, counts[i]);
+			offset += counts[i];
+		}
+		Arrays.sort(latencies);
+
+		System.out.println(mode + ", " + clients + ", " + total + ", " + (total / seconds)
+				+ ", " + percentile(latencies, 0.50) / 1000 + ", " + percentile(latencies, 0.99) / 1000);
+	}
+
+	/**
+	 * Performs one ping in the same way as a Client Node with the oneshot channel
+	 */
+	private static void ping(int port) throws IOException {
+		try (Socket socket = new Socket(HOST, port)) {
+			socket.setTcpNoDelay(true);
+			DataOutputStream streamOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			DataInputStream console = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			Message message = new Message();
+			MessageCodec.write(streamOut, message.set(Message.TYPE_PING, 1, 0, 1));
+			streamOut.flush();
+			MessageCodec.readAndSkipPayload(console, message);
+		}
+	}
+
+	/**
+	 * Waits until the Coordinator accepts connections
+	 */
+	private static void waitForServer(int port) throws InterruptedException {
+		for (int attempt = 0; attempt < 100; attempt++) {
+			try {
+				ping(port);
+				return;
+			} catch (IOException e) {
+				Thread.sleep(50);
+			}
+		}
+		throw new IllegalStateException("Coordinator did not start on port " + port);
+	}
+
+	/**
+	 * Returns the percentile of sorted values
+	 */
+	private static long percentile(long[] sorted, double percentile) {
+		if (sorted.length == 0) return 0;
+		return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)];
+	}
+}
@@ -0,0 +1,83 @@
+package com.mps.pearl.bench;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.mps.pearl.net.TcpHeartbeatChannel;
+import com.mps.pearl.util.Logger;
+
+/**
+ * This class checks the bound of a probe of the terminated Coordinator
+ * ( Server Node ) over a tcp channel. The Coordinator accepts the
+ * connections but never answers, so each probe lasts until its timeout,
+ * which is shorter than the read timeout of the channel.
+ *
+ * Exits with 1 if a probe was answered, or outlasted its timeout.
+ *
+ * Usage : ProbeTimeoutBenchmark [probe timeout millis] [read timeout millis] [probes] [port]
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+public class ProbeTimeoutBenchmark {
+
+	/**
+	 * Host of the Coordinator
+	 */
+	private static final String HOST = "127.0.0.1";
+
+	/**
+	 * Time in milliseconds a probe may outlast its timeout, for the ticks of the TimingWheel and the scheduling
+	 */
+	private static final long MARGIN_MILLIS = 100;
+
+	public static void main(String[] args) throws Exception {
+		long timeoutMillis = args.length > 0 ? Long.parseLong(args[0]) : 200;
+		int readTimeoutMillis = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		int probes = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		int port = args.length > 3 ? Integer.parseInt(args[3]) : 7300;
+		Logger.setLevel(Logger.LEVEL_OFF);
+
+		final ServerSocket server = new ServerSocket(port, 50, InetAddress.getByName(HOST));
+		final List<Socket> accepted = new ArrayList<Socket>();
+		Thread acceptor = new Thread("Coordinator") {
+			@Override
+			public void run() {
+				// the connections stay open and are never read
+				try {
+					while (true) accepted.add(server.accept());
+				} catch (IOException e) {
+					// closed
+				}
+			}
+		};
+		acceptor.setDaemon(true);
+		acceptor.start();
+
+		System.out.println("probe, timeout ms, read timeout ms, answered, elapsed ms");
+		boolean isBounded = true;
+		TcpHeartbeatChannel channel = new TcpHeartbeatChannel(1, readTimeoutMillis);
+		for (int probe = 0; probe < probes; probe++) {
+			long startNanos = System.nanoTime();
+			boolean isAnswered = channel.probe(HOST, port, timeoutMillis);
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+			System.out.println(probe + ", " + timeoutMillis + ", " + readTimeoutMillis + ", " + isAnswered + ", " + elapsedMillis);
+			if (isAnswered || elapsedMillis > timeoutMillis + MARGIN_MILLIS) {
+				System.out.println("FAIL probe " + probe + " : took " + elapsedMillis + " ms for a timeout of " + timeoutMillis + " ms");
+				isBounded = false;
+			}
+		}
+		channel.close();
+		server.close();
+		for (Socket socket : accepted) socket.close();
+
+		// the Threads of the TimingWheel keep the JVM alive
+		System.exit(isBounded ? 0 : 1);
+	}
+}
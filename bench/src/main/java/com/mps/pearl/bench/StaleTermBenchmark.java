@@ -0,0 +1,131 @@
+package com.mps.pearl.bench;
+
+import java.io.IOException;
+
+import com.mps.pearl.metrics.Metrics;
+import com.mps.pearl.net.CoordinatorServer;
+import com.mps.pearl.net.HeartbeatChannel;
+import com.mps.pearl.net.InMemoryTransport;
+import com.mps.pearl.net.TcpHeartbeatChannel;
+import com.mps.pearl.net.ThreadCoordinatorServer;
+import com.mps.pearl.net.UdpHeartbeatChannel;
+import com.mps.pearl.net.UdpHeartbeatResponder;
+import com.mps.pearl.util.Logger;
+
+/**
+ * This class checks the fencing of a stale Coordinator ( Server Node ) on
+ * each heartbeat channel. A Coordinator elected in a term answers the pings
+ * of that term, and the pings of a later term count its replies as failed
+ * pings, so a Node which has seen a newer Election stops trusting it.
+ *
+ * Exits with 1 if a channel takes a reply of a lower term as a reply.
+ *
+ * Usage : StaleTermBenchmark [port]
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+public class StaleTermBenchmark {
+
+	/**
+	 * Host of the Coordinator
+	 */
+	private static final String HOST = "127.0.0.1";
+
+	/**
+	 * Term of the Coordinator
+	 */
+	private static final long TERM = 2;
+
+	/**
+	 * Pings of a round, more than the missing replies a pipelined channel tolerates
+	 */
+	private static final int PINGS = 10;
+
+	/**
+	 * Time in milliseconds between two pings of a round
+	 */
+	private static final long PING_GAP_MILLIS = 20;
+
+	public static void main(String[] args) throws Exception {
+		final int port = args.length > 0 ? Integer.parseInt(args[0]) : 7200;
+		Logger.setLevel(Logger.LEVEL_OFF);
+
+		System.out.println("channel, same term, later term, stale replies");
+		boolean isFenced = true;
+
+		// tcp : a Thread server
+		final ThreadCoordinatorServer tcpServer = new ThreadCoordinatorServer(9, TERM, HOST, port);
+		run(tcpServer);
+		isFenced &= check("tcp", new TcpHeartbeatChannel(1, 1000), port);
+		tcpServer.stop();
+
+		// udp : the datagram responder
+		final UdpHeartbeatResponder udpServer = new UdpHeartbeatResponder(9, TERM, HOST, port + 1);
+		new Thread(udpServer, "Responder").start();
+		isFenced &= check("udp", new UdpHeartbeatChannel(1, 3), port + 1);
+		udpServer.stop();
+
+		// memory : the in-memory transport
+		InMemoryTransport transport = new InMemoryTransport(0, 0, 0);
+		CoordinatorServer memoryServer = transport.openServer(9, TERM, HOST, port + 2);
+		run(memoryServer);
+		isFenced &= check("memory", transport.openChannel(1), port + 2);
+		memoryServer.stop();
+
+		// the Threads of the TaskExecutor keep the JVM alive
+		System.exit(isFenced ? 0 : 1);
+	}
+
+	/**
+	 * Runs a CoordinatorServer in a Thread of its own
+	 */
+	private static void run(final CoordinatorServer server) throws InterruptedException {
+		Thread serverThread = new Thread("Coordinator") {
+			@Override
+			public void run() {
+				try {
+					server.run();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		};
+		serverThread.start();
+		// let the Server bind
+		Thread.sleep(200);
+	}
+
+	/**
+	 * Pings the Coordinator in its term, then in the next term
+	 * @return True, if the replies of the Coordinator fail the pings of the next term only
+	 */
+	private static boolean check(String name, HeartbeatChannel channel, int port) throws InterruptedException {
+		long staleBefore = Metrics.getInstance().getPingStale().getCount();
+		boolean isSameTermActive = round(channel, port, TERM);
+		boolean isLaterTermActive = round(channel, port, TERM + 1);
+		channel.close();
+
+		long stale = Metrics.getInstance().getPingStale().getCount() - staleBefore;
+		System.out.println(name + ", " + isSameTermActive + ", " + isLaterTermActive + ", " + stale);
+		if (!isSameTermActive || isLaterTermActive || stale == 0) {
+			System.out.println("FAIL " + name + " : a reply of term " + TERM + " to a ping of term " + (TERM + 1) + " was taken");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Pings the Coordinator a few times in a term
+	 * @return the result of the last ping
+	 */
+	private static boolean round(HeartbeatChannel channel, int port, long term) throws InterruptedException {
+		boolean isActive = false;
+		for (int ping = 0; ping < PINGS; ping++) {
+			isActive = channel.ping(HOST, port, term);
+			Thread.sleep(PING_GAP_MILLIS);
+		}
+		return isActive;
+	}
+}
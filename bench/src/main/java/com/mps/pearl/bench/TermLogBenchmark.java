@@ -0,0 +1,88 @@
+package com.mps.pearl.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.mps.pearl.core.TermLog;
+import com.mps.pearl.metrics.Metrics;
+import com.mps.pearl.util.Constant;
+import com.mps.pearl.util.Logger;
+
+/**
+ * This class measures the term log : the cost of an append while the sync
+ * Thread forces the batches, against an append which forces the disk
+ * itself, and the time to recover the last term and Coordinator from a
+ * full log when the System restarts.
+ *
+ * Usage : TermLogBenchmark [appends] [sync millis]
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+public class TermLogBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		int appends = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		long syncMillis = args.length > 1 ? Long.parseLong(args[1]) : Constant.TERM_LOG_SYNC_MILLIS;
+		Logger.setLevel(Logger.LEVEL_OFF);
+
+		File file = File.createTempFile("terms", ".log");
+		file.deleteOnExit();
+		System.out.println("appends " + appends + ", sync millis " + syncMillis + ", file " + Constant.TERM_LOG_SIZE + " bytes");
+		System.out.println("path, us/append, forces");
+
+		// every append waits for its own force
+		file.delete();
+		TermLog log = new TermLog(file, Constant.TERM_LOG_SIZE, TimeUnit.DAYS.toMillis(1));
+		log.open();
+		long syncsBefore = Metrics.getInstance().getTermLogSync().getCount();
+		long start = System.nanoTime();
+		for (int term = 1; term <= appends / 10; term++) {
+			append(log, term);
+			log.sync();
+		}
+		long elapsed = System.nanoTime() - start;
+		log.close();
+		print("force per append", elapsed, appends / 10, Metrics.getInstance().getTermLogSync().getCount() - syncsBefore);
+
+		// the sync Thread forces the batches
+		file.delete();
+		log = new TermLog(file, Constant.TERM_LOG_SIZE, syncMillis);
+		log.open();
+		syncsBefore = Metrics.getInstance().getTermLogSync().getCount();
+		start = System.nanoTime();
+		for (int term = 1; term <= appends; term++) {
+			append(log, term);
+		}
+		elapsed = System.nanoTime() - start;
+		log.close();
+		print("batched", elapsed, appends, Metrics.getInstance().getTermLogSync().getCount() - syncsBefore);
+
+		// recovery of the full file
+		start = System.nanoTime();
+		log = new TermLog(file, Constant.TERM_LOG_SIZE, syncMillis);
+		log.open();
+		System.out.println(String.format("recovery of %d records %.2f ms, term %d, coordinator %d", log.getRecovered(),
+				(System.nanoTime() - start) / 1e6, log.getTerm(), log.getCoordinatorId()));
+		log.close();
+		System.out.println("termlog.sync " + Metrics.getInstance().getTermLogSync());
+		System.exit(0);
+	}
+
+	/**
+	 * Appends the records of an Election : the term begun and its Coordinator
+	 */
+	private static void append(TermLog log, int term) {
+		if (term % 2 == 0) log.append(TermLog.ELECTION, term, term % 100);
+		else log.append(TermLog.COORDINATOR, term, term % 100);
+	}
+
+	/**
+	 * Prints the cost of an append
+	 */
+	private static void print(String path, long elapsedNanos, int appends, long forces) {
+		System.out.println(String.format("%s, %.2f, %d", path, elapsedNanos / 1e3 / appends, forces));
+	}
+}
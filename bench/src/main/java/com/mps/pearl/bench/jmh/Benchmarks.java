@@ -0,0 +1,82 @@
+package com.mps.pearl.bench.jmh;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import com.mps.pearl.core.Node;
+
+/**
+ * This class holds the helpers shared by the JMH benchmarks.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+final class Benchmarks {
+
+	/**
+	 * Host of the benchmarked Nodes
+	 */
+	static final String HOST = "127.0.0.1";
+
+	/**
+	 * Time to wait for a Coordinator to listen
+	 */
+	private static final long SERVER_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	private Benchmarks() {
+		// static methods only
+	}
+
+	/**
+	 * Creates Nodes with the Ids nodes .. 1, from the highest Id to the lowest
+	 *
+	 * @param nodes the number of Nodes
+	 * @return the Nodes
+	 */
+	static Node[] nodes(int nodes) {
+		Node[] created = new Node[nodes];
+		for (int i = 0; i < nodes; i++) {
+			int id = nodes - i;
+			created[i] = new Node(id, HOST, String.valueOf(7000 + id));
+		}
+		return created;
+	}
+
+	/**
+	 * Discards the messages the System prints to the console
+	 *
+	 * @return the former console
+	 */
+	static PrintStream silenceConsole() {
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+				// discard
+			}
+		}));
+		return console;
+	}
+
+	/**
+	 * Waits until a Coordinator accepts connections on a port
+	 *
+	 * @param port the port of the Coordinator
+	 */
+	static void waitForServer(int port) throws InterruptedException {
+		long deadline = System.nanoTime() + SERVER_TIMEOUT_NANOS;
+		while (System.nanoTime() < deadline) {
+			try {
+				new Socket(HOST, port).close();
+				return;
+			} catch (IOException e) {
+				Thread.sleep(10);
+			}
+		}
+		throw new IllegalStateException("Coordinator not listening on port " + port);
+	}
+}
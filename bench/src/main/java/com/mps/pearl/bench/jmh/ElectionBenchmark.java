@@ -0,0 +1,135 @@
+package com.mps.pearl.bench.jmh;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mps.pearl.core.Election;
+import com.mps.pearl.core.Node;
+
+/**
+ * This class benchmarks the election path : the e [..] message of a
+ * running Election, a full Election where all the Nodes join and the
+ * last one ends it, and the joins of Nodes which race on one Election.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ElectionBenchmark {
+
+	/**
+	 * Number of Nodes of the System
+	 */
+	@Param({ "4", "64", "1024" })
+	public int nodes;
+
+	/**
+	 * The Nodes, from the highest Id to the lowest
+	 */
+	private Node[] mNodes;
+
+	/**
+	 * A running Election which all the Nodes have joined
+	 */
+	private Election.State mElecting;
+
+	/**
+	 * The Election the racing Nodes join
+	 */
+	private Election mSharedElection;
+
+	/**
+	 * The console, restored after the trial
+	 */
+	private PrintStream mConsole;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		// discard the c messages of the Elections
+		mConsole = Benchmarks.silenceConsole();
+
+		mNodes = Benchmarks.nodes(nodes);
+		Election election = new Election();
+		for (Node node : mNodes) mElecting = election.join(node);
+		mSharedElection = new Election();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		System.setOut(mConsole);
+	}
+
+	/**
+	 * Builds the e [..] message of a running Election
+	 */
+	@Benchmark
+	public String electionMessage() {
+		return mElecting.getElectionMessage();
+	}
+
+	/**
+	 * Runs a full Election : all the Nodes join, the last one ends it
+	 */
+	@Benchmark
+	public Node joinAndEndElection() {
+		Election election = new Election();
+		Election.State state = null;
+		for (Node node : mNodes) state = election.join(node);
+		return election.endElection(state, mNodes.length);
+	}
+
+	/**
+	 * Joins of Nodes which race on one Election. The last Node to join ends
+	 * it, and the new Coordinator fails at once, so the Nodes keep electing.
+	 */
+	@Benchmark
+	@Threads(4)
+	public Node contendedJoin(RacingNode racingNode) {
+		Election.State state = mSharedElection.join(racingNode.next(mNodes));
+		if (state.getPhase() != Election.Phase.ELECTING) return null;
+		Node coordinator = mSharedElection.endElection(state, mNodes.length);
+		if (coordinator != null) coordinator.setDownFlag(true);
+		return coordinator;
+	}
+
+	/**
+	 * This class represents the Nodes played by one racing Thread
+	 */
+	@State(Scope.Thread)
+	public static class RacingNode {
+
+		/**
+		 * Index of the next Node to play
+		 */
+		private int mIndex;
+
+		/**
+		 * Returns the next Node played by the Thread
+		 */
+		Node next(Node[] nodes) {
+			mIndex = (mIndex + 1) % nodes.length;
+			return nodes[mIndex];
+		}
+	}
+}
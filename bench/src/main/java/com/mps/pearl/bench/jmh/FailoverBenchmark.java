@@ -0,0 +1,113 @@
+package com.mps.pearl.bench.jmh;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mps.pearl.core.Node;
+import com.mps.pearl.core.NodeManager;
+import com.mps.pearl.core.Resource;
+import com.mps.pearl.util.Constant;
+import com.mps.pearl.util.Logger;
+import com.mps.pearl.util.Settings;
+import com.mps.pearl.util.TimingWheel;
+
+/**
+ * This class benchmarks a full failover : the time from the abort of the
+ * Coordinator to the binding of the new Coordinator elected by the Other
+ * Nodes of a running System. Each invocation aborts the current Coordinator,
+ * so a fork runs at most one invocation less than the number of Nodes.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(3)
+@State(Scope.Benchmark)
+public class FailoverBenchmark {
+
+	/**
+	 * Number of Nodes of the System, more than the iterations of a fork
+	 */
+	@Param({ "16" })
+	public int nodes;
+
+	/**
+	 * Interval between two pings of the Coordinator
+	 */
+	@Param({ "50" })
+	public long pingIntervalMillis;
+
+	/**
+	 * First port of the Nodes
+	 */
+	@Param({ "7500" })
+	public int port;
+
+	/**
+	 * Time to wait for a new Coordinator
+	 */
+	private static final long FAILOVER_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+	/**
+	 * The console, restored after the trial
+	 */
+	private PrintStream mConsole;
+
+	@Setup(Level.Trial)
+	public void setUp() throws InterruptedException {
+		// discard the e, c and t messages
+		mConsole = Benchmarks.silenceConsole();
+		Logger.setLevel(Logger.LEVEL_OFF);
+		Settings.getInstance().set(Constant.KEY_PING_INTERVAL_MILLIS, String.valueOf(pingIntervalMillis));
+
+		for (int id = 1; id <= nodes; id++) {
+			Resource.getInstance().add(new Node(id, Benchmarks.HOST, String.valueOf(port + id)));
+		}
+		NodeManager.getInstance().init();
+		Benchmarks.waitForServer(port + nodes);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		TimingWheel.getInstance().stop();
+		System.setOut(mConsole);
+	}
+
+	/**
+	 * Aborts the Coordinator and waits for the new one
+	 */
+	@Benchmark
+	public int failover() {
+		Node coordinator = NodeManager.getInstance().getServerNode();
+		if (coordinator == null || !NodeManager.getInstance().terminateServerNode(coordinator)) {
+			throw new IllegalStateException("No Coordinator to abort");
+		}
+
+		long deadline = System.nanoTime() + FAILOVER_TIMEOUT_NANOS;
+		Node newCoordinator;
+		while ((newCoordinator = NodeManager.getInstance().getServerNode()) == null || newCoordinator == coordinator) {
+			if (System.nanoTime() > deadline) throw new IllegalStateException("No Coordinator elected");
+			LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+		}
+		return newCoordinator.getId();
+	}
+}
@@ -0,0 +1,114 @@
+package com.mps.pearl.bench.jmh;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mps.pearl.core.Node;
+import com.mps.pearl.core.NodeManager;
+import com.mps.pearl.net.TcpHeartbeatChannel;
+import com.mps.pearl.util.Constant;
+import com.mps.pearl.util.Logger;
+import com.mps.pearl.util.Settings;
+
+/**
+ * This class benchmarks the round trip of a ping over loopback, from the
+ * kept open channel of an Other Node to the Coordinator started by
+ * TraitClientServer.serverHandler(), for each server mode.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class PingBenchmark {
+
+	/**
+	 * Server mode of the Coordinator
+	 */
+	@Param({ Constant.SERVER_MODE_THREAD, Constant.SERVER_MODE_NIO })
+	public String mode;
+
+	/**
+	 * Port of the Coordinator
+	 */
+	@Param({ "7450" })
+	public int port;
+
+	/**
+	 * The Coordinator
+	 */
+	private Node mServer;
+
+	/**
+	 * The Thread which runs the Coordinator
+	 */
+	private Thread mServerThread;
+
+	/**
+	 * The kept open channel of the Other Node
+	 */
+	private TcpHeartbeatChannel mChannel;
+
+	/**
+	 * The console, restored after the trial
+	 */
+	private PrintStream mConsole;
+
+	@Setup(Level.Trial)
+	public void setUp() throws InterruptedException {
+		mConsole = Benchmarks.silenceConsole();
+		Logger.setLevel(Logger.LEVEL_OFF);
+		Settings.getInstance().set(Constant.KEY_SERVER_MODE, mode);
+
+		mServer = new Node(Integer.MAX_VALUE, Benchmarks.HOST, String.valueOf(port));
+		NodeManager.getInstance().setServerNode(mServer);
+		mServer.setCoordinatorFlag(true);
+		mServer.setServerListening(true);
+		mServerThread = new Thread("Coordinator") {
+			@Override
+			public void run() {
+				mServer.serverHandler();
+			}
+		};
+		mServerThread.start();
+		Benchmarks.waitForServer(port);
+
+		mChannel = new TcpHeartbeatChannel(1, Constant.PING_TIMEOUT_MILLIS);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		mChannel.close();
+		mServer.setServerListening(false);
+		mServerThread.join(TimeUnit.SECONDS.toMillis(5));
+		System.setOut(mConsole);
+	}
+
+	/**
+	 * Pings the Coordinator and waits for its reply
+	 */
+	@Benchmark
+	public boolean ping() {
+		if (!mChannel.ping(Benchmarks.HOST, port, 0)) throw new IllegalStateException("Coordinator did not reply");
+		return true;
+	}
+}
@@ -0,0 +1,129 @@
+package com.mps.pearl.bench.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mps.pearl.core.Node;
+import com.mps.pearl.core.Resource;
+import com.mps.pearl.util.Logger;
+
+/**
+ * This class benchmarks the membership index : a Node which joins and is
+ * terminated, and the queries of the election path, while the election
+ * and ping Threads share the index.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ResourceBenchmark {
+
+	/**
+	 * Number of running Nodes of the System
+	 */
+	@Param({ "64", "1024", "16384" })
+	public int nodes;
+
+	/**
+	 * The membership index
+	 */
+	private Resource mResource;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Logger.setLevel(Logger.LEVEL_OFF);
+		mResource = new Resource();
+		// the running Nodes have even Ids
+		for (int id = 2; id <= 2 * nodes; id += 2) mResource.add(new Node(id, Benchmarks.HOST, "7000"));
+	}
+
+	/**
+	 * A Node with an odd Id joins the index and is terminated
+	 */
+	@Benchmark
+	@Threads(2)
+	public boolean addAndTerminate(ChurnNode churnNode) {
+		Node node = churnNode.next();
+		mResource.add(node);
+		return mResource.addTerminatedNode(node);
+	}
+
+	/**
+	 * Returns the highest running Node
+	 */
+	@Benchmark
+	public Node highestNode() {
+		return mResource.getHighestNode();
+	}
+
+	/**
+	 * Returns the next highest running Node below an Id
+	 */
+	@Benchmark
+	public Node nextLowerNode() {
+		return mResource.getNextLowerNode(nodes);
+	}
+
+	/**
+	 * Returns the number of running Nodes, checked by each join of an Election
+	 */
+	@Benchmark
+	public int size() {
+		return mResource.size();
+	}
+
+	/**
+	 * This class represents the Nodes which join and leave, played by one Thread
+	 */
+	@State(Scope.Thread)
+	public static class ChurnNode {
+
+		/**
+		 * Number of Nodes played by a Thread
+		 */
+		private static final int CHURN_NODES = 1024;
+
+		/**
+		 * The Nodes with odd Ids, which are never running at setup
+		 */
+		private final Node[] mNodes = new Node[CHURN_NODES];
+
+		/**
+		 * Index of the next Node to play
+		 */
+		private int mIndex;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			int offset = (int) (Thread.currentThread().getId() % 64) * 2 * CHURN_NODES;
+			for (int i = 0; i < CHURN_NODES; i++) mNodes[i] = new Node(offset + 2 * i + 1, Benchmarks.HOST, "7000");
+		}
+
+		/**
+		 * Returns the next Node played by the Thread
+		 */
+		Node next() {
+			mIndex = (mIndex + 1) & (CHURN_NODES - 1);
+			return mNodes[mIndex];
+		}
+	}
+}
@@ -1,6 +1,9 @@
 import com.mps.pearl.ConfigFileReader;
+import com.mps.pearl.MembershipWatcher;
 import com.mps.pearl.core.NodeManager;
+import com.mps.pearl.util.Constant;
 import com.mps.pearl.util.Logger;
+import com.mps.pearl.util.Settings;
 
 /**
  * 
@@ -17,10 +20,11 @@ public class App {
 	 * This method begin execution of Bully Election Algorithm.
 	 * 
 	 * @param args A String Array of arguments as an input. The first 
-	 * argument should be filename with set of Nodes
+	 * argument should be filename with set of Nodes, the optional second 
+	 * argument the Id of the single Node to run in this process
 	 */
 	public static void main(String[] args) {
-		if(Logger.DEBUG)Logger.d("APP", "main()");
+		Logger.d("APP", "main()");
 		 
 		if( args.length == 0 ){
 			System.out.println("ERR! Argument missing : Configuration_file ");
@@ -28,11 +32,30 @@ public class App {
 			return;
 		}
 					
+		// run a single Node, the other Nodes run in their own processes
+		if( args.length > 1 ){
+			try {
+				Integer.parseInt(args[1]);
+			} catch (NumberFormatException e) {
+				System.out.println("ERR! Invalid Node Id : " + args[1]);
+				System.exit(1);
+				return;
+			}
+			Settings.getInstance().set(Constant.KEY_NODE_ID, args[1]);
+		}
+		
 		// Step 1:: parse the configuration file
 		// parse configuration file to data structure
 		new ConfigFileReader().parseConfigFile(args[0]);
+		// apply the log settings of the configuration file
+		Logger.configure();
 		
 		// Step 2:: Run all the Nodes of the System
 		NodeManager.getInstance().init();
+		
+		// Step 3:: Reload the members once the configuration file changes
+		if( Settings.getInstance().getBoolean(Constant.KEY_MEMBERSHIP_WATCH, Constant.MEMBERSHIP_WATCH) ){
+			new MembershipWatcher(args[0]).start();
+		}
 	}
 }
@@ -1,85 +1,554 @@
 package com.mps.pearl;
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.List;
 
+import com.mps.pearl.core.MemberRecord;
+import com.mps.pearl.core.Membership;
 import com.mps.pearl.core.Node;
+import com.mps.pearl.core.NodeManager;
 import com.mps.pearl.core.Resource;
+import com.mps.pearl.util.Constant;
 import com.mps.pearl.util.Logger;
+import com.mps.pearl.util.Settings;
 
 /**
- * This class implements a parser to read text file which should 
+ * This class implements a parser to read text file which should
  * contain set of nodes in each line. The parser parse each line
- * and transform each token in a line into Node. Token represented as 
- * an Id, IP Address and Port Number. These compiled Nodes are stored 
- * into Resources as a collection.  
- * 
+ * and transform each token in a line into Node. Token represented as
+ * an Id, IP Address and Port Number. These compiled Nodes are stored
+ * into Resources as a collection.
+ *
+ * The file is memory mapped and read by a tokenizer over its bytes, so
+ * a membership of a hundred thousand lines is parsed without a String
+ * per line. Each member is kept as its Id and the offset of its address
+ * in a {@link Membership}, after the duplicate Ids and addresses are
+ * skipped. A Node is created only for the members hosted by this
+ * process, as selected by the membership.hosted setting.
+ *
  * @author msingh
- * @version 1.0 20 Jan, 2014
+ * @version 1.1
  *
  */
 
 public class ConfigFileReader {
-	
+
 	/**
 	 * A Logger tag
 	 */
 	private final String TAG = ConfigFileReader.class.getSimpleName();
-	
+
+	/**
+	 * Highest Port of a member
+	 */
+	private static final int MAX_PORT = 65535;
+
 	/**
 	 * An instance of Resource class
 	 */
 	private Resource mResourceInstance;
-	
+
 	/**
 	 * Allocates a new ConfigFileReader object.
 	 */
 	public ConfigFileReader() {
 		mResourceInstance = Resource.getInstance();
 	}
-	
+
 	/**
-	 * This method parse the configuration file and transform content of 
-	 * configuration file into set of Nodes. These compiled Nodes are stored 
-	 * into the the Resource class.	
+	 * This method parse the configuration file and transform content of
+	 * configuration file into set of Nodes. These compiled Nodes are stored
+	 * into the the Resource class.
 	 */
 	public void parseConfigFile(String fileName){
-		if(Logger.DEBUG)Logger.d(TAG, "parseConfigFile()");
-		
+		Logger.d(TAG, "parseConfigFile()");
+
+		ByteBuffer content;
+		try {
+			content = readContent(fileName);
+		} catch (IOException e) {
+			Logger.e(TAG, "parseConfigFile() : " + fileName, e);
+			return;
+		}
+		if( content == null ){
+			Logger.e(TAG, "parseConfigFile() : {} not found", fileName);
+			return;
+		}
+
+		Membership membership = parse(content);
+		mResourceInstance.setMembership(membership);
+		hostNodes(membership);
+
+		Logger.d(TAG, "Total Members in System : {}, Nodes hosted : {}", membership.size(), mResourceInstance.size());
+	}
+
+	/**
+	 * Returns the content of the configuration file. The file is looked up
+	 * on the file system, then on the class path.
+	 *
+	 * @param fileName the name of the configuration file
+	 * @return the content, memory mapped if the file is on the file system,
+	 * or null if the file is not found
+	 * @throws IOException if the file cannot be read
+	 */
+	public ByteBuffer readContent(String fileName) throws IOException {
+		File file = findFile(fileName);
+		if( file != null ) return map(file);
+
 		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
-		InputStream input = classLoader.getResourceAsStream("./" + fileName);
-		//InputStream input = classLoader.getResourceAsStream("./com/mps/pearl/configuration_file.txt");
-		
-		List<Node> nodeList = mResourceInstance.getNodeList();
-		
-		try(BufferedReader br = new BufferedReader(new InputStreamReader(input))) {
-			
-		    for(String line; (line = br.readLine()) != null; ) {
-		    	buildNodes(line,nodeList);
-		    }
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+		URL url = classLoader.getResource(fileName);
+		if( url == null ) return null;
+
+		// a configuration file packed in a jar is read into the heap
+		try(InputStream input = url.openStream()) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] chunk = new byte[8192];
+			for(int read; (read = input.read(chunk)) != -1; ) {
+				bytes.write(chunk, 0, read);
+			}
+			return ByteBuffer.wrap(bytes.toByteArray());
+		}
+	}
+
+	/**
+	 * Returns the configuration file, looked up on the file system, then on
+	 * the class path
+	 *
+	 * @param fileName the name of the configuration file
+	 * @return the File, or null if the file is not found, or is packed in a jar
+	 */
+	public File findFile(String fileName) {
+		File file = new File(fileName);
+		if( file.isFile() ) return file;
+
+		URL url = Thread.currentThread().getContextClassLoader().getResource(fileName);
+		if( url == null || !"file".equals(url.getProtocol()) ) return null;
+		try {
+			return new File(url.toURI());
+		} catch (URISyntaxException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Maps a file into memory
+	 */
+	private ByteBuffer map(File file) throws IOException {
+		try(RandomAccessFile input = new RandomAccessFile(file, "r");
+				FileChannel channel = input.getChannel()) {
+			if( channel.size() > Integer.MAX_VALUE ){
+				throw new IOException(file + " is larger than " + Integer.MAX_VALUE + " bytes");
+			}
+			// the mapping stays valid once the channel is closed
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	/**
+	 * This method tokenizes the content of a configuration file. A line in the
+	 * form of <Id> <IP Address> <Port> is a member, a line in the form of
+	 * <Setting Name> <Value> is stored into Settings class. An invalid line,
+	 * a member with the Id or the address of a previous member, are logged
+	 * and skipped.
+	 *
+	 * @param content the content of the configuration file
+	 * @return the Membership of the valid members
+	 */
+	public Membership parse(ByteBuffer content) {
+		Logger.d(TAG, "parse() : {} bytes", content.limit());
+
+		int[] ids = new int[1024];
+		int[] offsets = new int[1024];
+		int[] lines = new int[1024];
+		int members = 0;
+
+		int limit = content.limit();
+		int line = 0;
+		int position = 0;
+		while( position < limit ){
+			line++;
+			int lineEnd = lineEnd(content, position);
+			int start = tokenStart(content, position, lineEnd);
+			position = lineEnd + 1;
+
+			// skip empty lines and comments
+			if( start == lineEnd || content.get(start) == '#' ) continue;
+
+			int end = tokenEnd(content, start, lineEnd);
+			if( !isDigit(content.get(start)) ){
+				// a line which does not begin with Node Id is a setting
+				int valueStart = tokenStart(content, end, lineEnd);
+				Settings.getInstance().set(ascii(content, start, end),
+						ascii(content, valueStart, tokenEnd(content, valueStart, lineEnd)));
+				continue;
+			}
+
+			long id = parseDigits(content, start, end);
+			int addressStart = tokenStart(content, end, lineEnd);
+			int addressEnd = tokenEnd(content, addressStart, lineEnd);
+			int portStart = tokenStart(content, addressEnd, lineEnd);
+			int portEnd = tokenEnd(content, portStart, lineEnd);
+			long port = parseDigits(content, portStart, portEnd);
+
+			if( id < 0 || id > Integer.MAX_VALUE ){
+				Logger.e(TAG, "parse() : line {}, invalid Node Id, skipped", line);
+			}else if( addressStart == addressEnd || portStart == portEnd ){
+				Logger.e(TAG, "parse() : line {}, missing IP Address or Port, skipped", line);
+			}else if( port < 1 || port > MAX_PORT ){
+				Logger.e(TAG, "parse() : line {}, invalid Port, skipped", line);
+			}else{
+				if( members == ids.length ){
+					ids = Arrays.copyOf(ids, members * 2);
+					offsets = Arrays.copyOf(offsets, members * 2);
+					lines = Arrays.copyOf(lines, members * 2);
+				}
+				ids[members] = (int) id;
+				offsets[members] = addressStart;
+				lines[members] = line;
+				members++;
+			}
+		}
+
+		return validate(content, ids, offsets, lines, members);
+	}
+
+	/**
+	 * Returns the Membership of the members, in file order, whose Id and
+	 * address are not used by a previous member
+	 */
+	private Membership validate(ByteBuffer content, int[] ids, int[] offsets, int[] lines, int members) {
+		// open addressing tables of the accepted members, by Id and by address
+		int capacity = Integer.highestOneBit(Math.max(members, 1) * 2 - 1) << 1;
+		int[] idTable = new int[capacity];
+		int[] addressTable = new int[capacity];
+
+		// the accepted members, as Id in the high half and index in the low half
+		long[] accepted = new long[members];
+		int size = 0;
+		for(int member = 0 ; member < members ; member++){
+			int idSlot = findId(idTable, ids, ids[member]);
+			if( idTable[idSlot] != 0 ){
+				Logger.e(TAG, "validate() : line {}, duplicate Node Id {} of line {}, skipped", lines[member], ids[member],
+						lines[idTable[idSlot] - 1]);
+				continue;
+			}
+			int addressSlot = findAddress(addressTable, content, offsets, offsets[member]);
+			if( addressTable[addressSlot] != 0 ){
+				Logger.e(TAG, "validate() : line {}, duplicate address of line {}, skipped", lines[member],
+						lines[addressTable[addressSlot] - 1]);
+				continue;
+			}
+			// slots hold the index of the member plus one, 0 is free
+			idTable[idSlot] = member + 1;
+			addressTable[addressSlot] = member + 1;
+			accepted[size++] = ((long) ids[member] << 32) | member;
+		}
+
+		// order the members by Id
+		Arrays.sort(accepted, 0, size);
+		int[] sortedIds = new int[size];
+		int[] sortedOffsets = new int[size];
+		for(int indx = 0 ; indx < size ; indx++){
+			int member = (int) accepted[indx];
+			sortedIds[indx] = ids[member];
+			sortedOffsets[indx] = offsets[member];
+		}
+		return new Membership(content, sortedIds, sortedOffsets);
+	}
+
+	/**
+	 * Returns the slot of an Id, or the free slot where to add it
+	 */
+	private static int findId(int[] table, int[] ids, int id) {
+		int mask = table.length - 1;
+		int slot = mix(id) & mask;
+		while( table[slot] != 0 && ids[table[slot] - 1] != id ) slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	/**
+	 * Returns the slot of the address which begins at an offset, or the free
+	 * slot where to add it
+	 */
+	private static int findAddress(int[] table, ByteBuffer content, int[] offsets, int offset) {
+		int mask = table.length - 1;
+		int slot = mix(hashAddress(content, offset)) & mask;
+		while( table[slot] != 0 && !sameAddress(content, offsets[table[slot] - 1], offset) ) slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	/**
+	 * Returns the hash of the IP Address and Port which begin at an offset
+	 */
+	private static int hashAddress(ByteBuffer content, int offset) {
+		int limit = content.limit();
+		int hash = 0;
+		for(int token = 0 ; token < 2 ; token++){
+			int end = tokenEnd(content, offset, limit);
+			for( ; offset < end ; offset++) hash = 31 * hash + content.get(offset);
+			hash = 31 * hash + ' ';
+			offset = tokenStart(content, end, limit);
+		}
+		return hash;
+	}
+
+	/**
+	 * Returns True, if the IP Address and Port which begin at two offsets are the same
+	 */
+	private static boolean sameAddress(ByteBuffer content, int first, int second) {
+		int limit = content.limit();
+		for(int token = 0 ; token < 2 ; token++){
+			int firstEnd = tokenEnd(content, first, limit);
+			int secondEnd = tokenEnd(content, second, limit);
+			if( firstEnd - first != secondEnd - second ) return false;
+			for(int indx = 0 ; indx < firstEnd - first ; indx++){
+				if( content.get(first + indx) != content.get(second + indx) ) return false;
+			}
+			first = tokenStart(content, firstEnd, limit);
+			second = tokenStart(content, secondEnd, limit);
+		}
+		return true;
+	}
+
+	/**
+	 * Spreads the bits of a hash over the slots of a table
+	 */
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * This method adds a Node into the Resource class for each member hosted
+	 * by this process : every member by default, the members whose IP
+	 * Address is an address of this host, or the single member of the
+	 * process, once App runs one Node by process.
+	 *
+	 * @param membership the members of the System
+	 */
+	public void hostNodes(Membership membership) {
+		List<byte[]> localAddresses = hostedAddresses();
+
+		for(int index = 0 ; index < membership.size() ; index++){
+			if( !isHosted(membership, index, localAddresses) ) continue;
+
+			MemberRecord record = membership.getRecordAt(index);
+			if( !mResourceInstance.add(record.newNode()) ){
+				Logger.e(TAG, "hostNodes() : duplicate Node Id, skipped {}", record);
+			}
+		}
+	}
+
+	/**
+	 * This method reloads the configuration file while the System runs. The
+	 * new members are compared with the current ones : a member which is
+	 * gone, or whose IP Address or Port changed, leaves the System, and a
+	 * new hosted member joins it. The other Nodes keep running, so only a
+	 * change of the Coordinator, or a Node above it, leads to a new one.
+	 *
+	 * @param fileName the name of the configuration file
+	 * @return True, if the file was reloaded, False, if it could not be read
+	 */
+	public boolean reloadConfigFile(String fileName){
+		Logger.d(TAG, "reloadConfigFile() : {}", fileName);
+
+		ByteBuffer content;
+		try {
+			content = readContent(fileName);
+		} catch (IOException e) {
+			Logger.e(TAG, "reloadConfigFile() : " + fileName, e);
+			return false;
+		}
+		if( content == null ){
+			Logger.e(TAG, "reloadConfigFile() : {} not found", fileName);
+			return false;
+		}
+
+		// the file may be rewritten in place again, keep the members in the heap
+		applyMembership(parse(content).copy());
+		return true;
+	}
+
+	/**
+	 * This method applies the difference between the current members and
+	 * new members to the running Nodes. The Nodes which leave are removed
+	 * first, then the Nodes which join are added from the highest Id, so
+	 * at most one of them takes over as Coordinator.
+	 *
+	 * @param membership the new members of the System
+	 */
+	public void applyMembership(Membership membership) {
+		Membership current = mResourceInstance.getMembership();
+		NodeManager nodeManager = NodeManager.getInstance();
+		int left = 0;
+		int joined = 0;
+
+		for(int index = 0 ; index < current.size() ; index++){
+			int newIndex = membership.indexOf(current.getIdAt(index));
+			if( newIndex >= 0 && current.isSameAddressAt(index, membership, newIndex) ) continue;
+
+			// the member is gone or has moved
+			Node node = mResourceInstance.getNode(current.getIdAt(index));
+			if( node != null ){
+				nodeManager.leave(node);
+				left++;
+			}
+		}
+
+		mResourceInstance.setMembership(membership);
+
+		List<byte[]> localAddresses = hostedAddresses();
+		for(int index = membership.size() - 1 ; index >= 0 ; index--){
+			int oldIndex = current.indexOf(membership.getIdAt(index));
+			if( oldIndex >= 0 && membership.isSameAddressAt(index, current, oldIndex) ) continue;
+			if( !isHosted(membership, index, localAddresses) ) continue;
+			// the Node of a process moves with its process, once restarted
+			if( NodeManager.getInstance().getWireElection() != null ) continue;
+
+			// the member is new or has moved
+			if( nodeManager.join(membership.getRecordAt(index).newNode()) ) joined++;
+		}
+
+		Logger.i(TAG, "applyMembership() : {} members, {} Nodes joined, {} Nodes left", membership.size(), joined, left);
+	}
+
+	/**
+	 * Returns the addresses of the hosted members, or null if every member is hosted
+	 */
+	private List<byte[]> hostedAddresses() {
+		String hosted = Settings.getInstance().getString(Constant.KEY_MEMBERSHIP_HOSTED, Constant.MEMBERSHIP_HOSTED);
+		return Constant.HOSTED_LOCAL.equals(hosted) ? localAddresses() : null;
+	}
+
+	/**
+	 * Returns True, if a member is hosted by this process
+	 */
+	private boolean isHosted(Membership membership, int index, List<byte[]> localAddresses) {
+		int nodeId = Settings.getInstance().getInt(Constant.KEY_NODE_ID, -1);
+		if( nodeId >= 0 ) return membership.getIdAt(index) == nodeId;
+		return localAddresses == null || isLocal(membership, index, localAddresses);
+	}
+
+	/**
+	 * Returns True, if the IP Address of a member is one of the local addresses
+	 */
+	private boolean isLocal(Membership membership, int index, List<byte[]> localAddresses) {
+		for(byte[] address : localAddresses){
+			if( membership.isIPAddressAt(index, address) ) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the names and addresses of this host, as ASCII bytes
+	 */
+	private List<byte[]> localAddresses() {
+		List<String> names = new ArrayList<String>();
+		names.add("localhost");
+		try {
+			InetAddress localHost = InetAddress.getLocalHost();
+			names.add(localHost.getHostName());
+			names.add(localHost.getCanonicalHostName());
+		} catch (IOException e) {
+			Logger.w(TAG, "localAddresses() : no local host name : {}", e.getMessage());
+		}
+		try {
+			Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+			for(NetworkInterface networkInterface : interfaces == null ? Collections.<NetworkInterface>emptyList() : Collections.list(interfaces)){
+				for(InetAddress address : Collections.list(networkInterface.getInetAddresses())){
+					String hostAddress = address.getHostAddress();
+					// drop the scope of an IPv6 address
+					int scope = hostAddress.indexOf('%');
+					names.add(scope < 0 ? hostAddress : hostAddress.substring(0, scope));
+				}
+			}
 		} catch (IOException e) {
-			e.printStackTrace();
+			Logger.w(TAG, "localAddresses() : no network interfaces : {}", e.getMessage());
 		}
-		
-		if(Logger.DEBUG)Logger.d(TAG, "Total Nodes in System : " + nodeList.size() );
+
+		List<byte[]> addresses = new ArrayList<byte[]>(names.size());
+		for(String name : names){
+			addresses.add(name.getBytes(StandardCharsets.US_ASCII));
+		}
+		Logger.d(TAG, "localAddresses() : {}", names);
+		return addresses;
 	}
-	
+
+	/*
+	 * ********************* TOKENIZER *************************
+	 */
+
+	/**
+	 * Returns the offset of the end of the line which contains an offset
+	 */
+	private static int lineEnd(ByteBuffer content, int offset) {
+		int limit = content.limit();
+		while( offset < limit && content.get(offset) != '\n' ) offset++;
+		return offset;
+	}
+
 	/**
-	 * This method build Nodes for converting each lines String into tokens. Each token 
-	 * represent Node property which is stored into Resource class
-	 * 
-	 * @param line The line read from configuration file
-	 * @param nodeList The List<Node> data structure as a holder to save Nodes. 
+	 * Returns the offset of the next token before the end of the line
 	 */
-	private void buildNodes(String line,List<Node> nodeList){
-		// split the lines to tokens
-		String[] nodeToken = line.split("\\s+");
-		// create new nodes, add to list
-		mResourceInstance.add(new Node(Integer.parseInt(nodeToken[0]),nodeToken[1],nodeToken[2]));
+	private static int tokenStart(ByteBuffer content, int offset, int lineEnd) {
+		while( offset < lineEnd && Membership.isSpace(content.get(offset)) ) offset++;
+		return offset;
+	}
+
+	/**
+	 * Returns the offset of the first byte after a token
+	 */
+	private static int tokenEnd(ByteBuffer content, int offset, int lineEnd) {
+		while( offset < lineEnd && !Membership.isBlank(content.get(offset)) ) offset++;
+		return offset;
+	}
+
+	/**
+	 * Returns the value of a token of decimal digits
+	 * @return the value, or -1 if the token is empty, is not a number, or
+	 * overflows an integer
+	 */
+	private static long parseDigits(ByteBuffer content, int start, int end) {
+		if( start == end ) return -1;
+		long value = 0;
+		for(int offset = start ; offset < end ; offset++){
+			byte b = content.get(offset);
+			if( !isDigit(b) ) return -1;
+			value = value * 10 + (b - '0');
+			if( value > Integer.MAX_VALUE ) return -1;
+		}
+		return value;
+	}
+
+	/**
+	 * Returns True, if the byte is a decimal digit
+	 */
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	/**
+	 * Returns the String of the ASCII bytes between two offsets
+	 */
+	private static String ascii(ByteBuffer content, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		for(int indx = 0 ; indx < bytes.length ; indx++){
+			bytes[indx] = content.get(start + indx);
+		}
+		return new String(bytes, StandardCharsets.US_ASCII);
 	}
 }
@@ -0,0 +1,165 @@
+package com.mps.pearl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import com.mps.pearl.core.Resource;
+import com.mps.pearl.util.Constant;
+import com.mps.pearl.util.Logger;
+import com.mps.pearl.util.Settings;
+
+/**
+ * This class watches the configuration file while the System runs, and
+ * reloads the members once the file has changed. Editors and copies
+ * write a file in several steps, so the file is reloaded only once it
+ * has not changed for the settle time : a half written file would make
+ * the missing members leave the System.
+ *
+ * The members read at startup are memory mapped, they are copied into
+ * the heap before the file is watched, as a file rewritten in place
+ * changes under its mapping.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class MembershipWatcher implements Runnable {
+
+	/**
+	 * A Logger tag
+	 */
+	private final String TAG = MembershipWatcher.class.getSimpleName();
+
+	/**
+	 * The name of the configuration file, as given to the App
+	 */
+	private final String mFileName;
+
+	/**
+	 * The watched configuration file
+	 */
+	private final File mFile;
+
+	/**
+	 * Time in milliseconds the file must not change before it is reloaded
+	 */
+	private final long mSettleMillis;
+
+	/**
+	 * The WatchService of the folder of the configuration file
+	 */
+	private WatchService mWatchService;
+
+	/**
+	 * The watcher Thread
+	 */
+	private Thread mThread;
+
+	/**
+	 * Creates a MembershipWatcher object.
+	 * @param fileName the name of the configuration file, as given to the App
+	 */
+	public MembershipWatcher(String fileName) {
+		this.mFileName = fileName;
+		this.mFile = new ConfigFileReader().findFile(fileName);
+		this.mSettleMillis = Settings.getInstance().getLong(Constant.KEY_MEMBERSHIP_WATCH_SETTLE_MILLIS,
+				Constant.MEMBERSHIP_WATCH_SETTLE_MILLIS);
+	}
+
+	/**
+	 * Starts to watch the configuration file
+	 * @return True, if the file is watched, False, if the file is not on the file system
+	 */
+	public synchronized boolean start() {
+		if( mThread != null ) return true;
+		if( mFile == null ){
+			Logger.e(TAG, "start() : {} is not a file, not watched", mFileName);
+			return false;
+		}
+
+		try {
+			mWatchService = FileSystems.getDefault().newWatchService();
+			mFile.getAbsoluteFile().getParentFile().toPath().register(mWatchService,
+					StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (IOException e) {
+			Logger.e(TAG, "start() : " + mFile, e);
+			return false;
+		}
+
+		// the members read at startup may be mapped from the watched file
+		Resource resource = Resource.getInstance();
+		resource.setMembership(resource.getMembership().copy());
+
+		mThread = new Thread(this, TAG);
+		mThread.setDaemon(true);
+		mThread.start();
+		Logger.i(TAG, "start() : watching {}", mFile);
+		return true;
+	}
+
+	/**
+	 * Stops to watch the configuration file
+	 */
+	public synchronized void stop() {
+		if( mThread == null ) return;
+		try {
+			mWatchService.close();
+		} catch (IOException e) {
+			Logger.d(TAG, "stop() : {}", e.getMessage());
+		}
+		mThread = null;
+	}
+
+	/**
+	 * This method waits for the changes of the configuration file, and
+	 * reloads it once the changes have settled.
+	 */
+	@Override
+	public void run() {
+		Path fileName = mFile.toPath().getFileName();
+		try {
+			while( true ){
+				WatchKey key = mWatchService.take();
+				boolean changed = pollFile(key, fileName);
+
+				// wait until the file does not change for the settle time
+				while( changed ){
+					key = mWatchService.poll(mSettleMillis, TimeUnit.MILLISECONDS);
+					if( key == null ) break;
+					pollFile(key, fileName);
+				}
+
+				if( changed ){
+					new ConfigFileReader().reloadConfigFile(mFile.getPath());
+				}
+			}
+		} catch (InterruptedException e) {
+			Logger.d(TAG, "run() : interrupted");
+		} catch (ClosedWatchServiceException e) {
+			Logger.d(TAG, "run() : stopped");
+		}
+	}
+
+	/**
+	 * Returns True, if the events of a key report a change of the configuration file
+	 */
+	private boolean pollFile(WatchKey key, Path fileName) {
+		boolean changed = false;
+		for(WatchEvent<?> event : key.pollEvents()){
+			if( event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context()) ){
+				changed = true;
+			}
+		}
+		key.reset();
+		return changed;
+	}
+}
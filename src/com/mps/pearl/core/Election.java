@@ -1,17 +1,34 @@
 package com.mps.pearl.core;
 
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * This class implements an Election. Election is a process to select 
- * a Coordinator Node ( Server Node ) among set of available Nodes in 
- * a System.  
- *  
+ * This class implements an Election. Election is a process to select
+ * a Coordinator Node ( Server Node ) among set of available Nodes in
+ * a System.
+ *
+ * The state of the Election is an immutable snapshot held by an atomic
+ * reference. The Nodes move the Election from a snapshot to the next one
+ * with compare and set, so they never wait for each other :
+ *
+ * IDLE -> ELECTING -> DECIDED -> ELECTING -> ...
+ *
+ * Each Election begun, or restarted by a Node with a higher Id, gets a
+ * new term. A restarted Election keeps the start time of the Election it
+ * bullied, and counts its rounds and its messages, so an Election is
+ * measured from its first message to the declaration of the Coordinator.
+ *
+ * A Node which leaves the System is removed from the running Election,
+ * and a Node which joins with an Id higher than the Coordinator is
+ * declared Coordinator in a new term, without an Election.
+ *
+ * The Election of the System appends its terms and its Coordinators to
+ * the term log, if any, after each move, and is restored from it when the
+ * System restarts.
+ *
  * @author msingh
- * @version 1.0 20 Jan, 2014
+ * @version 1.1
  *
  */
 public class Election {
@@ -21,166 +38,454 @@ public class Election {
 	 */
 	@SuppressWarnings("unused")
 	private final String TAG = Election.class.getSimpleName();
-	
+
 	/**
-	 * An instance of Election class
+	 * The unique instance of Election class, created when the class is loaded
 	 */
-	private static Election INSTANCE;
-	
+	private static final Election INSTANCE = new Election();
+
 	/**
-	 * Boolean to indicates Election state 
+	 * The current snapshot of the Election
 	 */
-	private boolean isElectionFlag;
-	
+	private final AtomicReference<State> mState = new AtomicReference<State>(State.IDLE_STATE);
+
 	/**
-	 * LinkedHashMap<Integer,Node> with Id as Key and Node as value 
-	 * for the System 
+	 * Boolean to print the declared Coordinators to view
 	 */
-	private LinkedHashMap<Integer,Node> mElectionNodeList;
-	
+	private final boolean isViewed;
+
 	/**
-	 * Object used as lock to provide mutual exclusion for the 
-	 * running threads in a System
+	 * The log of the terms and the Coordinators, or null
 	 */
-	public static final Object lock = new Object();
-	
+	private volatile TermLog mTermLog;
+
 	/**
 	 * Returns the unique Election object associated with this System, if any.
 	 * @return instance the Election instance
 	 */
-	public static synchronized Election getInstance(){
-		if(INSTANCE == null)
-			INSTANCE = new Election();
+	public static Election getInstance(){
 		return INSTANCE;
 	}
 
 	/**
-	 * Creates an Election object.
+	 * Creates an Election object. The System uses the unique instance
+	 * returned by getInstance(), own instances serve the benchmarks.
+	 */
+	public Election() {
+		this(true);
+	}
+
+	/**
+	 * Creates an Election object, the Election of an election group does
+	 * not print its Coordinators to view.
+	 *
+	 * @param isViewed True, to print the declared Coordinators to view
+	 */
+	public Election(boolean isViewed) {
+		this.isViewed = isViewed;
+	}
+
+	/**
+	 * Sets the log of the terms and the Coordinators of the Election
+	 * @param termLog the open TermLog, or null to keep no log
 	 */
-	private Election() {
-		// TODO Auto-generated constructor stub
-		setElectionFlag(false);
-		mElectionNodeList = new LinkedHashMap<Integer,Node>();
+	public void setTermLog(TermLog termLog) {
+		this.mTermLog = termLog;
 	}
 
 	/**
-	 * Returns the List of Nodes which are involved in the Election process in a System
-	 * @return the list which is bound to the Election, or null if the list is unbound.
+	 * Restores the Election of a restarted System in the last term of its
+	 * log. The Election is decided with its last Coordinator, if any, or
+	 * idle, so the next Election begins a new term.
+	 *
+	 * @param term the last term of the log
+	 * @param coordinator the Coordinator of the term, or null
+	 * @return the snapshot of the Election after the restore
 	 */
-	public LinkedHashMap<Integer,Node> getElectionNodeList() {
-		return mElectionNodeList;
+	public State restore(long term, Node coordinator) {
+		State restored = coordinator == null
+				? new State(Phase.IDLE, term, new Node[0], null, 0, 0, 0)
+				: new State(Phase.DECIDED, term, new Node[]{ coordinator }, coordinator, System.nanoTime(), 0, 0);
+		mState.set(restored);
+		return restored;
 	}
 
 	/**
-	 * Begin Election process in a System
+	 * Appends a record to the term log, if any
 	 */
-	public void beginElection(){
-		// set election state
-		setElectionFlag(true);
+	private void log(byte kind, long term, Node node) {
+		TermLog termLog = mTermLog;
+		if( termLog != null ) termLog.append(kind, term, node.getId());
 	}
-	
+
 	/**
-	 * Returns the valid state of the Election in a System. The Election is valid, 
-	 * if the Id of Node which initiated the Election is greater than all the other nodes
-	 * 
-	 * @param indexId the Id of the Node who wants to vaildate the state of election
-	 * @return True, if the election is valid election, False, 
-	 * If election is not a valid election
+	 * Returns the current snapshot of the Election
+	 * @return the State of the Election
 	 */
-	public boolean isValidElection(int indexId){
-		if(mElectionNodeList.size() == 0 ) return true;
-		return mElectionNodeList.entrySet().iterator().next().getKey() >= indexId ;
+	public State getState() {
+		return mState.get();
 	}
-	
+
 	/**
-	 * Add the current Node to the Election List
-	 * @param node The Node to be added in a Election Node List
+	 * Returns the term of the last Election begun in the System
+	 * @return the term, 0 if no Election was begun yet
 	 */
-	public void addElectionNode(Node node){
-		// add the node to the list
-		mElectionNodeList.put(node.getId(), node);
+	public long getTerm() {
+		return mState.get().term;
 	}
-	
+
 	/**
-	 * Abort Election process in a System
+	 * Returns the state of the Election
+	 *
+	 * @return True, if Election is running,
+	 * False, if Election is not running
 	 */
-	public void abortElection(){
-		// set election state 
-		setElectionFlag(false);
-		// clear all node list from election
-		mElectionNodeList.clear();
+	public boolean isElectionFlag() {
+		return mState.get().phase == Phase.ELECTING;
 	}
-	
+
 	/**
-	 * Returns the Election message which contains vector of Nodes 
-	 * who are involved in an Election 
-	 * 
-	 * @return Message A String of the vector Nodes of the Election
+	 * Adds a Node to the running Election. The Node begins a new Election,
+	 * if no Election is running, or if its Id is higher than the Id of the
+	 * Node which began the running Election.
+	 *
+	 * A decided Election stays decided while its Coordinator is running,
+	 * so a Node which did not see the new Coordinator yet does not begin
+	 * another Election.
+	 *
+	 * @param node the Node which joins the Election
+	 * @return the snapshot of the Election after the join
 	 */
-	public synchronized String getElectionMessage(){
-		StringBuilder message = new StringBuilder();
-		
-		message.append("e ").append("[");;
-			
-		int size = mElectionNodeList.size();
-		
-		Iterator<Entry<Integer, Node>> iter = mElectionNodeList.entrySet().iterator();
-	      // Display elements
-	      while(iter.hasNext()) {
-	         Map.Entry<Integer,Node> iterMap = (Map.Entry<Integer,Node>)iter.next();
-	         message.append(iterMap.getKey());
-	         
-	         if( size - 1 >= 1 ){
-	        	 message.append(", ");
-	        	 size--;
-	         }
-	      }
-		
-		message.append("]");;
-		
-		return message.toString();
+	public State join(Node node){
+		while(true){
+			State current = mState.get();
+			State next;
+			if( current.phase == Phase.DECIDED && !current.coordinator.isDownFlag() ){
+				return current;
+			}else if( current.phase != Phase.ELECTING || current.initiatorId() < node.getId() ){
+				// begin new election, or bully the running one
+				if( current.phase == Phase.ELECTING ){
+					next = new State(Phase.ELECTING, current.term + 1, new Node[]{ node }, null,
+							current.startNanos, current.rounds + 1, current.messages + 1);
+				}else{
+					next = new State(Phase.ELECTING, current.term + 1, new Node[]{ node }, null, System.nanoTime(), 1, 1);
+				}
+			}else if( current.contains(node) ){
+				return current;
+			}else{
+				next = current.add(node);
+			}
+			if( mState.compareAndSet(current, next) ){
+				if( next.term != current.term ) log(TermLog.ELECTION, next.term, node);
+				return next;
+			}
+		}
 	}
 
 	/**
-	 * Close the Election and declare the new coordinator
-	 * 
-	 * @return Node The Node declared as new coordinator
+	 * Close the Election and declare the new coordinator, if all the
+	 * running Nodes have joined the Election. Only the Node which moved
+	 * the snapshot to DECIDED gets the new coordinator.
+	 *
+	 * @param electing the snapshot returned by join()
+	 * @param runningNodes the number of running Nodes in the System
+	 * @return Node The Node declared as new coordinator, or null
 	 */
-	public Node endElection(){
-		// end election 
-		String message = "c " + mElectionNodeList.entrySet().iterator().next().getKey() ;
+	public Node endElection(State electing, int runningNodes){
+		if( electing.phase != Phase.ELECTING || electing.nodes.length != runningNodes ) return null;
+
+		Node newCoordinator = electing.nodes[0];
+		if( !mState.compareAndSet(electing, new State(Phase.DECIDED, electing.term, electing.nodes, newCoordinator,
+				electing.startNanos, electing.rounds, electing.messages)) ){
+			// another Node has joined, bullied or decided meanwhile
+			return null;
+		}
+		log(TermLog.COORDINATOR, electing.term, newCoordinator);
+
 		// print to view
-		System.out.println(message);
-		
-		// Get the new Coordinator
-		Node newCoordinator = mElectionNodeList.entrySet().iterator().next().getValue();
-		
-		// set election state 
-		setElectionFlag(false);
-				
-		// clear all node list from election
-		mElectionNodeList.clear();
-		
+		if( isViewed ) System.out.println("c " + newCoordinator.getId());
+
 		// return the Node as a NEW  COORDINATOR
-		return newCoordinator ;
+		return newCoordinator;
 	}
 
 	/**
-	 * Returns the state of the Election
-	 * 
-	 * @return True, if Election is running, 
-	 * False, if Election is not running
+	 * Removes a Node which left the System from the running Election, so the
+	 * Election does not wait for it. If the Node began the Election, the
+	 * highest of the remaining Nodes takes its place.
+	 *
+	 * @param node the Node which left the System
+	 * @return the snapshot of the Election after the leave
 	 */
-	public boolean isElectionFlag() {
-		return isElectionFlag;
+	public State leave(Node node){
+		while(true){
+			State current = mState.get();
+			if( current.phase != Phase.ELECTING || !current.contains(node) ) return current;
+			if( mState.compareAndSet(current, current.remove(node)) ) return mState.get();
+		}
+	}
+
+	/**
+	 * Declares a Node as the Coordinator without an Election, in a new term.
+	 * A Node which joins the System with an Id higher than the running
+	 * Coordinator takes over this way, as in the recovery of the Bully
+	 * Algorithm, so the other Nodes do not take part.
+	 *
+	 * @param coordinator the Node declared as new coordinator
+	 * @return the decided snapshot of the Election
+	 */
+	public State declare(Node coordinator){
+		while(true){
+			State current = mState.get();
+			State next = new State(Phase.DECIDED, current.term + 1, new Node[]{ coordinator }, coordinator,
+					System.nanoTime(), 0, 0);
+			if( mState.compareAndSet(current, next) ){
+				log(TermLog.COORDINATOR, next.term, coordinator);
+				// print to view
+				if( isViewed ) System.out.println("c " + coordinator.getId());
+				return next;
+			}
+		}
 	}
 
 	/**
-	 * Set the Election State of the System
-	 * 
-	 * @param isElectionFlag True, if the Election is running, False, if Election not running
+	 * Prints the Nodes of an Election to view, unless the Election is not viewed
+	 * @param electionMessage the Nodes of the Election, as "e [i, j, ...]"
 	 */
-	public void setElectionFlag(boolean isElectionFlag) {
-		this.isElectionFlag = isElectionFlag;
+	public void view(String electionMessage){
+		if( isViewed ) System.out.println(electionMessage);
+	}
+
+	/**
+	 * Decides the Election with a Coordinator declared over the wire, in the
+	 * term of its declaration. A Node which runs in its own process learns
+	 * the Coordinator this way, from the Coordinator message of a WireElection.
+	 *
+	 * A delayed Coordinator message of an older term is rejected, so the
+	 * Election never goes back to an older Coordinator.
+	 *
+	 * @param term the term of the Coordinator
+	 * @param coordinator the Node declared as new coordinator
+	 * @return the decided snapshot of the Election, or null if the term is older than the running one
+	 */
+	public State accept(long term, Node coordinator){
+		while(true){
+			State current = mState.get();
+			if( term < current.term ) return null;
+			State next = new State(Phase.DECIDED, term, new Node[]{ coordinator }, coordinator, System.nanoTime(), 0, 0);
+			if( mState.compareAndSet(current, next) ){
+				log(TermLog.COORDINATOR, term, coordinator);
+				// print to view
+				if( isViewed ) System.out.println("c " + coordinator.getId());
+				return next;
+			}
+		}
+	}
+
+	/**
+	 * Phases of the Election
+	 */
+	public enum Phase {
+		/**
+		 * No Election was begun yet
+		 */
+		IDLE,
+		/**
+		 * The Nodes are joining the Election
+		 */
+		ELECTING,
+		/**
+		 * The Coordinator is declared
+		 */
+		DECIDED
+	}
+
+	/**
+	 * This class represents an immutable snapshot of the Election
+	 */
+	public static final class State {
+
+		/**
+		 * The snapshot before the first Election
+		 */
+		static final State IDLE_STATE = new State(Phase.IDLE, 0, new Node[0], null, 0, 0, 0);
+
+		/**
+		 * Phase of the Election
+		 */
+		private final Phase phase;
+
+		/**
+		 * Term of the Election
+		 */
+		private final long term;
+
+		/**
+		 * Nodes involved in the Election, in joining order, the first one began it
+		 */
+		private final Node[] nodes;
+
+		/**
+		 * The declared Coordinator, if the Election is decided
+		 */
+		private final Node coordinator;
+
+		/**
+		 * Start time of the Election, read from System.nanoTime()
+		 */
+		private final long startNanos;
+
+		/**
+		 * Number of rounds of the Election, one for each term begun
+		 */
+		private final int rounds;
+
+		/**
+		 * Number of Election messages, one for each Node which joined a round
+		 */
+		private final int messages;
+
+		/**
+		 * Creates a State object.
+		 */
+		private State(Phase phase, long term, Node[] nodes, Node coordinator, long startNanos, int rounds, int messages) {
+			this.phase = phase;
+			this.term = term;
+			this.nodes = nodes;
+			this.coordinator = coordinator;
+			this.startNanos = startNanos;
+			this.rounds = rounds;
+			this.messages = messages;
+		}
+
+		/**
+		 * Returns the Id of the Node which began the Election
+		 */
+		private int initiatorId() {
+			return nodes[0].getId();
+		}
+
+		/**
+		 * Returns True, if the Node is involved in the Election
+		 */
+		private boolean contains(Node node) {
+			for(Node joined : nodes){
+				if( joined.getId() == node.getId() ) return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Returns a copy of the snapshot with one more Node
+		 */
+		private State add(Node node) {
+			Node[] joined = Arrays.copyOf(nodes, nodes.length + 1);
+			joined[nodes.length] = node;
+			return new State(phase, term, joined, null, startNanos, rounds, messages + 1);
+		}
+
+		/**
+		 * Returns a copy of the snapshot without a Node, the highest of the
+		 * remaining Nodes first
+		 */
+		private State remove(Node node) {
+			if( nodes.length == 1 ) return new State(Phase.IDLE, term, new Node[0], null, 0, 0, 0);
+
+			Node[] remaining = new Node[nodes.length - 1];
+			int size = 0;
+			for(Node joined : nodes){
+				if( joined.getId() != node.getId() ) remaining[size++] = joined;
+			}
+			if( nodes[0].getId() == node.getId() ){
+				// the highest remaining Node begins the Election in place of the leaving one
+				int highest = 0;
+				for(int indx = 1 ; indx < remaining.length ; indx++){
+					if( remaining[indx].getId() > remaining[highest].getId() ) highest = indx;
+				}
+				Node initiator = remaining[highest];
+				remaining[highest] = remaining[0];
+				remaining[0] = initiator;
+			}
+			return new State(phase, term, remaining, null, startNanos, rounds, messages);
+		}
+
+		/**
+		 * Returns the phase of the Election
+		 * @return the Phase
+		 */
+		public Phase getPhase() {
+			return phase;
+		}
+
+		/**
+		 * Returns the term of the Election
+		 * @return the term
+		 */
+		public long getTerm() {
+			return term;
+		}
+
+		/**
+		 * Returns the number of Nodes involved in the Election
+		 * @return the number of Nodes
+		 */
+		public int size() {
+			return nodes.length;
+		}
+
+		/**
+		 * Returns the start time of the Election, read from System.nanoTime()
+		 * @return the time in nanoseconds of the first Election message
+		 */
+		public long getStartNanos() {
+			return startNanos;
+		}
+
+		/**
+		 * Returns the number of rounds of the Election, one for each term begun
+		 * @return the number of rounds
+		 */
+		public int getRounds() {
+			return rounds;
+		}
+
+		/**
+		 * Returns the number of Election messages, one for each Node which
+		 * joined a round of the Election
+		 * @return the number of messages
+		 */
+		public int getMessages() {
+			return messages;
+		}
+
+		/**
+		 * Returns the declared Coordinator
+		 * @return the Coordinator Node, or null if the Election is not decided
+		 */
+		public Node getCoordinator() {
+			return coordinator;
+		}
+
+		/**
+		 * Returns the Election message which contains vector of Nodes
+		 * who are involved in an Election
+		 *
+		 * @return Message A String of the vector Nodes of the Election
+		 */
+		public String getElectionMessage() {
+			StringBuilder message = new StringBuilder();
+			message.append("e ").append("[");
+			for(int indx = 0 ; indx < nodes.length ; indx++){
+				if( indx > 0 ) message.append(", ");
+				message.append(nodes[indx].getId());
+			}
+			message.append("]");
+			return message.toString();
+		}
+
+		@Override
+		public String toString() {
+			return phase + " term " + term + " " + getElectionMessage();
+		}
 	}
 }
@@ -0,0 +1,238 @@
+package com.mps.pearl.core;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.mps.pearl.metrics.Metrics;
+
+/**
+ * This class represents an election group : a subset of the Nodes of the
+ * System which elects a Coordinator of its own, in terms of its own, as a
+ * shard of the System would. A Node takes part in any number of groups.
+ *
+ * A group runs the Bully Algorithm of the System on its own Election
+ * among its running members : the members which miss the heartbeats of
+ * the Coordinator of the group join the Election, and the highest of them
+ * is declared once all the running members have joined.
+ *
+ * The group keeps the time each member last heard its Coordinator, the
+ * heartbeats themselves are coalesced with the heartbeats of the other
+ * groups by the GroupMux of the Nodes.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class ElectionGroup {
+
+	/**
+	 * Id of no Coordinator
+	 */
+	private static final int NONE = -1;
+
+	/**
+	 * Id of the group
+	 */
+	private final int mId;
+
+	/**
+	 * Ids of the members, sorted
+	 */
+	private final int[] mMemberIds;
+
+	/**
+	 * The Election of the group
+	 */
+	private final Election mElection = new Election(false);
+
+	/**
+	 * Time each member last heard the Coordinator, read from System.nanoTime(), by member index
+	 */
+	private final AtomicLongArray mLastHeartbeats;
+
+	/**
+	 * Id of the Coordinator of the group, or NONE
+	 */
+	private volatile int mCoordinatorId = NONE;
+
+	/**
+	 * Creates an ElectionGroup object.
+	 *
+	 * @param id the Id of the group
+	 * @param memberIds the Ids of the members of the group
+	 */
+	public ElectionGroup(int id, int[] memberIds) {
+		this.mId = id;
+		this.mMemberIds = memberIds.clone();
+		Arrays.sort(this.mMemberIds);
+		this.mLastHeartbeats = new AtomicLongArray(mMemberIds.length);
+
+		long now = System.nanoTime();
+		for(int indx = 0 ; indx < mMemberIds.length ; indx++){
+			mLastHeartbeats.set(indx, now);
+		}
+	}
+
+	/**
+	 * Returns the Id of the group
+	 * @return the integer Id of the group
+	 */
+	public int getId() {
+		return mId;
+	}
+
+	/**
+	 * Returns the Ids of the members of the group
+	 * @return the sorted Ids of the members
+	 */
+	public int[] getMemberIds() {
+		return mMemberIds.clone();
+	}
+
+	/**
+	 * Returns the number of members of the group
+	 * @return the number of members
+	 */
+	public int size() {
+		return mMemberIds.length;
+	}
+
+	/**
+	 * Returns the Id of a member of the group
+	 * @param index the index of the member, from 0 to size() - 1
+	 * @return the Id of the member
+	 */
+	public int getMemberId(int index) {
+		return mMemberIds[index];
+	}
+
+	/**
+	 * Returns True, if a Node is a member of the group
+	 * @param nodeId the Id of the Node
+	 * @return True, if the Node is a member
+	 */
+	public boolean isMember(int nodeId) {
+		return Arrays.binarySearch(mMemberIds, nodeId) >= 0;
+	}
+
+	/**
+	 * Returns the Id of the Coordinator of the group
+	 * @return the Id of the Coordinator, or -1 if no Coordinator is declared yet
+	 */
+	public int getCoordinatorId() {
+		return mCoordinatorId;
+	}
+
+	/**
+	 * Returns the term of the Coordinator of the group
+	 * @return the term, 0 if no Coordinator is declared yet
+	 */
+	public long getTerm() {
+		return mElection.getTerm();
+	}
+
+	/**
+	 * Returns the Election of the group
+	 * @return the Election
+	 */
+	public Election getElection() {
+		return mElection;
+	}
+
+	/**
+	 * Declares the highest running member the Coordinator, without an
+	 * Election, as the System does at startup
+	 *
+	 * @return the declared Coordinator, or null if no member is running
+	 */
+	public Node declareCoordinator() {
+		for(int indx = mMemberIds.length - 1 ; indx >= 0 ; indx--){
+			Node node = Resource.getInstance().getNode(mMemberIds[indx]);
+			if( node == null || node.isDownFlag() ) continue;
+
+			mElection.declare(node);
+			mCoordinatorId = node.getId();
+			return node;
+		}
+		return null;
+	}
+
+	/**
+	 * Records a heartbeat of the Coordinator heard by a member. A heartbeat
+	 * of a former term, or of a former Coordinator, is dropped.
+	 *
+	 * @param memberId the Id of the member
+	 * @param coordinatorId the Id of the Node which sent the heartbeat
+	 * @param term the term of the heartbeat
+	 * @param nowNanos the arrival time of the heartbeat, read from System.nanoTime()
+	 */
+	public void heartbeat(int memberId, int coordinatorId, long term, long nowNanos) {
+		if( coordinatorId != mCoordinatorId || term != getTerm() ) return;
+		int index = Arrays.binarySearch(mMemberIds, memberId);
+		if( index >= 0 ) mLastHeartbeats.set(index, nowNanos);
+	}
+
+	/**
+	 * Returns True, if a member has not heard the Coordinator for longer than a timeout
+	 *
+	 * @param memberId the Id of the member
+	 * @param timeoutNanos the timeout in nanoseconds
+	 * @param nowNanos the current time, read from System.nanoTime()
+	 * @return True, if the member has missed the heartbeats of the Coordinator
+	 */
+	public boolean isCoordinatorMissed(int memberId, long timeoutNanos, long nowNanos) {
+		int index = Arrays.binarySearch(mMemberIds, memberId);
+		return index >= 0 && memberId != mCoordinatorId && nowNanos - mLastHeartbeats.get(index) > timeoutNanos;
+	}
+
+	/**
+	 * Adds a member which missed the heartbeats of the Coordinator to the
+	 * Election of the group. The Election is decided once all the running
+	 * members have joined, and only the member which decided it gets the
+	 * new Coordinator.
+	 *
+	 * @param member the member which joins the Election
+	 * @return the new Coordinator, or null
+	 */
+	public Node elect(Node member) {
+		Election.State state = mElection.join(member);
+		// the Coordinator is still running, or the Election is decided
+		if( state.getPhase() != Election.Phase.ELECTING ) return null;
+
+		Node newCoordinator = mElection.endElection(state, getRunningMembers());
+		if( newCoordinator == null ) return null;
+
+		mCoordinatorId = newCoordinator.getId();
+		Metrics metrics = Metrics.getInstance();
+		metrics.getGroupElections().increment();
+		metrics.getGroupElectionDuration().record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - state.getStartNanos()));
+		return newCoordinator;
+	}
+
+	/**
+	 * Removes a member which left the System from the running Election of the group
+	 * @param member the member which left the System
+	 */
+	public void leave(Node member) {
+		mElection.leave(member);
+	}
+
+	/**
+	 * Returns the number of running members of the group
+	 */
+	private int getRunningMembers() {
+		int running = 0;
+		for(int memberId : mMemberIds){
+			Node node = Resource.getInstance().getNode(memberId);
+			if( node != null && !node.isDownFlag() ) running++;
+		}
+		return running;
+	}
+
+	@Override
+	public String toString() {
+		return "group " + mId + " " + Arrays.toString(mMemberIds) + " coordinator " + mCoordinatorId + " term " + getTerm();
+	}
+}
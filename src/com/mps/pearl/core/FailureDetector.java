@@ -0,0 +1,49 @@
+package com.mps.pearl.core;
+
+/**
+ * This interface represents a failure detector of a Node. The Node reports
+ * every heartbeat it receives from an observed Node, and asks the detector
+ * whether the observed Node is still to be considered as available.
+ *
+ * Times are read from the monotonic clock, System.nanoTime().
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public interface FailureDetector {
+
+	/**
+	 * Records a heartbeat received from an observed Node
+	 *
+	 * @param nodeId the Id of the observed Node
+	 * @param nowNanos the arrival time of the heartbeat
+	 */
+	public void heartbeat(int nodeId, long nowNanos);
+
+	/**
+	 * Returns the suspicion level of an observed Node, higher is more suspected
+	 *
+	 * @param nodeId the Id of the observed Node
+	 * @param nowNanos the current time
+	 * @return the suspicion level, 0 if the Node was never heard of
+	 */
+	public double suspicion(int nodeId, long nowNanos);
+
+	/**
+	 * Returns the availability of an observed Node
+	 *
+	 * @param nodeId the Id of the observed Node
+	 * @param nowNanos the current time
+	 * @return True, if the Node is considered as available, False, if the Node is suspected
+	 */
+	public boolean isAvailable(int nodeId, long nowNanos);
+
+	/**
+	 * Forgets the heartbeats of an observed Node
+	 *
+	 * @param nodeId the Id of the observed Node
+	 */
+	public void remove(int nodeId);
+}
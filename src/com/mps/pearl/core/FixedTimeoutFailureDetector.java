@@ -0,0 +1,58 @@
+package com.mps.pearl.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class implements a failure detector with a fixed timeout. A Node
+ * is suspected once no heartbeat was received from it for longer than the
+ * timeout. The suspicion level is the time since the last heartbeat in
+ * units of the timeout.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class FixedTimeoutFailureDetector implements FailureDetector {
+
+	/**
+	 * Time in nanoseconds without heartbeat after which a Node is suspected
+	 */
+	private final long mTimeoutNanos;
+
+	/**
+	 * A ConcurrentHashMap<Integer, Long> with Id of the observed Node as Key
+	 * and arrival time of its last heartbeat as value
+	 */
+	private final ConcurrentHashMap<Integer, Long> mLastArrivals = new ConcurrentHashMap<Integer, Long>();
+
+	/**
+	 * Creates a FixedTimeoutFailureDetector object.
+	 * @param timeoutMillis time without heartbeat after which a Node is suspected
+	 */
+	public FixedTimeoutFailureDetector(long timeoutMillis) {
+		this.mTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, timeoutMillis));
+	}
+
+	@Override
+	public void heartbeat(int nodeId, long nowNanos) {
+		mLastArrivals.put(nodeId, nowNanos);
+	}
+
+	@Override
+	public double suspicion(int nodeId, long nowNanos) {
+		Long lastArrival = mLastArrivals.get(nodeId);
+		return lastArrival == null ? 0 : (double) (nowNanos - lastArrival) / mTimeoutNanos;
+	}
+
+	@Override
+	public boolean isAvailable(int nodeId, long nowNanos) {
+		return suspicion(nodeId, nowNanos) <= 1;
+	}
+
+	@Override
+	public void remove(int nodeId) {
+		mLastArrivals.remove(nodeId);
+	}
+}
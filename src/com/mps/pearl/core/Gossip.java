@@ -0,0 +1,674 @@
+package com.mps.pearl.core;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.mps.pearl.metrics.Metrics;
+import com.mps.pearl.net.GossipEndpoint;
+import com.mps.pearl.net.Message;
+import com.mps.pearl.net.MessageCodec;
+import com.mps.pearl.util.Constant;
+import com.mps.pearl.util.Logger;
+import com.mps.pearl.util.Settings;
+import com.mps.pearl.util.TimingWheel;
+
+/**
+ * This class implements the gossip membership of a Node, in the way of
+ * SWIM. Each probe period the Node probes one other Node, in a random
+ * round robin order, so every Node is probed within two rounds at most.
+ * A Node which does not answer in time is probed again through a few
+ * other Nodes, and is suspected if none of them gets an answer. A
+ * suspected Node which does not refute the suspicion is declared dead.
+ *
+ * The changes of the states of the Nodes are piggybacked on the probes
+ * and their answers, each one a few times log(Nodes), so a failure
+ * reaches every Node in O(log n) periods, without a message of its own.
+ * The cost of a Node is a constant number of messages each period,
+ * whatever the number of Nodes, and the Coordinator is probed as any
+ * other Node.
+ *
+ * The view of the Node holds only the Nodes whose state differs from
+ * alive in incarnation 0, so a large System costs no memory until its
+ * Nodes fail.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class Gossip implements GossipEndpoint.Receiver {
+
+	/**
+	 * A Logger tag
+	 */
+	private final String TAG = Gossip.class.getSimpleName();
+
+	/**
+	 * State of a Node which answers
+	 */
+	public static final byte ALIVE = 0;
+
+	/**
+	 * State of a Node which did not answer a probe
+	 */
+	public static final byte SUSPECT = 1;
+
+	/**
+	 * State of a Node which did not refute its suspicion in time
+	 */
+	public static final byte DEAD = 2;
+
+	/**
+	 * Id of no Node
+	 */
+	private static final int NONE = -1;
+
+	/**
+	 * Size in bytes of an update in a gossip message : id, state and incarnation
+	 */
+	private static final int UPDATE_SIZE = 9;
+
+	/**
+	 * The Nodes of the System, shared by the Gossips of this process
+	 */
+	private static volatile Peers sPeers;
+
+	/**
+	 * The Node which gossips
+	 */
+	private final Node mNode;
+
+	/**
+	 * The probe period in milliseconds
+	 */
+	private final long mPeriodMillis;
+
+	/**
+	 * Number of Nodes asked to probe a Node which did not answer
+	 */
+	private final int mIndirectProbes;
+
+	/**
+	 * Multiplier of the time a Node stays suspected
+	 */
+	private final int mSuspectMultiplier;
+
+	/**
+	 * Multiplier of the number of times an update is gossiped
+	 */
+	private final int mRetransmitMultiplier;
+
+	/**
+	 * The states of the Nodes which are not alive in incarnation 0, by Id
+	 */
+	private final ConcurrentHashMap<Integer, State> mView = new ConcurrentHashMap<Integer, State>();
+
+	/**
+	 * The updates to gossip, guarded by the list
+	 */
+	private final List<Update> mUpdates = new ArrayList<Update>();
+
+	/**
+	 * The probes sent on behalf of other Nodes, by sequence number
+	 */
+	private final ConcurrentHashMap<Long, Relay> mRelays = new ConcurrentHashMap<Long, Relay>();
+
+	/**
+	 * Sequence number of the last sent probe
+	 */
+	private final AtomicLong mSequence = new AtomicLong();
+
+	/**
+	 * Incarnation of the Node, raised to refute a suspicion
+	 */
+	private volatile int mIncarnation;
+
+	/**
+	 * The gossip endpoint of the Node
+	 */
+	private volatile GossipEndpoint mEndpoint;
+
+	/**
+	 * The timer of the probe periods
+	 */
+	private volatile TimingWheel.Timeout mTimer;
+
+	/**
+	 * Id of the Node probed in the current period
+	 */
+	private volatile int mProbeTarget = NONE;
+
+	/**
+	 * Sequence number of the probe of the current period
+	 */
+	private volatile long mProbeSequence;
+
+	/**
+	 * Boolean to indicate the probe of the current period was answered
+	 */
+	private volatile boolean isAcked;
+
+	/**
+	 * Number of Nodes of the random round robin order of the probes, the
+	 * Node probed at a step is (multiplier x step + offset) mod size
+	 */
+	private int mOrderSize;
+
+	/**
+	 * Multiplier of the random round robin order, prime to its size
+	 */
+	private int mOrderMultiplier;
+
+	/**
+	 * Offset of the random round robin order
+	 */
+	private int mOrderOffset;
+
+	/**
+	 * Next step of the random round robin order
+	 */
+	private int mOrderStep;
+
+	/**
+	 * Creates a Gossip object.
+	 * @param node the Node which gossips
+	 */
+	public Gossip(Node node) {
+		Settings settings = Settings.getInstance();
+		this.mNode = node;
+		this.mPeriodMillis = settings.getLong(Constant.KEY_PING_INTERVAL_MILLIS, Constant.PING_INTERVAL_MILLIS);
+		this.mIndirectProbes = settings.getInt(Constant.KEY_GOSSIP_INDIRECT_PROBES, Constant.GOSSIP_INDIRECT_PROBES);
+		this.mSuspectMultiplier = settings.getInt(Constant.KEY_GOSSIP_SUSPECT_MULTIPLIER, Constant.GOSSIP_SUSPECT_MULTIPLIER);
+		this.mRetransmitMultiplier = settings.getInt(Constant.KEY_GOSSIP_RETRANSMIT_MULTIPLIER,
+				Constant.GOSSIP_RETRANSMIT_MULTIPLIER);
+	}
+
+	/**
+	 * Binds the gossip endpoint of the Node and starts the probe periods
+	 * @throws IOException if the endpoint can not be bound
+	 */
+	public synchronized void start() throws IOException {
+		if( mEndpoint != null ) return;
+		mEndpoint = mNode.openEndpoint(this, Message.TYPE_GOSSIP_PING, Message.TYPE_GOSSIP_ACK, Message.TYPE_GOSSIP_PING_REQ);
+		mTimer = TimingWheel.getInstance().scheduleAtFixedRate(new ProbeTask(), mPeriodMillis, mPeriodMillis,
+				Settings.getInstance().getDouble(Constant.KEY_PING_JITTER, Constant.PING_JITTER));
+	}
+
+	/**
+	 * Stops the probe periods and closes the gossip endpoint, the Node no
+	 * longer answers the probes of the other Nodes
+	 */
+	public synchronized void stop() {
+		if( mTimer != null ) mTimer.cancel();
+		if( mEndpoint != null ) mNode.closeEndpoint(this);
+		mTimer = null;
+		mEndpoint = null;
+	}
+
+	/**
+	 * Returns the state of a Node in the view of this Node
+	 * @param id the Id of the Node
+	 * @return ALIVE, SUSPECT or DEAD
+	 */
+	public byte getState(int id) {
+		State state = mView.get(id);
+		return state == null ? ALIVE : state.state;
+	}
+
+	/**
+	 * Returns True, if a Node is declared dead in the view of this Node
+	 * @param id the Id of the Node
+	 * @return True, if the Node is dead, otherwise False
+	 */
+	public boolean isDead(int id) {
+		return getState(id) == DEAD;
+	}
+
+	/**
+	 * This class implements the Task of a probe period
+	 */
+	class ProbeTask implements Runnable {
+
+		/**
+		 * This method ends the probe of the previous period and probes the next Node
+		 */
+		@Override
+		public void run() {
+			probe();
+		}
+	}
+
+	/**
+	 * Ends the probe of the previous period, declares dead the Nodes
+	 * suspected for too long, and probes the next Node
+	 */
+	private void probe() {
+		Peers peers = getPeers(mPeriodMillis);
+		long now = System.nanoTime();
+
+		int target = mProbeTarget;
+		if( target != NONE && !isAcked ){
+			State state = mView.get(target);
+			suspect(target, state == null ? 0 : state.incarnation);
+		}
+
+		long suspectNanos = TimeUnit.MILLISECONDS.toNanos(mPeriodMillis) * mSuspectMultiplier * scale(peers.nodes.length);
+		for(Map.Entry<Integer, State> entry : mView.entrySet()){
+			State state = entry.getValue();
+			if( state.state == SUSPECT && now - state.sinceNanos > suspectNanos ){
+				apply(entry.getKey(), DEAD, state.incarnation);
+			}
+		}
+
+		// forget the relayed probes of the previous periods
+		long relayNanos = TimeUnit.MILLISECONDS.toNanos(mPeriodMillis);
+		for(Iterator<Relay> relays = mRelays.values().iterator() ; relays.hasNext() ; ){
+			if( now - relays.next().sentNanos > relayNanos ) relays.remove();
+		}
+
+		final Node next = nextTarget(peers);
+		if( next == null ){
+			mProbeTarget = NONE;
+			return;
+		}
+
+		final long sequence = mSequence.incrementAndGet();
+		mProbeSequence = sequence;
+		isAcked = false;
+		mProbeTarget = next.getId();
+		Metrics.getInstance().getGossipProbes().increment();
+		send(next, Message.TYPE_GOSSIP_PING, sequence, NONE);
+
+		// probe through other Nodes if the target does not answer in a third of the period
+		TimingWheel.getInstance().schedule(new Runnable() {
+			@Override
+			public void run() {
+				if( !isAcked && mProbeSequence == sequence ) probeIndirectly(next, sequence);
+			}
+		}, Math.max(1, mPeriodMillis / 3));
+	}
+
+	/**
+	 * Asks a few random Nodes to probe a Node which did not answer
+	 */
+	private void probeIndirectly(Node target, long sequence) {
+		Node[] nodes = getPeers(mPeriodMillis).nodes;
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int asked = 0;
+		for(int attempt = 0 ; attempt < 2 * mIndirectProbes && asked < mIndirectProbes && nodes.length > 2 ; attempt++){
+			Node node = nodes[random.nextInt(nodes.length)];
+			if( node.getId() == target.getId() || node.getId() == mNode.getId() || getState(node.getId()) != ALIVE ) continue;
+			send(node, Message.TYPE_GOSSIP_PING_REQ, sequence, target.getId());
+			asked++;
+		}
+		Metrics.getInstance().getGossipIndirectProbes().add(asked);
+	}
+
+	/**
+	 * Returns the next Node to probe, in a random round robin order
+	 */
+	private Node nextTarget(Peers peers) {
+		Node[] nodes = peers.nodes;
+		for(int attempt = 0 ; attempt < nodes.length ; attempt++){
+			if( mOrderStep >= mOrderSize || mOrderSize != nodes.length ) shuffle(nodes.length);
+			Node node = nodes[(int) (((long) mOrderMultiplier * mOrderStep++ + mOrderOffset) % mOrderSize)];
+			if( node.getId() != mNode.getId() && !isDead(node.getId()) ) return node;
+		}
+		return null;
+	}
+
+	/**
+	 * Draws a new random round robin order of a number of Nodes
+	 */
+	private void shuffle(int size) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		mOrderSize = Math.max(1, size);
+		mOrderStep = 0;
+		mOrderOffset = random.nextInt(mOrderSize);
+		// a multiplier prime to the size visits every Node once
+		do {
+			mOrderMultiplier = 1 + random.nextInt(mOrderSize);
+		} while( gcd(mOrderMultiplier, mOrderSize) != 1 );
+	}
+
+	/**
+	 * Receives a gossip message
+	 */
+	@Override
+	public void receive(ByteBuffer datagram) {
+		Message message = new Message();
+		try {
+			if( !MessageCodec.decode(datagram, message) ) return;
+		} catch (ProtocolException e) {
+			Logger.d(TAG, "receive() : {}", e.getMessage());
+			return;
+		}
+
+		int subject = datagram.getInt();
+		int updates = (message.getPayloadLength() - 4) / UPDATE_SIZE;
+		for(int update = 0 ; update < updates ; update++){
+			apply(datagram.getInt(), datagram.get(), datagram.getInt());
+		}
+
+		int sender = message.getSenderId();
+		long sequence = message.getSequence();
+		switch( message.getType() ){
+		case Message.TYPE_GOSSIP_PING:
+			Node node = findNode(sender);
+			if( node != null ) send(node, Message.TYPE_GOSSIP_ACK, sequence, subject);
+			break;
+		case Message.TYPE_GOSSIP_ACK:
+			if( sequence == mProbeSequence ){
+				isAcked = true;
+			}else{
+				// the answer to a probe sent on behalf of another Node
+				Relay relay = mRelays.remove(sequence);
+				Node requester = relay == null ? null : findNode(relay.requesterId);
+				if( requester != null ) send(requester, Message.TYPE_GOSSIP_ACK, relay.sequence, sender);
+			}
+			break;
+		case Message.TYPE_GOSSIP_PING_REQ:
+			Node target = findNode(subject);
+			if( target == null ) break;
+			long relayed = mSequence.incrementAndGet();
+			mRelays.put(relayed, new Relay(sender, sequence, System.nanoTime()));
+			send(target, Message.TYPE_GOSSIP_PING, relayed, NONE);
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Suspects a Node which did not answer its probe
+	 */
+	private void suspect(int id, int incarnation) {
+		Logger.d(TAG, "suspect() : {} suspects {}", mNode.getId(), id);
+		apply(id, SUSPECT, incarnation);
+	}
+
+	/**
+	 * Applies an update of the state of a Node to the view, and gossips it
+	 * if it is news : a higher incarnation overrides a lower one, a
+	 * suspicion overrides the alive state of the same incarnation, and a
+	 * dead Node stays dead. A suspicion of this Node is refuted with a
+	 * higher incarnation.
+	 */
+	private void apply(int id, byte state, int incarnation) {
+		if( id == mNode.getId() ){
+			if( state != ALIVE && incarnation >= mIncarnation ){
+				synchronized (mUpdates) {
+					if( incarnation >= mIncarnation ) mIncarnation = incarnation + 1;
+				}
+				gossip(id, ALIVE, mIncarnation);
+			}
+			return;
+		}
+
+		while( true ){
+			State current = mView.get(id);
+			byte currentState = current == null ? ALIVE : current.state;
+			int currentIncarnation = current == null ? 0 : current.incarnation;
+
+			boolean news;
+			switch( state ){
+			case ALIVE:
+				news = currentState != DEAD && incarnation > currentIncarnation;
+				break;
+			case SUSPECT:
+				news = currentState != DEAD && ( incarnation > currentIncarnation
+						|| ( incarnation == currentIncarnation && currentState == ALIVE ) );
+				break;
+			default:
+				news = currentState != DEAD;
+				break;
+			}
+			if( !news ) return;
+
+			State next = new State(state, incarnation, System.nanoTime());
+			boolean replaced = current == null ? mView.putIfAbsent(id, next) == null : mView.replace(id, current, next);
+			if( replaced ){
+				if( state == DEAD ) Logger.d(TAG, "apply() : {} declares {} dead", mNode.getId(), id);
+				gossip(id, state, incarnation);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Queues an update to piggyback on the next messages, in place of the
+	 * older update of the same Node
+	 */
+	private void gossip(int id, byte state, int incarnation) {
+		synchronized (mUpdates) {
+			for(Iterator<Update> updates = mUpdates.iterator() ; updates.hasNext() ; ){
+				if( updates.next().id == id ) updates.remove();
+			}
+			mUpdates.add(new Update(id, state, incarnation));
+		}
+	}
+
+	/**
+	 * Sends a gossip message, with the updates gossiped the fewest times
+	 */
+	private void send(Node node, byte type, long sequence, int subject) {
+		GossipEndpoint endpoint = mEndpoint;
+		if( endpoint == null ) return;
+
+		int maxTransmissions = mRetransmitMultiplier * scale(getPeers(mPeriodMillis).nodes.length);
+		ByteBuffer datagram;
+		synchronized (mUpdates) {
+			int count = Math.min(mUpdates.size(), Constant.GOSSIP_MAX_UPDATES);
+			datagram = ByteBuffer.allocate(MessageCodec.HEADER_SIZE + 4 + count * UPDATE_SIZE);
+			Message message = new Message().set(type, mNode.getId(), mIncarnation, sequence);
+			message.setPayloadLength(4 + count * UPDATE_SIZE);
+			MessageCodec.encode(message, datagram);
+			datagram.putInt(subject);
+
+			// the updates are kept in the order of their transmissions
+			for(int indx = 0 ; indx < count ; indx++){
+				Update update = mUpdates.get(indx);
+				datagram.putInt(update.id).put(update.state).putInt(update.incarnation);
+				update.transmissions++;
+			}
+			for(Iterator<Update> updates = mUpdates.iterator() ; updates.hasNext() ; ){
+				if( updates.next().transmissions >= maxTransmissions ) updates.remove();
+			}
+			sortByTransmissions(mUpdates);
+		}
+		datagram.flip();
+		endpoint.send(node.getIPAddress(), Integer.parseInt(node.getPort()), datagram);
+	}
+
+	/**
+	 * Sorts the updates from the fewest transmissions, the list is nearly sorted
+	 */
+	private static void sortByTransmissions(List<Update> updates) {
+		for(int indx = 1 ; indx < updates.size() ; indx++){
+			Update update = updates.get(indx);
+			int position = indx;
+			while( position > 0 && updates.get(position - 1).transmissions > update.transmissions ){
+				updates.set(position, updates.get(position - 1));
+				position--;
+			}
+			updates.set(position, update);
+		}
+	}
+
+	/**
+	 * Returns the Node of an Id, running or terminated
+	 */
+	private static Node findNode(int id) {
+		Resource resource = Resource.getInstance();
+		Node node = resource.getNode(id);
+		return node != null ? node : resource.getTerminatedNode(id);
+	}
+
+	/**
+	 * Returns the Nodes of the System, rebuilt at most once a period. The
+	 * terminated Nodes are kept, the Nodes learn their failure by gossip.
+	 */
+	private static Peers getPeers(long periodMillis) {
+		Peers peers = sPeers;
+		long now = System.nanoTime();
+		if( peers != null && now - peers.builtNanos < TimeUnit.MILLISECONDS.toNanos(periodMillis) ) return peers;
+
+		Resource resource = Resource.getInstance();
+		Collection<Node> running = resource.getNodes();
+		Collection<Node> terminated = resource.getTerminatedNodes();
+		List<Node> nodes = new ArrayList<Node>(running.size() + terminated.size());
+		nodes.addAll(running);
+		nodes.addAll(terminated);
+		peers = new Peers(nodes.toArray(new Node[nodes.size()]), now);
+		sPeers = peers;
+		return peers;
+	}
+
+	/**
+	 * Returns the scale of the timeouts and retransmissions, log10 of the number of Nodes
+	 */
+	private static int scale(int nodes) {
+		return Math.max(1, (int) Math.ceil(Math.log10(nodes + 1)));
+	}
+
+	/**
+	 * Returns the greatest common divisor of two numbers
+	 */
+	private static int gcd(int a, int b) {
+		while( b != 0 ){
+			int r = a % b;
+			a = b;
+			b = r;
+		}
+		return a;
+	}
+
+	/**
+	 * This class represents the state of a Node in the view
+	 */
+	private static final class State {
+
+		/**
+		 * ALIVE, SUSPECT or DEAD
+		 */
+		final byte state;
+
+		/**
+		 * Incarnation of the Node
+		 */
+		final int incarnation;
+
+		/**
+		 * Time of the change of the state
+		 */
+		final long sinceNanos;
+
+		/**
+		 * Creates a State object.
+		 */
+		State(byte state, int incarnation, long sinceNanos) {
+			this.state = state;
+			this.incarnation = incarnation;
+			this.sinceNanos = sinceNanos;
+		}
+	}
+
+	/**
+	 * This class represents an update to gossip
+	 */
+	private static final class Update {
+
+		/**
+		 * Id of the Node
+		 */
+		final int id;
+
+		/**
+		 * ALIVE, SUSPECT or DEAD
+		 */
+		final byte state;
+
+		/**
+		 * Incarnation of the Node
+		 */
+		final int incarnation;
+
+		/**
+		 * Number of messages the update was piggybacked on
+		 */
+		int transmissions;
+
+		/**
+		 * Creates an Update object.
+		 */
+		Update(int id, byte state, int incarnation) {
+			this.id = id;
+			this.state = state;
+			this.incarnation = incarnation;
+		}
+	}
+
+	/**
+	 * This class represents a probe sent on behalf of another Node
+	 */
+	private static final class Relay {
+
+		/**
+		 * Id of the Node which asked for the probe
+		 */
+		final int requesterId;
+
+		/**
+		 * Sequence number of the probe of the Node which asked
+		 */
+		final long sequence;
+
+		/**
+		 * Time the probe was sent
+		 */
+		final long sentNanos;
+
+		/**
+		 * Creates a Relay object.
+		 */
+		Relay(int requesterId, long sequence, long sentNanos) {
+			this.requesterId = requesterId;
+			this.sequence = sequence;
+			this.sentNanos = sentNanos;
+		}
+	}
+
+	/**
+	 * This class holds a snapshot of the Nodes of the System
+	 */
+	private static final class Peers {
+
+		/**
+		 * The running and terminated Nodes
+		 */
+		final Node[] nodes;
+
+		/**
+		 * Time the snapshot was built
+		 */
+		final long builtNanos;
+
+		/**
+		 * Creates a Peers object.
+		 */
+		Peers(Node[] nodes, long builtNanos) {
+			this.nodes = nodes;
+			this.builtNanos = builtNanos;
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package com.mps.pearl.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.mps.pearl.util.Constant;
+import com.mps.pearl.util.Logger;
+import com.mps.pearl.util.Settings;
+
+/**
+ * GroupManager class holds the election groups of the System, and the
+ * groups each Node is a member of. The groups configured in the Settings
+ * are created once, when the first Node starts : group g has the
+ * election.group.size Nodes which follow the Node g in the order of the
+ * Ids, so the groups spread evenly over the Nodes.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class GroupManager {
+
+	/**
+	 * A Logger tag
+	 */
+	private final String TAG = GroupManager.class.getSimpleName();
+
+	/**
+	 * An instance of GroupManager class
+	 */
+	private static final GroupManager INSTANCE = new GroupManager();
+
+	/**
+	 * The election groups, by Id
+	 */
+	private final ConcurrentHashMap<Integer, ElectionGroup> mGroups = new ConcurrentHashMap<Integer, ElectionGroup>();
+
+	/**
+	 * The election groups of each Node, by Id of the Node
+	 */
+	private final ConcurrentHashMap<Integer, List<ElectionGroup>> mMemberGroups = new ConcurrentHashMap<Integer, List<ElectionGroup>>();
+
+	/**
+	 * Boolean to indicate the configured groups are created
+	 */
+	private boolean isConfigured;
+
+	/**
+	 * Creates a GroupManager object
+	 */
+	private GroupManager() {
+		// private to hold single instance
+	}
+
+	/**
+	 * Returns the unique GroupManager object associated with this System, if any.
+	 * @return instance the GroupManager instance
+	 */
+	public static GroupManager getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Creates the election groups configured in the Settings, once
+	 */
+	public synchronized void createConfiguredGroups() {
+		if( isConfigured ) return;
+		isConfigured = true;
+
+		Settings settings = Settings.getInstance();
+		int groups = settings.getInt(Constant.KEY_ELECTION_GROUPS, Constant.ELECTION_GROUPS);
+		int groupSize = settings.getInt(Constant.KEY_ELECTION_GROUP_SIZE, Constant.ELECTION_GROUP_SIZE);
+		if( groups <= 0 ) return;
+
+		Collection<Node> nodes = Resource.getInstance().getNodes();
+		int[] ids = new int[nodes.size()];
+		int size = 0;
+		for(Node node : nodes){
+			if( size < ids.length ) ids[size++] = node.getId();
+		}
+		ids = Arrays.copyOf(ids, size);
+		Arrays.sort(ids);
+		if( ids.length == 0 ) return;
+
+		int members = Math.max(1, Math.min(groupSize, ids.length));
+		for(int groupId = 0 ; groupId < groups ; groupId++){
+			int[] memberIds = new int[members];
+			for(int member = 0 ; member < members ; member++){
+				memberIds[member] = ids[(groupId + member) % ids.length];
+			}
+			createGroup(groupId, memberIds);
+		}
+		Logger.i(TAG, "createConfiguredGroups() : {} groups of {} Nodes", groups, members);
+	}
+
+	/**
+	 * Creates an election group, and declares its highest running member the Coordinator
+	 *
+	 * @param groupId the Id of the group
+	 * @param memberIds the Ids of the members of the group
+	 * @return the new ElectionGroup
+	 * @throws IllegalArgumentException if a group with the Id exists
+	 */
+	public ElectionGroup createGroup(int groupId, int[] memberIds) {
+		ElectionGroup group = new ElectionGroup(groupId, memberIds);
+		if( mGroups.putIfAbsent(groupId, group) != null ){
+			throw new IllegalArgumentException("Election group " + groupId + " exists");
+		}
+		for(int memberId : group.getMemberIds()){
+			List<ElectionGroup> groups = mMemberGroups.get(memberId);
+			if( groups == null ){
+				groups = new CopyOnWriteArrayList<ElectionGroup>();
+				List<ElectionGroup> registered = mMemberGroups.putIfAbsent(memberId, groups);
+				if( registered != null ) groups = registered;
+			}
+			groups.add(group);
+		}
+		group.declareCoordinator();
+		return group;
+	}
+
+	/**
+	 * Returns an election group
+	 * @param groupId the Id of the group
+	 * @return the ElectionGroup, or null
+	 */
+	public ElectionGroup getGroup(int groupId) {
+		return mGroups.get(groupId);
+	}
+
+	/**
+	 * Returns all the election groups
+	 * @return the Collection of the groups
+	 */
+	public Collection<ElectionGroup> getGroups() {
+		return Collections.unmodifiableCollection(mGroups.values());
+	}
+
+	/**
+	 * Returns the election groups a Node is a member of
+	 * @param nodeId the Id of the Node
+	 * @return the List of the groups, empty if none
+	 */
+	public List<ElectionGroup> getGroups(int nodeId) {
+		List<ElectionGroup> groups = mMemberGroups.get(nodeId);
+		return groups == null ? Collections.<ElectionGroup>emptyList() : groups;
+	}
+
+	/**
+	 * Returns the election groups a Node coordinates
+	 * @param nodeId the Id of the Node
+	 * @return the List of the groups, empty if none
+	 */
+	public List<ElectionGroup> getCoordinatedGroups(int nodeId) {
+		List<ElectionGroup> coordinated = new ArrayList<ElectionGroup>();
+		for(ElectionGroup group : getGroups(nodeId)){
+			if( group.getCoordinatorId() == nodeId ) coordinated.add(group);
+		}
+		return coordinated;
+	}
+}
@@ -0,0 +1,220 @@
+package com.mps.pearl.core;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.mps.pearl.metrics.Metrics;
+import com.mps.pearl.net.GossipEndpoint;
+import com.mps.pearl.net.Message;
+import com.mps.pearl.net.MessageCodec;
+import com.mps.pearl.net.UdpGossipEndpoint;
+import com.mps.pearl.util.Constant;
+import com.mps.pearl.util.Logger;
+import com.mps.pearl.util.Settings;
+import com.mps.pearl.util.TimingWheel;
+
+/**
+ * This class multiplexes the election groups of a Node over the datagram
+ * endpoint of the Node and a single timer. Each period the Node sends to
+ * each member of the groups it coordinates one frame, which carries the
+ * heartbeats of all these groups, and checks the Coordinators of the
+ * groups it follows. A Node thus holds one endpoint and one timer, and
+ * sends one frame to a peer each period, whatever the number of groups :
+ * 1000 groups on 50 Nodes cost 50 endpoints and 50 timers.
+ *
+ * A frame holds, after its header, the Id and the term of each group :
+ *
+ * group id (int) | term (long) | group id (int) | term (long) | ...
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class GroupMux implements GossipEndpoint.Receiver {
+
+	/**
+	 * A Logger tag
+	 */
+	private final String TAG = GroupMux.class.getSimpleName();
+
+	/**
+	 * Size in bytes of the heartbeat of a group in a frame : id and term
+	 */
+	private static final int ENTRY_SIZE = 12;
+
+	/**
+	 * Max number of group heartbeats in a frame, a frame fits a datagram
+	 */
+	private static final int MAX_ENTRIES = (UdpGossipEndpoint.DATAGRAM_SIZE - MessageCodec.HEADER_SIZE) / ENTRY_SIZE;
+
+	/**
+	 * The Node which owns the multiplexer
+	 */
+	private final Node mNode;
+
+	/**
+	 * The heartbeat period in milliseconds
+	 */
+	private final long mPeriodMillis;
+
+	/**
+	 * Time in nanoseconds without heartbeat after which a Coordinator of a group is missed
+	 */
+	private final long mTimeoutNanos;
+
+	/**
+	 * The datagram endpoint of the Node
+	 */
+	private volatile GossipEndpoint mEndpoint;
+
+	/**
+	 * The timer of the periods
+	 */
+	private volatile TimingWheel.Timeout mTimer;
+
+	/**
+	 * Sequence number of the last frame
+	 */
+	private long mSequence;
+
+	/**
+	 * Creates a GroupMux object.
+	 * @param node the Node which owns the multiplexer
+	 */
+	public GroupMux(Node node) {
+		this.mNode = node;
+		this.mPeriodMillis = Settings.getInstance().getLong(Constant.KEY_PING_INTERVAL_MILLIS, Constant.PING_INTERVAL_MILLIS);
+		this.mTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Constant.GROUP_TIMEOUT_PING_INTERVALS * mPeriodMillis);
+	}
+
+	/**
+	 * Binds the datagram endpoint of the Node and starts the periods
+	 * @throws IOException if the endpoint can not be bound
+	 */
+	public synchronized void start() throws IOException {
+		if( mEndpoint != null ) return;
+		mEndpoint = mNode.openEndpoint(this, Message.TYPE_GROUP_HEARTBEAT);
+		mTimer = TimingWheel.getInstance().scheduleAtFixedRate(new PeriodTask(), 0, mPeriodMillis,
+				Settings.getInstance().getDouble(Constant.KEY_PING_JITTER, Constant.PING_JITTER));
+	}
+
+	/**
+	 * Stops the periods, and leaves the running Elections of the groups of the Node
+	 */
+	public synchronized void stop() {
+		if( mTimer != null ) mTimer.cancel();
+		if( mEndpoint != null ) mNode.closeEndpoint(this);
+		mTimer = null;
+		mEndpoint = null;
+
+		for(ElectionGroup group : GroupManager.getInstance().getGroups(mNode.getId())){
+			group.leave(mNode);
+		}
+	}
+
+	/**
+	 * This class implements the Task of a period
+	 */
+	class PeriodTask implements Runnable {
+
+		/**
+		 * This method sends the heartbeats of the period, and checks the Coordinators
+		 */
+		@Override
+		public void run() {
+			period();
+		}
+	}
+
+	/**
+	 * Sends the heartbeats of the groups the Node coordinates, one frame
+	 * for each peer, and joins the Election of the groups whose Coordinator
+	 * was missed
+	 */
+	private void period() {
+		if( mNode.isDownFlag() ) return;
+		int nodeId = mNode.getId();
+		long now = System.nanoTime();
+
+		// the groups coordinated by the Node, by member
+		Map<Integer, List<ElectionGroup>> frames = new HashMap<Integer, List<ElectionGroup>>();
+		for(ElectionGroup group : GroupManager.getInstance().getGroups(nodeId)){
+			if( group.getCoordinatorId() != nodeId ){
+				if( group.isCoordinatorMissed(nodeId, mTimeoutNanos, now) ){
+					Node newCoordinator = group.elect(mNode);
+					if( newCoordinator != null ) Logger.d(TAG, "period() : {} elected {}", group, newCoordinator);
+				}
+				continue;
+			}
+			for(int indx = 0 ; indx < group.size() ; indx++){
+				int memberId = group.getMemberId(indx);
+				if( memberId == nodeId ) continue;
+				List<ElectionGroup> frame = frames.get(memberId);
+				if( frame == null ){
+					frame = new ArrayList<ElectionGroup>();
+					frames.put(memberId, frame);
+				}
+				frame.add(group);
+			}
+		}
+
+		for(Map.Entry<Integer, List<ElectionGroup>> frame : frames.entrySet()){
+			Node peer = Resource.getInstance().getNode(frame.getKey());
+			if( peer != null ) send(peer, frame.getValue());
+		}
+	}
+
+	/**
+	 * Sends the heartbeats of some groups to a peer, in as few frames as they fit
+	 */
+	private void send(Node peer, List<ElectionGroup> groups) {
+		GossipEndpoint endpoint = mEndpoint;
+		if( endpoint == null ) return;
+
+		for(int first = 0 ; first < groups.size() ; first += MAX_ENTRIES){
+			int count = Math.min(MAX_ENTRIES, groups.size() - first);
+			ByteBuffer frame = ByteBuffer.allocate(MessageCodec.HEADER_SIZE + count * ENTRY_SIZE);
+			Message message = new Message().set(Message.TYPE_GROUP_HEARTBEAT, mNode.getId(), 0, ++mSequence);
+			message.setPayloadLength(count * ENTRY_SIZE);
+			MessageCodec.encode(message, frame);
+			for(int indx = first ; indx < first + count ; indx++){
+				ElectionGroup group = groups.get(indx);
+				frame.putInt(group.getId()).putLong(group.getTerm());
+			}
+			frame.flip();
+			endpoint.send(peer.getIPAddress(), Integer.parseInt(peer.getPort()), frame);
+			Metrics.getInstance().getGroupFrames().increment();
+		}
+	}
+
+	/**
+	 * Receives a frame of group heartbeats
+	 */
+	@Override
+	public void receive(ByteBuffer datagram) {
+		Message message = new Message();
+		try {
+			if( !MessageCodec.decode(datagram, message) ) return;
+		} catch (ProtocolException e) {
+			Logger.d(TAG, "receive() : {}", e.getMessage());
+			return;
+		}
+		if( message.getType() != Message.TYPE_GROUP_HEARTBEAT ) return;
+
+		long now = System.nanoTime();
+		GroupManager groups = GroupManager.getInstance();
+		int entries = message.getPayloadLength() / ENTRY_SIZE;
+		for(int entry = 0 ; entry < entries ; entry++){
+			ElectionGroup group = groups.getGroup(datagram.getInt());
+			long term = datagram.getLong();
+			if( group != null ) group.heartbeat(mNode.getId(), message.getSenderId(), term, now);
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package com.mps.pearl.core;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+import com.mps.pearl.metrics.Metrics;
+import com.mps.pearl.net.GossipEndpoint;
+import com.mps.pearl.net.Message;
+import com.mps.pearl.net.MessageCodec;
+import com.mps.pearl.util.Constant;
+import com.mps.pearl.util.Logger;
+import com.mps.pearl.util.Settings;
+import com.mps.pearl.util.TimingWheel;
+
+/**
+ * This class implements the push heartbeats of a Node. Every Node binds a
+ * datagram endpoint to its address, and the Coordinator sends a heartbeat
+ * to all the Other Nodes each ping interval, so the Other Nodes watch the
+ * Coordinator without a ping of their own : one message by Node each
+ * period instead of a ping and its reply, and no connection to accept.
+ *
+ * The heartbeat of a period is encoded once, and the fan-out to the Other
+ * Nodes runs as a single task of the shared timing wheel, which never
+ * overlaps itself.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class HeartbeatPush implements GossipEndpoint.Receiver {
+
+	/**
+	 * A Logger tag
+	 */
+	private final String TAG = HeartbeatPush.class.getSimpleName();
+
+	/**
+	 * The Node which owns the endpoint
+	 */
+	private final TraitClientServer mNode;
+
+	/**
+	 * The heartbeat period in milliseconds
+	 */
+	private final long mPeriodMillis;
+
+	/**
+	 * The datagram endpoint of the Node
+	 */
+	private volatile GossipEndpoint mEndpoint;
+
+	/**
+	 * The timer of the fan-out, while the Node is the Coordinator
+	 */
+	private volatile TimingWheel.Timeout mTimer;
+
+	/**
+	 * Creates a HeartbeatPush object.
+	 * @param node the Node which owns the endpoint
+	 */
+	public HeartbeatPush(TraitClientServer node) {
+		this.mNode = node;
+		this.mPeriodMillis = Settings.getInstance().getLong(Constant.KEY_PING_INTERVAL_MILLIS, Constant.PING_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * Binds the datagram endpoint of the Node
+	 * @throws IOException if the endpoint can not be bound
+	 */
+	public synchronized void start() throws IOException {
+		if( mEndpoint != null ) return;
+		mEndpoint = mNode.openEndpoint(this, Message.TYPE_HEARTBEAT);
+	}
+
+	/**
+	 * Stops the fan-out and closes the datagram endpoint
+	 */
+	public synchronized void stop() {
+		stopFanOut();
+		if( mEndpoint != null ) mNode.closeEndpoint(this);
+		mEndpoint = null;
+	}
+
+	/**
+	 * Starts to push the heartbeats to the Other Nodes, once the Node is the Coordinator
+	 * @param term the term of the Coordinator
+	 */
+	public synchronized void startFanOut(long term) {
+		if( mTimer != null || mEndpoint == null ) return;
+		mTimer = TimingWheel.getInstance().scheduleAtFixedRate(new FanOutTask(term), 0, mPeriodMillis, 0);
+	}
+
+	/**
+	 * Stops to push the heartbeats, the Node is no longer the Coordinator
+	 */
+	public synchronized void stopFanOut() {
+		if( mTimer != null ) mTimer.cancel();
+		mTimer = null;
+	}
+
+	/**
+	 * This class implements the Task which pushes the heartbeat of a period
+	 */
+	class FanOutTask implements Runnable {
+
+		/**
+		 * The term of the Coordinator
+		 */
+		private final long term;
+
+		/**
+		 * Sequence number of the last heartbeat
+		 */
+		private long sequence;
+
+		/**
+		 * Creates a FanOutTask object.
+		 * @param term the term of the Coordinator
+		 */
+		FanOutTask(long term) {
+			this.term = term;
+		}
+
+		/**
+		 * This method sends the heartbeat of the period to all the Other Nodes
+		 */
+		@Override
+		public void run() {
+			GossipEndpoint endpoint = mEndpoint;
+			if( endpoint == null ) return;
+
+			// one frame for all the Nodes, each send reads it from its own position
+			ByteBuffer frame = ByteBuffer.allocate(MessageCodec.HEADER_SIZE);
+			MessageCodec.encode(new Message().set(Message.TYPE_HEARTBEAT, mNode.getId(), term, ++sequence), frame);
+			frame.flip();
+
+			int sent = 0;
+			for(Node node : Resource.getInstance().getNodes()){
+				if( node.getId() == mNode.getId() ) continue;
+				endpoint.send(node.getIPAddress(), Integer.parseInt(node.getPort()), frame.duplicate());
+				sent++;
+			}
+			Metrics.getInstance().getHeartbeatPushes().add(sent);
+		}
+	}
+
+	/**
+	 * Receives a heartbeat of the Coordinator
+	 */
+	@Override
+	public void receive(ByteBuffer datagram) {
+		Message message = new Message();
+		try {
+			if( !MessageCodec.decode(datagram, message) ) return;
+		} catch (ProtocolException e) {
+			Logger.d(TAG, "receive() : {}", e.getMessage());
+			return;
+		}
+		if( message.getType() != Message.TYPE_HEARTBEAT ) return;
+
+		mNode.heartbeatPushed(message.getSenderId(), System.nanoTime());
+	}
+}
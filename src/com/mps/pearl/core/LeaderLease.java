@@ -0,0 +1,97 @@
+package com.mps.pearl.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class holds the lease a Node grants to its Coordinator. Each reply
+ * of the Coordinator renews the lease, and the Node does not begin an
+ * Election while the lease is held : a Coordinator which misses a ping,
+ * or answers it late under load, stays the Coordinator, and no Election
+ * messages are sent for it.
+ *
+ * The lease is counted on the monotonic clock of the Node, System.nanoTime(),
+ * from the time the answered ping was sent, as the Coordinator renewed it
+ * later. It is shortened by the drift bound, the rate the clocks of the
+ * Node and of the Coordinator may drift apart, so the Node never holds a
+ * lease longer than the Coordinator counts it.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class LeaderLease {
+
+	/**
+	 * Time in nanoseconds a renewal holds the lease, drift included, 0 if
+	 * the leases are disabled
+	 */
+	private final long mDurationNanos;
+
+	/**
+	 * Id of the Coordinator holding the lease, or -1
+	 */
+	private int mHolderId = -1;
+
+	/**
+	 * Time in nanoseconds the lease expires
+	 */
+	private long mExpiryNanos;
+
+	/**
+	 * Creates a LeaderLease object.
+	 *
+	 * @param durationMillis time a renewal holds the lease, 0 to disable the leases
+	 * @param drift the bound of the drift rate of the clocks, eg 0.01
+	 */
+	public LeaderLease(long durationMillis, double drift) {
+		double bound = Math.min(1, Math.max(0, drift));
+		this.mDurationNanos = (long) (TimeUnit.MILLISECONDS.toNanos(Math.max(0, durationMillis)) * (1 - bound));
+	}
+
+	/**
+	 * Renews the lease of a Coordinator. A renewal of a former Coordinator
+	 * is dropped, and a late renewal never shortens the lease.
+	 *
+	 * @param coordinatorId the Id of the Coordinator which replied
+	 * @param requestNanos the time the answered ping was sent, read from System.nanoTime()
+	 */
+	public synchronized void renew(int coordinatorId, long requestNanos) {
+		if( mDurationNanos == 0 || requestNanos == 0 ) return;
+
+		long expiryNanos = requestNanos + mDurationNanos;
+		if( coordinatorId == mHolderId && expiryNanos - mExpiryNanos <= 0 ) return;
+		mHolderId = coordinatorId;
+		mExpiryNanos = expiryNanos;
+	}
+
+	/**
+	 * Returns True, if a Coordinator holds the lease
+	 *
+	 * @param coordinatorId the Id of the Coordinator
+	 * @param nowNanos the current time, read from System.nanoTime()
+	 * @return True, if the lease of the Coordinator has not expired
+	 */
+	public synchronized boolean isHeld(int coordinatorId, long nowNanos) {
+		return mHolderId == coordinatorId && nowNanos - mExpiryNanos < 0;
+	}
+
+	/**
+	 * Returns the time the lease of a Coordinator is still held
+	 *
+	 * @param coordinatorId the Id of the Coordinator
+	 * @param nowNanos the current time, read from System.nanoTime()
+	 * @return the time in milliseconds, 0 if the Coordinator does not hold the lease
+	 */
+	public synchronized long getRemainingMillis(int coordinatorId, long nowNanos) {
+		if( !isHeld(coordinatorId, nowNanos) ) return 0;
+		return TimeUnit.NANOSECONDS.toMillis(mExpiryNanos - nowNanos);
+	}
+
+	/**
+	 * Releases the lease, the Node then may begin an Election
+	 */
+	public synchronized void revoke() {
+		mHolderId = -1;
+	}
+}
@@ -0,0 +1,82 @@
+package com.mps.pearl.core;
+
+/**
+ * This class represents a member of the System as configured in the
+ * configuration file : an Id, an IP Address and a Port. A MemberRecord
+ * is an immutable value, without Threads nor timers, so the System
+ * knows every member while it runs a Node only for the hosted ones.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class MemberRecord {
+
+	/**
+	 * The unique Id of the member
+	 */
+	private final int mId;
+
+	/**
+	 * The IP Address of the member
+	 */
+	private final String mIPAddress;
+
+	/**
+	 * The Port of the member
+	 */
+	private final String mPort;
+
+	/**
+	 * Creates a MemberRecord object.
+	 * @param id the unique Id of the member
+	 * @param ipAddress the IP Address of the member
+	 * @param port the Port of the member
+	 */
+	public MemberRecord(int id, String ipAddress, String port) {
+		this.mId = id;
+		this.mIPAddress = ipAddress;
+		this.mPort = port;
+	}
+
+	/**
+	 * Returns the Id of the member
+	 * @return the integer Id
+	 */
+	public int getId() {
+		return mId;
+	}
+
+	/**
+	 * Returns the IP Address of the member
+	 * @return the String IP Address
+	 */
+	public String getIPAddress() {
+		return mIPAddress;
+	}
+
+	/**
+	 * Returns the Port of the member
+	 * @return the String Port
+	 */
+	public String getPort() {
+		return mPort;
+	}
+
+	/**
+	 * Returns a new Node of the member
+	 * @return the Node
+	 */
+	public Node newNode() {
+		return new Node(mId, mIPAddress, mPort);
+	}
+
+	/**
+	 * Returns the String representation of the member
+	 */
+	@Override
+	public String toString() {
+		return "[" + mId + "]" + mIPAddress + ":" + mPort;
+	}
+}
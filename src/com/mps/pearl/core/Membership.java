@@ -0,0 +1,257 @@
+package com.mps.pearl.core;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class holds the members of the System read from the configuration
+ * file. The members are kept as two sorted arrays : the Ids, and the
+ * offsets of the addresses in the content of the file. The MemberRecord
+ * of a member is decoded from the content on its first query only, so
+ * a membership of a hundred thousand members costs two int arrays until
+ * the System looks at them.
+ *
+ * The content is read with absolute gets only, so a Membership is safe
+ * to query from any Thread.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class Membership {
+
+	/**
+	 * A Logger tag
+	 */
+	@SuppressWarnings("unused")
+	private final String TAG = Membership.class.getSimpleName();
+
+	/**
+	 * A Membership without members
+	 */
+	public static final Membership EMPTY = new Membership(ByteBuffer.allocate(0), new int[0], new int[0]);
+
+	/**
+	 * The content of the configuration file
+	 */
+	private final ByteBuffer mContent;
+
+	/**
+	 * The Ids of the members, in ascending order
+	 */
+	private final int[] mIds;
+
+	/**
+	 * The offsets of the IP Address of each member in the content
+	 */
+	private final int[] mOffsets;
+
+	/**
+	 * The decoded MemberRecords, null until queried
+	 */
+	private final AtomicReferenceArray<MemberRecord> mRecords;
+
+	/**
+	 * Creates a Membership object.
+	 *
+	 * @param content the content of the configuration file
+	 * @param ids the Ids of the members, in ascending order, without duplicates
+	 * @param offsets the offset in the content of the IP Address of each member,
+	 * followed on the same line by its Port
+	 */
+	public Membership(ByteBuffer content, int[] ids, int[] offsets) {
+		if( ids.length != offsets.length ) throw new IllegalArgumentException("ids and offsets differ in length");
+		this.mContent = content;
+		this.mIds = ids;
+		this.mOffsets = offsets;
+		this.mRecords = new AtomicReferenceArray<MemberRecord>(ids.length);
+	}
+
+	/**
+	 * Returns the number of members
+	 * @return the number of members
+	 */
+	public int size() {
+		return mIds.length;
+	}
+
+	/**
+	 * Returns the index of a member
+	 * @param id the Id of the member
+	 * @return the index of the member, from 0 in ascending order of Id,
+	 * or a negative value if no member has the Id
+	 */
+	public int indexOf(int id) {
+		return Arrays.binarySearch(mIds, id);
+	}
+
+	/**
+	 * Returns True, if a member has the Id
+	 * @param id the Id of the member
+	 * @return True, if a member has the Id, otherwise False
+	 */
+	public boolean contains(int id) {
+		return indexOf(id) >= 0;
+	}
+
+	/**
+	 * Returns the Id of the member at an index
+	 * @param index the index of the member, from 0 in ascending order of Id
+	 * @return the Id of the member
+	 */
+	public int getIdAt(int index) {
+		return mIds[index];
+	}
+
+	/**
+	 * Returns the highest Id of the members
+	 * @return the highest Id, or -1 if there is no member
+	 */
+	public int getHighestId() {
+		return mIds.length == 0 ? -1 : mIds[mIds.length - 1];
+	}
+
+	/**
+	 * Returns the MemberRecord of a member
+	 * @param id the Id of the member
+	 * @return the MemberRecord, or null if no member has the Id
+	 */
+	public MemberRecord getRecord(int id) {
+		int index = indexOf(id);
+		return index < 0 ? null : getRecordAt(index);
+	}
+
+	/**
+	 * Returns the MemberRecord of the member at an index, decoding it on
+	 * the first query
+	 *
+	 * @param index the index of the member, from 0 in ascending order of Id
+	 * @return the MemberRecord
+	 */
+	public MemberRecord getRecordAt(int index) {
+		MemberRecord record = mRecords.get(index);
+		if( record == null ){
+			// two Threads may decode the same record, they keep the first one
+			mRecords.compareAndSet(index, null, decode(mIds[index], mOffsets[index]));
+			record = mRecords.get(index);
+		}
+		return record;
+	}
+
+	/**
+	 * Returns True, if the IP Address of the member at an index is an
+	 * address, without decoding the MemberRecord
+	 *
+	 * @param index the index of the member, from 0 in ascending order of Id
+	 * @param address the ASCII bytes of the address
+	 * @return True, if the IP Address of the member is the address
+	 */
+	public boolean isIPAddressAt(int index, byte[] address) {
+		int offset = mOffsets[index];
+		if( tokenEnd(offset) - offset != address.length ) return false;
+		for(int indx = 0 ; indx < address.length ; indx++){
+			if( mContent.get(offset + indx) != address[indx] ) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns True, if the member at an index has the same IP Address and
+	 * Port as a member of another Membership, without decoding the MemberRecords
+	 *
+	 * @param index the index of the member, from 0 in ascending order of Id
+	 * @param other the other Membership
+	 * @param otherIndex the index of the member of the other Membership
+	 * @return True, if both members have the same IP Address and Port
+	 */
+	public boolean isSameAddressAt(int index, Membership other, int otherIndex) {
+		int offset = mOffsets[index];
+		int otherOffset = other.mOffsets[otherIndex];
+		for(int token = 0 ; token < 2 ; token++){
+			int end = tokenEnd(offset);
+			int otherEnd = other.tokenEnd(otherOffset);
+			if( end - offset != otherEnd - otherOffset ) return false;
+			for(int indx = 0 ; indx < end - offset ; indx++){
+				if( mContent.get(offset + indx) != other.mContent.get(otherOffset + indx) ) return false;
+			}
+			offset = tokenStart(end);
+			otherOffset = other.tokenStart(otherEnd);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns a copy of the Membership whose content is held in the heap.
+	 * A memory mapped file which is rewritten in place changes under the
+	 * mapping, so a Membership is copied before its file is watched.
+	 *
+	 * @return the copy of the Membership, with the decoded MemberRecords
+	 */
+	public Membership copy() {
+		ByteBuffer content = ByteBuffer.allocate(mContent.limit());
+		content.put((ByteBuffer) mContent.duplicate().clear());
+		content.flip();
+		Membership copy = new Membership(content, mIds, mOffsets);
+		for(int index = 0 ; index < mIds.length ; index++){
+			copy.mRecords.set(index, mRecords.get(index));
+		}
+		return copy;
+	}
+
+	/**
+	 * Decodes the IP Address and the Port which begin at an offset
+	 */
+	private MemberRecord decode(int id, int offset) {
+		int addressEnd = tokenEnd(offset);
+		int portStart = tokenStart(addressEnd);
+		int portEnd = tokenEnd(portStart);
+		return new MemberRecord(id, ascii(offset, addressEnd), ascii(portStart, portEnd));
+	}
+
+	/**
+	 * Returns the offset of the first byte after a token
+	 */
+	private int tokenEnd(int offset) {
+		while( offset < mContent.limit() && !isBlank(mContent.get(offset)) ) offset++;
+		return offset;
+	}
+
+	/**
+	 * Returns the offset of the next token on the line
+	 */
+	private int tokenStart(int offset) {
+		while( offset < mContent.limit() && isSpace(mContent.get(offset)) ) offset++;
+		return offset;
+	}
+
+	/**
+	 * Returns the String of the ASCII bytes between two offsets
+	 */
+	private String ascii(int start, int end) {
+		char[] chars = new char[end - start];
+		for(int indx = 0 ; indx < chars.length ; indx++){
+			chars[indx] = (char) (mContent.get(start + indx) & 0xFF);
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Returns True, if the byte separates two tokens of a line
+	 * @param b the byte
+	 * @return True for a space, a tab, a carriage return or a form feed
+	 */
+	public static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\f';
+	}
+
+	/**
+	 * Returns True, if the byte ends a token
+	 * @param b the byte
+	 * @return True for a space or the end of a line
+	 */
+	public static boolean isBlank(byte b) {
+		return isSpace(b) || b == '\n';
+	}
+}
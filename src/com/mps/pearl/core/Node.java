@@ -1,10 +1,14 @@
 package com.mps.pearl.core;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
+import com.mps.pearl.metrics.Metrics;
+import com.mps.pearl.net.HeartbeatChannel;
 import com.mps.pearl.util.Constant;
 import com.mps.pearl.util.Logger;
+import com.mps.pearl.util.Settings;
+import com.mps.pearl.util.TimingWheel;
 
 /**
  * 
@@ -47,7 +51,7 @@ public class Node extends TraitClientServer implements Comparable<Node> {
 	/**
 	 * Boolean flag to identify state 
 	 */
-	private boolean downFlag;
+	private volatile boolean downFlag;
 	
 	/**
 	 * Boolean flag to check if Node is Coordinator or Other Node 
@@ -55,14 +59,39 @@ public class Node extends TraitClientServer implements Comparable<Node> {
 	private boolean coordinatorFlag;
 	
 	/**
-	 * A Client Timer to Schedule Tasks 
+	 * A Client Timer of the shared TimingWheel to Schedule pings 
 	 */
-	private Timer mClientTimer;
+	private volatile TimingWheel.Timeout mClientTimer;
 	
 	/**
-	 * A Server Timer to Schedule Tasks 
+	 * A Server Timer of the shared TimingWheel to Schedule the abort 
 	 */
-	private Timer mServerTimer;
+	private volatile TimingWheel.Timeout mServerTimer;
+	
+	/**
+	 * Time of the termination of the Server Node the Node has detected last
+	 */
+	private volatile long mDetectedNanos;
+	
+	/**
+	 * Id of the Server Node the Node has seen last
+	 */
+	private volatile int mLastServerId = -1;
+	
+	/**
+	 * Time the Node began to wait for the claim of the successor, read from System.nanoTime(), or 0
+	 */
+	private volatile long mFailoverNanos;
+	
+	/**
+	 * The gossip membership of the Node, if the Nodes gossip
+	 */
+	private volatile Gossip mGossip;
+	
+	/**
+	 * The multiplexer of the election groups of the Node, if any
+	 */
+	private volatile GroupMux mGroupMux;
 	
 	/**
 	 * Creates an Node object.
@@ -76,9 +105,6 @@ public class Node extends TraitClientServer implements Comparable<Node> {
 		setPort(port);
 		setCoordinatorFlag(false);
 		setDownFlag(false);
-		
-		this.mClientTimer = new Timer();
-		this.mServerTimer = new Timer();
 	}
 
 	/**
@@ -148,11 +174,13 @@ public class Node extends TraitClientServer implements Comparable<Node> {
 	 * @param coordinatorFlag True, if the Node is selected as New Coordinator, False, if the Node act as Other Nodes.
 	 */
 	public void setCoordinatorFlag(boolean coordinatorFlag) {
-		if(Logger.DEBUG)Logger.d(TAG, "setCoordinatorFlag()");
+		Logger.d(TAG, "setCoordinatorFlag()");
 		this.coordinatorFlag = coordinatorFlag;
 		if( coordinatorFlag && (mClientTimer != null) ){
 			// cancel all timer if the Node is selected as a New Coordinator :: SERVER NODE
 			mClientTimer.cancel();
+			// the Node no longer pings a Coordinator
+			closeHeartbeatChannel();
 		}
 	}
 
@@ -164,101 +192,203 @@ public class Node extends TraitClientServer implements Comparable<Node> {
 	 * This method perform ping coordination between Client and Server Nodes.
 	 */
 	public void pingCoordinator() {
-		if(Logger.DEBUG)Logger.d(TAG, " ------ pingCoordinator()  ------ : " + this);
-		// ping server node every 5 seconds 
-		mClientTimer.scheduleAtFixedRate(new PingSchedularTask(), 0 , Constant.CLIENT_PING_EVERY_SECONDS*1000);
+		Logger.d(TAG, " ------ pingCoordinator()  ------ : {}", this);
+		// ping server node every 5 seconds by default, with a jitter to spread the pings of the Nodes 
+		mClientTimer = TimingWheel.getInstance().scheduleAtFixedRate(new PingSchedularTask(), 0 ,
+				Settings.getInstance().getLong(Constant.KEY_PING_INTERVAL_MILLIS, Constant.PING_INTERVAL_MILLIS),
+				Settings.getInstance().getDouble(Constant.KEY_PING_JITTER, Constant.PING_JITTER));
 	}
 	
 	/**
-	 * This class implements TimerTask which schedule Ping 
+	 * This class implements the Task which schedule Ping 
 	 * action on a regular interval to Server Node.
 	 * 
 	 * The client Node will perform ping if the Server is Active, 
 	 * otherwise, perform Election if the Server Node is Down in a 
-	 * System.
+	 * System. The Server Node is considered as Down once its failure
+	 * detector suspects it, and the lease it holds has expired.
 	 * 
 	 * @author msingh
 	 * @version 1.0 20 Jan, 2014 
 	 */
-	class PingSchedularTask extends TimerTask {
+	class PingSchedularTask implements Runnable {
 	   	
 		/**
 		 * This method perform ping or election routines. 
 		 */
 		public void run() {
-			if(Logger.DEBUG)Logger.d(TAG, " ------ PingSchedularTask.run() ------ ");
+			Logger.d(TAG, " ------ PingSchedularTask.run() ------ ");
+			// the Node has been retired meanwhile
+			if( isDownFlag() ) return;
 			// get server name 
 			Node serverNode  = NodeManager.getInstance().getServerNode();
 			// HostName as Null indicates ServerNode went Down
 			if( serverNode == null ){
-				// process Election
+				// a gossiping Node waits for the failure of the Server Node to reach it
+				Gossip gossip = mGossip;
+				if( gossip != null && mLastServerId != -1 && !gossip.isDead(mLastServerId) ) return;
+				// the Node does not begin an Election while the last Server Node holds its lease
+				if( gossip == null && mLastServerId != -1 && isLeaseHeld(mLastServerId) ) return;
+				
+				detectTermination();
+				// release the channel to the terminated Server Node
+				closeHeartbeatChannel();
+				// claim the role as the successor, or wait for the successor to claim it
 				try {
-					
-					if( !Election.getInstance().isElectionFlag()){
-						// begin new election 
-						Election.getInstance().beginElection();
-					}
-					
-					synchronized(Election.lock){
-						// critical section to perform election
-//						Election.lock.wait();
-						performCoordinatorElection();
-//						Election.lock.notifyAll();
-					}
+					performFailover();
 				} catch (Exception e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
+					Logger.e(TAG, "PingSchedularTask.run() : Election failed", e);
+				}
+			}else if( mGossip != null ){
+				mLastServerId = serverNode.getId();
+				mFailoverNanos = 0;
+				if( mGossip.isDead(serverNode.getId()) ){
+					Metrics.getInstance().getSuspicions().increment();
+					// the gossip has declared the Server Node dead
+					NodeManager.getInstance().terminateServerNode(serverNode);
 				}
 			}else if( serverNode != null ){
+				mLastServerId = serverNode.getId();
+				mFailoverNanos = 0;
+				// the Node is the Server Node, as a successor or as the Coordinator of its process
+				if( serverNode == Node.this ) return;
 				pingServerNode();
+				
+				if( !isServerNodeAvailable(serverNode) ){
+					Metrics.getInstance().getSuspicions().increment();
+					if( isLeaseHeld(serverNode.getId()) ){
+						// a late or missed reply, the Server Node keeps its role until its lease expires
+						Metrics.getInstance().getLeaseDeferrals().increment();
+						return;
+					}
+					// the Server Node is suspected, terminate it to begin the Election on the next ping
+					NodeManager.getInstance().terminateServerNode(serverNode);
+				}
 			}
         }
+		
+		/**
+		 * Records the time the Node took to detect the termination of the Server Node
+		 */
+		private void detectTermination() {
+			long terminatedNanos = NodeManager.getInstance().getTerminatedNanos();
+			if( terminatedNanos == 0 || terminatedNanos == mDetectedNanos ) return;
+			
+			mDetectedNanos = terminatedNanos;
+			Metrics.getInstance().getDetectionDelay().record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - terminatedNanos));
+		}
     }
 	
 	/**
-	 * This method perform Election to find new Coordinator or Server
-	 * Node in a System.
+	 * This method replaces the terminated Server Node. In the fast failover,
+	 * every Node knows the successor from the running Nodes : the Node with
+	 * the highest Id, which the Election would declare. The successor probes
+	 * the terminated Server Node once, and claims its role if the probe is
+	 * not answered. The Other Nodes wait for the claim a few ping intervals,
+	 * the Bully Election runs only if the successor did not claim, or if the
+	 * Server Node answered its probe. A Node which runs in its own process
+	 * knows no running Nodes, it runs the Election over the wire.
 	 */
-	private synchronized void performCoordinatorElection() {
-		if(Logger.DEBUG)Logger.d(TAG, "performCoordinatorElection() : isElectionFlag : " + Election.getInstance().isElectionFlag());
+	private void performFailover() {
+		WireElection wireElection = NodeManager.getInstance().getWireElection();
+		if( wireElection != null ){
+			// the Nodes run in their own processes, only the Election over the wire finds the successor
+			wireElection.begin();
+			return;
+		}
 		
-		if(this.isCoordinatorFlag()) return;
+		Settings settings = Settings.getInstance();
+		if( isCoordinatorFlag() || mLastServerId == -1
+				|| !Constant.FAILOVER_MODE_FAST.equals(settings.getString(Constant.KEY_FAILOVER_MODE, Constant.FAILOVER_MODE_FAST)) ){
+			performCoordinatorElection();
+			return;
+		}
 		
-		if( Election.getInstance().getElectionNodeList().size() >= 0 ){
-			if(Election.getInstance().isValidElection(this.getId())){
-				// add node to the election list
-				if(Election.getInstance().getElectionNodeList().get(getId()) == null){
-					Election.getInstance().addElectionNode(this);
-				}
-				
-				System.out.println(Election.getInstance().getElectionMessage());
-				
-				if(Logger.DEBUG)Logger.d(TAG, "performCoordinatorElection() :XX:" + Election.getInstance().getElectionMessage());
-				if(Logger.DEBUG)Logger.d(TAG, " :: " + Resource.getInstance().getNodeList().size() + " == " + Election.getInstance().getElectionNodeList().size() );
-				
-				// if the Node is a last node, then end the Election
-				if(Resource.getInstance().getNodeList().size() == Election.getInstance().getElectionNodeList().size()){
-					// proceed to end the Election
-					NodeManager.getInstance().setServerNode(Election.getInstance().endElection());
-					// set the coordinator Flag for the Node
-		    		NodeManager.getInstance().getServerNode().setCoordinatorFlag(true);
-		    		// set the flag as Server Node started Listening on his port
-		    		NodeManager.getInstance().getServerNode().setServerListening(true);
-					// bind server node
-		    		NodeManager.getInstance().bindServerNode();
+		Node successor = Resource.getInstance().getHighestNode();
+		if( successor == this ){
+			// the gossip has already confirmed the failure, otherwise probe the Server Node once
+			if( mGossip == null && isAnswering(Resource.getInstance().getTerminatedNode(mLastServerId)) ){
+				Metrics.getInstance().getFailoverFallbacks().increment();
+				performCoordinatorElection();
+				return;
+			}
+			if( NodeManager.getInstance().claim(this) ){
+				Metrics metrics = Metrics.getInstance();
+				metrics.getFastFailovers().increment();
+				long terminatedNanos = NodeManager.getInstance().getTerminatedNanos();
+				if( terminatedNanos != 0 ){
+					metrics.getFailoverDuration().record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - terminatedNanos));
 				}
-			}else{ // New TraitClientServer Node with Highest Index has been Found 
-				// abort existing election
-				Election.getInstance().abortElection();
-				// begin new election 
-				Election.getInstance().beginElection();
-				Election.getInstance().addElectionNode(this);
-				
-				System.out.println(Election.getInstance().getElectionMessage());
-				
-				if(Logger.DEBUG)Logger.d(TAG, "performCoordinatorElection() :XX:" + Election.getInstance().getElectionMessage());
 			}
-		} 
+			return;
+		}
+		
+		// wait for the claim of the successor, then fall back to the Election
+		long now = System.nanoTime();
+		if( mFailoverNanos == 0 ) mFailoverNanos = now;
+		long waitMillis = Constant.FAILOVER_WAIT_PING_INTERVALS
+				* settings.getLong(Constant.KEY_PING_INTERVAL_MILLIS, Constant.PING_INTERVAL_MILLIS);
+		if( now - mFailoverNanos < TimeUnit.MILLISECONDS.toNanos(waitMillis) && !Election.getInstance().isElectionFlag() ) return;
+		
+		if( !Election.getInstance().isElectionFlag() ) Metrics.getInstance().getFailoverFallbacks().increment();
+		performCoordinatorElection();
+	}
+	
+	/**
+	 * Returns True, if a terminated Server Node answers a single probe. The
+	 * probe waits for the ping timeout, half a ping interval at most.
+	 */
+	private boolean isAnswering(Node serverNode) {
+		if( serverNode == null ) return false;
+		Settings settings = Settings.getInstance();
+		long timeoutMillis = Math.min(settings.getLong(Constant.KEY_PING_TIMEOUT_MILLIS, Constant.PING_TIMEOUT_MILLIS),
+				settings.getLong(Constant.KEY_PING_INTERVAL_MILLIS, Constant.PING_INTERVAL_MILLIS) / 2);
+		HeartbeatChannel probe = getTransport().openChannel(getId());
+		try {
+			return probe.probe(serverNode.getIPAddress(), Integer.parseInt(serverNode.getPort()), timeoutMillis);
+		} finally {
+			probe.close();
+		}
+	}
+	
+	/**
+	 * This method perform Election to find new Coordinator or Server
+	 * Node in a System. The Node joins the running Election, or begins a
+	 * new one if its Id is higher than the Id of the Node which began it 
+	 * ( New Node with Highest Index has been Found ). The last Node to join 
+	 * ends the Election. 
+	 */
+	private void performCoordinatorElection() {
+		Logger.d(TAG, "performCoordinatorElection() : {}", Election.getInstance().getState());
+		
+		if(this.isCoordinatorFlag()) return;
+		
+		Election.State state = Election.getInstance().join(this);
+		// the Election is decided, the new Coordinator is about to be bound
+		if( state.getPhase() != Election.Phase.ELECTING ) return;
+		
+		Election.getInstance().view(state.getElectionMessage());
+		
+		Logger.d(TAG, "performCoordinatorElection() :XX:{}", state);
+		Logger.d(TAG, " :: {} == {}", Resource.getInstance().size(), state.size());
+		
+		// if the Node is a last node, then end the Election
+		Node newCoordinator = Election.getInstance().endElection(state, Resource.getInstance().size());
+		if( newCoordinator != null ){
+			Metrics metrics = Metrics.getInstance();
+			metrics.getElections().increment();
+			metrics.getElectionRounds().add(state.getRounds());
+			metrics.getElectionDuration().record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - state.getStartNanos()));
+			metrics.getElectionMessages().record(state.getMessages());
+			
+			NodeManager.getInstance().setServerNode(newCoordinator);
+			// set the coordinator Flag for the Node
+			newCoordinator.setCoordinatorFlag(true);
+			// set the flag as Server Node started Listening on his port
+			newCoordinator.setServerListening(true);
+			// bind server node
+			NodeManager.getInstance().bindServerNode();
+		}
 	}
 	
 	/*
@@ -270,13 +400,16 @@ public class Node extends TraitClientServer implements Comparable<Node> {
 	 * mention in a Abort  Scheduler Timer Task.  
 	 */
 	public void terminateNode(){
-		if(Logger.DEBUG)Logger.d(TAG, " ############ terminateNode() : " + this + " ############  ");
+		Logger.d(TAG, " ############ terminateNode() : {} ############  ", this);
+		long abortSeconds = Settings.getInstance().getLong(Constant.KEY_SERVER_ABORT_SECONDS, Constant.SERVER_ABORT_EVERY_SECONDS);
+		// the Coordinator runs until it fails, or is aborted by a fault injected from outside
+		if( abortSeconds <= 0 ) return;
 		// schedule timer to abort server every 10 seconds 
-		mServerTimer.schedule(new AbortCoordinatorTask(this), Constant.SERVER_ABORT_EVERY_SECONDS*1000);
+		mServerTimer = TimingWheel.getInstance().schedule(new AbortCoordinatorTask(this), abortSeconds*1000);
 	} 
 
 	/**
-	 * This class implements TimerTask to perform schedule abort of 
+	 * This class implements the Task to perform schedule abort of 
 	 * coordinator running in a System. It abort the currently running 
 	 * Server Node in a System. After termination, if provide an option
 	 * to perform Election to elect new Coordinator for the System.
@@ -285,7 +418,7 @@ public class Node extends TraitClientServer implements Comparable<Node> {
 	 * @version 1.0 20 Jan, 2014 
 	 *
 	 */
-	class AbortCoordinatorTask extends TimerTask {
+	class AbortCoordinatorTask implements Runnable {
     	
 		/**
 		 * A Node instance to terminate
@@ -306,30 +439,131 @@ public class Node extends TraitClientServer implements Comparable<Node> {
 		 * Node as a Coordinator in the System.
 		 */
         public void run() {
-        	if(Logger.DEBUG)Logger.d(TAG, " ############ AbortCoordinatorTask.run()  ############ ");
+        	Logger.d(TAG, " ############ AbortCoordinatorTask.run()  ############ ");
         	
-        	System.out.println("t " + node.getId() );
-            
-        	// update the coordinator state
-    		setCoordinatorFlag(false);
-    		setDownFlag(true);
-    		
-    		// terminate all the threads bind to the server node
-    		for(Thread multiClientHandlerThread : getServerSocketThreadList())
-    			multiClientHandlerThread.interrupt();
-    		
-    		// add the Node to the terminator List
-    		Resource.getInstance().addTerminatedNode(node);
-    		
-    		// set the coordinator Flag for the Node
-    		NodeManager.getInstance().getServerNode().setCoordinatorFlag(false);
-    		
-    		NodeManager.getInstance().getServerNode().setServerListening(false);
-    		
-    		// set server node as NULL
-    		NodeManager.getInstance().setServerNode(null);
-    		
-            mServerTimer.cancel(); //Terminate the timer thread
+        	NodeManager.getInstance().terminateServerNode(node);
         }
     }
+	
+	/**
+	 * This method terminates the Node as Coordinator of the System. It is
+	 * called by the NodeManager, either once the abort timer expired or 
+	 * once the Coordinator is suspected by a failure detector.
+	 */
+	void abortCoordinator() {
+		// only the process which hosts the Coordinator prints its termination, not the Nodes standing for it
+		if( Resource.getInstance().getNode(getId()) == this ) System.out.println("t " + getId() );
+		
+		// update the coordinator state
+		setCoordinatorFlag(false);
+		setDownFlag(true);
+		
+		// stop the server node and terminate all the handlers bind to it
+		setServerListening(false);
+		
+		// the Node no longer answers the probes, nor pushes heartbeats to the Other Nodes
+		stopGossip();
+		stopHeartbeatPush();
+		stopGroups();
+		
+		// add the Node to the terminator List
+		Resource.getInstance().addTerminatedNode(this);
+		
+		// set server node as NULL
+		NodeManager.getInstance().setServerNode(null);
+		
+		if( mServerTimer != null ){
+			mServerTimer.cancel(); //Terminate the timer
+		}
+	}
+	
+	/**
+	 * This method starts the gossip membership of the Node, if the Nodes 
+	 * gossip instead of pinging the Coordinator. The Coordinator gossips 
+	 * as the Other Nodes do.
+	 */
+	public synchronized void startGossip() {
+		if( mGossip != null || !isGossipHeartbeat() || isDownFlag() ) return;
+		Gossip gossip = new Gossip(this);
+		try {
+			gossip.start();
+			mGossip = gossip;
+		} catch (IOException e) {
+			Logger.e(TAG, "startGossip() : {} : {}", this, e.getMessage());
+		}
+	}
+	
+	/**
+	 * This method stops the gossip membership of the Node, it no longer 
+	 * answers the probes of the Other Nodes
+	 */
+	synchronized void stopGossip() {
+		if( mGossip != null ) mGossip.stop();
+	}
+	
+	/**
+	 * This method starts the election groups of the Node, if the Node is a 
+	 * member of a group. The groups configured in the Settings are created 
+	 * by the first Node to start.
+	 */
+	public synchronized void startGroups() {
+		if( mGroupMux != null || isDownFlag() ) return;
+		GroupManager.getInstance().createConfiguredGroups();
+		if( GroupManager.getInstance().getGroups(getId()).isEmpty() ) return;
+		
+		GroupMux groupMux = new GroupMux(this);
+		try {
+			groupMux.start();
+			mGroupMux = groupMux;
+		} catch (IOException e) {
+			Logger.e(TAG, "startGroups() : {} : {}", this, e.getMessage());
+		}
+	}
+	
+	/**
+	 * This method stops the election groups of the Node, it no longer 
+	 * sends the heartbeats of the groups it coordinates
+	 */
+	synchronized void stopGroups() {
+		if( mGroupMux != null ) mGroupMux.stop();
+	}
+	
+	/**
+	 * Returns the gossip membership of the Node
+	 * @return the Gossip, or null if the Nodes do not gossip
+	 */
+	public Gossip getGossip() {
+		return mGossip;
+	}
+	
+	/**
+	 * This method steps the Node down as Coordinator of the System, without
+	 * terminating it, once a Node with a higher Id has joined the System. 
+	 * The Node then pings the new Coordinator as the Other Nodes do.
+	 */
+	void stepDown() {
+		Logger.d(TAG, "stepDown() : {}", this);
+		if( mServerTimer != null ){
+			mServerTimer.cancel(); //Terminate the timer
+		}
+		setCoordinatorFlag(false);
+		// stop the server node and terminate all the handlers bind to it
+		setServerListening(false);
+	}
+	
+	/**
+	 * This method retires the Node, once it has been removed from the 
+	 * configuration file. The Node stops pinging the Coordinator.
+	 */
+	void retire() {
+		Logger.d(TAG, "retire() : {}", this);
+		setDownFlag(true);
+		if( mClientTimer != null ){
+			mClientTimer.cancel();
+		}
+		closeHeartbeatChannel();
+		stopGossip();
+		stopHeartbeatPush();
+		stopGroups();
+	}
 }
@@ -1,13 +1,20 @@
 package com.mps.pearl.core;
 
-import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import com.mps.pearl.util.Constant;
 import com.mps.pearl.util.Logger;
+import com.mps.pearl.util.Settings;
+import com.mps.pearl.util.TaskExecutor;
 
 /**
  * NodeManager class interact with Nodes of the System
- * and configure them to run as a Threads in a System.
+ * and configure them to run as a Tasks of the TaskExecutor.
  * 
  * It hold the reference to the Current Server Node in 
  * the System.
@@ -51,12 +58,22 @@ public class NodeManager {
 	/**
 	 * A Node instance as a Server or Coordinator Node
 	 */
-	private Node mServerNode;
+	private volatile Node mServerNode;
+	
+	/**
+	 * Time of the last termination of a Server Node, read from System.nanoTime()
+	 */
+	private volatile long mTerminatedNanos;
+	
+	/**
+	 * The Election over the wire of the Node of the process, or null if all the Nodes run in this process
+	 */
+	private volatile WireElection mWireElection;
 	
 	/**
 	 * An instance of NodeManager class
 	 */
-	private static NodeManager INSTANCE;
+	private static final NodeManager INSTANCE = new NodeManager();
 	
 	/**
 	 * Creates a NodeManager object
@@ -70,40 +87,42 @@ public class NodeManager {
 	 * Returns the unique NodeManager object associated with this System, if any.
 	 * @return instance the NodeManager instance
 	 */
-	public static synchronized NodeManager getInstance(){
-		if(INSTANCE == null)
-			INSTANCE = new NodeManager();
+	public static NodeManager getInstance(){
 		return INSTANCE;
 	}
 	
 	/**
-	 * A LinkedHashMap<Integer, Thread> with Integer as Id of the ThreadedNode and Thread as ThreadedNode
+	 * A Map<Integer, Future<?>> with Integer as Id of the Node and Future as the running NodeRunnable
 	 */
-	private LinkedHashMap<Integer, Thread> mNodeRunnableListMap;
+	private Map<Integer, Future<?>> mNodeRunnableListMap;
 	
 	/**
 	 * This method initialize the Nodes of the System and set Server Node or 
 	 * the Coordinator Of the System. It perform task to ensure Nodes running in a System. 	
+	 * With a term log, a restarted System resumes with the Coordinator of its last term.
 	 */
 	public void init(){
-		if(Logger.DEBUG)Logger.d(TAG, "init()");
-		
-		final int SYSTEM_NODES_SIZE = Resource.getInstance().getNodeList().size();
+		Logger.d(TAG, "init()");
 		
-		// sort the list to find the highest index Node
-		Collections.sort(Resource.getInstance().getNodeList());
+		final int SYSTEM_NODES_SIZE = Resource.getInstance().size();
 		
 		// create NodeRunnables 
-		mNodeRunnableListMap = new LinkedHashMap<Integer, Thread>(SYSTEM_NODES_SIZE);
+		mNodeRunnableListMap = new ConcurrentHashMap<Integer, Future<?>>(SYSTEM_NODES_SIZE);
+		
+		if( Settings.getInstance().getInt(Constant.KEY_NODE_ID, -1) >= 0 ){
+			initProcess();
+			return;
+		}
+		
+		// 1. the Coordinator of the last term, or the highest Node
+		Node coordinator = recoverCoordinator();
 		
-		for(int indx = 0 ; indx < Resource.getInstance().getNodeList().size() ; indx++ ){
-			if(indx == 0 ){
+		// the Nodes are ordered from the highest index Node
+		for(Node node : Resource.getInstance().getNodes()){
+			if(node == coordinator ){
 				
-				// add the thread to the collection
-				Node node = Resource.getInstance().getNodeList().get(indx) ;
-				mNodeRunnableListMap.put(node.getId(), new NodeRunnable(node));
 				// 2. set Server Node
-				setServerNode(Resource.getInstance().getNodeList().get(indx));
+				setServerNode(node);
 				
 				// set the coordinator Flag for the Node
 				this.mServerNode.setCoordinatorFlag(true);
@@ -114,26 +133,110 @@ public class NodeManager {
 				bindServerNode();
 				
 			}else{
-				// add the thread to the collection
-				Node node = Resource.getInstance().getNodeList().get(indx) ;
-				mNodeRunnableListMap.put(node.getId(), new NodeRunnable(node));
-				// start the Runnable Node 
-				mNodeRunnableListMap.get(node.getId()).start();
+				// start the Runnable Node and add it to the collection
+				mNodeRunnableListMap.put(node.getId(), TaskExecutor.getInstance().submit(new NodeRunnable(node)));
+			}
+		}
+	}
+	
+	/**
+	 * This method runs the single Node hosted by the process, which takes
+	 * part in the System with the Nodes of the other processes. The Node
+	 * starts as an Other Node, and its first ping begins an Election over
+	 * the wire, which finds the running Coordinator or declares a new one.
+	 * A restarted Node begins after the last term of its term log.
+	 */
+	private void initProcess(){
+		Node node = Resource.getInstance().getHighestNode();
+		if( node == null ){
+			Logger.e(TAG, "initProcess() : Node {} is not a member", Settings.getInstance().getString(Constant.KEY_NODE_ID, null));
+			return;
+		}
+		
+		long term = 0;
+		TermLog termLog = openTermLog();
+		if( termLog != null ){
+			term = termLog.getTerm();
+			Election.getInstance().restore(term, null);
+			Election.getInstance().setTermLog(termLog);
+		}
+		
+		WireElection wireElection = new WireElection(node, term);
+		try {
+			wireElection.start();
+		} catch (IOException e) {
+			Logger.e(TAG, "initProcess() : {} : {}", node, e.getMessage());
+			return;
+		}
+		mWireElection = wireElection;
+		Logger.i(TAG, "initProcess() : {}, term {}", node, term);
+		startNode(node);
+	}
+	
+	/**
+	 * Opens the term log, if any
+	 * @return the open TermLog, or null if the System keeps no term log
+	 */
+	private TermLog openTermLog(){
+		Settings settings = Settings.getInstance();
+		String fileName = settings.getString(Constant.KEY_TERM_LOG, null);
+		if( fileName == null || fileName.isEmpty() ) return null;
+		
+		TermLog termLog = new TermLog(new File(fileName), Constant.TERM_LOG_SIZE,
+				settings.getLong(Constant.KEY_TERM_LOG_SYNC_MILLIS, Constant.TERM_LOG_SYNC_MILLIS));
+		try {
+			termLog.open();
+		} catch (IOException e) {
+			Logger.e(TAG, "openTermLog() : term log {} not opened : {}", fileName, e.getMessage());
+			return null;
+		}
+		return termLog;
+	}
+	
+	/**
+	 * Opens the term log, if any, and restores the Election of the System
+	 * from it. The Coordinator of the last term is reinstated in its term,
+	 * if it is still a member. Otherwise the highest Node is declared in a
+	 * new term, so a former Coordinator never comes back in a stale term.
+	 * 
+	 * @return the Node to bind as the Server Node
+	 */
+	private Node recoverCoordinator(){
+		Node highest = Resource.getInstance().getHighestNode();
+		long start = System.nanoTime();
+		TermLog termLog = openTermLog();
+		if( termLog == null ) return highest;
+		
+		Election election = Election.getInstance();
+		Node coordinator = Resource.getInstance().getNode(termLog.getCoordinatorId());
+		election.restore(termLog.getTerm(), coordinator);
+		election.setTermLog(termLog);
+		if( coordinator == null ){
+			coordinator = highest;
+			if( termLog.getTerm() > 0 ){
+				election.declare(coordinator);
+			}else if( coordinator != null ){
+				// the first start, the highest Node serves the term 0
+				termLog.append(TermLog.COORDINATOR, 0, coordinator.getId());
 			}
 		}
+		
+		Logger.i(TAG, "recoverCoordinator() : term {}, coordinator {}, recovered in {} us", election.getTerm(),
+				coordinator, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+		return coordinator;
 	}
 	
 	/**
 	 * 
 	 * This class represents Nodes as NodeRunnable. Each Node of the System 
-	 * is represented as Thread. Node can either do ping action to Coordinator Node
-	 * or can perform server task of listening to the other Nodes. 
+	 * is represented as a Task of the TaskExecutor. Node can either do ping action 
+	 * to Coordinator Node or can perform server task of listening to the other Nodes. 
 	 * 
 	 * @author msingh
 	 * @version 1.0 20 Jan, 2014
 	 *
 	 */
-	class NodeRunnable extends Thread{
+	class NodeRunnable implements Runnable{
 
 		/**
 		 * An instance of Node class
@@ -142,7 +245,7 @@ public class NodeManager {
 		
 		/**
 		 * Creates an NodeRunnable object.
-		 * @param node The Node which should be bind to the Thread
+		 * @param node The Node which should be bind to the Task
 		 */
 		public NodeRunnable(Node node) {
 			// TODO Auto-generated constructor stub
@@ -150,12 +253,17 @@ public class NodeManager {
 		}
 		
 		/**
-		 * This method is an entry point to run the Node in a Thread. It 
+		 * This method is an entry point to run the Node in a Task. It 
 		 * perform either Server handling role or Ping coodination role.  
 		 */
 		@Override
 		public void run() {
-			if(Logger.DEBUG)Logger.d(TAG, "NodeRunnable.run() : " + currentNode + ", isCoordinatorFlag :" + currentNode.isCoordinatorFlag());
+			Logger.d(TAG, "NodeRunnable.run() : {}, isCoordinatorFlag :{}", currentNode, currentNode.isCoordinatorFlag());
+			// gossip the membership, or bind the endpoint of the push heartbeats, once, whatever the Role
+			currentNode.startGossip();
+			currentNode.startHeartbeatPush();
+			// take part in the election groups of the Node
+			currentNode.startGroups();
 				
 			if(currentNode.isCoordinatorFlag()){
 				// terminate the SERVER NODE :: COORDINATOR NODE after time in seconds, Constant.SERVER_ABORT_EVERY_SECONDS
@@ -174,28 +282,128 @@ public class NodeManager {
 	 * This method bind the Node as Server Node ( or Coordinator Node) and 
 	 * assign the role to the new Node as Coordinator. 
 	 */
-	public void  bindServerNode(){
-		if(Logger.DEBUG)Logger.d(TAG, "bindServerNode() : " + mServerNode);
+	public synchronized void  bindServerNode(){
+		Logger.d(TAG, "bindServerNode() : {}", mServerNode);
 		if(mServerNode != null){
-			Thread serverNodeThread = mNodeRunnableListMap.get(mServerNode.getId());
-			if(Logger.DEBUG)Logger.d(TAG, "bindServerNode() : " + mServerNode + ", State : " + serverNodeThread.getState()  );
+			Future<?> serverNodeTask = mNodeRunnableListMap.get(mServerNode.getId());
+			Logger.d(TAG, "bindServerNode() : {}, Done : {}", mServerNode, (serverNodeTask == null || serverNodeTask.isDone()));
 			
-			if( serverNodeThread.getState() == Thread.State.TERMINATED ){
-				// remove the mapping 
-				mNodeRunnableListMap.remove(mServerNode.getId());
-				// create the new thread
-				serverNodeThread = new NodeRunnable(mServerNode);
-				// add the new mapping
-				mNodeRunnableListMap.put(mServerNode.getId(), serverNodeThread);
-				// start the new thread
-				serverNodeThread.start();
-			}else if( serverNodeThread.getState() == Thread.State.NEW ){
-				// start the new thread
-				serverNodeThread.start();
+			if( serverNodeTask == null || serverNodeTask.isDone() ){
+				// start the new task and replace the mapping
+				mNodeRunnableListMap.put(mServerNode.getId(), TaskExecutor.getInstance().submit(new NodeRunnable(mServerNode)));
 			}
 		}
 	}
 	
+	/**
+	 * This method terminates the Server Node ( or Coordinator Node ), if the 
+	 * Node is still the Server Node. The abort timer of the Coordinator and the 
+	 * failure detectors of the Other Nodes may both terminate it, only the 
+	 * first one does. 
+	 * 
+	 * @param node the Server Node to terminate
+	 * @return True, if the Node was terminated, False, if it is no longer the Server Node
+	 */
+	public synchronized boolean terminateServerNode(Node node){
+		Logger.d(TAG, "terminateServerNode() : {}, Server Node : {}", node, mServerNode);
+		if( node == null || node != mServerNode ) return false;
+		
+		mTerminatedNanos = System.nanoTime();
+		node.abortCoordinator();
+		return true;
+	}
+	
+	/**
+	 * This method adds a Node which joined the System while it runs. A Node 
+	 * with an Id lower than the Server Node pings it, as the Other Nodes. 
+	 * A Node with an Id higher than the Server Node takes over as the new 
+	 * Server Node, and the former one pings it, so no other Node takes part
+	 * in an Election. While an Election runs, the Node joins it on its 
+	 * first ping.
+	 * 
+	 * @param node the Node which joined the System
+	 * @return True, if the Node was added, False, if its Id is already running
+	 */
+	public synchronized boolean join(Node node){
+		Logger.d(TAG, "join() : {}, Server Node : {}", node, mServerNode);
+		if( !Resource.getInstance().add(node) ) return false;
+		
+		Node serverNode = mServerNode;
+		if( serverNode == null || node.getId() < serverNode.getId() ){
+			startNode(node);
+			return true;
+		}
+		
+		// the Node bullies the Server Node
+		serverNode.stepDown();
+		Election.getInstance().declare(node);
+		setServerNode(node);
+		node.setCoordinatorFlag(true);
+		node.setServerListening(true);
+		bindServerNode();
+		
+		// the former Server Node plays the Role as OTHER NODE
+		startNode(serverNode);
+		return true;
+	}
+	
+	/**
+	 * This method binds the successor of a terminated Server Node as the new
+	 * Server Node, declared in a new term without an Election. The claim
+	 * fails once a Server Node is bound, or once an Election has decided
+	 * another running Coordinator. The claim prints as an Election of the
+	 * successor alone, e [i] then c i.
+	 *
+	 * @param successor the running Node with the highest Id
+	 * @return True, if the successor is the new Server Node, False, if another Node was bound
+	 */
+	public synchronized boolean claim(Node successor){
+		Logger.d(TAG, "claim() : {}, Server Node : {}", successor, mServerNode);
+		if( mServerNode != null || successor.isDownFlag() ) return false;
+
+		Election.State state = Election.getInstance().getState();
+		Node decided = state.getCoordinator();
+		if( state.getPhase() == Election.Phase.DECIDED && decided != successor && !decided.isDownFlag() ) return false;
+
+		// print to view, as the successor would begin the Election
+		Election.getInstance().view("e [" + successor.getId() + "]");
+		Election.getInstance().declare(successor);
+		setServerNode(successor);
+		successor.setCoordinatorFlag(true);
+		successor.setServerListening(true);
+		bindServerNode();
+		return true;
+	}
+
+	/**
+	 * This method removes a Node which left the System while it runs. The 
+	 * Server Node is terminated, so the Other Nodes elect a new one. Any 
+	 * other Node stops pinging, and leaves the running Election, if any.
+	 * 
+	 * @param node the Node which left the System
+	 */
+	public synchronized void leave(Node node){
+		Logger.d(TAG, "leave() : {}, Server Node : {}", node, mServerNode);
+		if( node == mServerNode ){
+			terminateServerNode(node);
+			return;
+		}
+		
+		node.retire();
+		Resource.getInstance().remove(node);
+		Election.getInstance().leave(node);
+		
+		Future<?> nodeTask = mNodeRunnableListMap.remove(node.getId());
+		if( nodeTask != null ) nodeTask.cancel(false);
+	}
+	
+	/**
+	 * Starts the Task of a Node and replaces the mapping
+	 */
+	private void startNode(Node node){
+		mNodeRunnableListMap.put(node.getId(), TaskExecutor.getInstance().submit(new NodeRunnable(node)));
+	}
+	
 	/*
 	 * ********************* GETTER & SETTER *************************
 	 */
@@ -207,13 +415,30 @@ public class NodeManager {
 	public Node getServerNode() {
 		return mServerNode;
 	}
+	
+	/**
+	 * Returns the Election over the wire of the Node of the process
+	 * @return the WireElection, or null if all the Nodes run in this process
+	 */
+	public WireElection getWireElection() {
+		return mWireElection;
+	}
+	
+	/**
+	 * Returns the time of the last termination of a Server Node
+	 * @return the time in nanoseconds read from System.nanoTime(), or 0 if
+	 * no Server Node was terminated yet
+	 */
+	public long getTerminatedNanos() {
+		return mTerminatedNanos;
+	}
 
 	/**
 	 * Sets the Server Node or Coordinator Node of the System
 	 * @param mServerNode the Server Node or Coordinator Node to bind 
 	 */
 	public void setServerNode(Node mServerNode) {
-		if(Logger.DEBUG)Logger.d(TAG, "setServerNode() : "  + mServerNode);
+		Logger.d(TAG, "setServerNode() : {}", mServerNode);
 		// set the value
 		this.mServerNode = mServerNode;
 	}
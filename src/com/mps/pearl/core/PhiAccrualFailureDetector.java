@@ -0,0 +1,180 @@
+package com.mps.pearl.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class implements the phi accrual failure detector. For each observed
+ * Node it keeps a sliding window of the intervals between the heartbeats,
+ * and computes phi, the suspicion level of the Node, from the time since
+ * the last heartbeat and the distribution of the intervals :
+ *
+ * phi = -log10( P(interval > time since last heartbeat) )
+ *
+ * The distribution is taken as normal, with its mean and standard deviation
+ * taken from the window. A Node is suspected once phi is above a threshold,
+ * so the detection adapts to the actual heartbeat cadence : it is quick on a
+ * steady network, and tolerant when the intervals vary, eg during GC pauses.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class PhiAccrualFailureDetector implements FailureDetector {
+
+	/**
+	 * Phi above which a Node is suspected
+	 */
+	private final double mThreshold;
+
+	/**
+	 * Number of intervals kept for each Node
+	 */
+	private final int mWindowSize;
+
+	/**
+	 * Lower bound of the standard deviation in nanoseconds
+	 */
+	private final double mMinStdDeviationNanos;
+
+	/**
+	 * Pause in nanoseconds which is always tolerated on top of the mean interval
+	 */
+	private final long mAcceptablePauseNanos;
+
+	/**
+	 * Expected interval between the heartbeats, used until the window has samples
+	 */
+	private final long mExpectedIntervalNanos;
+
+	/**
+	 * A ConcurrentHashMap<Integer, History> with Id of the observed Node as Key
+	 */
+	private final ConcurrentHashMap<Integer, History> mHistories = new ConcurrentHashMap<Integer, History>();
+
+	/**
+	 * Creates a PhiAccrualFailureDetector object.
+	 *
+	 * @param threshold the phi above which a Node is suspected
+	 * @param windowSize the number of intervals kept for each Node
+	 * @param minStdDeviationMillis the lower bound of the standard deviation
+	 * @param acceptablePauseMillis the pause always tolerated on top of the mean interval
+	 * @param expectedIntervalMillis the expected interval between the heartbeats
+	 */
+	public PhiAccrualFailureDetector(double threshold, int windowSize, long minStdDeviationMillis,
+			long acceptablePauseMillis, long expectedIntervalMillis) {
+		this.mThreshold = threshold;
+		this.mWindowSize = Math.max(2, windowSize);
+		this.mMinStdDeviationNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, minStdDeviationMillis));
+		this.mAcceptablePauseNanos = TimeUnit.MILLISECONDS.toNanos(acceptablePauseMillis);
+		this.mExpectedIntervalNanos = TimeUnit.MILLISECONDS.toNanos(expectedIntervalMillis);
+	}
+
+	@Override
+	public void heartbeat(int nodeId, long nowNanos) {
+		History history = mHistories.get(nodeId);
+		if (history == null) {
+			History created = new History(mWindowSize, mExpectedIntervalNanos);
+			history = mHistories.putIfAbsent(nodeId, created);
+			if (history == null) history = created;
+		}
+		history.add(nowNanos);
+	}
+
+	@Override
+	public double suspicion(int nodeId, long nowNanos) {
+		History history = mHistories.get(nodeId);
+		return history == null ? 0 : history.phi(nowNanos, mMinStdDeviationNanos, mAcceptablePauseNanos);
+	}
+
+	@Override
+	public boolean isAvailable(int nodeId, long nowNanos) {
+		return suspicion(nodeId, nowNanos) < mThreshold;
+	}
+
+	@Override
+	public void remove(int nodeId) {
+		mHistories.remove(nodeId);
+	}
+
+	/**
+	 * This class holds the sliding window of the heartbeat intervals of a Node
+	 */
+	private static class History {
+
+		/**
+		 * Ring buffer of the intervals in nanoseconds
+		 */
+		private final long[] intervals;
+
+		/**
+		 * Index of the next interval to write
+		 */
+		private int next;
+
+		/**
+		 * Number of intervals in the window
+		 */
+		private int count;
+
+		/**
+		 * Sum of the intervals of the window
+		 */
+		private double sum;
+
+		/**
+		 * Sum of the squared intervals of the window
+		 */
+		private double squaredSum;
+
+		/**
+		 * Arrival time of the last heartbeat, or -1
+		 */
+		private long lastArrival = -1;
+
+		History(int windowSize, long expectedIntervalNanos) {
+			this.intervals = new long[windowSize];
+			// seed the window with the expected interval, with some variance,
+			// so the first heartbeats do not look suspicious
+			record(expectedIntervalNanos - expectedIntervalNanos / 4);
+			record(expectedIntervalNanos + expectedIntervalNanos / 4);
+		}
+
+		synchronized void add(long nowNanos) {
+			// a heartbeat older than the last one does not move the arrival back
+			if (lastArrival >= 0 && nowNanos <= lastArrival) return;
+			if (lastArrival >= 0) record(nowNanos - lastArrival);
+			lastArrival = nowNanos;
+		}
+
+		private void record(long interval) {
+			if (count == intervals.length) {
+				long dropped = intervals[next];
+				sum -= dropped;
+				squaredSum -= (double) dropped * dropped;
+			} else {
+				count++;
+			}
+			intervals[next] = interval;
+			next = (next + 1) % intervals.length;
+			sum += interval;
+			squaredSum += (double) interval * interval;
+		}
+
+		synchronized double phi(long nowNanos, double minStdDeviationNanos, long acceptablePauseNanos) {
+			if (lastArrival < 0) return 0;
+
+			double mean = sum / count;
+			double variance = Math.max(0, squaredSum / count - mean * mean);
+			double stdDeviation = Math.max(Math.sqrt(variance), minStdDeviationNanos);
+			double elapsed = nowNanos - lastArrival;
+
+			// logistic approximation of the cumulative normal distribution
+			double y = (elapsed - (mean + acceptablePauseNanos)) / stdDeviation;
+			double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+			if (elapsed > mean + acceptablePauseNanos) return -Math.log10(e / (1.0 + e));
+			return -Math.log10(1.0 - 1.0 / (1.0 + e));
+		}
+	}
+}
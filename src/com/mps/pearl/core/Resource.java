@@ -1,112 +1,202 @@
 package com.mps.pearl.core;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.mps.pearl.util.Logger;
 
 /**
  * This class act as Resource Pool for the system. It
- * configure the Nodes read from the text file. It hold List of 
- * Nodes present in the system.
- * 
+ * configure the Nodes read from the text file. It hold the Nodes
+ * present in the system.
+ *
+ * The Nodes are indexed by Id in descending order in concurrent skip
+ * lists, so the election and ping threads share them without locks :
+ * add and remove are O(log n), the highest running Node is the head of
+ * the index, and iterations walk a weakly consistent view which never
+ * throws ConcurrentModificationException.
+ *
  * @author msingh
- * @version 1.0 20 Jan, 2014
+ * @version 1.1
  *
  */
 
 public class Resource {
-	
+
 	/**
 	 * A Logger tag
 	 */
 	private final String TAG = Resource.class.getSimpleName();
-	
+
+	/**
+	 * A ConcurrentSkipListMap<Integer, Node> to hold all the running nodes
+	 * in a System, with Id as Key in descending order
+	 */
+	private final ConcurrentSkipListMap<Integer, Node> mNodes;
+
 	/**
-	 * A List<Node to hold all the nodes in a System
+	 * A ConcurrentSkipListMap<Integer, Node> to hold all the terminated nodes
+	 * in a System, with Id as Key in descending order
 	 */
-	private List<Node> mNodeList;
-	
+	private final ConcurrentSkipListMap<Integer, Node> mTerminatedNodes;
+
 	/**
-	 * A List<Node to hold all the terminated nodes in a System
+	 * Number of running Nodes, as the size of a skip list is not a constant time query
 	 */
-	private List<Node> mTerminatedNodeList;
-	
+	private final AtomicInteger mSize;
+
 	/**
-	 * An Instance of Resource class 
+	 * The members of the System read from the configuration file, hosted
+	 * here or not
 	 */
-	private static Resource INSTANCE;
+	private volatile Membership mMembership = Membership.EMPTY;
 
 	/**
-	 * A Node with Highest Index Id
+	 * An Instance of Resource class
 	 */
-	private Node mHighNode;
-	
+	private static final Resource INSTANCE = new Resource();
+
 	/**
-	 * Creates a Resource object.
+	 * Creates a Resource object. The System uses the unique instance
+	 * returned by getInstance(), own instances serve the benchmarks.
 	 */
-	private Resource(){
-		// private to hold single instance
-		mNodeList = new ArrayList<Node>(); 
-		mTerminatedNodeList = new ArrayList<Node>();
-		mHighNode = null;
+	public Resource(){
+		mNodes = new ConcurrentSkipListMap<Integer, Node>(Collections.reverseOrder());
+		mTerminatedNodes = new ConcurrentSkipListMap<Integer, Node>(Collections.reverseOrder());
+		mSize = new AtomicInteger();
 	}
-	
+
 	/**
 	 * Returns the unique Resource object associated with this System, if any.
 	 * @return the instance of Resource
 	 */
-	public static synchronized Resource getInstance(){
-		if(INSTANCE == null)
-			INSTANCE = new Resource();
+	public static Resource getInstance(){
 		return INSTANCE;
 	}
 
 	/**
-	 * Returns the List of Nodes in a System  
-	 * @return the List of Nodes
+	 * Returns the running Nodes in a System, from the highest Id to the lowest.
+	 * The view reflects the Nodes added or terminated during the iteration, or not.
+	 * @return the Collection of Nodes
+	 */
+	public Collection<Node> getNodes() {
+		return Collections.unmodifiableCollection(mNodes.values());
+	}
+
+	/**
+	 * Returns the terminated Nodes in a System, from the highest Id to the lowest
+	 * @return the Collection of terminated Nodes
+	 */
+	public Collection<Node> getTerminatedNodes() {
+		return Collections.unmodifiableCollection(mTerminatedNodes.values());
+	}
+
+	/**
+	 * Returns the number of running Nodes in a System
+	 * @return the number of Nodes
+	 */
+	public int size() {
+		return mSize.get();
+	}
+
+	/**
+	 * Returns the members of the System read from the configuration file.
+	 * The running Nodes are the members hosted by this process.
+	 * @return the Membership
+	 */
+	public Membership getMembership() {
+		return mMembership;
+	}
+
+	/**
+	 * Sets the members of the System read from the configuration file
+	 * @param membership the Membership
+	 */
+	public void setMembership(Membership membership) {
+		this.mMembership = membership;
+	}
+
+	/**
+	 * Returns the running Node with the highest Id
+	 * @return the Node with Highest Index Id, or null if no Node is running
+	 */
+	public Node getHighestNode() {
+		Map.Entry<Integer, Node> entry = mNodes.firstEntry();
+		return entry == null ? null : entry.getValue();
+	}
+
+	/**
+	 * Returns the running Node with the highest Id below an Id
+	 * @param id the Id to look below
+	 * @return the next Node below the Id, or null if no Node is running below the Id
+	 */
+	public Node getNextLowerNode(int id) {
+		Map.Entry<Integer, Node> entry = mNodes.higherEntry(id);
+		return entry == null ? null : entry.getValue();
+	}
+
+	/**
+	 * Returns the running Node with an Id
+	 * @param id the Id of the Node
+	 * @return the Node, or null if no Node with the Id is running
 	 */
-	public List<Node> getNodeList() {
-		return mNodeList;
+	public Node getNode(int id) {
+		return mNodes.get(id);
 	}
-	
+
 	/**
-	 * Returns the terminated List of Nodes in a System  
-	 * @return the terminated List of Nodes
+	 * Returns the terminated Node with an Id
+	 * @param id the Id of the Node
+	 * @return the Node, or null if no Node with the Id is terminated
 	 */
-	public List<Node> getTerminatedNodeList() {
-		return mNodeList;
+	public Node getTerminatedNode(int id) {
+		return mTerminatedNodes.get(id);
 	}
-	
+
 	/**
-	 * Returns True, if the Node is successfully added to the terminated Node list. 
+	 * Returns True, if the Node is successfully added to the terminated Node list.
 	 * False, if the Node is not able to added into terminated list.
-	 *  
-	 * @param terminatedNode the Node to be added into terminated Node list 
-	 * @return the state of added Node into terminated list. 
+	 *
+	 * @param terminatedNode the Node to be added into terminated Node list
+	 * @return the state of added Node into terminated list.
 	 */
 	public boolean addTerminatedNode(Node terminatedNode){
-		// remove the node from the main list
-		boolean removedNodeStatus = mNodeList.remove(terminatedNode) ;
-		if(Logger.DEBUG)Logger.d(TAG, "addTerminatedNode() Node removed from main list : [" + terminatedNode + "]"  + removedNodeStatus);
-		if(Logger.DEBUG)Logger.d(TAG, "addTerminatedNode() : Size Node List " + mNodeList.size());
-		
-		return terminatedNode == null ? false : mTerminatedNodeList.add(terminatedNode);
+		if( terminatedNode == null ) return false;
+
+		// remove the node from the running nodes
+		boolean removedNodeStatus = mNodes.remove(terminatedNode.getId(), terminatedNode);
+		if( removedNodeStatus ) mSize.decrementAndGet();
+		Logger.d(TAG, "addTerminatedNode() Node removed from main list : [{}]{}", terminatedNode, removedNodeStatus);
+		Logger.d(TAG, "addTerminatedNode() : Size Node List {}", mSize.get());
+
+		return mTerminatedNodes.put(terminatedNode.getId(), terminatedNode) == null;
+	}
+
+	/**
+	 * Returns True, if the Node is successfully removed from the running Nodes,
+	 * once it has left the System. The Node is not added to the terminated Nodes.
+	 *
+	 * @param node the Node to remove
+	 * @return True, if the Node was running, otherwise False
+	 */
+	public boolean remove(Node node) {
+		if( node == null || !mNodes.remove(node.getId(), node) ) return false;
+		mSize.decrementAndGet();
+		return true;
 	}
-	
+
 	/**
 	 * Returns True, if the Node is successfully added, otherwise false.
 	 * @param node the Node to add into Resource Node list
-	 * @return True, if the Node is successfully added, otherwise false.
+	 * @return True, if the Node is successfully added, False, if the Id of the
+	 * Node is already used by a running Node
 	 */
 	public boolean add(Node node) {
-		if(mHighNode == null)
-			mHighNode = node;
-		else{
-			if( mHighNode.getId() < node.getId() ){
-				mHighNode = node;
-			}
-		}
-		return node == null ? false : mNodeList.add(node);
+		if( node == null || mNodes.putIfAbsent(node.getId(), node) != null ) return false;
+		mSize.incrementAndGet();
+		return true;
 	}
 }
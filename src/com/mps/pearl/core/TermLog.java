@@ -0,0 +1,381 @@
+package com.mps.pearl.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import com.mps.pearl.metrics.Metrics;
+import com.mps.pearl.util.Logger;
+
+/**
+ * This class implements the durable log of the terms of the System. The
+ * Election appends a record for each term begun and for each Coordinator
+ * declared to a memory-mapped file, so a restarted System resumes in the
+ * last term with the last Coordinator instead of electing it again.
+ *
+ * An append copies the record to the mapped file and returns, it never
+ * waits for the disk. A sync Thread forces the appended records to the
+ * disk in batches, at most every term.log.sync.millis milliseconds : a
+ * crash of the process loses no record, a crash of the host loses the
+ * records of the last batch at most.
+ *
+ * A record holds 32 bytes, its checksum is written last so a torn record
+ * ends the log :
+ *
+ * kind (byte) | pad (3 bytes) | node id (int) | term (long) | time millis (long) | crc32 (int) | pad (int)
+ *
+ * Once the file is full, the last term and the last Coordinator are
+ * written again at its start, as the later records win on recovery.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class TermLog implements Runnable {
+
+	/**
+	 * A Logger tag
+	 */
+	private final String TAG = TermLog.class.getSimpleName();
+
+	/**
+	 * Kind of the record of a term begun, with the Id of the Node which began it
+	 */
+	public static final byte ELECTION = 1;
+
+	/**
+	 * Kind of the record of a Coordinator declared, with the Id of the Coordinator
+	 */
+	public static final byte COORDINATOR = 2;
+
+	/**
+	 * Size in bytes of a record
+	 */
+	private static final int RECORD_SIZE = 32;
+
+	/**
+	 * Offset of the checksum in a record, the checksum covers the bytes before it
+	 */
+	private static final int CRC_OFFSET = 24;
+
+	/**
+	 * Id of no Node
+	 */
+	private static final int NONE = -1;
+
+	/**
+	 * The file of the log
+	 */
+	private final File mFile;
+
+	/**
+	 * Size in bytes of the mapped file, a multiple of the record size
+	 */
+	private final int mCapacity;
+
+	/**
+	 * Interval in milliseconds between two forces to the disk
+	 */
+	private final long mSyncMillis;
+
+	/**
+	 * The checksum of the records, guarded by this
+	 */
+	private final CRC32 mCrc = new CRC32();
+
+	/**
+	 * The checksummed bytes of a record, guarded by this
+	 */
+	private final byte[] mRecord = new byte[CRC_OFFSET];
+
+	/**
+	 * The channel of the file
+	 */
+	private FileChannel mChannel;
+
+	/**
+	 * The mapped file
+	 */
+	private MappedByteBuffer mBuffer;
+
+	/**
+	 * Offset of the next record
+	 */
+	private int mPosition;
+
+	/**
+	 * Boolean to indicate records were appended since the last force
+	 */
+	private boolean isDirty;
+
+	/**
+	 * Boolean to indicate the log is open
+	 */
+	private volatile boolean isOpen;
+
+	/**
+	 * The sync Thread
+	 */
+	private Thread mThread;
+
+	/**
+	 * Last term of the log
+	 */
+	private long mTerm;
+
+	/**
+	 * Id of the Node which began the last term, or NONE
+	 */
+	private int mInitiatorId = NONE;
+
+	/**
+	 * Term of the last Coordinator of the log
+	 */
+	private long mCoordinatorTerm;
+
+	/**
+	 * Id of the last Coordinator of the log, or NONE
+	 */
+	private int mCoordinatorId = NONE;
+
+	/**
+	 * Number of records read on recovery
+	 */
+	private int mRecovered;
+
+	/**
+	 * Creates a TermLog object.
+	 *
+	 * @param file the file of the log
+	 * @param capacity the size in bytes of the mapped file
+	 * @param syncMillis the interval in milliseconds between two forces to the disk
+	 */
+	public TermLog(File file, int capacity, long syncMillis) {
+		this.mFile = file;
+		this.mCapacity = Math.max(2, capacity / RECORD_SIZE) * RECORD_SIZE;
+		this.mSyncMillis = syncMillis;
+	}
+
+	/**
+	 * Maps the file, recovers the last term and the last Coordinator from
+	 * its records, and starts the sync Thread
+	 * @throws IOException if the file can not be mapped
+	 */
+	public synchronized void open() throws IOException {
+		if( isOpen ) return;
+		@SuppressWarnings("resource")
+		RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+		mChannel = file.getChannel();
+		mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, mCapacity);
+		recover();
+		isOpen = true;
+
+		mThread = new Thread(this, "TermLog-Sync");
+		mThread.setDaemon(true);
+		mThread.start();
+
+		// force the pending records before the JVM exits
+		Runtime.getRuntime().addShutdownHook(new Thread("TermLog-Shutdown") {
+			@Override
+			public void run() {
+				close();
+			}
+		});
+	}
+
+	/**
+	 * Reads the records up to the first empty or torn one
+	 */
+	private void recover() {
+		mPosition = 0;
+		mRecovered = 0;
+		while( mPosition < mCapacity ){
+			byte kind = mBuffer.get(mPosition);
+			if( (kind != ELECTION && kind != COORDINATOR) || mBuffer.getInt(mPosition + CRC_OFFSET) != checksum(mPosition) ) break;
+
+			apply(kind, mBuffer.getInt(mPosition + 4), mBuffer.getLong(mPosition + 8));
+			mPosition += RECORD_SIZE;
+			mRecovered++;
+		}
+		if( mPosition < mCapacity ) mBuffer.put(mPosition, (byte) 0);
+	}
+
+	/**
+	 * Applies a record to the last term and the last Coordinator, the
+	 * highest term wins
+	 */
+	private void apply(byte kind, int nodeId, long term) {
+		if( term >= mTerm ){
+			mTerm = term;
+			if( kind == ELECTION ) mInitiatorId = nodeId;
+		}
+		if( kind == COORDINATOR && term >= mCoordinatorTerm ){
+			mCoordinatorTerm = term;
+			mCoordinatorId = nodeId;
+		}
+	}
+
+	/**
+	 * Returns the checksum of the record at an offset
+	 */
+	private int checksum(int offset) {
+		for(int indx = 0 ; indx < CRC_OFFSET ; indx++){
+			mRecord[indx] = mBuffer.get(offset + indx);
+		}
+		mCrc.reset();
+		mCrc.update(mRecord, 0, CRC_OFFSET);
+		return (int) mCrc.getValue();
+	}
+
+	/**
+	 * Appends a record to the log. The record is in the mapped file once
+	 * the method returns, and on the disk after the next sync.
+	 *
+	 * @param kind ELECTION or COORDINATOR
+	 * @param term the term of the record
+	 * @param nodeId the Id of the Node which began the term, or of the Coordinator
+	 */
+	public synchronized void append(byte kind, long term, int nodeId) {
+		if( !isOpen ) return;
+		if( mPosition + RECORD_SIZE > mCapacity ) compact();
+
+		write(mPosition, kind, term, nodeId);
+		mPosition += RECORD_SIZE;
+		if( mPosition < mCapacity ) mBuffer.put(mPosition, (byte) 0);
+		apply(kind, nodeId, term);
+		Metrics.getInstance().getTermLogAppends().increment();
+
+		if( !isDirty ){
+			isDirty = true;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Writes a record at an offset, its checksum last
+	 */
+	private void write(int offset, byte kind, long term, int nodeId) {
+		mBuffer.put(offset, kind);
+		mBuffer.put(offset + 1, (byte) 0);
+		mBuffer.putShort(offset + 2, (short) 0);
+		mBuffer.putInt(offset + 4, nodeId);
+		mBuffer.putLong(offset + 8, term);
+		mBuffer.putLong(offset + 16, System.currentTimeMillis());
+		mBuffer.putInt(offset + CRC_OFFSET, checksum(offset));
+	}
+
+	/**
+	 * Writes the last Coordinator and the last term at the start of the
+	 * full file. A crash before the end leaves former records behind the
+	 * new ones, which lose to them on recovery.
+	 */
+	private void compact() {
+		int position = 0;
+		if( mCoordinatorId != NONE ){
+			write(position, COORDINATOR, mCoordinatorTerm, mCoordinatorId);
+			position += RECORD_SIZE;
+		}
+		if( mInitiatorId != NONE && mTerm > mCoordinatorTerm ){
+			write(position, ELECTION, mTerm, mInitiatorId);
+			position += RECORD_SIZE;
+		}
+		mBuffer.put(position, (byte) 0);
+		mPosition = position;
+		Logger.i(TAG, "compact() : {} records kept", position / RECORD_SIZE);
+	}
+
+	/**
+	 * This method forces the appended records to the disk, a batch every
+	 * sync interval, while the log is open
+	 */
+	@Override
+	public void run() {
+		while( isOpen ){
+			try {
+				synchronized (this) {
+					while( !isDirty && isOpen ) wait();
+				}
+				// let the records of the interval join the batch
+				TimeUnit.MILLISECONDS.sleep(mSyncMillis);
+			} catch (InterruptedException e) {
+				// closed, the last batch is forced below
+			}
+			sync();
+		}
+	}
+
+	/**
+	 * Forces the appended records to the disk. The appends do not wait
+	 * for the force, the records appended meanwhile join the next batch.
+	 */
+	public void sync() {
+		MappedByteBuffer buffer;
+		synchronized (this) {
+			if( !isDirty || mBuffer == null ) return;
+			isDirty = false;
+			buffer = mBuffer;
+		}
+		long start = System.nanoTime();
+		buffer.force();
+		Metrics.getInstance().getTermLogSync().record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+	}
+
+	/**
+	 * Stops the sync Thread, forces the pending records and closes the file
+	 */
+	public void close() {
+		Thread thread;
+		synchronized (this) {
+			if( !isOpen ) return;
+			isOpen = false;
+			thread = mThread;
+			notifyAll();
+		}
+		thread.interrupt();
+		try {
+			thread.join(TimeUnit.SECONDS.toMillis(1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		sync();
+		try {
+			mChannel.close();
+		} catch (IOException e) {
+			Logger.e(TAG, "close() : {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the last term of the log
+	 * @return the term, 0 if the log is empty
+	 */
+	public synchronized long getTerm() {
+		return mTerm;
+	}
+
+	/**
+	 * Returns the Id of the Coordinator of the last term
+	 * @return the Id, or -1 if no Coordinator was declared in the last term
+	 */
+	public synchronized int getCoordinatorId() {
+		return mCoordinatorTerm == mTerm ? mCoordinatorId : NONE;
+	}
+
+	/**
+	 * Returns the number of records read on recovery
+	 * @return the number of records
+	 */
+	public synchronized int getRecovered() {
+		return mRecovered;
+	}
+
+	@Override
+	public String toString() {
+		return mFile + " term " + getTerm() + " coordinator " + getCoordinatorId();
+	}
+}
@@ -1,17 +1,30 @@
 package com.mps.pearl.core;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.net.InetAddress;
-import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
-import java.util.Vector;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import com.mps.pearl.metrics.Metrics;
+import com.mps.pearl.net.CoordinatorServer;
+import com.mps.pearl.net.Deadline;
+import com.mps.pearl.net.GossipEndpoint;
+import com.mps.pearl.net.HeartbeatChannel;
+import com.mps.pearl.net.InMemoryTransport;
+import com.mps.pearl.net.Message;
+import com.mps.pearl.net.MessageCodec;
+import com.mps.pearl.net.SocketTransport;
+import com.mps.pearl.net.Transport;
 import com.mps.pearl.util.Constant;
 import com.mps.pearl.util.Logger;
+import com.mps.pearl.util.Settings;
+import com.mps.pearl.util.TaskExecutor;
 
 /**
  * This class represents Trait of the Node as Server or Client. The  
@@ -27,6 +40,9 @@ import com.mps.pearl.util.Logger;
  * The Client can perform election, if the client able to locate Server state 
  * as terminated.  
  * 
+ * Both traits talk over the Transport of the System, real Sockets or the 
+ * in-memory queues of a single JVM.
+ * 
  * @author msingh
  * @version 1.0 20 Jan, 2014
  *
@@ -52,7 +68,85 @@ public abstract class TraitClientServer {
 	/**
 	 * Boolean to hold the listening state of the Server 
 	 */
-	protected boolean isServerListening = true;
+	protected volatile boolean isServerListening = true;
+	
+	/**
+	 * The running Server, if the Node is the Coordinator
+	 */
+	private volatile CoordinatorServer mServer;
+	
+	/**
+	 * The kept open channel to ping the Server Node
+	 */
+	private volatile HeartbeatChannel mHeartbeatChannel;
+	
+	/**
+	 * The Deadline of the oneshot ping in flight, or null
+	 */
+	private volatile Deadline mPingDeadline;
+	
+	/**
+	 * Id of the Server Node which answered the last oneshot ping as busy
+	 */
+	private volatile int mBusyServerId = -1;
+	
+	/**
+	 * Time in nanoseconds before which the busy Server Node is not pinged again
+	 */
+	private volatile long mBusyUntilNanos;
+	
+	/**
+	 * The datagram endpoint of the Node, shared by the gossip, the push 
+	 * heartbeats and the election groups, or null
+	 */
+	private GossipEndpoint mEndpoint;
+	
+	/**
+	 * The Receivers of the datagrams of the endpoint, by message type
+	 */
+	private final AtomicReferenceArray<GossipEndpoint.Receiver> mReceivers = 
+			new AtomicReferenceArray<GossipEndpoint.Receiver>(Byte.MAX_VALUE + 1);
+	
+	/**
+	 * The Receiver of the endpoint, which hands each datagram to the 
+	 * Receiver of its message type
+	 */
+	private final GossipEndpoint.Receiver mDispatcher = new GossipEndpoint.Receiver() {
+		@Override
+		public void receive(ByteBuffer datagram) {
+			byte type = MessageCodec.peekType(datagram);
+			GossipEndpoint.Receiver receiver = type > 0 ? mReceivers.get(type) : null;
+			if( receiver != null ) receiver.receive(datagram);
+		}
+	};
+	
+	/**
+	 * The push heartbeats of the Node, if the Coordinator pushes them
+	 */
+	private volatile HeartbeatPush mHeartbeatPush;
+	
+	/**
+	 * The failure detector which decides if the Server Node is suspected, 
+	 * created on the first ping as the Settings are read after the Nodes
+	 */
+	private FailureDetector mFailureDetector;
+	
+	/**
+	 * The lease the Node grants to the Server Node, created on the first 
+	 * ping as the Settings are read after the Nodes
+	 */
+	private LeaderLease mLease;
+	
+	/**
+	 * The Server Node observed by the failure detector, or null
+	 */
+	private volatile Node mObservedNode;
+	
+	/**
+	 * Returns the Id of the Node
+	 * @return the integer Id of the Node
+	 */
+	public abstract int getId();
 	
 	/**
 	 * Returns the IP Address of the Node
@@ -100,49 +194,316 @@ public abstract class TraitClientServer {
 	 */
 	public void setServerListening(boolean isServerListening) {
 		this.isServerListening = isServerListening;
+		CoordinatorServer server = mServer;
+		if( !isServerListening && server != null ){
+			// stop the Server and close the connections of its Clients
+			server.stop();
+		}
 	}
 	
 	/**
 	 * This method perform ping operation to the Server Node
 	 */
 	protected void pingServerNode() {
-		if(Logger.DEBUG)Logger.d(TAG, "pingServerNode()");
+		Logger.d(TAG, "pingServerNode()");
 		
-		int portNumber = Integer.parseInt(NodeManager.getInstance().getServerNode().getPort());
-
-		// Open Socket to Ping ServerNode
-		if(Logger.DEBUG)Logger.d(TAG, "pingServerNode() : Opening Client Socket to Ping Server [" + NodeManager.getInstance().getServerNode().getIPAddress() + ":" + portNumber + "]" );
-		try  {
-				Socket clientSocket  = new Socket(NodeManager.getInstance().getServerNode().getIPAddress(), portNumber);
-			  
-
-			// Create Thread for Message Exchange between Server and Client
-			new MessageClientThread(clientSocket).start();  
-			
-		} catch (UnknownHostException e) {
-			if(Logger.DEBUG)Logger.e(TAG, "Don't know about host " + NodeManager.getInstance().getServerNode());
-			System.exit(1);
+		observeServerNode(NodeManager.getInstance().getServerNode());
+		
+		// the Server Node pushes its heartbeats, nothing to send
+		if( mHeartbeatPush != null ) return;
+		
+		if(!isOneshotPing()){
+			pingServerNodeOnChannel();
+			return;
+		}
+		
+		Node serverNode = NodeManager.getInstance().getServerNode();
+		if( serverNode == null ) return;
+		
+		// the busy Server Node asked to wait, its last reply stands until then
+		if( serverNode.getId() == mBusyServerId && System.nanoTime() - mBusyUntilNanos < 0 ) return;
+		
+		// Create Task for Message Exchange between Server and Client, the Task connects within the ping timeout
+		TaskExecutor.getInstance().submit(new MessageClientTask(serverNode));
+	}
+	
+	/**
+	 * This method ping the Server Node over the kept open channel of the Node. 
+	 * The channel connects again by itself, if the Server Node has changed.
+	 * 
+	 * @return True, if the Server Node replied, False, if it could not be reached
+	 */
+	protected boolean pingServerNodeOnChannel() {
+		Node serverNode = NodeManager.getInstance().getServerNode();
+		if( serverNode == null ) return false;
+		
+		if( mHeartbeatChannel == null ){
+			mHeartbeatChannel = getTransport().openChannel(getId());
+		}
+		boolean isActive = mHeartbeatChannel.ping(serverNode.getIPAddress(), Integer.parseInt(serverNode.getPort()),
+				Election.getInstance().getTerm());
+		if(Logger.isDebugEnabled())Logger.d(TAG, "pingServerNodeOnChannel() : {} isActive : {}", serverNode, isActive);
+		
+		Metrics metrics = Metrics.getInstance();
+		metrics.getPings().increment();
+		if( !isActive ) metrics.getPingFailures().increment();
+		long rttNanos = mHeartbeatChannel.getLastRttNanos();
+		if( rttNanos > 0 ) metrics.getPingRtt().record(TimeUnit.NANOSECONDS.toMicros(rttNanos));
+		
+		long lastReplyNanos = mHeartbeatChannel.getLastReplyNanos();
+		if( lastReplyNanos != 0 ){
+			getFailureDetector().heartbeat(serverNode.getId(), lastReplyNanos);
+			getLease().renew(serverNode.getId(), mHeartbeatChannel.getLastRequestNanos());
+		}
+		return isActive;
+	}
+	
+	/**
+	 * This method feeds a heartbeat pushed by the Server Node to the failure
+	 * detector, and renews the lease of the Server Node. The heartbeat of a 
+	 * former Server Node is dropped.
+	 * 
+	 * @param serverNodeId the Id of the Node which pushed the heartbeat
+	 * @param nowNanos the arrival time of the heartbeat, read from System.nanoTime()
+	 */
+	void heartbeatPushed(int serverNodeId, long nowNanos) {
+		Node serverNode = NodeManager.getInstance().getServerNode();
+		if( serverNode == null || serverNode.getId() != serverNodeId ) return;
+		
+		observeServerNode(serverNode);
+		getFailureDetector().heartbeat(serverNodeId, nowNanos);
+		getLease().renew(serverNodeId, nowNanos);
+	}
+	
+	/**
+	 * This method binds the datagram endpoint of the Node, once, and hands 
+	 * the datagrams of some message types to a Receiver. The gossip, the 
+	 * push heartbeats and the election groups share the endpoint, so a Node
+	 * holds a single datagram socket whatever it runs.
+	 * 
+	 * @param receiver the Receiver of the datagrams
+	 * @param types the message types of the datagrams
+	 * @return the bound GossipEndpoint
+	 * @throws IOException if the endpoint can not be bound
+	 */
+	synchronized GossipEndpoint openEndpoint(GossipEndpoint.Receiver receiver, byte... types) throws IOException {
+		if( mEndpoint == null ){
+			mEndpoint = getTransport().openEndpoint(getId(), IPAddress, Integer.parseInt(port), mDispatcher);
+		}
+		for(byte type : types){
+			mReceivers.set(type, receiver);
+		}
+		return mEndpoint;
+	}
+	
+	/**
+	 * This method stops to hand datagrams to a Receiver, and closes the 
+	 * datagram endpoint of the Node once no Receiver is left
+	 * 
+	 * @param receiver the Receiver of the datagrams
+	 */
+	synchronized void closeEndpoint(GossipEndpoint.Receiver receiver) {
+		boolean isShared = false;
+		for(int type = 0 ; type < mReceivers.length() ; type++){
+			GossipEndpoint.Receiver registered = mReceivers.get(type);
+			if( registered == receiver ){
+				mReceivers.set(type, null);
+			}else if( registered != null ){
+				isShared = true;
+			}
+		}
+		if( !isShared && mEndpoint != null ){
+			mEndpoint.close();
+			mEndpoint = null;
+		}
+	}
+	
+	/**
+	 * This method binds the endpoint of the push heartbeats of the Node, if
+	 * the Coordinator pushes them. The Node receives them while it is an
+	 * Other Node, and pushes them while it is the Coordinator.
+	 */
+	public synchronized void startHeartbeatPush() {
+		if( mHeartbeatPush != null || !isPushHeartbeat() ) return;
+		HeartbeatPush heartbeatPush = new HeartbeatPush(this);
+		try {
+			heartbeatPush.start();
+			mHeartbeatPush = heartbeatPush;
 		} catch (IOException e) {
-			if(Logger.DEBUG)Logger.e(TAG, "Couldn't get I/O for the connection to " + NodeManager.getInstance().getServerNode());
-			if(Logger.DEBUG)
-				e.printStackTrace();
+			Logger.e(TAG, "startHeartbeatPush() : [{}:{}] : {}", IPAddress, port, e.getMessage());
+		}
+	}
+	
+	/**
+	 * This method closes the endpoint of the push heartbeats of the Node
+	 */
+	synchronized void stopHeartbeatPush() {
+		if( mHeartbeatPush != null ) mHeartbeatPush.stop();
+	}
+	
+	/**
+	 * This method starts the observation of the Server Node by the failure 
+	 * detector. The arrivals of a former Server Node are forgotten, and the 
+	 * start of the observation counts as a first heartbeat, so a Server Node
+	 * which never replies is suspected as well.
+	 * 
+	 * @param serverNode the Server Node to observe
+	 */
+	private void observeServerNode(Node serverNode) {
+		if( serverNode == null ) return;
+		
+		// a restarted Node has the Id of the Node it replaces, but not its history
+		Node observedNode = mObservedNode;
+		if( observedNode == serverNode ) return;
+		
+		if( observedNode != null ){
+			getFailureDetector().remove(observedNode.getId());
+		}
+		getFailureDetector().heartbeat(serverNode.getId(), System.nanoTime());
+		mObservedNode = serverNode;
+	}
+	
+	/**
+	 * Returns the availability of the Server Node, as seen by the failure detector
+	 * 
+	 * @param serverNode the Server Node
+	 * @return True, if the Server Node is available, False, if it is suspected
+	 */
+	protected boolean isServerNodeAvailable(Node serverNode) {
+		long now = System.nanoTime();
+		boolean isAvailable = getFailureDetector().isAvailable(serverNode.getId(), now);
+		if( !isAvailable ){
+			if(Logger.isDebugEnabled())Logger.d(TAG, "isServerNodeAvailable() : {} suspected, suspicion : {}", serverNode, getFailureDetector().suspicion(serverNode.getId(), now));
+		}
+		return isAvailable;
+	}
+	
+	/**
+	 * Returns the failure detector of the Node, as configured in the Settings
+	 * @return the FailureDetector instance
+	 */
+	protected synchronized FailureDetector getFailureDetector() {
+		if( mFailureDetector != null ) return mFailureDetector;
+		
+		Settings settings = Settings.getInstance();
+		if( Constant.FAILURE_DETECTOR_FIXED.equals(settings.getString(Constant.KEY_FAILURE_DETECTOR, Constant.FAILURE_DETECTOR_PHI)) ){
+			mFailureDetector = new FixedTimeoutFailureDetector(
+					settings.getLong(Constant.KEY_FAILURE_FIXED_TIMEOUT_MILLIS, Constant.FAILURE_FIXED_TIMEOUT_MILLIS));
+			return mFailureDetector;
+		}
+		mFailureDetector = new PhiAccrualFailureDetector(
+				settings.getDouble(Constant.KEY_FAILURE_PHI_THRESHOLD, Constant.FAILURE_PHI_THRESHOLD),
+				settings.getInt(Constant.KEY_FAILURE_PHI_WINDOW, Constant.FAILURE_PHI_WINDOW),
+				settings.getLong(Constant.KEY_FAILURE_PHI_MIN_STD_DEVIATION_MILLIS, Constant.FAILURE_PHI_MIN_STD_DEVIATION_MILLIS),
+				settings.getLong(Constant.KEY_FAILURE_PHI_ACCEPTABLE_PAUSE_MILLIS, Constant.FAILURE_PHI_ACCEPTABLE_PAUSE_MILLIS),
+				settings.getLong(Constant.KEY_PING_INTERVAL_MILLIS, Constant.PING_INTERVAL_MILLIS));
+		return mFailureDetector;
+	}
+	
+	/**
+	 * Returns True, if the Server Node holds the lease of the Node. The Node 
+	 * does not begin an Election while it holds the lease.
+	 * 
+	 * @param serverNodeId the Id of the Server Node
+	 * @return True, if the lease of the Server Node has not expired
+	 */
+	protected boolean isLeaseHeld(int serverNodeId) {
+		long now = System.nanoTime();
+		if( !getLease().isHeld(serverNodeId, now) ) return false;
+		
+		if(Logger.isDebugEnabled())Logger.d(TAG, "isLeaseHeld() : [{}] holds the lease for {} ms", serverNodeId, getLease().getRemainingMillis(serverNodeId, now));
+		return true;
+	}
+	
+	/**
+	 * Returns the lease the Node grants to the Server Node, as configured in 
+	 * the Settings. The lease lasts two ping intervals, unless set.
+	 * @return the LeaderLease instance
+	 */
+	protected synchronized LeaderLease getLease() {
+		if( mLease != null ) return mLease;
+		
+		Settings settings = Settings.getInstance();
+		long pingIntervalMillis = settings.getLong(Constant.KEY_PING_INTERVAL_MILLIS, Constant.PING_INTERVAL_MILLIS);
+		mLease = new LeaderLease(
+				settings.getLong(Constant.KEY_LEASE_MILLIS, Constant.LEASE_PING_INTERVALS * pingIntervalMillis),
+				settings.getDouble(Constant.KEY_LEASE_DRIFT, Constant.LEASE_DRIFT));
+		return mLease;
+	}
+	
+	/**
+	 * Returns the Transport of the System, as configured in the Settings
+	 * @return the Transport the Nodes talk over
+	 */
+	protected Transport getTransport() {
+		if( Constant.TRANSPORT_MEMORY.equals(Settings.getInstance().getString(Constant.KEY_TRANSPORT, Constant.TRANSPORT_SOCKET)) ){
+			return InMemoryTransport.getInstance();
+		}
+		return SocketTransport.getInstance();
+	}
+	
+	/**
+	 * Returns True, if the Nodes gossip their membership instead of pinging the Server Node
+	 * @return True, if the gossip heartbeat mode is configured
+	 */
+	protected boolean isGossipHeartbeat() {
+		return Constant.HEARTBEAT_MODE_GOSSIP.equals(
+				Settings.getInstance().getString(Constant.KEY_HEARTBEAT_MODE, Constant.HEARTBEAT_MODE_PULL));
+	}
+	
+	/**
+	 * Returns True, if the Server Node pushes its heartbeats to the Nodes
+	 * @return True, if the push heartbeat mode is configured
+	 */
+	protected boolean isPushHeartbeat() {
+		return Constant.HEARTBEAT_MODE_PUSH.equals(
+				Settings.getInstance().getString(Constant.KEY_HEARTBEAT_MODE, Constant.HEARTBEAT_MODE_PULL));
+	}
+	
+	/**
+	 * Returns True, if each ping opens its own TCP connection to the Server Node
+	 * @return True, if the oneshot ping channel of the socket transport is configured
+	 */
+	private boolean isOneshotPing() {
+		return getTransport() == SocketTransport.getInstance() && !SocketTransport.getInstance().isUdpHeartbeat()
+				&& Constant.PING_CHANNEL_ONESHOT.equals(Settings.getInstance().getString(Constant.KEY_PING_CHANNEL, Constant.PING_CHANNEL_PERSISTENT));
+	}
+	
+	/**
+	 * This method close the kept open channel to the Server Node
+	 */
+	protected void closeHeartbeatChannel() {
+		// release the oneshot ping in flight
+		Deadline pingDeadline = mPingDeadline;
+		if( pingDeadline != null ) pingDeadline.cancel();
+		if( mHeartbeatChannel != null ){
+			mHeartbeatChannel.close();
 		}
 	}
 	
 	/**
 	 * This class represents a Message Client. Each Client act as 
 	 * a message tunnel to communicate and perform a link between 
-	 * Server and Client. Message Client is organize as a Thread.
+	 * Server and Client. Message Client is organize as a Task run 
+	 * by the TaskExecutor.
+	 * 
+	 * The Task connects, pings and reads the reply within a Deadline of
+	 * the ping timeout, which closeHeartbeatChannel() cancels.
 	 * 
 	 * @author msingh
 	 * @version 1.0 20 Jan, 2014
 	 * 
 	 */
-    class  MessageClientThread extends Thread {
+    class  MessageClientTask implements Runnable {
     	/**
     	 * Logger tag constant
     	 */
-    	private final String TAG = MessageClientThread.class.getSimpleName();
+    	private final String TAG = MessageClientTask.class.getSimpleName();
+    	
+    	/**
+    	 * The Server Node to ping
+    	 */
+    	private final Node serverNode;
     	
     	/**
     	 * Socket instance to open channel 
@@ -160,53 +521,86 @@ public abstract class TraitClientServer {
     	private DataOutputStream streamOut = null;
 
     	/**
-    	 * String message to ping Server Node
+    	 * Message instance to ping Server Node and read its reply
     	 */
-    	private final String PING_MESSAGE = "Is Active?" ;
+    	private final Message message = new Message();
 
     	/**
-    	 * Creates an MessageClientThread object.
-    	 * @param socket the Client Socket which should be bind to the Thread
-    	 * @throws IOException 
+    	 * Creates an MessageClientTask object.
+    	 * @param serverNode the Server Node to ping
     	 */
-	    public MessageClientThread(Socket socket) throws IOException{
-	        super("MessageClientThread");
-	        this.clientSocket = socket;
-	        if(Logger.DEBUG)Logger.d(TAG, "MessageClientThread() : ClientSocket : " + clientSocket);
+	    public MessageClientTask(Node serverNode) {
+	        this.serverNode = serverNode;
+	        Logger.d(TAG, "MessageClientTask() : Server Node : {}", serverNode);
 	    }
 	    
 	    /**
-	     * This method as entry point for MessageClientThread class. It perform Server 
+	     * This method as entry point for MessageClientTask class. It perform Server 
 	     * communication while reading and writing to the stream.
 	     */
         public void run() {
-        	if(Logger.DEBUG)Logger.d(TAG, "MessageClientThread.run() : isConnected() : " + clientSocket.isConnected()  + ", isClosed() : " + clientSocket.isClosed()); 
+        	Settings settings = Settings.getInstance();
+        	Deadline deadline = new Deadline(settings.getInt(Constant.KEY_PING_TIMEOUT_MILLIS, Constant.PING_TIMEOUT_MILLIS));
+        	mPingDeadline = deadline;
         	
-        	if(clientSocket.isConnected() && !clientSocket.isClosed()){
-        		
-        		try {
-        			// open input and output stream
-        			openStream();
-        			
-                	String inputLine;
-                	
-                	// Send message to the Server
-                	streamOut.writeUTF(PING_MESSAGE);
-                    streamOut.flush();
-                    
-                    // Reader to read Server message
-     	            while ((inputLine = console.readUTF()) != null) {
-    	            	if(Logger.DEBUG)Logger.d(TAG, "Message from Server: " + inputLine);
-    	            	break;
-    				}
-     	            // close streams and established connection
-     	            closeConn();
-                } catch (IOException e) {
-                	// java.net.SocketException: Socket is closed
-    	            if(Logger.DEBUG)
-    	            	e.printStackTrace();
-    	        } 
+        	// Open Socket to Ping ServerNode
+        	Logger.d(TAG, "MessageClientTask.run() : Opening Client Socket to Ping Server {}", serverNode);
+        	try {
+        		clientSocket = deadline.connect(serverNode.getIPAddress(), Integer.parseInt(serverNode.getPort()),
+        				settings.getInt(Constant.KEY_CONNECT_TIMEOUT_MILLIS, Constant.CONNECT_TIMEOUT_MILLIS));
+        	} catch (UnknownHostException e) {
+        		Logger.e(TAG, "Don't know about host {}", serverNode);
+        		System.exit(1);
+        	} catch (IOException e) {
+        		Logger.d(TAG, "Couldn't get I/O for the connection to {} : {}", serverNode, e.getMessage());
+        		deadline.done();
+        		return;
         	}
+        	
+    		try {
+    			// open input and output stream
+    			openStream();
+    			
+    			long pingNanos = System.nanoTime();
+    			Metrics.getInstance().getPings().increment();
+            	// Send message to the Server
+            	long term = Election.getInstance().getTerm();
+            	MessageCodec.write(streamOut, message.set(Message.TYPE_PING, getId(), term, 1));
+                streamOut.flush();
+                
+                // Reader to read Server message, until the deadline
+                deadline.arm();
+                MessageCodec.readAndSkipPayload(console, message);
+                if(Logger.isDebugEnabled())Logger.d(TAG, "Message from Server: {}", message.toString());
+                if(message.getTerm() < term){
+                	// a Server Node of an older term, whatever it says
+                	Metrics.getInstance().getPingStale().increment();
+                	Metrics.getInstance().getPingFailures().increment();
+                }else if(message.getType() == Message.TYPE_BUSY){
+                	// the Server Node is alive but overloaded, wait the time it asked for
+                	long replyNanos = System.nanoTime();
+                	Metrics.getInstance().getPingBusy().increment();
+                	mBusyUntilNanos = replyNanos + TimeUnit.MILLISECONDS.toNanos(message.getFlags());
+                	mBusyServerId = message.getSenderId();
+                	getFailureDetector().heartbeat(message.getSenderId(), replyNanos);
+                	getLease().renew(message.getSenderId(), pingNanos);
+                }else if(message.getType() == Message.TYPE_ACTIVE){
+                	long replyNanos = System.nanoTime();
+                	getFailureDetector().heartbeat(message.getSenderId(), replyNanos);
+                	getLease().renew(message.getSenderId(), pingNanos);
+                	Metrics.getInstance().getPingRtt().record(TimeUnit.NANOSECONDS.toMicros(replyNanos - pingNanos));
+                }else{
+                	Metrics.getInstance().getPingFailures().increment();
+                }
+            } catch (IOException e) {
+            	// java.net.SocketException: Socket is closed, or the deadline expired
+            	Metrics.getInstance().getPingFailures().increment();
+	            Logger.d(TAG, "MessageClientTask.run() : {}", e);
+	        } finally {
+	        	deadline.done();
+	        	// close streams and established connection
+	        	closeConn();
+	        }
         }
         
         /**
@@ -216,7 +610,7 @@ public abstract class TraitClientServer {
          */
         public void openStream() throws IOException
         {  console   = new DataInputStream(new BufferedInputStream(clientSocket.getInputStream()));
-           streamOut = new DataOutputStream(clientSocket.getOutputStream());
+           streamOut = new DataOutputStream(new BufferedOutputStream(clientSocket.getOutputStream()));
         }
         
         /**
@@ -234,171 +628,47 @@ public abstract class TraitClientServer {
            }
         }
     }
-     
-    /**
-     * Vector<Thread> to hold communicate accepted Thread Sockets by Server
-     */
-    private Vector<Thread> serverSocketThreadList;
-    
-    /**
-     * Returns the List of Server Socket Thread List
-     * @return the Vector<Thread> list 
-     */
-    protected Vector<Thread> getServerSocketThreadList(){
-    	return serverSocketThreadList;
-    }
-	
+
     /**
      * This method represents a Server Handler to execute Server operations. 
-     * It opens the ServerSocket and communicate with the Clients by accepts 
-     * requests from the Clients.
+     * It opens the Server of the Transport and answers the pings of the 
+     * Clients, until the Server stops listening.
      */
 	public void serverHandler() {
 		
-		// create a new empty list
-		serverSocketThreadList = new  Vector<Thread>();
-		
 		int portNumber = Integer.parseInt(port);
 		
-		if(Logger.DEBUG)Logger.d(TAG, "serverHandler() : Opening ServerSocket [" + NodeManager.getInstance().getServerNode().getIPAddress() + ":" + portNumber + "]" );
-
-		try {  
-				ServerSocket serverSocket = new ServerSocket(portNumber, Constant.SERVER_BACKLOG, 
-						InetAddress.getByName(NodeManager.getInstance().getServerNode().getIPAddress()));
-				
-				//if(TestStub.DEBUG)
-//			ServerSocket serverSocket = new ServerSocket(portNumber, Constant.SERVER_BACKLOG, InetAddress.getByName(null));
-				
-			 
-			if(Logger.DEBUG)Logger.d(TAG, "serverHandler() : ServerSocket started [" + NodeManager.getInstance().getServerNode().getIPAddress() + ":" + portNumber + "] : isBounded() : " + serverSocket.isBound() );
-
-			while (isServerListening) {
-				// Connect Different Clients to Server
-				Thread sThread = new MultiClientHandlerThread(serverSocket.accept());
-				serverSocketThreadList.add(sThread);
-				sThread.start();
-	        }
-		} catch (IOException e) {
-			if(Logger.DEBUG)Logger.e(TAG, "Exception caught when trying to listen on port " + portNumber + " or listening for a connection");
-			if(Logger.DEBUG)Logger.d(TAG, e.getMessage());
-		}
-	}
-	
-	/**
-	 * This class enable Server to listen to the multiple clients 
-	 * at the same time. The Server Socket accepts the Client Sockets
-	 * and each Client Socket execute in MultiClientHandlerThread class.
-	 * The Server communicate with the Clients by using input and output 
-	 * streams.
-	 * 
-	 * @author msingh
-	 * @version 1.0 20 Jan, 2014
-	 *
-	 */
-	class MultiClientHandlerThread extends Thread {
-		
-		/**
-		 * Logger tag constant
-		 */
-		private final String TAG = MultiClientHandlerThread.class.getSimpleName();
+		Logger.d(TAG, "serverHandler() : Opening Server [{}:{}]", IPAddress, portNumber);
 		
-		/**
-		 * Server bound Client Socket instance
-		 */
-	    private Socket serverBoundSocket = null;
-	    
-	    /**
-    	 * DataInputStream instance to read console
-    	 */
-	    private DataInputStream  console   = null;
-	    
-	    /**
-    	 * DataOutputStream instance to write to stream
-    	 */
-    	private DataOutputStream streamOut = null;
-    	
-//    	private volatile Thread blinker;
-
-    	/**
-    	 * Creates an MultiClientHandlerThread object.
-    	 * 
-    	 * @param socket the Client Socket which should be bind to the Thread
-    	 * @throws IOException
-    	 */
-	    public MultiClientHandlerThread(Socket socket) throws IOException{
-	        super("MultiServerThread");
-	        this.serverBoundSocket = socket;
-	        if(Logger.DEBUG)Logger.d(TAG, "MultiClientHandlerThread : Client accepted : " + serverBoundSocket);
-	    }
-	    
-	    /**
-	     * This method as entry point for MultiClientHandlerThread class. It perform Client 
-	     * communication while reading and writing to the stream.
-	     */
-	    public void run() {
-	    	
-	    	// way to stop the thread
-//	    	Thread thisThread = Thread.currentThread();
-//	    	while (blinker == thisThread) {
-//	    		// do processing
-//	    	}
-	    	
-	    	if (Thread.currentThread().isInterrupted()) {
-	    		  // cleanup and stop execution
-	    		if(Logger.DEBUG)Logger.d(TAG, "MultiClientHandlerThread.run() : Thread Interrupted");
-	    		// close the connection
-	    		closeConn();
-	    		return;
-	    	}
-	    	
-	    	if(Logger.DEBUG)Logger.d(TAG, "MultiClientHandlerThread.run() ");
-	    	
-	        try { 
-	        	// open input and output stream
-    			openStream();
-    			
-	            String inputLine;
-
-                // Reader to read Client message
-	            while ((inputLine = console.readUTF()) != "") {
-	            	if(Logger.DEBUG)Logger.d(TAG, "Client Says : " + inputLine  );  
-	            	break;
+		try {
+			CoordinatorServer server = getTransport().openServer(getId(), Election.getInstance().getTerm(), IPAddress, portNumber);
+			mServer = server;
+			
+			// the Server may have been aborted before it was opened
+			if(isServerListening){
+				long startNanos = System.nanoTime();
+				HeartbeatPush heartbeatPush = mHeartbeatPush;
+				if( heartbeatPush != null ) heartbeatPush.startFanOut(Election.getInstance().getTerm());
+				try {
+					server.run();
+				} finally {
+					if( heartbeatPush != null ) heartbeatPush.stopFanOut();
+					Metrics.getInstance().getCoordinatorUptime().record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
 				}
-	            
-	            // Send message to the Client
-	            streamOut.writeUTF("SERVER: ACTIVE " + "[" + IPAddress + ":" + port + "]"  );
-                streamOut.flush();
-                
-	        } catch (IOException e) {
-	            e.printStackTrace();
-	        }
-	    }
-	    
-	    /**
-         * This method open an DataInputStream and DataOutputStream
-         * 
-         * @throws IOException
-         */
-	    public void openStream() throws IOException
-        {  console   = new DataInputStream(new BufferedInputStream(serverBoundSocket.getInputStream()));
-           streamOut = new DataOutputStream(serverBoundSocket.getOutputStream());
-        }
-        
-	    /**
-         * This method close the open connections and the streams used for 
-         * communication.
-         */
-        public void closeConn()
-        {  try
-           {  if (console   != null)  console.close();
-              if (streamOut != null)  streamOut.close();
-              if (serverBoundSocket    != null)  serverBoundSocket.close();
-              
-//              blinker = null;
-           }
-           catch(IOException ioe)
-           {  System.out.println("Error closing ...");
-           }
-        }
+			}else{
+				// the opened Server may hold its port already, release it for the next Coordinator
+				server.stop();
+			}
+		} catch (IOException e) {
+			if( !isServerListening ){
+				// the Server was stopped while it was opening
+				Logger.d(TAG, "serverHandler() : Server stopped [{}]", portNumber);
+			}else{
+				Logger.e(TAG, "Exception caught when trying to listen on port {} or listening for a connection", portNumber);
+				Logger.d(TAG, "{}", e.getMessage());
+			}
+		} finally {
+			mServer = null;
+		}
 	}
 }
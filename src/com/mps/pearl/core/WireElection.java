@@ -0,0 +1,515 @@
+package com.mps.pearl.core;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.mps.pearl.metrics.Metrics;
+import com.mps.pearl.net.GossipEndpoint;
+import com.mps.pearl.net.Message;
+import com.mps.pearl.net.MessageCodec;
+import com.mps.pearl.util.Constant;
+import com.mps.pearl.util.Logger;
+import com.mps.pearl.util.Settings;
+import com.mps.pearl.util.TimingWheel;
+
+/**
+ * This class implements the Bully Election of a Node which runs in its own
+ * process. The Nodes share no Election, so the messages of the Bully
+ * Algorithm go over the datagram endpoint of the Node, to the members of
+ * the configuration file :
+ *
+ * A Node begins an Election by sending an Election message to all the
+ * members with a higher Id. A Node which receives it answers, and begins
+ * an Election of its own. Without an answer in time, the Node declares
+ * itself the Coordinator to all the members. With an answer, it waits for
+ * the Coordinator message of a higher Node, and begins again if none comes.
+ *
+ * Datagrams may be lost, so a Node which waits for an answer resends its
+ * Election messages a few times within the answer timeout, and a new
+ * Coordinator resends its Coordinator message as often. A Node which
+ * misses them all begins an Election again on its next failure detection.
+ *
+ * The running Coordinator answers an Election message with its Coordinator
+ * message, and a Node which receives the Coordinator message of a lower
+ * Node bullies it with an Election of its own.
+ *
+ * A Node declares itself in a term above all the terms it has seen. A
+ * higher Node which starts late has seen none, so its first declaration is
+ * older than the running Coordinator : the Nodes which drop it send it an
+ * Election message in their term, and the Coordinator which sees a term
+ * above its own declares itself again above it, and takes over. The local Election mirrors
+ * the Coordinator and its term, so the term log and the view messages
+ * stay the same as in a single process.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class WireElection implements GossipEndpoint.Receiver {
+
+	/**
+	 * A Logger tag
+	 */
+	private final String TAG = WireElection.class.getSimpleName();
+
+	/**
+	 * The Node of the process
+	 */
+	private final Node mNode;
+
+	/**
+	 * Time in milliseconds the Node waits for an answer to its Election messages
+	 */
+	private final long mAnswerTimeoutMillis;
+
+	/**
+	 * Time in milliseconds between two sends of the Election and Coordinator messages
+	 */
+	private final long mRetransmitMillis;
+
+	/**
+	 * The datagram endpoint of the Node
+	 */
+	private volatile GossipEndpoint mEndpoint;
+
+	/**
+	 * The highest term begun or seen by the Node
+	 */
+	private long mTerm;
+
+	/**
+	 * The highest term seen in the messages of the other Nodes
+	 */
+	private long mSeenTerm;
+
+	/**
+	 * Number of the running round, a timeout of an earlier round is ignored
+	 */
+	private int mRound;
+
+	/**
+	 * Boolean to indicate the Node runs an Election
+	 */
+	private boolean isElecting;
+
+	/**
+	 * Boolean to indicate a higher Node answered the running Election
+	 */
+	private boolean isAnswered;
+
+	/**
+	 * Start time of the Election, read from System.nanoTime(), 0 if none runs
+	 */
+	private long mStartNanos;
+
+	/**
+	 * Number of rounds of the Election
+	 */
+	private int mRounds;
+
+	/**
+	 * Number of Election messages sent by the Node in the Election
+	 */
+	private int mMessages;
+
+	/**
+	 * The higher members the running Election is sent to
+	 */
+	private List<Integer> mHigherIds;
+
+	/**
+	 * The timer of the running round
+	 */
+	private TimingWheel.Timeout mTimer;
+
+	/**
+	 * The timer of the next Coordinator message of the Node
+	 */
+	private TimingWheel.Timeout mAnnounceTimer;
+
+	/**
+	 * Creates a WireElection object.
+	 *
+	 * @param node the Node of the process
+	 * @param term the last term of the Node, from its term log, or 0
+	 */
+	public WireElection(Node node, long term) {
+		this.mNode = node;
+		this.mTerm = term;
+		this.mAnswerTimeoutMillis = Settings.getInstance().getLong(Constant.KEY_ELECTION_ANSWER_TIMEOUT_MILLIS,
+				Constant.ELECTION_ANSWER_TIMEOUT_MILLIS);
+		this.mRetransmitMillis = mAnswerTimeoutMillis / (Constant.ELECTION_RETRANSMITS + 1);
+	}
+
+	/**
+	 * Binds the datagram endpoint of the Node to the Election messages
+	 * @throws IOException if the endpoint can not be bound
+	 */
+	public synchronized void start() throws IOException {
+		if( mEndpoint != null ) return;
+		mEndpoint = mNode.openEndpoint(this, Message.TYPE_ELECTION, Message.TYPE_ANSWER, Message.TYPE_COORDINATOR);
+	}
+
+	/**
+	 * Stops the running Election and closes the datagram endpoint
+	 */
+	public synchronized void stop() {
+		cancelTimer();
+		cancelAnnounce();
+		isElecting = false;
+		if( mEndpoint != null ) mNode.closeEndpoint(this);
+		mEndpoint = null;
+	}
+
+	/**
+	 * Begins an Election in a new term, unless one runs, the Node is the
+	 * Coordinator, or a running Coordinator is known. The Node sends an
+	 * Election message to all the higher members, or declares itself the
+	 * Coordinator if there are none.
+	 */
+	public synchronized void begin() {
+		if( isElecting || mNode.isDownFlag() || mEndpoint == null || mNode.isCoordinatorFlag() ) return;
+		Node serverNode = NodeManager.getInstance().getServerNode();
+		if( serverNode != null && !serverNode.isDownFlag() ) return;
+
+		isElecting = true;
+		isAnswered = false;
+		if( mStartNanos == 0 ){
+			mStartNanos = System.nanoTime();
+			mRounds = 0;
+			mMessages = 0;
+		}
+		mRounds++;
+		mTerm++;
+		Logger.d(TAG, "begin() : {}, term {}", mNode, mTerm);
+
+		List<Integer> higherIds = new ArrayList<Integer>();
+		higherIds.add(mNode.getId());
+		Membership membership = Resource.getInstance().getMembership();
+		for(int index = 0 ; index < membership.size() ; index++){
+			if( membership.getIdAt(index) > mNode.getId() ) higherIds.add(membership.getIdAt(index));
+		}
+		// the view shows the Election once, not each of its rounds
+		if( mRounds == 1 ) Election.getInstance().view("e " + higherIds);
+
+		if( higherIds.size() == 1 ){
+			// the Node has the highest Id of the System
+			declare();
+			return;
+		}
+		mHigherIds = higherIds;
+		sendElection();
+		schedule(mRetransmitMillis, Constant.ELECTION_RETRANSMITS);
+	}
+
+	/**
+	 * Sends the Election message of the running round to all the higher members
+	 */
+	private void sendElection() {
+		for(int index = 1 ; index < mHigherIds.size() ; index++){
+			send(Message.TYPE_ELECTION, mHigherIds.get(index), mTerm);
+		}
+		mMessages += mHigherIds.size() - 1;
+	}
+
+	/**
+	 * Declares the Node the Coordinator of the System in the term of its
+	 * Election, binds its Server, and announces it to all the members
+	 */
+	private void declare() {
+		cancelTimer();
+		isElecting = false;
+		// a message seen during the Election may carry its term already
+		if( mTerm <= mSeenTerm ) mTerm = mSeenTerm + 1;
+		if( Election.getInstance().accept(mTerm, mNode) == null ) return;
+
+		Metrics metrics = Metrics.getInstance();
+		metrics.getElections().increment();
+		metrics.getElectionRounds().add(mRounds);
+		metrics.getElectionDuration().record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mStartNanos));
+		metrics.getElectionMessages().record(mMessages);
+		mStartNanos = 0;
+
+		NodeManager nodeManager = NodeManager.getInstance();
+		nodeManager.setServerNode(mNode);
+		mNode.setCoordinatorFlag(true);
+		mNode.setServerListening(true);
+		nodeManager.bindServerNode();
+		announceAndResend();
+	}
+
+	/**
+	 * Declares the running Coordinator again, in a term above all the terms
+	 * it has seen, as the other Nodes run in a term above its own
+	 */
+	private void renew() {
+		mTerm = Math.max(mTerm, mSeenTerm) + 1;
+		Logger.d(TAG, "renew() : {}, term {}", mNode, mTerm);
+		if( Election.getInstance().accept(mTerm, mNode) == null ) return;
+		announceAndResend();
+	}
+
+	/**
+	 * Sends the Coordinator message of the Node to all the members, and
+	 * resends it, as the Coordinator messages may be lost
+	 */
+	private void announceAndResend() {
+		announce();
+		cancelAnnounce();
+		mAnnounceTimer = TimingWheel.getInstance().schedule(
+				new AnnounceTask(mTerm, Constant.ELECTION_RETRANSMITS), mRetransmitMillis);
+	}
+
+	/**
+	 * Sends the Coordinator message of the Node to all the members
+	 */
+	private void announce() {
+		long term = Election.getInstance().getTerm();
+		Membership membership = Resource.getInstance().getMembership();
+		for(int index = 0 ; index < membership.size() ; index++){
+			if( membership.getIdAt(index) != mNode.getId() ) send(Message.TYPE_COORDINATOR, membership.getIdAt(index), term);
+		}
+	}
+
+	/**
+	 * Accepts the Coordinator message of a higher Node, and ends the running
+	 * Election. A message of a term older than the Election, or of a Node
+	 * lower than the running Coordinator, is ignored, and a duplicate of the
+	 * running Coordinator only ends the Election.
+	 *
+	 * @param coordinatorId the Id of the Coordinator
+	 * @param term the term of the Coordinator
+	 */
+	private void accept(int coordinatorId, long term) {
+		if( term < Election.getInstance().getTerm() ){
+			// a higher Node which started late declared itself in an older term, tell it the term
+			if( coordinatorId > mNode.getId() ) send(Message.TYPE_ELECTION, coordinatorId, Election.getInstance().getTerm());
+			// otherwise, a delayed message of an older Coordinator
+			return;
+		}
+		Node serverNode = NodeManager.getInstance().getServerNode();
+		boolean isRunning = serverNode != null && !serverNode.isDownFlag();
+		if( isRunning && serverNode.getId() > coordinatorId && term <= Election.getInstance().getTerm() ) return;
+
+		MemberRecord record = Resource.getInstance().getMembership().getRecord(coordinatorId);
+		if( record == null ) return;
+
+		cancelTimer();
+		isElecting = false;
+		mStartNanos = 0;
+		if( isRunning && serverNode.getId() == coordinatorId ) return;
+
+		// the Node pings the Coordinator of the other process through a Node of its own
+		Node coordinator = record.newNode();
+		coordinator.setCoordinatorFlag(true);
+		if( Election.getInstance().accept(term, coordinator) == null ) return;
+		// the Node was the Coordinator, the higher Node bullies it
+		if( mNode.isCoordinatorFlag() ){
+			cancelAnnounce();
+			mNode.stepDown();
+		}
+		NodeManager.getInstance().setServerNode(coordinator);
+	}
+
+	/**
+	 * Receives a message of the Election
+	 */
+	@Override
+	public void receive(ByteBuffer datagram) {
+		Message message = new Message();
+		try {
+			if( !MessageCodec.decode(datagram, message) ) return;
+		} catch (ProtocolException e) {
+			Logger.d(TAG, "receive() : {}", e.getMessage());
+			return;
+		}
+		int senderId = message.getSenderId();
+		if( mNode.isDownFlag() || senderId == mNode.getId() ) return;
+
+		synchronized (this) {
+			mTerm = Math.max(mTerm, message.getTerm());
+			mSeenTerm = Math.max(mSeenTerm, message.getTerm());
+			long electionTerm = Election.getInstance().getTerm();
+			switch (message.getType()) {
+			case Message.TYPE_ELECTION:
+				if( senderId > mNode.getId() ) return;
+				send(Message.TYPE_ANSWER, senderId, mTerm);
+				if( mNode.isCoordinatorFlag() && message.getTerm() > electionTerm ){
+					// the lower Node would drop a declaration in an older term
+					renew();
+				}else if( mNode.isCoordinatorFlag() ){
+					// the Coordinator is running, it declares itself to the lower Node
+					send(Message.TYPE_COORDINATOR, senderId, electionTerm);
+				}else{
+					begin();
+				}
+				break;
+			case Message.TYPE_ANSWER:
+				if( !isElecting || isAnswered ) return;
+				// a higher Node takes over, wait for its Coordinator message
+				isAnswered = true;
+				cancelTimer();
+				schedule(mAnswerTimeoutMillis * Constant.ELECTION_COORDINATOR_WAIT_ANSWERS, 0);
+				break;
+			case Message.TYPE_COORDINATOR:
+				if( senderId < mNode.getId() && mNode.isCoordinatorFlag() && message.getTerm() >= electionTerm ){
+					// the lower Node declared itself in a term of its own, declare above it
+					renew();
+				}else if( senderId < mNode.getId() && mNode.isCoordinatorFlag() ){
+					// the lower Node missed the running Coordinator
+					announce();
+				}else if( senderId < mNode.getId() ){
+					// the lower Node is bullied
+					begin();
+				}else{
+					accept(senderId, message.getTerm());
+				}
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Sends a message of the Election to a member, if it is still a member
+	 */
+	private void send(byte type, int memberId, long term) {
+		GossipEndpoint endpoint = mEndpoint;
+		MemberRecord record = Resource.getInstance().getMembership().getRecord(memberId);
+		if( endpoint == null || record == null ) return;
+
+		ByteBuffer frame = ByteBuffer.allocate(MessageCodec.HEADER_SIZE);
+		MessageCodec.encode(new Message().set(type, mNode.getId(), term, mRound), frame);
+		frame.flip();
+		endpoint.send(record.getIPAddress(), Integer.parseInt(record.getPort()), frame);
+	}
+
+	/**
+	 * Schedules the timeout of a new round
+	 * @param delayMillis the time in milliseconds to the timeout
+	 * @param resends the number of times the Election messages are still resent
+	 */
+	private void schedule(long delayMillis, int resends) {
+		mTimer = TimingWheel.getInstance().schedule(new TimeoutTask(++mRound, resends), delayMillis);
+	}
+
+	/**
+	 * Cancels the timeout of the running round, if any
+	 */
+	private void cancelTimer() {
+		if( mTimer != null ) mTimer.cancel();
+		mTimer = null;
+	}
+
+	/**
+	 * Cancels the next Coordinator message of the Node, if any
+	 */
+	private void cancelAnnounce() {
+		if( mAnnounceTimer != null ) mAnnounceTimer.cancel();
+		mAnnounceTimer = null;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return TAG + " [" + mNode.getId() + ", term " + mTerm + (isElecting ? ", electing" : "") + (isAnswered ? ", answered" : "") + "]";
+	}
+
+	/**
+	 * This class implements the Task which ends a round of the Election
+	 * once its timeout expires : without an answer the Node resends its
+	 * Election messages, then declares itself, without a Coordinator
+	 * message it begins again.
+	 */
+	class TimeoutTask implements Runnable {
+
+		/**
+		 * The number of the round
+		 */
+		private final int round;
+
+		/**
+		 * The number of times the Election messages are still resent
+		 */
+		private final int resends;
+
+		/**
+		 * Creates a TimeoutTask object.
+		 * @param round the number of the round
+		 * @param resends the number of times the Election messages are still resent
+		 */
+		TimeoutTask(int round, int resends) {
+			this.round = round;
+			this.resends = resends;
+		}
+
+		/**
+		 * This method ends the round, unless another round has begun
+		 */
+		@Override
+		public void run() {
+			synchronized (WireElection.this) {
+				if( round != mRound || !isElecting || mNode.isDownFlag() ) return;
+				mTimer = null;
+				if( isAnswered ){
+					// the higher Node failed before it declared itself
+					isElecting = false;
+					begin();
+				}else if( resends > 0 ){
+					// the Election messages, or their answers, may be lost
+					sendElection();
+					schedule(mRetransmitMillis, resends - 1);
+				}else{
+					declare();
+				}
+			}
+		}
+	}
+
+	/**
+	 * This class implements the Task which resends the Coordinator message
+	 * of the Node, while it is the Coordinator of the term it declared.
+	 */
+	class AnnounceTask implements Runnable {
+
+		/**
+		 * The term of the Coordinator
+		 */
+		private final long term;
+
+		/**
+		 * The number of times the Coordinator message is still resent
+		 */
+		private final int resends;
+
+		/**
+		 * Creates an AnnounceTask object.
+		 * @param term the term of the Coordinator
+		 * @param resends the number of times the Coordinator message is still resent
+		 */
+		AnnounceTask(long term, int resends) {
+			this.term = term;
+			this.resends = resends;
+		}
+
+		/**
+		 * This method resends the Coordinator message, unless the Node is no longer the Coordinator
+		 */
+		@Override
+		public void run() {
+			synchronized (WireElection.this) {
+				mAnnounceTimer = null;
+				if( mNode.isDownFlag() || !mNode.isCoordinatorFlag() || Election.getInstance().getTerm() != term ) return;
+				announce();
+				if( resends > 1 ){
+					mAnnounceTimer = TimingWheel.getInstance().schedule(new AnnounceTask(term, resends - 1), mRetransmitMillis);
+				}
+			}
+		}
+	}
+}
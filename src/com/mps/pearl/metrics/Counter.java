@@ -0,0 +1,58 @@
+package com.mps.pearl.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class implements a monotonic counter of events, safe to increment
+ * from any Thread without a lock.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class Counter implements CounterMBean {
+
+	/**
+	 * Description of the Counter
+	 */
+	private final String mDescription;
+
+	/**
+	 * Value of the Counter
+	 */
+	private final AtomicLong mCount = new AtomicLong();
+
+	/**
+	 * Creates a Counter object.
+	 * @param description the description of the Counter
+	 */
+	public Counter(String description) {
+		this.mDescription = description;
+	}
+
+	/**
+	 * Counts one event
+	 */
+	public void increment() {
+		mCount.incrementAndGet();
+	}
+
+	/**
+	 * Counts a number of events
+	 * @param events the number of events
+	 */
+	public void add(long events) {
+		mCount.addAndGet(events);
+	}
+
+	@Override
+	public String getDescription() {
+		return mDescription;
+	}
+
+	@Override
+	public long getCount() {
+		return mCount.get();
+	}
+}
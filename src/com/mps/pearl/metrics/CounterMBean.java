@@ -0,0 +1,25 @@
+package com.mps.pearl.metrics;
+
+/**
+ * This interface represents the management view of a Counter, published
+ * over JMX.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public interface CounterMBean {
+
+	/**
+	 * Returns the description of the Counter
+	 * @return the String description
+	 */
+	public String getDescription();
+
+	/**
+	 * Returns the value of the Counter
+	 * @return the count
+	 */
+	public long getCount();
+}
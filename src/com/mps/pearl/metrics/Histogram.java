@@ -0,0 +1,206 @@
+package com.mps.pearl.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class implements a histogram of non negative values with log-linear
+ * buckets, in the way of the HdrHistogram : the values below 64 have a
+ * bucket each, and every power of two above is split in 32 buckets of the
+ * same width. A percentile is therefore known within about 3 % of its
+ * value, from one to Long.MAX_VALUE, with a fixed set of 1888 buckets.
+ *
+ * Recording a value is a few atomic operations, without lock nor
+ * allocation, so the Nodes record from any Thread.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class Histogram implements HistogramMBean {
+
+	/**
+	 * Number of bits of a value which select the bucket in a power of two
+	 */
+	private static final int SUB_BUCKET_BITS = 5;
+
+	/**
+	 * Number of buckets in a power of two
+	 */
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Number of buckets, enough for the highest long value
+	 */
+	private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+	/**
+	 * Description of the Histogram
+	 */
+	private final String mDescription;
+
+	/**
+	 * Unit of the recorded values
+	 */
+	private final String mUnit;
+
+	/**
+	 * Number of recorded values of each bucket
+	 */
+	private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+	/**
+	 * Number of recorded values
+	 */
+	private final AtomicLong mCount = new AtomicLong();
+
+	/**
+	 * Sum of the recorded values
+	 */
+	private final AtomicLong mSum = new AtomicLong();
+
+	/**
+	 * Lowest recorded value
+	 */
+	private final AtomicLong mMin = new AtomicLong(Long.MAX_VALUE);
+
+	/**
+	 * Highest recorded value
+	 */
+	private final AtomicLong mMax = new AtomicLong();
+
+	/**
+	 * Creates a Histogram object.
+	 * @param unit the unit of the recorded values
+	 * @param description the description of the Histogram
+	 */
+	public Histogram(String unit, String description) {
+		this.mUnit = unit;
+		this.mDescription = description;
+	}
+
+	/**
+	 * Records a value, a negative value is recorded as 0
+	 * @param value the value to record
+	 */
+	public void record(long value) {
+		if (value < 0) value = 0;
+		mBuckets.incrementAndGet(bucketOf(value));
+		mCount.incrementAndGet();
+		mSum.addAndGet(value);
+
+		long min;
+		while (value < (min = mMin.get()) && !mMin.compareAndSet(min, value));
+		long max;
+		while (value > (max = mMax.get()) && !mMax.compareAndSet(max, value));
+	}
+
+	/**
+	 * Returns the value below which a ratio of the recorded values fall
+	 *
+	 * @param ratio the ratio, from 0 to 1
+	 * @return the highest value of the bucket of the percentile, or 0 if
+	 * no value was recorded
+	 */
+	public long getPercentile(double ratio) {
+		long count = mCount.get();
+		if (count == 0) return 0;
+
+		long rank = Math.max(1, (long) Math.ceil(ratio * count));
+		long seen = 0;
+		for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+			seen += mBuckets.get(bucket);
+			if (seen >= rank) return Math.min(highestValueOf(bucket), getMax());
+		}
+		return getMax();
+	}
+
+	/**
+	 * Returns the bucket of a value
+	 */
+	static int bucketOf(long value) {
+		if (value < 2 * SUB_BUCKET_COUNT) return (int) value;
+		// keep the highest bit and the SUB_BUCKET_BITS bits below it
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift * SUB_BUCKET_COUNT) + (int) (value >>> shift);
+	}
+
+	/**
+	 * Returns the highest value of a bucket
+	 */
+	static long highestValueOf(int bucket) {
+		if (bucket < 2 * SUB_BUCKET_COUNT) return bucket;
+		int shift = bucket / SUB_BUCKET_COUNT - 1;
+		long mantissa = bucket - shift * SUB_BUCKET_COUNT;
+		long highest = ((mantissa + 1) << shift) - 1;
+		return highest < 0 ? Long.MAX_VALUE : highest;
+	}
+
+	@Override
+	public String getDescription() {
+		return mDescription;
+	}
+
+	@Override
+	public String getUnit() {
+		return mUnit;
+	}
+
+	@Override
+	public long getCount() {
+		return mCount.get();
+	}
+
+	@Override
+	public long getMin() {
+		return mCount.get() == 0 ? 0 : mMin.get();
+	}
+
+	@Override
+	public long getMax() {
+		return mMax.get();
+	}
+
+	@Override
+	public double getMean() {
+		long count = mCount.get();
+		return count == 0 ? 0 : (double) mSum.get() / count;
+	}
+
+	@Override
+	public long getP50() {
+		return getPercentile(0.50);
+	}
+
+	@Override
+	public long getP90() {
+		return getPercentile(0.90);
+	}
+
+	@Override
+	public long getP99() {
+		return getPercentile(0.99);
+	}
+
+	@Override
+	public long getP999() {
+		return getPercentile(0.999);
+	}
+
+	@Override
+	public void reset() {
+		for (int bucket = 0; bucket < BUCKET_COUNT; bucket++)
+			mBuckets.set(bucket, 0);
+		mCount.set(0);
+		mSum.set(0);
+		mMin.set(Long.MAX_VALUE);
+		mMax.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count %d, min %d, p50 %d, p90 %d, p99 %d, max %d %s", getCount(), getMin(), getP50(),
+				getP90(), getP99(), getMax(), mUnit);
+	}
+}
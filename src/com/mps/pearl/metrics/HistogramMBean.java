@@ -0,0 +1,78 @@
+package com.mps.pearl.metrics;
+
+/**
+ * This interface represents the management view of a Histogram, published
+ * over JMX. The values are in the unit of the Histogram.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public interface HistogramMBean {
+
+	/**
+	 * Returns the description of the Histogram
+	 * @return the String description
+	 */
+	public String getDescription();
+
+	/**
+	 * Returns the unit of the recorded values
+	 * @return the String unit
+	 */
+	public String getUnit();
+
+	/**
+	 * Returns the number of recorded values
+	 * @return the count
+	 */
+	public long getCount();
+
+	/**
+	 * Returns the lowest recorded value
+	 * @return the minimum, or 0 if no value was recorded
+	 */
+	public long getMin();
+
+	/**
+	 * Returns the highest recorded value
+	 * @return the maximum, or 0 if no value was recorded
+	 */
+	public long getMax();
+
+	/**
+	 * Returns the mean of the recorded values
+	 * @return the mean, or 0 if no value was recorded
+	 */
+	public double getMean();
+
+	/**
+	 * Returns the median of the recorded values
+	 * @return the 50th percentile
+	 */
+	public long getP50();
+
+	/**
+	 * Returns the 90th percentile of the recorded values
+	 * @return the 90th percentile
+	 */
+	public long getP90();
+
+	/**
+	 * Returns the 99th percentile of the recorded values
+	 * @return the 99th percentile
+	 */
+	public long getP99();
+
+	/**
+	 * Returns the 99.9th percentile of the recorded values
+	 * @return the 99.9th percentile
+	 */
+	public long getP999();
+
+	/**
+	 * Forgets all the recorded values
+	 */
+	public void reset();
+}
@@ -0,0 +1,485 @@
+package com.mps.pearl.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.mps.pearl.util.Logger;
+
+/**
+ * This class holds the metrics of the System. Each Counter and Histogram
+ * is registered once by name, and published as an MBean of the platform
+ * MBeanServer under
+ *
+ * com.mps.pearl:type=Counter,name=<name>
+ * com.mps.pearl:type=Histogram,name=<name>
+ *
+ * so jconsole, or any JMX client, reads them while the System runs. The
+ * metrics of the election and heartbeat paths are created with the
+ * registry.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class Metrics {
+
+	/**
+	 * A Logger tag
+	 */
+	private final String TAG = Metrics.class.getSimpleName();
+
+	/**
+	 * Domain of the published MBeans
+	 */
+	public static final String JMX_DOMAIN = "com.mps.pearl";
+
+	/**
+	 * Unit of the Histograms of durations in microseconds
+	 */
+	public static final String UNIT_MICROSECONDS = "us";
+
+	/**
+	 * Unit of the Histograms of durations in milliseconds
+	 */
+	public static final String UNIT_MILLISECONDS = "ms";
+
+	/**
+	 * Unit of the Histograms of numbers of messages
+	 */
+	public static final String UNIT_MESSAGES = "messages";
+
+	/**
+	 * The unique instance of Metrics class, created when the class is loaded
+	 */
+	private static final Metrics INSTANCE = new Metrics();
+
+	/**
+	 * The registered metrics, by name
+	 */
+	private final ConcurrentMap<String, Object> mMetrics = new ConcurrentHashMap<String, Object>();
+
+	/**
+	 * Round trip time of the answered pings
+	 */
+	private final Histogram mPingRtt = histogram("ping.rtt", UNIT_MICROSECONDS, "Round trip time of the answered pings");
+
+	/**
+	 * Number of pings sent to the Coordinator
+	 */
+	private final Counter mPings = counter("ping.count", "Pings sent to the Coordinator");
+
+	/**
+	 * Number of pings the Coordinator did not answer
+	 */
+	private final Counter mPingFailures = counter("ping.failures", "Pings the Coordinator did not answer");
+
+	/**
+	 * Time from the termination of the Coordinator to its detection by a Node
+	 */
+	private final Histogram mDetectionDelay = histogram("failure.detection", UNIT_MILLISECONDS,
+			"Time from the termination of the Coordinator to its detection by a Node");
+
+	/**
+	 * Number of Coordinators suspected by the failure detectors
+	 */
+	private final Counter mSuspicions = counter("failure.suspicions", "Coordinators suspected by a failure detector");
+
+	/**
+	 * Number of suspicions of a Coordinator which still held its lease
+	 */
+	private final Counter mLeaseDeferrals = counter("lease.deferrals",
+			"Suspicions of a Coordinator which still held its lease, no Election was begun");
+
+	/**
+	 * Time from the first Election message to the declaration of the Coordinator
+	 */
+	private final Histogram mElectionDuration = histogram("election.duration", UNIT_MILLISECONDS,
+			"Time from the first Election message to the declaration of the Coordinator");
+
+	/**
+	 * Number of Election messages of each Election
+	 */
+	private final Histogram mElectionMessages = histogram("election.messages", UNIT_MESSAGES,
+			"Election messages of each Election, the bullied rounds included");
+
+	/**
+	 * Number of decided Elections
+	 */
+	private final Counter mElections = counter("election.count", "Decided Elections");
+
+	/**
+	 * Number of Election rounds, one for each term begun
+	 */
+	private final Counter mElectionRounds = counter("election.rounds", "Election rounds of the decided Elections, one for each term begun");
+
+	/**
+	 * Time a Coordinator served the Nodes
+	 */
+	private final Histogram mCoordinatorUptime = histogram("coordinator.uptime", UNIT_MILLISECONDS,
+			"Time a Coordinator served the Nodes");
+
+	/**
+	 * Number of heartbeats pushed by the Coordinators
+	 */
+	private final Counter mHeartbeatPushes = counter("heartbeat.pushes", "Heartbeats pushed by a Coordinator, one by Node each period");
+
+	/**
+	 * Number of frames of group heartbeats
+	 */
+	private final Counter mGroupFrames = counter("group.frames", "Frames of group heartbeats, one by member each period");
+
+	/**
+	 * Number of decided Elections of the election groups
+	 */
+	private final Counter mGroupElections = counter("group.elections", "Decided Elections of the election groups");
+
+	/**
+	 * Time from the first Election message of a group to its new Coordinator
+	 */
+	private final Histogram mGroupElectionDuration = histogram("group.election.duration", UNIT_MILLISECONDS,
+			"Time from the first Election message of an election group to its new Coordinator");
+
+	/**
+	 * Number of Coordinators which claimed the role of the terminated one as its successor
+	 */
+	private final Counter mFastFailovers = counter("failover.fast", "Successors which claimed the role of the terminated Coordinator");
+
+	/**
+	 * Number of failovers which fell back to the Bully Election
+	 */
+	private final Counter mFailoverFallbacks = counter("failover.fallbacks", "Failovers which fell back to the Bully Election");
+
+	/**
+	 * Time from the termination of the Coordinator to the claim of its successor
+	 */
+	private final Histogram mFailoverDuration = histogram("failover.duration", UNIT_MILLISECONDS,
+			"Time from the termination of the Coordinator to the claim of its successor");
+
+	/**
+	 * Number of records appended to the term log
+	 */
+	private final Counter mTermLogAppends = counter("termlog.appends", "Records appended to the term log");
+
+	/**
+	 * Time to force the pending records of the term log to the disk
+	 */
+	private final Histogram mTermLogSync = histogram("termlog.sync", UNIT_MICROSECONDS,
+			"Time to force a batch of records of the term log to the disk");
+
+	/**
+	 * Number of pings the Coordinator answered as busy
+	 */
+	private final Counter mAdmissionRejections = counter("admission.rejections",
+			"Pings answered as busy, as the in-flight budget of the Coordinator was spent");
+
+	/**
+	 * Number of Client connections accepted by the Coordinator
+	 */
+	private final Counter mServerAccepts = counter("server.accepts", "Client connections accepted by the Coordinator");
+
+	/**
+	 * Number of pings answered as busy by the Coordinator
+	 */
+	private final Counter mPingBusy = counter("ping.busy", "Pings the Coordinator answered as busy");
+
+	/**
+	 * Number of replies of a Coordinator of an older term
+	 */
+	private final Counter mPingStale = counter("ping.stale", "Replies of a Coordinator of an older term, counted as failed pings");
+
+	/**
+	 * Number of gossip probes
+	 */
+	private final Counter mGossipProbes = counter("gossip.probes", "Gossip probes, one by Node each period");
+
+	/**
+	 * Number of gossip probes sent on behalf of another Node
+	 */
+	private final Counter mGossipIndirectProbes = counter("gossip.indirect.probes",
+			"Gossip probes asked to other Nodes, as the probed Node did not answer");
+
+	/**
+	 * Returns the unique Metrics object associated with this System, if any.
+	 * @return the instance of Metrics
+	 */
+	public static Metrics getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Creates a Metrics object
+	 */
+	private Metrics() {
+		// private to hold single instance
+	}
+
+	/**
+	 * Returns the Counter registered with a name, registering it first if required
+	 *
+	 * @param name the name of the Counter
+	 * @param description the description of the Counter
+	 * @return the Counter
+	 */
+	public Counter counter(String name, String description) {
+		return register(name, "Counter", new Counter(description));
+	}
+
+	/**
+	 * Returns the Histogram registered with a name, registering it first if required
+	 *
+	 * @param name the name of the Histogram
+	 * @param unit the unit of the recorded values
+	 * @param description the description of the Histogram
+	 * @return the Histogram
+	 */
+	public Histogram histogram(String name, String unit, String description) {
+		return register(name, "Histogram", new Histogram(unit, description));
+	}
+
+	/**
+	 * Returns the registered metrics, by name
+	 * @return the Map of the metrics
+	 */
+	public Map<String, Object> getMetrics() {
+		return mMetrics;
+	}
+
+	/**
+	 * Registers a metric, and publishes it as an MBean
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T register(String name, String type, T metric) {
+		Object registered = mMetrics.putIfAbsent(name, metric);
+		if (registered != null) {
+			if (!metric.getClass().isInstance(registered))
+				throw new IllegalArgumentException("Metric " + name + " is not a " + type);
+			return (T) registered;
+		}
+
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(metric, new ObjectName(JMX_DOMAIN + ":type=" + type + ",name=" + name));
+		} catch (JMException e) {
+			Logger.e(TAG, "register() : {} not published : {}", name, e.getMessage());
+		}
+		return metric;
+	}
+
+	/**
+	 * Returns the number of heartbeats pushed by the Coordinators
+	 * @return the Counter
+	 */
+	public Counter getHeartbeatPushes() {
+		return mHeartbeatPushes;
+	}
+
+	/**
+	 * Returns the number of frames of group heartbeats
+	 * @return the Counter
+	 */
+	public Counter getGroupFrames() {
+		return mGroupFrames;
+	}
+
+	/**
+	 * Returns the number of decided Elections of the election groups
+	 * @return the Counter
+	 */
+	public Counter getGroupElections() {
+		return mGroupElections;
+	}
+
+	/**
+	 * Returns the time from the first Election message of an election group
+	 * to its new Coordinator, in milliseconds
+	 * @return the Histogram
+	 */
+	public Histogram getGroupElectionDuration() {
+		return mGroupElectionDuration;
+	}
+
+	/**
+	 * Returns the number of successors which claimed the role of the terminated Coordinator
+	 * @return the Counter
+	 */
+	public Counter getFastFailovers() {
+		return mFastFailovers;
+	}
+
+	/**
+	 * Returns the number of failovers which fell back to the Bully Election
+	 * @return the Counter
+	 */
+	public Counter getFailoverFallbacks() {
+		return mFailoverFallbacks;
+	}
+
+	/**
+	 * Returns the time from the termination of the Coordinator to the claim of its successor
+	 * @return the Histogram in milliseconds
+	 */
+	public Histogram getFailoverDuration() {
+		return mFailoverDuration;
+	}
+
+	/**
+	 * Returns the number of records appended to the term log
+	 * @return the Counter
+	 */
+	public Counter getTermLogAppends() {
+		return mTermLogAppends;
+	}
+
+	/**
+	 * Returns the time to force a batch of records of the term log to the disk
+	 * @return the Histogram in microseconds
+	 */
+	public Histogram getTermLogSync() {
+		return mTermLogSync;
+	}
+
+	/**
+	 * Returns the number of pings the Coordinator answered as busy
+	 * @return the Counter
+	 */
+	public Counter getAdmissionRejections() {
+		return mAdmissionRejections;
+	}
+
+	/**
+	 * Returns the number of Client connections accepted by the Coordinator
+	 * @return the Counter
+	 */
+	public Counter getServerAccepts() {
+		return mServerAccepts;
+	}
+
+	/**
+	 * Returns the number of pings answered as busy by the Coordinator
+	 * @return the Counter
+	 */
+	public Counter getPingBusy() {
+		return mPingBusy;
+	}
+
+	/**
+	 * Returns the number of replies of a Coordinator of an older term
+	 * @return the Counter
+	 */
+	public Counter getPingStale() {
+		return mPingStale;
+	}
+
+	/**
+	 * Returns the number of gossip probes
+	 * @return the Counter
+	 */
+	public Counter getGossipProbes() {
+		return mGossipProbes;
+	}
+
+	/**
+	 * Returns the number of gossip probes sent on behalf of another Node
+	 * @return the Counter
+	 */
+	public Counter getGossipIndirectProbes() {
+		return mGossipIndirectProbes;
+	}
+
+	/**
+	 * Returns the round trip time of the answered pings, in microseconds
+	 * @return the Histogram
+	 */
+	public Histogram getPingRtt() {
+		return mPingRtt;
+	}
+
+	/**
+	 * Returns the number of pings sent to the Coordinator
+	 * @return the Counter
+	 */
+	public Counter getPings() {
+		return mPings;
+	}
+
+	/**
+	 * Returns the number of pings the Coordinator did not answer
+	 * @return the Counter
+	 */
+	public Counter getPingFailures() {
+		return mPingFailures;
+	}
+
+	/**
+	 * Returns the time from the termination of the Coordinator to its
+	 * detection by a Node, in milliseconds
+	 * @return the Histogram
+	 */
+	public Histogram getDetectionDelay() {
+		return mDetectionDelay;
+	}
+
+	/**
+	 * Returns the number of Coordinators suspected by the failure detectors
+	 * @return the Counter
+	 */
+	public Counter getSuspicions() {
+		return mSuspicions;
+	}
+
+	/**
+	 * Returns the number of suspicions of a Coordinator which still held its lease
+	 * @return the Counter
+	 */
+	public Counter getLeaseDeferrals() {
+		return mLeaseDeferrals;
+	}
+
+	/**
+	 * Returns the time from the first Election message to the declaration
+	 * of the Coordinator, in milliseconds
+	 * @return the Histogram
+	 */
+	public Histogram getElectionDuration() {
+		return mElectionDuration;
+	}
+
+	/**
+	 * Returns the number of Election messages of each Election
+	 * @return the Histogram
+	 */
+	public Histogram getElectionMessages() {
+		return mElectionMessages;
+	}
+
+	/**
+	 * Returns the number of decided Elections
+	 * @return the Counter
+	 */
+	public Counter getElections() {
+		return mElections;
+	}
+
+	/**
+	 * Returns the number of Election rounds
+	 * @return the Counter
+	 */
+	public Counter getElectionRounds() {
+		return mElectionRounds;
+	}
+
+	/**
+	 * Returns the time a Coordinator served the Nodes, in milliseconds
+	 * @return the Histogram
+	 */
+	public Histogram getCoordinatorUptime() {
+		return mCoordinatorUptime;
+	}
+}
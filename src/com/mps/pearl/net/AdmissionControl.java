@@ -0,0 +1,138 @@
+package com.mps.pearl.net;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.mps.pearl.metrics.Metrics;
+
+/**
+ * This class decides which pings of the Clients the Coordinator ( Server
+ * Node ) serves. The Coordinator serves a bounded number of pings at once,
+ * its in-flight budget : a ping holds a share of the budget from its read
+ * until its reply is written, so an idle connection kept open by a Client
+ * holds none.
+ *
+ * A ping which is not admitted is answered by a TYPE_BUSY reply, with a
+ * random time to wait before the next ping, on the same connection. The
+ * Client takes the reply as a sign of life of the Coordinator, so an
+ * overloaded Coordinator slows its Clients down instead of being suspected
+ * and elected again, and accepts no new connection for it.
+ *
+ * The budget covers the pings only. The Election and Coordinator messages
+ * never reach the Coordinator server : they go over the datagram endpoint
+ * of each Node, with a socket and a thread of their own, so they are never
+ * queued behind the pings and need no share of the budget.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class AdmissionControl {
+
+	/**
+	 * A Logger tag
+	 */
+	private final String TAG = AdmissionControl.class.getSimpleName();
+
+	/**
+	 * Requested maximum length of the queue of incoming connections
+	 */
+	private final int mBacklog;
+
+	/**
+	 * Number of pings served at once, 0 to serve them all
+	 */
+	private final int mLimit;
+
+	/**
+	 * Time in milliseconds a Client waits after a busy reply, at least
+	 */
+	private final int mRetryMillis;
+
+	/**
+	 * Number of pings served, read and not yet answered
+	 */
+	private final AtomicInteger mInFlight = new AtomicInteger();
+
+	/**
+	 * Random generator of the times to wait, so the Clients do not retry together
+	 */
+	private final Random mRandom = new Random();
+
+	/**
+	 * Creates an AdmissionControl object.
+	 *
+	 * @param backlog the requested maximum length of the queue of incoming connections
+	 * @param limit the number of pings served at once, 0 to serve them all
+	 * @param retryMillis the time in milliseconds a Client waits after a busy reply, at least
+	 */
+	public AdmissionControl(int backlog, int limit, int retryMillis) {
+		this.mBacklog = backlog;
+		this.mLimit = Math.max(0, limit);
+		this.mRetryMillis = Math.max(1, Math.min(retryMillis, Short.MAX_VALUE / 2));
+	}
+
+	/**
+	 * Admits a ping, if the budget is not spent. An admitted ping is
+	 * released once its reply is written.
+	 *
+	 * @return True, if the ping is admitted
+	 */
+	public boolean tryAdmit() {
+		for (;;) {
+			int inFlight = mInFlight.get();
+			if (mLimit > 0 && inFlight >= mLimit) {
+				Metrics.getInstance().getAdmissionRejections().increment();
+				return false;
+			}
+			if (mInFlight.compareAndSet(inFlight, inFlight + 1)) return true;
+		}
+	}
+
+	/**
+	 * Releases admitted pings, once their replies are written
+	 * @param pings the number of pings to release
+	 */
+	public void release(int pings) {
+		mInFlight.addAndGet(-pings);
+	}
+
+	/**
+	 * Releases an admitted ping, once its reply is written
+	 */
+	public void release() {
+		release(1);
+	}
+
+	/**
+	 * Returns the time a Client waits before its next ping, a random
+	 * time between the retry time and twice as much
+	 *
+	 * @return the time in milliseconds, carried by the flags of a busy reply
+	 */
+	public short getRetryAfterMillis() {
+		return (short) (mRetryMillis + mRandom.nextInt(mRetryMillis + 1));
+	}
+
+	/**
+	 * Returns the requested maximum length of the queue of incoming connections
+	 * @return the backlog of the listening Socket
+	 */
+	public int getBacklog() {
+		return mBacklog;
+	}
+
+	/**
+	 * Returns the number of pings served
+	 * @return the number of admitted pings, not yet released
+	 */
+	public int getInFlight() {
+		return mInFlight.get();
+	}
+
+	@Override
+	public String toString() {
+		return TAG + " [in flight " + getInFlight() + " of " + mLimit + ", backlog " + mBacklog + "]";
+	}
+}
@@ -0,0 +1,30 @@
+package com.mps.pearl.net;
+
+import java.io.IOException;
+
+/**
+ * This interface represents the server side of the Coordinator ( Server
+ * Node ) : it answers the pings of the Client Nodes with ACTIVE messages
+ * until it is stopped. A server is opened by a Transport and is run once.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public interface CoordinatorServer {
+
+	/**
+	 * This method binds the address of the Coordinator and answers the
+	 * pings. It returns when the server is stopped.
+	 *
+	 * @throws IOException if the address can not be bound
+	 */
+	public void run() throws IOException;
+
+	/**
+	 * Stops the server and closes the connections of its Clients. A server
+	 * stopped before it runs returns from run() at once.
+	 */
+	public void stop();
+}
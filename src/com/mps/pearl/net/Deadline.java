@@ -0,0 +1,187 @@
+package com.mps.pearl.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+import com.mps.pearl.util.Logger;
+import com.mps.pearl.util.TimingWheel;
+
+/**
+ * This class bounds a blocking Socket operation, from its connect to its
+ * last read, by a deadline. The connect waits the remaining time at most,
+ * and each read waits the remaining time at most as the Socket timeout.
+ * A timer of the shared timing wheel closes the Socket once the deadline
+ * expires, which releases a blocked write as well.
+ *
+ * The caller cancels the operation from any Thread, the Socket is then
+ * closed, and the blocked connect, read or write throws at once. So the
+ * time to detect a half-dead Coordinator is bounded by the configured
+ * timeouts, not by the retries of the kernel.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class Deadline implements Runnable {
+
+	/**
+	 * A Logger tag
+	 */
+	private final String TAG = Deadline.class.getSimpleName();
+
+	/**
+	 * The deadline, read from System.nanoTime()
+	 */
+	private final long mDeadlineNanos;
+
+	/**
+	 * The timer which closes the Socket once the deadline expires
+	 */
+	private final TimingWheel.Timeout mTimer;
+
+	/**
+	 * The Socket of the operation, or null
+	 */
+	private volatile Socket mSocket;
+
+	/**
+	 * Boolean to indicate the operation was cancelled by its caller
+	 */
+	private volatile boolean isCancelled;
+
+	/**
+	 * Boolean to indicate the deadline expired before the operation was done
+	 */
+	private volatile boolean isExpired;
+
+	/**
+	 * Creates a Deadline object, which expires after a timeout.
+	 * @param timeoutMillis the time in milliseconds the operation may take
+	 */
+	public Deadline(long timeoutMillis) {
+		this.mDeadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		this.mTimer = TimingWheel.getInstance().schedule(this, timeoutMillis);
+	}
+
+	/**
+	 * Connects a new Socket, within the remaining time and a connect timeout
+	 *
+	 * @param ipAddress the String IP Address to connect to
+	 * @param port the port number to connect to
+	 * @param connectTimeoutMillis the time in milliseconds the connect may take
+	 * @return the connected Socket, bound to the deadline
+	 * @throws IOException if the Socket can not be connected in time
+	 */
+	public Socket connect(String ipAddress, int port, long connectTimeoutMillis) throws IOException {
+		Socket socket = new Socket();
+		attach(socket);
+		try {
+			socket.connect(new InetSocketAddress(ipAddress, port), (int) Math.min(connectTimeoutMillis, remainingMillis()));
+		} catch (SocketTimeoutException e) {
+			socket.close();
+			throw new SocketTimeoutException("Connect timed out [" + ipAddress + ":" + port + "]");
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+		return socket;
+	}
+
+	/**
+	 * Binds an open Socket to the deadline. The Socket is closed once the
+	 * deadline expires, or the operation is cancelled.
+	 *
+	 * @param socket the Socket of the operation
+	 * @throws SocketException if the operation is cancelled
+	 */
+	public void attach(Socket socket) throws SocketException {
+		mSocket = socket;
+		if( isCancelled || isExpired ) closeSocket();
+		if( isCancelled ) throw new SocketException("Operation cancelled");
+	}
+
+	/**
+	 * Sets the remaining time as the timeout of the next read of the Socket
+	 * @throws IOException if the operation is cancelled, or the deadline expired
+	 */
+	public void arm() throws IOException {
+		Socket socket = mSocket;
+		if( socket != null ) socket.setSoTimeout(remainingMillis());
+	}
+
+	/**
+	 * Returns the remaining time of the operation
+	 *
+	 * @return the time in milliseconds, at least 1
+	 * @throws SocketTimeoutException if the deadline expired
+	 * @throws SocketException if the operation is cancelled
+	 */
+	public int remainingMillis() throws IOException {
+		if( isCancelled ) throw new SocketException("Operation cancelled");
+		long remainingNanos = mDeadlineNanos - System.nanoTime();
+		if( remainingNanos <= 0 ) throw new SocketTimeoutException("Deadline expired");
+		return (int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos));
+	}
+
+	/**
+	 * Cancels the operation, the Socket is closed and a blocked connect,
+	 * read or write throws
+	 */
+	public void cancel() {
+		isCancelled = true;
+		mTimer.cancel();
+		closeSocket();
+	}
+
+	/**
+	 * Ends the operation in time, the Socket stays open for the next one
+	 */
+	public void done() {
+		mTimer.cancel();
+		mSocket = null;
+	}
+
+	/**
+	 * Returns True, if the deadline expired before the operation was done
+	 * @return True, if the Socket was closed by the deadline
+	 */
+	public boolean isExpired() {
+		return isExpired;
+	}
+
+	/**
+	 * Returns True, if the operation was cancelled by its caller
+	 * @return True, if the operation was cancelled
+	 */
+	public boolean isCancelled() {
+		return isCancelled;
+	}
+
+	/**
+	 * This method closes the Socket once the deadline expires
+	 */
+	@Override
+	public void run() {
+		isExpired = true;
+		if( mSocket != null ) Logger.d(TAG, "run() : deadline expired, closing {}", mSocket);
+		closeSocket();
+	}
+
+	/**
+	 * Closes the Socket of the operation, if any
+	 */
+	private void closeSocket() {
+		Socket socket = mSocket;
+		if( socket == null ) return;
+		try {
+			socket.close();
+		} catch (IOException e) {
+			Logger.e(TAG, "Error closing ... {}", e.getMessage());
+		}
+	}
+}
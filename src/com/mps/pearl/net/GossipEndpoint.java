@@ -0,0 +1,47 @@
+package com.mps.pearl.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This interface represents the datagram endpoint of a Node for the
+ * gossip membership protocol, and for the heartbeats pushed by the
+ * Coordinator. Every Node, the Coordinator included, binds an endpoint to
+ * its address. A datagram may be lost, and is delivered to
+ * the Receiver of the endpoint one at a time, never on the Thread of the
+ * sender.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public interface GossipEndpoint {
+
+	/**
+	 * Sends a datagram to the endpoint bound to an address. The datagram
+	 * is lost if no endpoint is bound to the address.
+	 *
+	 * @param ipAddress the String IP Address of the receiver
+	 * @param port the port number of the receiver
+	 * @param datagram the bytes from the position to the limit, no longer
+	 * used by the sender
+	 */
+	public void send(String ipAddress, int port, ByteBuffer datagram);
+
+	/**
+	 * Closes the endpoint, the datagrams addressed to it are then lost
+	 */
+	public void close();
+
+	/**
+	 * This interface represents the receiver of the datagrams of an endpoint
+	 */
+	public interface Receiver {
+
+		/**
+		 * Receives a datagram
+		 * @param datagram the bytes from the position to the limit
+		 */
+		public void receive(ByteBuffer datagram);
+	}
+}
@@ -0,0 +1,72 @@
+package com.mps.pearl.net;
+
+/**
+ * This interface represents a heartbeat channel from a Client Node to
+ * the Coordinator ( Server Node ). A channel is owned by a single Node
+ * and keeps its connection open between the pings. If the Coordinator
+ * changes, the channel reconnects to the new Coordinator on the next ping.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public interface HeartbeatChannel {
+
+	/**
+	 * Pings the Coordinator and waits for its reply. The ping carries the
+	 * term of the Election known to the Node, and a reply of a lower term
+	 * comes from a stale Coordinator : it counts as a failed ping.
+	 *
+	 * @param ipAddress the String IP Address of the Coordinator
+	 * @param port the port number of the Coordinator
+	 * @param term the term of the Election known to the Node, 0 to accept any term
+	 * @return True, if the Coordinator replied in the term, False, if the
+	 * Coordinator could not be reached, or replied in a lower term
+	 */
+	public boolean ping(String ipAddress, int port, long term);
+
+	/**
+	 * Sends a single ping to a Node and waits for its reply, whether the
+	 * channel reads its replies on the next ping or not
+	 *
+	 * @param ipAddress the String IP Address of the Node
+	 * @param port the port number of the Node
+	 * @param timeoutMillis the time in milliseconds to wait for the reply
+	 * @return True, if the Node replied within the timeout
+	 */
+	public boolean probe(String ipAddress, int port, long timeoutMillis);
+
+	/**
+	 * Returns the time of the last reply of the Coordinator, read from
+	 * System.nanoTime(), to feed the failure detector of the Node
+	 *
+	 * @return the time in nanoseconds of the last reply, or 0 if the current
+	 * Coordinator did not reply yet
+	 */
+	public long getLastReplyNanos();
+
+	/**
+	 * Returns the time the ping answered by the last reply was sent, read
+	 * from System.nanoTime(). The Coordinator replied after it, so the
+	 * lease renewed by the reply is counted from it.
+	 *
+	 * @return the time in nanoseconds the answered ping was sent, or 0 if
+	 * the current Coordinator did not reply yet
+	 */
+	public long getLastRequestNanos();
+
+	/**
+	 * Returns the round trip time of the last ping, if the channel waited
+	 * for its reply
+	 *
+	 * @return the time in nanoseconds from the ping to its reply, or 0 if
+	 * the last ping was not answered, or its reply is read on a later ping
+	 */
+	public long getLastRttNanos();
+
+	/**
+	 * Closes the connection of the channel
+	 */
+	public void close();
+}
@@ -0,0 +1,129 @@
+package com.mps.pearl.net;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+import com.mps.pearl.util.Logger;
+
+/**
+ * This class implements the Coordinator ( Server Node ) over the
+ * InMemoryTransport. The Thread which runs the server drains its mailbox
+ * and answers each ping with an ACTIVE message carrying the sequence
+ * number of the ping, as the UdpHeartbeatResponder does.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class InMemoryCoordinatorServer implements CoordinatorServer {
+
+	/**
+	 * A Logger tag
+	 */
+	private final String TAG = InMemoryCoordinatorServer.class.getSimpleName();
+
+	/**
+	 * The transport of the server
+	 */
+	private final InMemoryTransport mTransport;
+
+	/**
+	 * Id of the Coordinator
+	 */
+	private final int mNodeId;
+
+	/**
+	 * Term of the Election which elected the Coordinator
+	 */
+	private final long mTerm;
+
+	/**
+	 * The address the Coordinator is bound to
+	 */
+	private final String mAddress;
+
+	/**
+	 * The mailbox the pings are delivered to
+	 */
+	private final InMemoryMailbox mMailbox = new InMemoryMailbox();
+
+	/**
+	 * Boolean to hold the running state of the server
+	 */
+	private volatile boolean isRunning = true;
+
+	/**
+	 * The Thread which runs the server, or null
+	 */
+	private volatile Thread mRunner;
+
+	/**
+	 * Creates an InMemoryCoordinatorServer object.
+	 *
+	 * @param transport the transport of the server
+	 * @param nodeId the Id of the Coordinator
+	 * @param term the term of the Election which elected the Coordinator
+	 * @param address the address to bind
+	 */
+	InMemoryCoordinatorServer(InMemoryTransport transport, int nodeId, long term, String address) {
+		this.mTransport = transport;
+		this.mNodeId = nodeId;
+		this.mTerm = term;
+		this.mAddress = address;
+	}
+
+	@Override
+	public void run() throws IOException {
+		mTransport.bind(this);
+		Logger.d(TAG, "run() : bound [{}]", mAddress);
+		mRunner = Thread.currentThread();
+		try {
+			while (isRunning) {
+				Message message = mMailbox.take();
+				if (message == null || message.getType() != Message.TYPE_PING) continue;
+
+				// answer with the sequence number of the ping, reusing its message
+				int clientId = message.getSenderId();
+				mTransport.sendToChannel(mNodeId, clientId, message.set(Message.TYPE_ACTIVE, mNodeId, mTerm, message.getSequence()));
+			}
+		} finally {
+			mRunner = null;
+			mTransport.unbind(this);
+			mMailbox.clear();
+			Logger.d(TAG, "run() : stopped [{}]", mAddress);
+		}
+	}
+
+	@Override
+	public void stop() {
+		isRunning = false;
+		// the permit wakes up the runner, even if it is about to park
+		Thread runner = mRunner;
+		if (runner != null) LockSupport.unpark(runner);
+	}
+
+	/**
+	 * Returns the Id of the Coordinator
+	 * @return the integer Id of the Coordinator
+	 */
+	int getNodeId() {
+		return mNodeId;
+	}
+
+	/**
+	 * Returns the address the Coordinator is bound to
+	 * @return the String address
+	 */
+	String getAddress() {
+		return mAddress;
+	}
+
+	/**
+	 * Returns the mailbox the pings are delivered to
+	 * @return the InMemoryMailbox of the server
+	 */
+	InMemoryMailbox getMailbox() {
+		return mMailbox;
+	}
+}
@@ -0,0 +1,138 @@
+package com.mps.pearl.net;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.mps.pearl.util.Logger;
+import com.mps.pearl.util.TaskExecutor;
+
+/**
+ * This class implements a GossipEndpoint over the InMemoryTransport. The
+ * delivered datagrams are queued, and drained by a single task of the
+ * TaskExecutor at a time, so the Receiver handles them one by one, and
+ * never on the Thread of the sender.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class InMemoryGossipEndpoint implements GossipEndpoint {
+
+	/**
+	 * A Logger tag
+	 */
+	private final String TAG = InMemoryGossipEndpoint.class.getSimpleName();
+
+	/**
+	 * The transport of the endpoint
+	 */
+	private final InMemoryTransport mTransport;
+
+	/**
+	 * Id of the Node which owns the endpoint
+	 */
+	private final int mNodeId;
+
+	/**
+	 * Address the endpoint is bound to
+	 */
+	private final String mAddress;
+
+	/**
+	 * The Receiver of the datagrams
+	 */
+	private final Receiver mReceiver;
+
+	/**
+	 * The delivered datagrams, not received yet
+	 */
+	private final ConcurrentLinkedQueue<ByteBuffer> mQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+
+	/**
+	 * Boolean to indicate a task drains the queue
+	 */
+	private final AtomicBoolean isDraining = new AtomicBoolean();
+
+	/**
+	 * The task which drains the queue
+	 */
+	private final Runnable mDrainTask = new Runnable() {
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+
+	/**
+	 * Creates an InMemoryGossipEndpoint object.
+	 *
+	 * @param transport the transport of the endpoint
+	 * @param nodeId the Id of the Node which owns the endpoint
+	 * @param address the address the endpoint is bound to
+	 * @param receiver the Receiver of the datagrams
+	 */
+	InMemoryGossipEndpoint(InMemoryTransport transport, int nodeId, String address, Receiver receiver) {
+		this.mTransport = transport;
+		this.mNodeId = nodeId;
+		this.mAddress = address;
+		this.mReceiver = receiver;
+	}
+
+	@Override
+	public void send(String ipAddress, int port, ByteBuffer datagram) {
+		mTransport.sendToEndpoint(mNodeId, InMemoryTransport.address(ipAddress, port), datagram);
+	}
+
+	@Override
+	public void close() {
+		mTransport.unbind(this);
+		mQueue.clear();
+	}
+
+	/**
+	 * Delivers a datagram to the endpoint
+	 * @param datagram the datagram
+	 */
+	void deliver(ByteBuffer datagram) {
+		mQueue.offer(datagram);
+		if (isDraining.compareAndSet(false, true)) {
+			TaskExecutor.getInstance().submit(mDrainTask);
+		}
+	}
+
+	/**
+	 * Hands the queued datagrams to the Receiver
+	 */
+	private void drain() {
+		while (true) {
+			for (ByteBuffer datagram; (datagram = mQueue.poll()) != null;) {
+				try {
+					mReceiver.receive(datagram);
+				} catch (RuntimeException e) {
+					Logger.e(TAG, "drain() : {}", e);
+				}
+			}
+			isDraining.set(false);
+			// a datagram delivered after the last poll has not submitted a task
+			if (mQueue.isEmpty() || !isDraining.compareAndSet(false, true)) return;
+		}
+	}
+
+	/**
+	 * Returns the Id of the Node which owns the endpoint
+	 * @return the Id of the Node
+	 */
+	int getNodeId() {
+		return mNodeId;
+	}
+
+	/**
+	 * Returns the address the endpoint is bound to
+	 * @return the String address
+	 */
+	String getAddress() {
+		return mAddress;
+	}
+}
@@ -0,0 +1,225 @@
+package com.mps.pearl.net;
+
+import java.util.concurrent.TimeUnit;
+
+import com.mps.pearl.metrics.Metrics;
+import com.mps.pearl.util.Logger;
+
+/**
+ * This class implements a HeartbeatChannel over the InMemoryTransport. It
+ * works as the UdpHeartbeatChannel does : the channel never waits for a
+ * reply, it collects on each ping the replies delivered to its mailbox
+ * since the previous ping, and the Coordinator ( Server Node ) is
+ * considered as unreachable once too many consecutive pings are missing.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class InMemoryHeartbeatChannel implements HeartbeatChannel {
+
+	/**
+	 * A Logger tag
+	 */
+	private final String TAG = InMemoryHeartbeatChannel.class.getSimpleName();
+
+	/**
+	 * Number of the last pings whose send time is kept, more than the
+	 * missing replies which make the Coordinator unreachable
+	 */
+	private static final int PING_HISTORY = 8;
+
+	/**
+	 * The transport of the channel
+	 */
+	private final InMemoryTransport mTransport;
+
+	/**
+	 * Id of the Node which owns the channel
+	 */
+	private final int mNodeId;
+
+	/**
+	 * Number of consecutive missing replies to consider the Coordinator unreachable
+	 */
+	private final int mMaxMissed;
+
+	/**
+	 * The mailbox the replies are delivered to
+	 */
+	private final InMemoryMailbox mMailbox = new InMemoryMailbox();
+
+	/**
+	 * Address of the Coordinator
+	 */
+	private String mAddress;
+
+	/**
+	 * Boolean to hold if the channel is registered to receive its replies
+	 */
+	private boolean isOpen;
+
+	/**
+	 * Sequence number of the last sent ping
+	 */
+	private long mSequence;
+
+	/**
+	 * Highest sequence number answered by the Coordinator
+	 */
+	private long mLastAcked;
+
+	/**
+	 * Term of the last ping, a reply of a lower term is not counted
+	 */
+	private long mTerm;
+
+	/**
+	 * Time in nanoseconds of the last reply of the Coordinator
+	 */
+	private volatile long mLastReplyNanos;
+
+	/**
+	 * Time in nanoseconds the last answered ping was sent
+	 */
+	private volatile long mLastRequestNanos;
+
+	/**
+	 * Send times in nanoseconds of the last pings, by sequence number
+	 */
+	private final long[] mPingNanos = new long[PING_HISTORY];
+
+	/**
+	 * Creates an InMemoryHeartbeatChannel object.
+	 *
+	 * @param transport the transport of the channel
+	 * @param nodeId the Id of the Node which owns the channel
+	 * @param maxMissed number of consecutive missing replies to consider
+	 * the Coordinator as unreachable
+	 */
+	InMemoryHeartbeatChannel(InMemoryTransport transport, int nodeId, int maxMissed) {
+		this.mTransport = transport;
+		this.mNodeId = nodeId;
+		this.mMaxMissed = maxMissed;
+	}
+
+	@Override
+	public synchronized boolean ping(String ipAddress, int port, long term) {
+		if (!isOpen) {
+			mTransport.register(this);
+			isOpen = true;
+		}
+
+		String address = InMemoryTransport.address(ipAddress, port);
+		if (!address.equals(mAddress)) {
+			// new Coordinator, start counting from the current sequence
+			Logger.d(TAG, "ping() : Coordinator changed to [{}]", address);
+			mAddress = address;
+			mLastAcked = mSequence;
+			mLastReplyNanos = 0;
+			mLastRequestNanos = 0;
+		}
+
+		receiveReplies();
+		long missed = mSequence - mLastAcked;
+
+		// send the next ping, the message belongs to the transport once sent
+		mTerm = term;
+		mPingNanos[(int) (++mSequence % PING_HISTORY)] = System.nanoTime();
+		mTransport.sendToServer(mNodeId, mAddress, new Message().set(Message.TYPE_PING, mNodeId, term, mSequence));
+
+		if (missed > 0)
+			if(Logger.isDebugEnabled())Logger.d(TAG, "ping() : {} missing replies from [{}]", missed, mAddress);
+		return missed < mMaxMissed;
+	}
+
+	@Override
+	public synchronized boolean probe(String ipAddress, int port, long timeoutMillis) {
+		ping(ipAddress, port, 0);
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		try {
+			while (true) {
+				receiveReplies();
+				if (mLastAcked == mSequence) return true;
+				if (System.nanoTime() >= deadline) return false;
+				TimeUnit.MILLISECONDS.sleep(1);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Reads all the replies delivered since the previous ping
+	 */
+	private void receiveReplies() {
+		Message message;
+		while ((message = mMailbox.poll()) != null) {
+			if (message.getType() != Message.TYPE_ACTIVE) continue;
+			if (message.getTerm() < mTerm) {
+				// a Coordinator of an older term, the ping stays missing
+				Metrics.getInstance().getPingStale().increment();
+				continue;
+			}
+			long sequence = message.getSequence();
+			if (sequence > mLastAcked && sequence <= mSequence) {
+				mLastAcked = sequence;
+				mLastReplyNanos = System.nanoTime();
+				if (mSequence - sequence < PING_HISTORY) mLastRequestNanos = mPingNanos[(int) (sequence % PING_HISTORY)];
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of pings which are not answered by the Coordinator
+	 * @return the number of missing replies
+	 */
+	public synchronized long getMissedCount() {
+		return mSequence - mLastAcked;
+	}
+
+	@Override
+	public long getLastReplyNanos() {
+		return mLastReplyNanos;
+	}
+
+	@Override
+	public long getLastRequestNanos() {
+		return mLastRequestNanos;
+	}
+
+	@Override
+	public long getLastRttNanos() {
+		// the replies are read on the next ping
+		return 0;
+	}
+
+	@Override
+	public synchronized void close() {
+		if (!isOpen) return;
+		mTransport.unregister(this);
+		mMailbox.clear();
+		isOpen = false;
+		mAddress = null;
+		mLastReplyNanos = 0;
+		mLastRequestNanos = 0;
+	}
+
+	/**
+	 * Returns the Id of the Node which owns the channel
+	 * @return the integer Id of the Node
+	 */
+	int getNodeId() {
+		return mNodeId;
+	}
+
+	/**
+	 * Returns the mailbox the replies are delivered to
+	 * @return the InMemoryMailbox of the channel
+	 */
+	InMemoryMailbox getMailbox() {
+		return mMailbox;
+	}
+}
@@ -0,0 +1,81 @@
+package com.mps.pearl.net;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class implements the mailbox of an endpoint of the InMemoryTransport.
+ * Any Thread delivers messages to the mailbox through a lock-free queue, and
+ * the single owner of the mailbox polls them, or parks until one is
+ * delivered.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+class InMemoryMailbox {
+
+	/**
+	 * The delivered messages, in the order of their delivery
+	 */
+	private final Queue<Message> mQueue = new ConcurrentLinkedQueue<Message>();
+
+	/**
+	 * The owner Thread parked on the empty mailbox, or null
+	 */
+	private volatile Thread mWaiter;
+
+	/**
+	 * Delivers a message and wakes up the owner of the mailbox
+	 *
+	 * @param message the delivered message, no longer used by the sender
+	 */
+	void offer(Message message) {
+		mQueue.offer(message);
+		wakeUp();
+	}
+
+	/**
+	 * Returns the next delivered message, or null if the mailbox is empty
+	 *
+	 * @return the next Message, or null
+	 */
+	Message poll() {
+		return mQueue.poll();
+	}
+
+	/**
+	 * Returns the next delivered message, parking the owner until a message
+	 * is delivered or the owner is unparked
+	 *
+	 * @return the next Message, or null if the owner was unparked
+	 */
+	Message take() {
+		Message message = mQueue.poll();
+		if (message != null) return message;
+
+		mWaiter = Thread.currentThread();
+		// a message may have been delivered before the owner was published
+		message = mQueue.poll();
+		if (message == null) LockSupport.park(this);
+		mWaiter = null;
+		return message != null ? message : mQueue.poll();
+	}
+
+	/**
+	 * Wakes up the owner parked on the mailbox
+	 */
+	private void wakeUp() {
+		Thread waiter = mWaiter;
+		if (waiter != null) LockSupport.unpark(waiter);
+	}
+
+	/**
+	 * Discards the messages of the mailbox
+	 */
+	void clear() {
+		mQueue.clear();
+	}
+}
@@ -0,0 +1,360 @@
+package com.mps.pearl.net;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.mps.pearl.util.Constant;
+import com.mps.pearl.util.Settings;
+import com.mps.pearl.util.TimingWheel;
+
+/**
+ * This class implements the Transport over the memory of a single JVM, so
+ * a System of thousands of Nodes runs without a Socket. Each channel and
+ * each Coordinator has a mailbox, and a message is delivered to the
+ * mailbox of its receiver through a lock-free queue.
+ *
+ * Each link, from a sender Node to a receiver Node, has a latency, a
+ * random jitter added to the latency, and a ratio of lost messages. The
+ * links which are not configured use the default link, read from the
+ * Settings. A delayed message is delivered by the TimingWheel, so the
+ * latency is rounded up to its tick. A message addressed to an address
+ * no Coordinator is bound to is lost, as a datagram would be.
+ *
+ * The gossip endpoints of the Nodes are bound to the addresses of the
+ * Nodes too, apart from the Coordinators, as UDP ports are apart from
+ * TCP ports.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class InMemoryTransport implements Transport {
+
+	/**
+	 * An instance of InMemoryTransport class
+	 */
+	private static InMemoryTransport INSTANCE;
+
+	/**
+	 * The bound Coordinators, by address
+	 */
+	private final ConcurrentHashMap<String, InMemoryCoordinatorServer> mServers = new ConcurrentHashMap<String, InMemoryCoordinatorServer>();
+
+	/**
+	 * The open channels, by Id of the Node which owns them
+	 */
+	private final ConcurrentHashMap<Integer, InMemoryHeartbeatChannel> mChannels = new ConcurrentHashMap<Integer, InMemoryHeartbeatChannel>();
+
+	/**
+	 * The bound gossip endpoints, by address
+	 */
+	private final ConcurrentHashMap<String, InMemoryGossipEndpoint> mEndpoints = new ConcurrentHashMap<String, InMemoryGossipEndpoint>();
+
+	/**
+	 * The configured links, by Ids of the sender and the receiver
+	 */
+	private final ConcurrentHashMap<Long, Link> mLinks = new ConcurrentHashMap<Long, Link>();
+
+	/**
+	 * The link of the Nodes which have no configured link
+	 */
+	private volatile Link mDefaultLink;
+
+	/**
+	 * Number of messages sent
+	 */
+	private final AtomicLong mSentCount = new AtomicLong();
+
+	/**
+	 * Number of messages lost by the links, or sent to no receiver
+	 */
+	private final AtomicLong mLostCount = new AtomicLong();
+
+	/**
+	 * Returns the unique InMemoryTransport object associated with this System, if any.
+	 * @return the instance of InMemoryTransport
+	 */
+	public static synchronized InMemoryTransport getInstance() {
+		if (INSTANCE == null) {
+			Settings settings = Settings.getInstance();
+			INSTANCE = new InMemoryTransport(
+					settings.getLong(Constant.KEY_MEMORY_LATENCY_MILLIS, Constant.MEMORY_LATENCY_MILLIS),
+					settings.getLong(Constant.KEY_MEMORY_JITTER_MILLIS, Constant.MEMORY_JITTER_MILLIS),
+					settings.getDouble(Constant.KEY_MEMORY_LOSS, Constant.MEMORY_LOSS));
+		}
+		return INSTANCE;
+	}
+
+	/**
+	 * Creates an InMemoryTransport object.
+	 *
+	 * @param latencyMillis the latency of the default link
+	 * @param jitterMillis the random latency added to each message of the default link
+	 * @param loss the ratio of messages lost by the default link, from 0 to 1
+	 */
+	public InMemoryTransport(long latencyMillis, long jitterMillis, double loss) {
+		this.mDefaultLink = new Link(latencyMillis, jitterMillis, loss);
+	}
+
+	@Override
+	public HeartbeatChannel openChannel(int nodeId) {
+		return new InMemoryHeartbeatChannel(this, nodeId,
+				Settings.getInstance().getInt(Constant.KEY_HEARTBEAT_MAX_MISSED, Constant.HEARTBEAT_MAX_MISSED));
+	}
+
+	@Override
+	public CoordinatorServer openServer(int nodeId, long term, String ipAddress, int port) {
+		return new InMemoryCoordinatorServer(this, nodeId, term, address(ipAddress, port));
+	}
+
+	@Override
+	public GossipEndpoint openEndpoint(int nodeId, String ipAddress, int port, GossipEndpoint.Receiver receiver)
+			throws IOException {
+		InMemoryGossipEndpoint endpoint = new InMemoryGossipEndpoint(this, nodeId, address(ipAddress, port), receiver);
+		if (mEndpoints.putIfAbsent(endpoint.getAddress(), endpoint) != null)
+			throw new BindException("Address already in use : " + endpoint.getAddress());
+		return endpoint;
+	}
+
+	/**
+	 * Sets the link of the Nodes which have no configured link
+	 *
+	 * @param latencyMillis the latency of the link
+	 * @param jitterMillis the random latency added to each message
+	 * @param loss the ratio of lost messages, from 0 to 1
+	 */
+	public void setDefaultLink(long latencyMillis, long jitterMillis, double loss) {
+		mDefaultLink = new Link(latencyMillis, jitterMillis, loss);
+	}
+
+	/**
+	 * Sets the link from a sender Node to a receiver Node. A loss of 1
+	 * cuts the link.
+	 *
+	 * @param fromId the Id of the sender Node
+	 * @param toId the Id of the receiver Node
+	 * @param latencyMillis the latency of the link
+	 * @param jitterMillis the random latency added to each message
+	 * @param loss the ratio of lost messages, from 0 to 1
+	 */
+	public void setLink(int fromId, int toId, long latencyMillis, long jitterMillis, double loss) {
+		mLinks.put(linkKey(fromId, toId), new Link(latencyMillis, jitterMillis, loss));
+	}
+
+	/**
+	 * Removes the link from a sender Node to a receiver Node, which uses
+	 * the default link again
+	 *
+	 * @param fromId the Id of the sender Node
+	 * @param toId the Id of the receiver Node
+	 */
+	public void removeLink(int fromId, int toId) {
+		mLinks.remove(linkKey(fromId, toId));
+	}
+
+	/**
+	 * Returns the number of messages sent over the transport
+	 * @return the number of sent messages
+	 */
+	public long getSentCount() {
+		return mSentCount.get();
+	}
+
+	/**
+	 * Returns the number of messages lost by the links, or sent to no receiver
+	 * @return the number of lost messages
+	 */
+	public long getLostCount() {
+		return mLostCount.get();
+	}
+
+	/**
+	 * Sends a message to the Coordinator bound to an address
+	 *
+	 * @param fromId the Id of the sender Node
+	 * @param address the address of the Coordinator
+	 * @param message the message, no longer used by the sender
+	 */
+	void sendToServer(int fromId, String address, Message message) {
+		mSentCount.incrementAndGet();
+		InMemoryCoordinatorServer server = mServers.get(address);
+		if (server == null) {
+			mLostCount.incrementAndGet();
+			return;
+		}
+		send(fromId, server.getNodeId(), server.getMailbox(), message);
+	}
+
+	/**
+	 * Sends a message to the channel of a Node
+	 *
+	 * @param fromId the Id of the sender Node
+	 * @param toId the Id of the Node which owns the channel
+	 * @param message the message, no longer used by the sender
+	 */
+	void sendToChannel(int fromId, int toId, Message message) {
+		mSentCount.incrementAndGet();
+		InMemoryHeartbeatChannel channel = mChannels.get(toId);
+		if (channel == null) {
+			mLostCount.incrementAndGet();
+			return;
+		}
+		send(fromId, toId, channel.getMailbox(), message);
+	}
+
+	/**
+	 * Sends a datagram to the gossip endpoint bound to an address
+	 *
+	 * @param fromId the Id of the sender Node
+	 * @param address the address of the endpoint
+	 * @param datagram the datagram, no longer used by the sender
+	 */
+	void sendToEndpoint(int fromId, String address, final ByteBuffer datagram) {
+		mSentCount.incrementAndGet();
+		final InMemoryGossipEndpoint endpoint = mEndpoints.get(address);
+		if (endpoint == null) {
+			mLostCount.incrementAndGet();
+			return;
+		}
+		send(fromId, endpoint.getNodeId(), new Runnable() {
+			@Override
+			public void run() {
+				endpoint.deliver(datagram);
+			}
+		});
+	}
+
+	/**
+	 * Delivers a message to a mailbox over the link of the sender and the receiver
+	 */
+	private void send(int fromId, int toId, final InMemoryMailbox mailbox, final Message message) {
+		send(fromId, toId, new Runnable() {
+			@Override
+			public void run() {
+				mailbox.offer(message);
+			}
+		});
+	}
+
+	/**
+	 * Runs a delivery over the link of the sender and the receiver, once
+	 * the latency of the link has elapsed, unless the link loses it
+	 */
+	private void send(int fromId, int toId, Runnable delivery) {
+		Link link = mLinks.get(linkKey(fromId, toId));
+		if (link == null) link = mDefaultLink;
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		if (link.loss > 0 && random.nextDouble() < link.loss) {
+			mLostCount.incrementAndGet();
+			return;
+		}
+
+		long delayMillis = link.latencyMillis + (link.jitterMillis > 0 ? random.nextLong(link.jitterMillis + 1) : 0);
+		if (delayMillis <= 0) {
+			delivery.run();
+			return;
+		}
+		TimingWheel.getInstance().schedule(delivery, delayMillis);
+	}
+
+	/**
+	 * Binds a Coordinator to its address
+	 *
+	 * @param server the Coordinator
+	 * @throws BindException if another Coordinator is bound to the address
+	 */
+	void bind(InMemoryCoordinatorServer server) throws IOException {
+		if (mServers.putIfAbsent(server.getAddress(), server) != null)
+			throw new BindException("Address already in use : " + server.getAddress());
+	}
+
+	/**
+	 * Releases the address of a Coordinator
+	 *
+	 * @param server the Coordinator
+	 */
+	void unbind(InMemoryCoordinatorServer server) {
+		mServers.remove(server.getAddress(), server);
+	}
+
+	/**
+	 * Releases the address of a gossip endpoint
+	 *
+	 * @param endpoint the gossip endpoint
+	 */
+	void unbind(InMemoryGossipEndpoint endpoint) {
+		mEndpoints.remove(endpoint.getAddress(), endpoint);
+	}
+
+	/**
+	 * Registers the channel of a Node to receive its replies
+	 *
+	 * @param channel the channel
+	 */
+	void register(InMemoryHeartbeatChannel channel) {
+		mChannels.put(channel.getNodeId(), channel);
+	}
+
+	/**
+	 * Releases the registration of the channel of a Node
+	 *
+	 * @param channel the channel
+	 */
+	void unregister(InMemoryHeartbeatChannel channel) {
+		mChannels.remove(channel.getNodeId(), channel);
+	}
+
+	/**
+	 * Returns the address of a Coordinator
+	 *
+	 * @param ipAddress the String IP Address
+	 * @param port the port number
+	 * @return the String address
+	 */
+	static String address(String ipAddress, int port) {
+		return ipAddress + ":" + port;
+	}
+
+	/**
+	 * Returns the key of the link from a sender Node to a receiver Node
+	 */
+	private static long linkKey(int fromId, int toId) {
+		return ((long) fromId << 32) | (toId & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * This class holds the settings of a link
+	 */
+	private static class Link {
+
+		/**
+		 * Latency of the link in milliseconds
+		 */
+		final long latencyMillis;
+
+		/**
+		 * Random latency in milliseconds added to each message
+		 */
+		final long jitterMillis;
+
+		/**
+		 * Ratio of lost messages, from 0 to 1
+		 */
+		final double loss;
+
+		/**
+		 * Creates a Link object.
+		 */
+		Link(long latencyMillis, long jitterMillis, double loss) {
+			this.latencyMillis = Math.max(0, latencyMillis);
+			this.jitterMillis = Math.max(0, jitterMillis);
+			this.loss = loss;
+		}
+	}
+}
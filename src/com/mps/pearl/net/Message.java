@@ -0,0 +1,225 @@
+package com.mps.pearl.net;
+
+/**
+ * This class represents the header of a message exchanged between the
+ * Nodes. A Message is mutable so a single instance can be reused for
+ * every message a channel sends or receives, which keeps the heartbeat
+ * path free of allocations. The MessageCodec turns a Message into its
+ * binary form and back.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public final class Message {
+
+	/**
+	 * Type of a ping of a Client Node
+	 */
+	public static final byte TYPE_PING = 1;
+
+	/**
+	 * Type of the reply of the Coordinator to a ping
+	 */
+	public static final byte TYPE_ACTIVE = 2;
+
+	/**
+	 * Type of an Election message sent to the Nodes with a higher Id
+	 */
+	public static final byte TYPE_ELECTION = 3;
+
+	/**
+	 * Type of the answer of a Node with a higher Id to an Election message
+	 */
+	public static final byte TYPE_ANSWER = 4;
+
+	/**
+	 * Type of the message which declares the new Coordinator
+	 */
+	public static final byte TYPE_COORDINATOR = 5;
+
+	/**
+	 * Type of the gossip probe of a Node, answered by a TYPE_GOSSIP_ACK
+	 */
+	public static final byte TYPE_GOSSIP_PING = 6;
+
+	/**
+	 * Type of the answer to a gossip probe, direct or relayed
+	 */
+	public static final byte TYPE_GOSSIP_ACK = 7;
+
+	/**
+	 * Type of the request to probe a Node on behalf of the sender
+	 */
+	public static final byte TYPE_GOSSIP_PING_REQ = 8;
+
+	/**
+	 * Type of the heartbeat pushed by the Coordinator to the Other Nodes
+	 */
+	public static final byte TYPE_HEARTBEAT = 9;
+
+	/**
+	 * Type of the heartbeats of the election groups, coalesced for a pair of Nodes
+	 */
+	public static final byte TYPE_GROUP_HEARTBEAT = 10;
+
+	/**
+	 * Type of the reply of an overloaded Coordinator, its flags carry the
+	 * time in milliseconds the sender should wait before the next message
+	 */
+	public static final byte TYPE_BUSY = 11;
+
+	/**
+	 * Type of the message
+	 */
+	private byte type;
+
+	/**
+	 * Flags of the message
+	 */
+	private short flags;
+
+	/**
+	 * Id of the Node which sent the message
+	 */
+	private int senderId;
+
+	/**
+	 * Election term known by the sender
+	 */
+	private long term;
+
+	/**
+	 * Sequence number of the message
+	 */
+	private long sequence;
+
+	/**
+	 * Length in bytes of the payload following the header
+	 */
+	private int payloadLength;
+
+	/**
+	 * Sets all the fields of the header, without payload
+	 *
+	 * @param type the type of the message
+	 * @param senderId the Id of the sending Node
+	 * @param term the Election term known by the sender
+	 * @param sequence the sequence number of the message
+	 * @return this Message
+	 */
+	public Message set(byte type, int senderId, long term, long sequence) {
+		this.type = type;
+		this.flags = 0;
+		this.senderId = senderId;
+		this.term = term;
+		this.sequence = sequence;
+		this.payloadLength = 0;
+		return this;
+	}
+
+	/**
+	 * Returns the type of the message
+	 * @return the type of the message
+	 */
+	public byte getType() {
+		return type;
+	}
+
+	/**
+	 * Set the type of the message
+	 * @param type the type of the message
+	 */
+	public void setType(byte type) {
+		this.type = type;
+	}
+
+	/**
+	 * Returns the flags of the message
+	 * @return the flags of the message
+	 */
+	public short getFlags() {
+		return flags;
+	}
+
+	/**
+	 * Set the flags of the message
+	 * @param flags the flags of the message
+	 */
+	public void setFlags(short flags) {
+		this.flags = flags;
+	}
+
+	/**
+	 * Returns the Id of the Node which sent the message
+	 * @return the Id of the sending Node
+	 */
+	public int getSenderId() {
+		return senderId;
+	}
+
+	/**
+	 * Set the Id of the Node which sent the message
+	 * @param senderId the Id of the sending Node
+	 */
+	public void setSenderId(int senderId) {
+		this.senderId = senderId;
+	}
+
+	/**
+	 * Returns the Election term known by the sender
+	 * @return the Election term
+	 */
+	public long getTerm() {
+		return term;
+	}
+
+	/**
+	 * Set the Election term known by the sender
+	 * @param term the Election term
+	 */
+	public void setTerm(long term) {
+		this.term = term;
+	}
+
+	/**
+	 * Returns the sequence number of the message
+	 * @return the sequence number
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Set the sequence number of the message
+	 * @param sequence the sequence number
+	 */
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+
+	/**
+	 * Returns the length in bytes of the payload
+	 * @return the length of the payload
+	 */
+	public int getPayloadLength() {
+		return payloadLength;
+	}
+
+	/**
+	 * Set the length in bytes of the payload
+	 * @param payloadLength the length of the payload
+	 */
+	public void setPayloadLength(int payloadLength) {
+		this.payloadLength = payloadLength;
+	}
+
+	/**
+	 * Returns the String representation of the Message
+	 */
+	@Override
+	public String toString() {
+		return "[type " + type + ", sender " + senderId + ", term " + term + ", seq " + sequence + ", payload " + payloadLength + "]";
+	}
+}
@@ -0,0 +1,181 @@
+package com.mps.pearl.net;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * This class implements the binary wire format of the messages exchanged
+ * between the Nodes. Every transport, TCP streams, the Selector event loop
+ * and UDP datagrams, uses this codec.
+ *
+ * A message is a fixed header, in network byte order, followed by an
+ * optional payload :
+ *
+ * magic (short) | version (byte) | type (byte) | flags (short) |
+ * payload length (short) | sender id (int) | term (long) | sequence (long)
+ *
+ * Encoding and decoding read and write the fields of a reused Message
+ * straight into a buffer or a stream, so no object is created on the
+ * heartbeat path.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public final class MessageCodec {
+
+	/**
+	 * Magic number which starts every message, "BE"
+	 */
+	public static final short MAGIC = 0x4245;
+
+	/**
+	 * Version of the wire format
+	 */
+	public static final byte VERSION = 1;
+
+	/**
+	 * Size in bytes of the header of a message
+	 */
+	public static final int HEADER_SIZE = 28;
+
+	/**
+	 * Max size in bytes of the payload of a message
+	 */
+	public static final int MAX_PAYLOAD_SIZE = 0xFFFF;
+
+	private MessageCodec() {
+		// static methods only
+	}
+
+	/**
+	 * Writes the header of a message into a buffer. The payload, if any,
+	 * is written by the caller right after the header.
+	 *
+	 * @param message the Message to encode
+	 * @param out the buffer to write into
+	 */
+	public static void encode(Message message, ByteBuffer out) {
+		out.putShort(MAGIC);
+		out.put(VERSION);
+		out.put(message.getType());
+		out.putShort(message.getFlags());
+		out.putShort((short) message.getPayloadLength());
+		out.putInt(message.getSenderId());
+		out.putLong(message.getTerm());
+		out.putLong(message.getSequence());
+	}
+
+	/**
+	 * Returns the type of the message at the position of a buffer, without
+	 * reading the message
+	 *
+	 * @param in the buffer to read from
+	 * @return the type of the message, or 0 if the buffer does not hold a header
+	 */
+	public static byte peekType(ByteBuffer in) {
+		if (in.remaining() < HEADER_SIZE) return 0;
+		return in.get(in.position() + 3);
+	}
+
+	/**
+	 * Reads the header of a message from a buffer. The buffer is left on
+	 * the first byte of the payload. If the buffer does not hold a whole
+	 * message, header and payload, nothing is read.
+	 *
+	 * @param in the buffer to read from
+	 * @param message the Message to fill
+	 * @return True, if a message was read, False, if more bytes are needed
+	 * @throws ProtocolException if the bytes are not a message of this version
+	 */
+	public static boolean decode(ByteBuffer in, Message message) throws ProtocolException {
+		if (in.remaining() < HEADER_SIZE) return false;
+
+		int start = in.position();
+		int payloadLength = in.getShort(start + 6) & 0xFFFF;
+		if (in.remaining() < HEADER_SIZE + payloadLength) {
+			check(in.getShort(start), in.get(start + 2));
+			return false;
+		}
+
+		check(in.getShort(), in.get());
+		message.setType(in.get());
+		message.setFlags(in.getShort());
+		message.setPayloadLength(in.getShort() & 0xFFFF);
+		message.setSenderId(in.getInt());
+		message.setTerm(in.getLong());
+		message.setSequence(in.getLong());
+		return true;
+	}
+
+	/**
+	 * Writes the header of a message to a stream. The payload, if any,
+	 * is written by the caller right after the header.
+	 *
+	 * @param out the stream to write to
+	 * @param message the Message to encode
+	 * @throws IOException
+	 */
+	public static void write(DataOutputStream out, Message message) throws IOException {
+		out.writeShort(MAGIC);
+		out.writeByte(VERSION);
+		out.writeByte(message.getType());
+		out.writeShort(message.getFlags());
+		out.writeShort(message.getPayloadLength());
+		out.writeInt(message.getSenderId());
+		out.writeLong(message.getTerm());
+		out.writeLong(message.getSequence());
+	}
+
+	/**
+	 * Reads the header of a message from a stream, blocking until it is
+	 * complete. The payload, if any, is left in the stream.
+	 *
+	 * @param in the stream to read from
+	 * @param message the Message to fill
+	 * @throws IOException
+	 */
+	public static void read(DataInputStream in, Message message) throws IOException {
+		check(in.readShort(), in.readByte());
+		message.setType(in.readByte());
+		message.setFlags(in.readShort());
+		message.setPayloadLength(in.readUnsignedShort());
+		message.setSenderId(in.readInt());
+		message.setTerm(in.readLong());
+		message.setSequence(in.readLong());
+	}
+
+	/**
+	 * Reads the header of a message from a stream and skips its payload
+	 *
+	 * @param in the stream to read from
+	 * @param message the Message to fill
+	 * @throws IOException
+	 */
+	public static void readAndSkipPayload(DataInputStream in, Message message) throws IOException {
+		read(in, message);
+		int skip = message.getPayloadLength();
+		while (skip > 0) {
+			int skipped = in.skipBytes(skip);
+			if (skipped <= 0) {
+				// skipBytes() returns 0 at the end of the stream
+				in.readByte();
+				skipped = 1;
+			}
+			skip -= skipped;
+		}
+	}
+
+	/**
+	 * Checks the magic number and the version of a message
+	 * @throws ProtocolException if the message is not of this version
+	 */
+	private static void check(short magic, byte version) throws ProtocolException {
+		if (magic != MAGIC) throw new ProtocolException("Not a message, magic " + magic);
+		if (version != VERSION) throw new ProtocolException("Unsupported version " + version);
+	}
+}
@@ -0,0 +1,413 @@
+package com.mps.pearl.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import com.mps.pearl.metrics.Metrics;
+import com.mps.pearl.util.Constant;
+import com.mps.pearl.util.Logger;
+
+/**
+ * This class implements the Coordinator ( Server Node ) as a single
+ * Selector event loop. All the Client Sockets are accepted, read and
+ * written by the thread which runs the loop, so the Coordinator does
+ * not create a Thread for each ping of the Clients.
+ *
+ * The messages are decoded and the replies encoded by the MessageCodec
+ * in buffers owned by each connection, so serving a ping creates no object.
+ *
+ * The loop closes the connections of the Clients which sent nothing for
+ * the idle timeout of the Server, checked every half idle timeout.
+ *
+ * The AdmissionControl bounds the number of pings served at once : a ping
+ * holds a share of the budget until its reply is written to the Socket,
+ * and until the end of the pass of the event loop which served it, as the
+ * thread of the loop serves all the pings of a pass before any other.
+ * A ping which is not admitted gets a busy reply, and the connection
+ * stays open for the next ping of the Client.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class NioCoordinatorServer implements CoordinatorServer {
+
+	/**
+	 * A Logger tag
+	 */
+	private final String TAG = NioCoordinatorServer.class.getSimpleName();
+
+	/**
+	 * Size of the read buffer of each Client Socket
+	 */
+	private static final int READ_BUFFER_SIZE = 1024;
+
+	/**
+	 * Size of the write buffer of each Client Socket
+	 */
+	private static final int WRITE_BUFFER_SIZE = 1024;
+
+	/**
+	 * Id of the Coordinator
+	 */
+	private final int mNodeId;
+
+	/**
+	 * Term of the Election which elected the Coordinator
+	 */
+	private final long mTerm;
+
+	/**
+	 * The address the Coordinator listens on
+	 */
+	private final InetSocketAddress mAddress;
+
+	/**
+	 * Time in milliseconds to wait for the next message of a Client, 0 to wait forever
+	 */
+	private final long mIdleTimeoutMillis;
+
+	/**
+	 * The AdmissionControl of the Client connections
+	 */
+	private final AdmissionControl mAdmission;
+
+	/**
+	 * Time of the last check of the idle connections, read from System.nanoTime()
+	 */
+	private long mIdleCheckNanos;
+
+	/**
+	 * Number of admitted pings whose replies are written, released at the end of the pass
+	 */
+	private int mWritten;
+
+	/**
+	 * The reused decoded message
+	 */
+	private final Message mRequest = new Message();
+
+	/**
+	 * The reused reply message
+	 */
+	private final Message mReply = new Message();
+
+	/**
+	 * Selector which drives the event loop
+	 */
+	private Selector mSelector;
+
+	/**
+	 * Boolean to hold the running state of the event loop
+	 */
+	private volatile boolean isRunning = true;
+
+	/**
+	 * Creates a NioCoordinatorServer object.
+	 *
+	 * @param nodeId the Id of the Coordinator
+	 * @param ipAddress the String IP Address to listen on
+	 * @param port the port number to listen on
+	 */
+	public NioCoordinatorServer(int nodeId, String ipAddress, int port) {
+		this(nodeId, 0, ipAddress, port);
+	}
+
+	/**
+	 * Creates a NioCoordinatorServer object.
+	 *
+	 * @param nodeId the Id of the Coordinator
+	 * @param term the term of the Election which elected the Coordinator
+	 * @param ipAddress the String IP Address to listen on
+	 * @param port the port number to listen on
+	 */
+	public NioCoordinatorServer(int nodeId, long term, String ipAddress, int port) {
+		this(nodeId, term, ipAddress, port, 0);
+	}
+
+	/**
+	 * Creates a NioCoordinatorServer object.
+	 *
+	 * @param nodeId the Id of the Coordinator
+	 * @param term the term of the Election which elected the Coordinator
+	 * @param ipAddress the String IP Address to listen on
+	 * @param port the port number to listen on
+	 * @param idleTimeoutMillis time in milliseconds to wait for the next message of a Client, 0 to wait forever
+	 */
+	public NioCoordinatorServer(int nodeId, long term, String ipAddress, int port, long idleTimeoutMillis) {
+		this(nodeId, term, ipAddress, port, idleTimeoutMillis,
+				new AdmissionControl(Constant.SERVER_BACKLOG, 0, Constant.SERVER_BUSY_RETRY_MILLIS));
+	}
+
+	/**
+	 * Creates a NioCoordinatorServer object.
+	 *
+	 * @param nodeId the Id of the Coordinator
+	 * @param term the term of the Election which elected the Coordinator
+	 * @param ipAddress the String IP Address to listen on
+	 * @param port the port number to listen on
+	 * @param idleTimeoutMillis time in milliseconds to wait for the next message of a Client, 0 to wait forever
+	 * @param admission the AdmissionControl of the pings
+	 */
+	public NioCoordinatorServer(int nodeId, long term, String ipAddress, int port, long idleTimeoutMillis,
+			AdmissionControl admission) {
+		this.mNodeId = nodeId;
+		this.mTerm = term;
+		this.mAddress = new InetSocketAddress(ipAddress, port);
+		this.mIdleTimeoutMillis = idleTimeoutMillis;
+		this.mAdmission = admission;
+	}
+
+	/**
+	 * This method opens the Server Socket and runs the event loop. It
+	 * returns when the server is stopped.
+	 *
+	 * @throws IOException if the Server Socket can not be opened
+	 */
+	@Override
+	public void run() throws IOException {
+		mSelector = Selector.open();
+
+		try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+			serverChannel.configureBlocking(false);
+			serverChannel.socket().setReuseAddress(true);
+			serverChannel.socket().bind(mAddress, mAdmission.getBacklog());
+			serverChannel.register(mSelector, SelectionKey.OP_ACCEPT);
+
+			Logger.d(TAG, "run() : ServerSocketChannel started {}", mAddress);
+
+			mIdleCheckNanos = System.nanoTime();
+			while (isRunning) {
+				mSelector.select(mIdleTimeoutMillis > 0 ? Math.max(1, mIdleTimeoutMillis / 2) : 0);
+
+				Iterator<SelectionKey> iter = mSelector.selectedKeys().iterator();
+				while (iter.hasNext()) {
+					SelectionKey key = iter.next();
+					iter.remove();
+
+					try {
+						if (!key.isValid()) continue;
+						if (key.isAcceptable()) accept(serverChannel);
+						else {
+							if (key.isReadable()) read(key);
+							if (key.isValid() && key.isWritable()) write(key);
+						}
+					} catch (IOException e) {
+						// the Client went away, drop the connection
+						close(key);
+					}
+				}
+				// the pings served by the pass no longer hold the budget
+				releaseWritten();
+				closeIdleConnections();
+			}
+		} finally {
+			// close all the Client connections
+			for (SelectionKey key : mSelector.keys())
+				close(key);
+			releaseWritten();
+			mSelector.close();
+			Logger.d(TAG, "run() : ServerSocketChannel stopped {}", mAddress);
+		}
+	}
+
+	/**
+	 * This method stops the event loop
+	 */
+	@Override
+	public void stop() {
+		isRunning = false;
+		if (mSelector != null) mSelector.wakeup();
+	}
+
+	/**
+	 * Accepts all the pending Client Sockets
+	 * @param serverChannel the listening channel
+	 * @throws IOException
+	 */
+	private void accept(ServerSocketChannel serverChannel) throws IOException {
+		SocketChannel clientChannel;
+		while ((clientChannel = serverChannel.accept()) != null) {
+			Metrics.getInstance().getServerAccepts().increment();
+			clientChannel.configureBlocking(false);
+			clientChannel.socket().setTcpNoDelay(true);
+			Connection connection = new Connection();
+			connection.lastReadNanos = System.nanoTime();
+			clientChannel.register(mSelector, SelectionKey.OP_READ, connection);
+		}
+	}
+
+	/**
+	 * Closes the connections of the Clients which sent nothing for the
+	 * idle timeout, every half idle timeout
+	 */
+	private void closeIdleConnections() {
+		if (mIdleTimeoutMillis <= 0) return;
+		long now = System.nanoTime();
+		long idleNanos = TimeUnit.MILLISECONDS.toNanos(mIdleTimeoutMillis);
+		if (now - mIdleCheckNanos < idleNanos / 2) return;
+		mIdleCheckNanos = now;
+
+		for (SelectionKey key : mSelector.keys()) {
+			Object attachment = key.attachment();
+			if (attachment instanceof Connection && now - ((Connection) attachment).lastReadNanos > idleNanos) {
+				Logger.d(TAG, "closeIdleConnections() : {} idle", key.channel());
+				close(key);
+			}
+		}
+	}
+
+	/**
+	 * Reads the messages of a Client and answers them
+	 * @param key the SelectionKey of the Client
+	 * @throws IOException
+	 */
+	private void read(SelectionKey key) throws IOException {
+		SocketChannel clientChannel = (SocketChannel) key.channel();
+		Connection connection = (Connection) key.attachment();
+
+		connection.lastReadNanos = System.nanoTime();
+		if (clientChannel.read(connection.in) < 0) {
+			// end of stream, the Client closed the connection
+			close(key);
+			return;
+		}
+		process(key, connection);
+	}
+
+	/**
+	 * Decodes the complete messages of a Client and encodes one reply for
+	 * each ping, as long as the write buffer has room for it. A ping which
+	 * is not admitted gets a busy reply.
+	 * @param key the SelectionKey of the Client
+	 * @param connection the state of the Client
+	 * @throws IOException
+	 */
+	private void process(SelectionKey key, Connection connection) throws IOException {
+		connection.in.flip();
+		while (connection.out.remaining() >= MessageCodec.HEADER_SIZE
+				&& MessageCodec.decode(connection.in, mRequest)) {
+			// skip the payload, a ping has none
+			connection.in.position(connection.in.position() + mRequest.getPayloadLength());
+
+			if (mRequest.getType() != Message.TYPE_PING) continue;
+			if (mAdmission.tryAdmit()) {
+				MessageCodec.encode(mReply.set(Message.TYPE_ACTIVE, mNodeId, mTerm, mRequest.getSequence()), connection.out);
+				connection.admitted++;
+			} else {
+				// the budget is spent, tell the Client when to come back, on the same connection
+				mReply.set(Message.TYPE_BUSY, mNodeId, mTerm, mRequest.getSequence());
+				mReply.setFlags(mAdmission.getRetryAfterMillis());
+				MessageCodec.encode(mReply, connection.out);
+			}
+		}
+		connection.in.compact();
+		// the loop may have stopped for lack of room for the replies
+		connection.isBlocked = connection.out.remaining() < MessageCodec.HEADER_SIZE;
+
+		if (!connection.in.hasRemaining() && !connection.isBlocked) {
+			// a message larger than the read buffer, not a ping
+			close(key);
+			return;
+		}
+		write(key);
+	}
+
+	/**
+	 * Writes the encoded replies of a Client
+	 * @param key the SelectionKey of the Client
+	 * @throws IOException
+	 */
+	private void write(SelectionKey key) throws IOException {
+		SocketChannel clientChannel = (SocketChannel) key.channel();
+		Connection connection = (Connection) key.attachment();
+
+		connection.out.flip();
+		clientChannel.write(connection.out);
+		connection.out.compact();
+
+		if (connection.out.position() > 0) {
+			// socket buffer is full, wait until it is writable
+			key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		} else {
+			// the replies are written, the pings hold the budget to the end of the pass
+			releaseAdmitted(connection);
+			key.interestOps(SelectionKey.OP_READ);
+			// messages may wait for room in the write buffer
+			if (connection.isBlocked) process(key, connection);
+		}
+	}
+
+	/**
+	 * Hands the admitted pings of a Client over to the end of the pass, once
+	 * their replies are written or dropped
+	 * @param connection the state of the Client
+	 */
+	private void releaseAdmitted(Connection connection) {
+		mWritten += connection.admitted;
+		connection.admitted = 0;
+	}
+
+	/**
+	 * Releases the admitted pings whose replies were written in the pass
+	 */
+	private void releaseWritten() {
+		if (mWritten == 0) return;
+		mAdmission.release(mWritten);
+		mWritten = 0;
+	}
+
+	/**
+	 * Closes the channel of a SelectionKey
+	 * @param key the SelectionKey to close
+	 */
+	private void close(SelectionKey key) {
+		Object attachment = key.attachment();
+		if (attachment instanceof Connection) releaseAdmitted((Connection) attachment);
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			Logger.e(TAG, "Error closing ... {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * This class holds the state of an accepted Client Socket
+	 */
+	private static class Connection {
+
+		/**
+		 * Buffer of the bytes read from the Client
+		 */
+		final ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+		/**
+		 * Buffer of the replies to write to the Client
+		 */
+		final ByteBuffer out = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+
+		/**
+		 * Boolean to hold if messages wait for room in the write buffer
+		 */
+		boolean isBlocked;
+
+		/**
+		 * Number of admitted pings whose replies are not written yet
+		 */
+		int admitted;
+
+		/**
+		 * Time of the last read of the Client, read from System.nanoTime()
+		 */
+		long lastReadNanos;
+	}
+}
@@ -0,0 +1,163 @@
+package com.mps.pearl.net;
+
+import java.io.IOException;
+
+import com.mps.pearl.util.Constant;
+import com.mps.pearl.util.Logger;
+import com.mps.pearl.util.Settings;
+import com.mps.pearl.util.TaskExecutor;
+
+/**
+ * This class implements the Transport over real Sockets, as configured
+ * in the Settings :
+ *
+ * heartbeat.transport - the Client Nodes ping over TCP or UDP
+ * server.mode         - the Coordinator serves each Client by a Thread or
+ *                       all the Clients by a single Selector event loop
+ *
+ * With the udp heartbeat transport the Coordinator answers the datagrams
+ * as well as the TCP Clients.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class SocketTransport implements Transport {
+
+	/**
+	 * A Logger tag
+	 */
+	private final String TAG = SocketTransport.class.getSimpleName();
+
+	/**
+	 * An instance of SocketTransport class
+	 */
+	private static final SocketTransport INSTANCE = new SocketTransport();
+
+	/**
+	 * Returns the unique SocketTransport object associated with this System, if any.
+	 * @return the instance of SocketTransport
+	 */
+	public static SocketTransport getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Creates a SocketTransport object
+	 */
+	private SocketTransport() {
+		// private to hold single instance
+	}
+
+	@Override
+	public HeartbeatChannel openChannel(int nodeId) {
+		Settings settings = Settings.getInstance();
+		if (isUdpHeartbeat()) {
+			return new UdpHeartbeatChannel(nodeId,
+					settings.getInt(Constant.KEY_HEARTBEAT_MAX_MISSED, Constant.HEARTBEAT_MAX_MISSED));
+		}
+		return new TcpHeartbeatChannel(nodeId,
+				settings.getInt(Constant.KEY_PING_TIMEOUT_MILLIS, Constant.PING_TIMEOUT_MILLIS),
+				settings.getInt(Constant.KEY_CONNECT_TIMEOUT_MILLIS, Constant.CONNECT_TIMEOUT_MILLIS));
+	}
+
+	@Override
+	public CoordinatorServer openServer(int nodeId, long term, String ipAddress, int port) throws IOException {
+		Settings settings = Settings.getInstance();
+		// a Client pings each interval, one which sent nothing for a few intervals is half-dead
+		int idleTimeoutMillis = settings.getInt(Constant.KEY_SERVER_IDLE_TIMEOUT_MILLIS, (int) (Constant.SERVER_IDLE_PING_INTERVALS
+				* settings.getLong(Constant.KEY_PING_INTERVAL_MILLIS, Constant.PING_INTERVAL_MILLIS)));
+		AdmissionControl admission = new AdmissionControl(settings.getInt(Constant.KEY_SERVER_BACKLOG, Constant.SERVER_BACKLOG),
+				settings.getInt(Constant.KEY_SERVER_MAX_INFLIGHT, Constant.SERVER_MAX_INFLIGHT),
+				settings.getInt(Constant.KEY_SERVER_BUSY_RETRY_MILLIS, Constant.SERVER_BUSY_RETRY_MILLIS));
+
+		CoordinatorServer server;
+		if (Constant.SERVER_MODE_NIO.equals(settings.getString(Constant.KEY_SERVER_MODE, Constant.SERVER_MODE_THREAD))) {
+			// serve all the Clients from a single event loop
+			server = new NioCoordinatorServer(nodeId, term, ipAddress, port, idleTimeoutMillis, admission);
+		} else {
+			server = new ThreadCoordinatorServer(nodeId, term, ipAddress, port, idleTimeoutMillis, admission);
+		}
+		// nobody pings the Coordinator unless the Nodes pull, and the endpoint of the Node holds the UDP port
+		if (!isUdpHeartbeat() || !isPullHeartbeat()) return server;
+
+		// answer the heartbeat datagrams, Elections stay on the TCP Server
+		try {
+			return new UdpCoordinatorServer(new UdpHeartbeatResponder(nodeId, term, ipAddress, port), server);
+		} catch (IOException e) {
+			Logger.e(TAG, "Exception caught when trying to listen for heartbeats on port {}", port);
+			Logger.d(TAG, "{}", e.getMessage());
+			return server;
+		}
+	}
+
+	@Override
+	public GossipEndpoint openEndpoint(int nodeId, String ipAddress, int port, GossipEndpoint.Receiver receiver)
+			throws IOException {
+		return new UdpGossipEndpoint(nodeId, ipAddress, port, receiver);
+	}
+
+	/**
+	 * Returns True, if the Nodes ping the Coordinator, instead of gossiping
+	 * or receiving its pushed heartbeats
+	 * @return True, if the pull heartbeat mode is configured
+	 */
+	public boolean isPullHeartbeat() {
+		return Constant.HEARTBEAT_MODE_PULL.equals(
+				Settings.getInstance().getString(Constant.KEY_HEARTBEAT_MODE, Constant.HEARTBEAT_MODE_PULL));
+	}
+
+	/**
+	 * Returns True, if the heartbeat pings are sent as UDP datagrams
+	 * @return True, if the udp heartbeat transport is configured
+	 */
+	public boolean isUdpHeartbeat() {
+		return Constant.HEARTBEAT_TRANSPORT_UDP.equals(
+				Settings.getInstance().getString(Constant.KEY_HEARTBEAT_TRANSPORT, Constant.HEARTBEAT_TRANSPORT_TCP));
+	}
+
+	/**
+	 * This class runs the UDP heartbeat responder of a Coordinator beside
+	 * its TCP Server.
+	 */
+	private static class UdpCoordinatorServer implements CoordinatorServer {
+
+		/**
+		 * The responder of the UDP heartbeat pings
+		 */
+		private final UdpHeartbeatResponder mResponder;
+
+		/**
+		 * The TCP Server
+		 */
+		private final CoordinatorServer mServer;
+
+		/**
+		 * Creates a UdpCoordinatorServer object.
+		 *
+		 * @param responder the bound responder of the UDP heartbeat pings
+		 * @param server the TCP Server
+		 */
+		UdpCoordinatorServer(UdpHeartbeatResponder responder, CoordinatorServer server) {
+			this.mResponder = responder;
+			this.mServer = server;
+		}
+
+		@Override
+		public void run() throws IOException {
+			TaskExecutor.getInstance().submit(mResponder);
+			try {
+				mServer.run();
+			} finally {
+				mResponder.stop();
+			}
+		}
+
+		@Override
+		public void stop() {
+			mResponder.stop();
+			mServer.stop();
+		}
+	}
+}
@@ -0,0 +1,303 @@
+package com.mps.pearl.net;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import com.mps.pearl.metrics.Metrics;
+import com.mps.pearl.util.Logger;
+
+/**
+ * This class implements a HeartbeatChannel over a long lived TCP
+ * connection. The connection is opened on the first ping and is kept
+ * open for the following pings, so a steady state heartbeat is one
+ * PING message and its ACTIVE reply on an established connection.
+ *
+ * If the Coordinator ( Server Node ) changes, or the connection breaks,
+ * the channel closes the old connection and connects again.
+ *
+ * A ping, from the connect to the read of its reply, is bounded by a
+ * Deadline of the read timeout, a probe by a Deadline of its own timeout,
+ * and close() cancels a ping in flight.
+ * A reply in a lower term than the ping fails the ping, the connection
+ * stays open.
+ *
+ * A busy reply of an overloaded Coordinator counts as a reply : the
+ * channel does not ping it again before the time it asked for, and keeps
+ * the connection open for that ping.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class TcpHeartbeatChannel implements HeartbeatChannel {
+
+	/**
+	 * A Logger tag
+	 */
+	private final String TAG = TcpHeartbeatChannel.class.getSimpleName();
+
+	/**
+	 * Id of the Node which owns the channel
+	 */
+	private final int mNodeId;
+
+	/**
+	 * Time in milliseconds to wait for the reply of the Coordinator
+	 */
+	private final int mReadTimeoutMillis;
+
+	/**
+	 * Time in milliseconds to wait for the connection to the Coordinator
+	 */
+	private final int mConnectTimeoutMillis;
+
+	/**
+	 * The Deadline of the ping in flight, or null
+	 */
+	private volatile Deadline mDeadline;
+
+	/**
+	 * Socket connected to the Coordinator
+	 */
+	private Socket mSocket;
+
+	/**
+	 * DataInputStream instance to read the replies
+	 */
+	private DataInputStream mStreamIn;
+
+	/**
+	 * DataOutputStream instance to write the pings
+	 */
+	private DataOutputStream mStreamOut;
+
+	/**
+	 * IP Address of the connected Coordinator
+	 */
+	private String mIPAddress;
+
+	/**
+	 * Port of the connected Coordinator
+	 */
+	private int mPort;
+
+	/**
+	 * The reused ping message
+	 */
+	private final Message mRequest = new Message();
+
+	/**
+	 * The reused reply message
+	 */
+	private final Message mReply = new Message();
+
+	/**
+	 * Sequence number of the last ping
+	 */
+	private long mSequence;
+
+	/**
+	 * Time in nanoseconds before which the busy Coordinator is not pinged, or 0
+	 */
+	private long mBusyUntilNanos;
+
+	/**
+	 * Time in nanoseconds of the last reply of the Coordinator
+	 */
+	private volatile long mLastReplyNanos;
+
+	/**
+	 * Time in nanoseconds the last answered ping was sent
+	 */
+	private volatile long mLastRequestNanos;
+
+	/**
+	 * Round trip time in nanoseconds of the last ping, or 0
+	 */
+	private volatile long mLastRttNanos;
+
+	/**
+	 * Creates a TcpHeartbeatChannel object.
+	 * @param nodeId the Id of the Node which owns the channel
+	 * @param readTimeoutMillis time in milliseconds to wait for a reply
+	 */
+	public TcpHeartbeatChannel(int nodeId, int readTimeoutMillis) {
+		this(nodeId, readTimeoutMillis, readTimeoutMillis);
+	}
+
+	/**
+	 * Creates a TcpHeartbeatChannel object.
+	 * @param nodeId the Id of the Node which owns the channel
+	 * @param readTimeoutMillis time in milliseconds a ping may take, from the connect to the reply
+	 * @param connectTimeoutMillis time in milliseconds to wait for the connection
+	 */
+	public TcpHeartbeatChannel(int nodeId, int readTimeoutMillis, int connectTimeoutMillis) {
+		this.mNodeId = nodeId;
+		this.mReadTimeoutMillis = readTimeoutMillis;
+		this.mConnectTimeoutMillis = connectTimeoutMillis;
+	}
+
+	@Override
+	public boolean ping(String ipAddress, int port, long term) {
+		return ping(ipAddress, port, term, mReadTimeoutMillis);
+	}
+
+	@Override
+	public boolean probe(String ipAddress, int port, long timeoutMillis) {
+		// a single ping, bound by the timeout of the probe rather than the read timeout
+		return ping(ipAddress, port, 0, timeoutMillis);
+	}
+
+	/**
+	 * Pings the Coordinator, from the connect to the reply within a Deadline
+	 *
+	 * @param timeoutMillis time in milliseconds the ping may take
+	 * @return True, if the Coordinator replied in the term of the ping
+	 */
+	private synchronized boolean ping(String ipAddress, int port, long term, long timeoutMillis) {
+		mLastRttNanos = 0;
+		// reconnect, if the Coordinator has changed
+		if (mIPAddress != null && (mPort != port || !ipAddress.equals(mIPAddress))) {
+			Logger.d(TAG, "ping() : Coordinator changed to [{}:{}]", ipAddress, port);
+			closeConnection();
+		}
+		// the busy Coordinator asked to wait, its last reply stands until then
+		if (mBusyUntilNanos != 0 && System.nanoTime() - mBusyUntilNanos < 0) return true;
+		mBusyUntilNanos = 0;
+
+		// a kept connection may have been closed by the Coordinator,
+		// so a failed ping on it is retried once on a new connection
+		boolean reused = mSocket != null;
+		Deadline deadline = new Deadline(timeoutMillis);
+		mDeadline = deadline;
+		try {
+			if (exchange(ipAddress, port, term, deadline)) return true;
+			// a stale reply leaves the connection open, it is not retried
+			return reused && mSocket == null && !deadline.isCancelled() && exchange(ipAddress, port, term, deadline);
+		} finally {
+			deadline.done();
+			mDeadline = null;
+		}
+	}
+
+	/**
+	 * Sends one ping and reads its reply, connecting first if required
+	 *
+	 * @return True, if the Coordinator replied in the term of the ping
+	 */
+	private boolean exchange(String ipAddress, int port, long term, Deadline deadline) {
+		try {
+			if (mSocket == null) connect(ipAddress, port, deadline);
+			else deadline.attach(mSocket);
+
+			long pingNanos = System.nanoTime();
+			MessageCodec.write(mStreamOut, mRequest.set(Message.TYPE_PING, mNodeId, term, ++mSequence));
+			mStreamOut.flush();
+
+			deadline.arm();
+			MessageCodec.readAndSkipPayload(mStreamIn, mReply);
+			if ((mReply.getType() != Message.TYPE_ACTIVE && mReply.getType() != Message.TYPE_BUSY) || mReply.getSequence() != mSequence)
+				throw new ProtocolException("Unexpected reply " + mReply);
+			if (mReply.getTerm() < term) {
+				// a Coordinator of an older term, whatever it says
+				Metrics.getInstance().getPingStale().increment();
+				if(Logger.isDebugEnabled())Logger.d(TAG, "ping() : stale reply {}, term {}", mReply, term);
+				return false;
+			}
+			mLastRequestNanos = pingNanos;
+			mLastReplyNanos = System.nanoTime();
+			mLastRttNanos = mLastReplyNanos - pingNanos;
+			if(Logger.isDebugEnabled())Logger.d(TAG, "Message from Server: {}", mReply.toString());
+			if (mReply.getType() == Message.TYPE_BUSY) {
+				// the Coordinator is alive but overloaded
+				Metrics.getInstance().getPingBusy().increment();
+				mBusyUntilNanos = mLastReplyNanos + TimeUnit.MILLISECONDS.toNanos(mReply.getFlags());
+			}
+			return true;
+		} catch (IOException e) {
+			// a failed ping is counted, the failure detector decides on the Coordinator
+			if(Logger.isDebugEnabled())Logger.d(TAG, "Couldn't get I/O for the connection to [{}:{}] : {}", ipAddress, port, e.getMessage());
+			closeConnection();
+			return false;
+		}
+	}
+
+	/**
+	 * Opens the connection to the Coordinator, before the Deadline of the ping
+	 * @throws IOException
+	 */
+	private void connect(String ipAddress, int port, Deadline deadline) throws IOException {
+		Logger.d(TAG, "connect() : Opening Client Socket to Ping Server [{}:{}]", ipAddress, port);
+		Socket socket = deadline.connect(ipAddress, port, mConnectTimeoutMillis);
+		try {
+			socket.setTcpNoDelay(true);
+			socket.setKeepAlive(true);
+			mStreamIn = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			mStreamOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+		mSocket = socket;
+		mIPAddress = ipAddress;
+		mPort = port;
+	}
+
+	@Override
+	public long getLastReplyNanos() {
+		return mLastReplyNanos;
+	}
+
+	@Override
+	public long getLastRequestNanos() {
+		return mLastRequestNanos;
+	}
+
+	@Override
+	public long getLastRttNanos() {
+		return mLastRttNanos;
+	}
+
+	@Override
+	public void close() {
+		// release the ping in flight, which holds the lock of the channel
+		Deadline deadline = mDeadline;
+		if (deadline != null) deadline.cancel();
+		closeConnection();
+	}
+
+	/**
+	 * Closes the connection to the Coordinator
+	 */
+	private synchronized void closeConnection() {
+		if (mIPAddress == null) return;
+		closeSocket();
+		mIPAddress = null;
+		mBusyUntilNanos = 0;
+		// a reply of the former connection does not tell about the next Coordinator
+		mLastReplyNanos = 0;
+		mLastRequestNanos = 0;
+	}
+
+	/**
+	 * Closes the Socket connected to the Coordinator, the last reply stands
+	 */
+	private void closeSocket() {
+		if (mSocket == null) return;
+		try {
+			mSocket.close();
+		} catch (IOException e) {
+			Logger.e(TAG, "Error closing ... {}", e.getMessage());
+		}
+		mSocket = null;
+		mStreamIn = null;
+		mStreamOut = null;
+	}
+}
@@ -0,0 +1,334 @@
+package com.mps.pearl.net;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Vector;
+
+import com.mps.pearl.metrics.Metrics;
+import com.mps.pearl.util.Constant;
+import com.mps.pearl.util.Logger;
+import com.mps.pearl.util.TaskExecutor;
+
+/**
+ * This class implements the Coordinator ( Server Node ) with a Thread for
+ * each Client. The Server Socket accepts the Client Sockets and each
+ * Client Socket runs in a MultiClientHandlerTask, run by the TaskExecutor,
+ * which answers the pings of the Client until the Client closes the
+ * connection, or sends nothing for the idle timeout of the Server.
+ *
+ * The AdmissionControl bounds the number of pings answered at once. A
+ * ping which is not admitted gets a busy reply, and the connection stays
+ * open for the next ping of the Client, so an overloaded Server accepts
+ * no new connection for it.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class ThreadCoordinatorServer implements CoordinatorServer {
+
+	/**
+	 * A Logger tag
+	 */
+	private final String TAG = ThreadCoordinatorServer.class.getSimpleName();
+
+	/**
+	 * Id of the Coordinator
+	 */
+	private final int mNodeId;
+
+	/**
+	 * Term of the Election which elected the Coordinator
+	 */
+	private final long mTerm;
+
+	/**
+	 * String IP Address to listen on
+	 */
+	private final String mIPAddress;
+
+	/**
+	 * Port number to listen on
+	 */
+	private final int mPort;
+
+	/**
+	 * Time in milliseconds to wait for the next message of a Client, 0 to wait forever
+	 */
+	private final int mIdleTimeoutMillis;
+
+	/**
+	 * The AdmissionControl of the Client connections
+	 */
+	private final AdmissionControl mAdmission;
+
+	/**
+	 * Vector<MultiClientHandlerTask> to hold communicate accepted Sockets by Server
+	 */
+	private final Vector<MultiClientHandlerTask> mHandlerList = new Vector<MultiClientHandlerTask>();
+
+	/**
+	 * The listening Socket
+	 */
+	private volatile ServerSocket mServerSocket;
+
+	/**
+	 * Boolean to hold the running state of the Server
+	 */
+	private volatile boolean isRunning = true;
+
+	/**
+	 * Creates a ThreadCoordinatorServer object.
+	 *
+	 * @param nodeId the Id of the Coordinator
+	 * @param term the term of the Election which elected the Coordinator
+	 * @param ipAddress the String IP Address to listen on
+	 * @param port the port number to listen on
+	 */
+	public ThreadCoordinatorServer(int nodeId, long term, String ipAddress, int port) {
+		this(nodeId, term, ipAddress, port, 0);
+	}
+
+	/**
+	 * Creates a ThreadCoordinatorServer object.
+	 *
+	 * @param nodeId the Id of the Coordinator
+	 * @param term the term of the Election which elected the Coordinator
+	 * @param ipAddress the String IP Address to listen on
+	 * @param port the port number to listen on
+	 * @param idleTimeoutMillis time in milliseconds to wait for the next message of a Client, 0 to wait forever
+	 */
+	public ThreadCoordinatorServer(int nodeId, long term, String ipAddress, int port, int idleTimeoutMillis) {
+		this(nodeId, term, ipAddress, port, idleTimeoutMillis,
+				new AdmissionControl(Constant.SERVER_BACKLOG, 0, Constant.SERVER_BUSY_RETRY_MILLIS));
+	}
+
+	/**
+	 * Creates a ThreadCoordinatorServer object.
+	 *
+	 * @param nodeId the Id of the Coordinator
+	 * @param term the term of the Election which elected the Coordinator
+	 * @param ipAddress the String IP Address to listen on
+	 * @param port the port number to listen on
+	 * @param idleTimeoutMillis time in milliseconds to wait for the next message of a Client, 0 to wait forever
+	 * @param admission the AdmissionControl of the pings
+	 */
+	public ThreadCoordinatorServer(int nodeId, long term, String ipAddress, int port, int idleTimeoutMillis,
+			AdmissionControl admission) {
+		this.mNodeId = nodeId;
+		this.mTerm = term;
+		this.mIPAddress = ipAddress;
+		this.mPort = port;
+		this.mIdleTimeoutMillis = idleTimeoutMillis;
+		this.mAdmission = admission;
+	}
+
+	/**
+	 * This method opens the ServerSocket and accepts the Clients until the
+	 * Server is stopped.
+	 */
+	@Override
+	public void run() throws IOException {
+		Logger.d(TAG, "run() : Opening ServerSocket [{}:{}]", mIPAddress, mPort);
+
+		ServerSocket serverSocket = new ServerSocket(mPort, mAdmission.getBacklog(), InetAddress.getByName(mIPAddress));
+		mServerSocket = serverSocket;
+		// the Server may have been stopped before the Socket was opened
+		if (!isRunning) serverSocket.close();
+
+		Logger.d(TAG, "run() : ServerSocket started [{}:{}] : isBounded() : {}", mIPAddress, mPort, serverSocket.isBound());
+		try {
+			while (isRunning) {
+				// Connect Different Clients to Server
+				MultiClientHandlerTask handler = new MultiClientHandlerTask(serverSocket.accept());
+				Metrics.getInstance().getServerAccepts().increment();
+				mHandlerList.add(handler);
+				TaskExecutor.getInstance().submit(handler);
+			}
+		} catch (IOException e) {
+			// the ServerSocket was closed to stop the Server
+			if (isRunning) throw e;
+			Logger.d(TAG, "run() : ServerSocket stopped [{}]", mPort);
+		} finally {
+			serverSocket.close();
+		}
+	}
+
+	/**
+	 * This method closes the ServerSocket, which releases the blocking
+	 * accept(), and stops all the handlers of the Clients.
+	 */
+	@Override
+	public void stop() {
+		isRunning = false;
+
+		ServerSocket serverSocket = mServerSocket;
+		if (serverSocket != null) {
+			try {
+				serverSocket.close();
+			} catch (IOException e) {
+				Logger.e(TAG, "Error closing ... {}", e.getMessage());
+			}
+		}
+
+		for (MultiClientHandlerTask handler : mHandlerList.toArray(new MultiClientHandlerTask[0]))
+			handler.stop();
+	}
+
+	/**
+	 * This class enable Server to listen to the multiple clients
+	 * at the same time. Each Client Socket execute in MultiClientHandlerTask
+	 * class, run by the TaskExecutor.
+	 * The Server communicate with the Clients by using input and output
+	 * streams.
+	 *
+	 * @author msingh
+	 * @version 1.0 20 Jan, 2014
+	 *
+	 */
+	class MultiClientHandlerTask implements Runnable {
+
+		/**
+		 * Logger tag constant
+		 */
+		private final String TAG = MultiClientHandlerTask.class.getSimpleName();
+
+		/**
+		 * Server bound Client Socket instance
+		 */
+		private Socket serverBoundSocket = null;
+
+		/**
+		 * DataInputStream instance to read console
+		 */
+		private DataInputStream console = null;
+
+		/**
+		 * DataOutputStream instance to write to stream
+		 */
+		private DataOutputStream streamOut = null;
+
+		/**
+		 * Boolean to hold the stopped state of the handler
+		 */
+		private volatile boolean isStopped = false;
+
+		/**
+		 * Creates an MultiClientHandlerTask object.
+		 *
+		 * @param socket the Client Socket which should be bind to the Task
+		 * @throws IOException
+		 */
+		public MultiClientHandlerTask(Socket socket) throws IOException {
+			this.serverBoundSocket = socket;
+			Logger.d(TAG, "MultiClientHandlerTask : Client accepted : {}", serverBoundSocket);
+		}
+
+		/**
+		 * This method as entry point for MultiClientHandlerTask class. It perform Client
+		 * communication while reading and writing to the stream.
+		 */
+		public void run() {
+
+			if (isStopped) {
+				// cleanup and stop execution
+				Logger.d(TAG, "MultiClientHandlerTask.run() : Handler Stopped");
+				// close the connection
+				closeConn();
+				mHandlerList.remove(this);
+				return;
+			}
+
+			Logger.d(TAG, "MultiClientHandlerTask.run() ");
+
+			try {
+				// open input and output stream
+				openStream();
+
+				Message message = new Message();
+
+				// Reader to read Client messages, until the Client close the connection
+				while (!isStopped) {
+					try {
+						MessageCodec.readAndSkipPayload(console, message);
+					} catch (EOFException e) {
+						break;
+					} catch (SocketTimeoutException e) {
+						// a half-dead Client, release the handler
+						Logger.d(TAG, "MultiClientHandlerTask.run() : Client idle for {} ms", mIdleTimeoutMillis);
+						break;
+					}
+					if (Logger.isDebugEnabled()) Logger.d(TAG, "Client Says : {}", message.toString());
+					if (message.getType() != Message.TYPE_PING) continue;
+					if (!mAdmission.tryAdmit()) {
+						// the budget is spent, tell the Client when to come back, on the same connection
+						message.set(Message.TYPE_BUSY, mNodeId, mTerm, message.getSequence());
+						message.setFlags(mAdmission.getRetryAfterMillis());
+						MessageCodec.write(streamOut, message);
+						streamOut.flush();
+						Logger.d(TAG, "MultiClientHandlerTask.run() : busy, {}", mAdmission);
+						continue;
+					}
+					try {
+						// Send message to the Client with the sequence number of the ping
+						MessageCodec.write(streamOut, message.set(Message.TYPE_ACTIVE, mNodeId, mTerm, message.getSequence()));
+						streamOut.flush();
+					} finally {
+						mAdmission.release();
+					}
+				}
+
+			} catch (IOException e) {
+				// java.net.SocketException: Socket is closed
+				Logger.d(TAG, "MultiClientHandlerTask.run() : {}", e);
+			} finally {
+				// close the connection and release the handler from the Server list
+				closeConn();
+				mHandlerList.remove(this);
+			}
+		}
+
+		/**
+		 * Stops the handler and close its connection, which releases
+		 * a blocking read of the Client message
+		 */
+		public void stop() {
+			isStopped = true;
+			closeConn();
+		}
+
+		/**
+		 * This method open an DataInputStream and DataOutputStream
+		 *
+		 * @throws IOException
+		 */
+		public void openStream() throws IOException {
+			serverBoundSocket.setSoTimeout(mIdleTimeoutMillis);
+			console = new DataInputStream(new BufferedInputStream(serverBoundSocket.getInputStream()));
+			streamOut = new DataOutputStream(new BufferedOutputStream(serverBoundSocket.getOutputStream()));
+		}
+
+		/**
+		 * This method close the open connections and the streams used for
+		 * communication.
+		 */
+		public void closeConn() {
+			try {
+				if (console != null) console.close();
+				if (streamOut != null) streamOut.close();
+				if (serverBoundSocket != null) serverBoundSocket.close();
+			} catch (IOException ioe) {
+				Logger.e(TAG, "Error closing ... {}", ioe.getMessage());
+			}
+		}
+	}
+}
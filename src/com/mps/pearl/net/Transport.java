@@ -0,0 +1,53 @@
+package com.mps.pearl.net;
+
+import java.io.IOException;
+
+/**
+ * This interface represents the transport the Nodes talk over. It opens
+ * the heartbeat channels of the Client Nodes, the server of the
+ * Coordinator ( Server Node ) and the gossip endpoints of the Nodes, so
+ * the Nodes run the same way over real Sockets or over the in-memory
+ * queues of a single JVM.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public interface Transport {
+
+	/**
+	 * Opens the heartbeat channel of a Client Node
+	 *
+	 * @param nodeId the Id of the Node which owns the channel
+	 * @return the HeartbeatChannel of the Node
+	 */
+	public HeartbeatChannel openChannel(int nodeId);
+
+	/**
+	 * Opens the server of a Coordinator. The server binds its address once
+	 * it runs.
+	 *
+	 * @param nodeId the Id of the Coordinator
+	 * @param term the term of the Election which elected the Coordinator
+	 * @param ipAddress the String IP Address to listen on
+	 * @param port the port number to listen on
+	 * @return the CoordinatorServer to run
+	 * @throws IOException if the server can not be opened
+	 */
+	public CoordinatorServer openServer(int nodeId, long term, String ipAddress, int port) throws IOException;
+
+	/**
+	 * Opens the datagram endpoint of a Node, bound to the address of the
+	 * Node, to gossip or to push the heartbeats of the Coordinator
+	 *
+	 * @param nodeId the Id of the Node which owns the endpoint
+	 * @param ipAddress the String IP Address of the Node
+	 * @param port the port number of the Node
+	 * @param receiver the Receiver of the datagrams
+	 * @return the bound GossipEndpoint
+	 * @throws IOException if the endpoint can not be bound
+	 */
+	public GossipEndpoint openEndpoint(int nodeId, String ipAddress, int port, GossipEndpoint.Receiver receiver)
+			throws IOException;
+}
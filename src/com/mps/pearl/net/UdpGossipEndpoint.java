@@ -0,0 +1,125 @@
+package com.mps.pearl.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.mps.pearl.util.Logger;
+
+/**
+ * This class implements a GossipEndpoint over UDP. The endpoint binds a
+ * DatagramChannel to the address of its Node, and a single receiver
+ * Thread hands each datagram to the Receiver, reusing one buffer. The
+ * resolved addresses of the other Nodes are cached, as a Node sends to
+ * the same few peers again and again.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class UdpGossipEndpoint implements GossipEndpoint, Runnable {
+
+	/**
+	 * A Logger tag
+	 */
+	private final String TAG = UdpGossipEndpoint.class.getSimpleName();
+
+	/**
+	 * Max size in bytes of a gossip datagram
+	 */
+	public static final int DATAGRAM_SIZE = 1400;
+
+	/**
+	 * The blocking channel bound to the address of the Node
+	 */
+	private final DatagramChannel mChannel;
+
+	/**
+	 * The Receiver of the datagrams
+	 */
+	private final Receiver mReceiver;
+
+	/**
+	 * The resolved addresses, by IP Address and port
+	 */
+	private final ConcurrentHashMap<String, InetSocketAddress> mAddresses = new ConcurrentHashMap<String, InetSocketAddress>();
+
+	/**
+	 * Creates a UdpGossipEndpoint object, binds its channel and starts its
+	 * receiver Thread.
+	 *
+	 * @param nodeId the Id of the Node which owns the endpoint
+	 * @param ipAddress the String IP Address to listen on
+	 * @param port the port number to listen on
+	 * @param receiver the Receiver of the datagrams
+	 * @throws IOException if the channel can not be bound
+	 */
+	public UdpGossipEndpoint(int nodeId, String ipAddress, int port, Receiver receiver) throws IOException {
+		this.mReceiver = receiver;
+		this.mChannel = DatagramChannel.open();
+		this.mChannel.socket().setReuseAddress(true);
+		try {
+			this.mChannel.socket().bind(new InetSocketAddress(ipAddress, port));
+		} catch (IOException e) {
+			mChannel.close();
+			throw e;
+		}
+
+		Thread thread = new Thread(this, TAG + "-" + nodeId);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public void send(String ipAddress, int port, ByteBuffer datagram) {
+		String key = ipAddress + ":" + port;
+		InetSocketAddress address = mAddresses.get(key);
+		if (address == null) {
+			address = new InetSocketAddress(ipAddress, port);
+			mAddresses.put(key, address);
+		}
+		try {
+			mChannel.send(datagram, address);
+		} catch (IOException e) {
+			// a datagram may be lost
+			Logger.d(TAG, "send() : {} : {}", key, e.getMessage());
+		}
+	}
+
+	@Override
+	public void close() {
+		try {
+			mChannel.close();
+		} catch (IOException e) {
+			Logger.e(TAG, "Error closing ... {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * This method receives the datagrams until the endpoint is closed.
+	 */
+	@Override
+	public void run() {
+		ByteBuffer buffer = ByteBuffer.allocate(DATAGRAM_SIZE);
+		try {
+			while (mChannel.isOpen()) {
+				buffer.clear();
+				mChannel.receive(buffer);
+				buffer.flip();
+				try {
+					mReceiver.receive(buffer);
+				} catch (RuntimeException e) {
+					Logger.e(TAG, "run() : {}", e);
+				}
+			}
+		} catch (ClosedChannelException e) {
+			// the endpoint was closed
+		} catch (IOException e) {
+			Logger.e(TAG, "run() : {}", e.getMessage());
+		}
+	}
+}
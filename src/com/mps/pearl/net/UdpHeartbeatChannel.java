@@ -0,0 +1,252 @@
+package com.mps.pearl.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+
+import com.mps.pearl.metrics.Metrics;
+import com.mps.pearl.util.Logger;
+
+/**
+ * This class implements a HeartbeatChannel over UDP. Each ping is a
+ * fixed size datagram with a sequence number, and the Coordinator
+ * ( Server Node ) answers with an ACTIVE datagram carrying the same
+ * sequence number.
+ *
+ * The channel never waits for a reply. On each ping it collects the
+ * replies which arrived since the previous ping and counts the sequence
+ * numbers which are still missing. The Coordinator is considered as
+ * unreachable once too many consecutive pings are missing, so a single
+ * lost datagram is not taken as a failure.
+ *
+ * Each datagram is a single message of the MessageCodec.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class UdpHeartbeatChannel implements HeartbeatChannel {
+
+	/**
+	 * A Logger tag
+	 */
+	private final String TAG = UdpHeartbeatChannel.class.getSimpleName();
+
+	/**
+	 * Size in bytes of a heartbeat datagram
+	 */
+	public static final int DATAGRAM_SIZE = MessageCodec.HEADER_SIZE;
+
+	/**
+	 * Number of the last pings whose send time is kept, more than the
+	 * missing replies which make the Coordinator unreachable
+	 */
+	private static final int PING_HISTORY = 8;
+
+	/**
+	 * Id of the Node which owns the channel
+	 */
+	private final int mNodeId;
+
+	/**
+	 * Number of consecutive missing replies to consider the Coordinator unreachable
+	 */
+	private final int mMaxMissed;
+
+	/**
+	 * Buffer of the datagram to send
+	 */
+	private final ByteBuffer mSendBuffer = ByteBuffer.allocate(DATAGRAM_SIZE);
+
+	/**
+	 * Buffer of the received datagram
+	 */
+	private final ByteBuffer mReceiveBuffer = ByteBuffer.allocate(DATAGRAM_SIZE);
+
+	/**
+	 * The reused heartbeat message
+	 */
+	private final Message mMessage = new Message();
+
+	/**
+	 * The non blocking channel of the Node
+	 */
+	private DatagramChannel mChannel;
+
+	/**
+	 * Address of the Coordinator
+	 */
+	private InetSocketAddress mAddress;
+
+	/**
+	 * Sequence number of the last sent ping
+	 */
+	private long mSequence;
+
+	/**
+	 * Highest sequence number answered by the Coordinator
+	 */
+	private long mLastAcked;
+
+	/**
+	 * Term of the last ping, a reply of a lower term is not counted
+	 */
+	private long mTerm;
+
+	/**
+	 * Time in nanoseconds of the last reply of the Coordinator
+	 */
+	private volatile long mLastReplyNanos;
+
+	/**
+	 * Time in nanoseconds the last answered ping was sent
+	 */
+	private volatile long mLastRequestNanos;
+
+	/**
+	 * Send times in nanoseconds of the last pings, by sequence number
+	 */
+	private final long[] mPingNanos = new long[PING_HISTORY];
+
+	/**
+	 * Creates a UdpHeartbeatChannel object.
+	 *
+	 * @param nodeId the Id of the Node which owns the channel
+	 * @param maxMissed number of consecutive missing replies to consider
+	 * the Coordinator as unreachable
+	 */
+	public UdpHeartbeatChannel(int nodeId, int maxMissed) {
+		this.mNodeId = nodeId;
+		this.mMaxMissed = maxMissed;
+	}
+
+	@Override
+	public synchronized boolean ping(String ipAddress, int port, long term) {
+		try {
+			if (mChannel == null) {
+				mChannel = DatagramChannel.open();
+				mChannel.configureBlocking(false);
+			}
+
+			if (mAddress == null || mAddress.getPort() != port || !ipAddress.equals(mAddress.getHostString())) {
+				// new Coordinator, start counting from the current sequence
+				Logger.d(TAG, "ping() : Coordinator changed to [{}:{}]", ipAddress, port);
+				mAddress = new InetSocketAddress(ipAddress, port);
+				mLastAcked = mSequence;
+				mLastReplyNanos = 0;
+				mLastRequestNanos = 0;
+			}
+
+			receiveReplies();
+			long missed = mSequence - mLastAcked;
+
+			// send the next ping
+			mTerm = term;
+			mSendBuffer.clear();
+			MessageCodec.encode(mMessage.set(Message.TYPE_PING, mNodeId, term, ++mSequence), mSendBuffer);
+			mSendBuffer.flip();
+			mPingNanos[(int) (mSequence % PING_HISTORY)] = System.nanoTime();
+			mChannel.send(mSendBuffer, mAddress);
+
+			if (missed > 0)
+				if(Logger.isDebugEnabled())Logger.d(TAG, "ping() : {} missing replies from {}", missed, mAddress);
+			return missed < mMaxMissed;
+		} catch (IOException e) {
+			if(Logger.isDebugEnabled())Logger.d(TAG, "Couldn't get I/O for the connection to [{}:{}] : {}", ipAddress, port, e.getMessage());
+			close();
+			return false;
+		}
+	}
+
+	@Override
+	public synchronized boolean probe(String ipAddress, int port, long timeoutMillis) {
+		ping(ipAddress, port, 0);
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		try {
+			while (mChannel != null) {
+				receiveReplies();
+				if (mLastAcked == mSequence) return true;
+				if (System.nanoTime() >= deadline) return false;
+				TimeUnit.MILLISECONDS.sleep(1);
+			}
+		} catch (IOException e) {
+			Logger.e(TAG, "probe() : [{}:{}] : {}", ipAddress, port, e.getMessage());
+			close();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	/**
+	 * Reads all the replies which arrived since the previous ping
+	 * @throws IOException
+	 */
+	private void receiveReplies() throws IOException {
+		mReceiveBuffer.clear();
+		while (mChannel.receive(mReceiveBuffer) != null) {
+			mReceiveBuffer.flip();
+			try {
+				if (MessageCodec.decode(mReceiveBuffer, mMessage) && mMessage.getType() == Message.TYPE_ACTIVE) {
+					if (mMessage.getTerm() < mTerm) {
+						// a Coordinator of an older term, the ping stays missing
+						Metrics.getInstance().getPingStale().increment();
+						mReceiveBuffer.clear();
+						continue;
+					}
+					long sequence = mMessage.getSequence();
+					if (sequence > mLastAcked && sequence <= mSequence) {
+						mLastAcked = sequence;
+						mLastReplyNanos = System.nanoTime();
+						if (mSequence - sequence < PING_HISTORY) mLastRequestNanos = mPingNanos[(int) (sequence % PING_HISTORY)];
+					}
+				}
+			} catch (ProtocolException e) {
+				Logger.e(TAG, "receiveReplies() : {}", e.getMessage());
+			}
+			mReceiveBuffer.clear();
+		}
+	}
+
+	/**
+	 * Returns the number of pings which are not answered by the Coordinator
+	 * @return the number of missing replies
+	 */
+	public synchronized long getMissedCount() {
+		return mSequence - mLastAcked;
+	}
+
+	@Override
+	public long getLastReplyNanos() {
+		return mLastReplyNanos;
+	}
+
+	@Override
+	public long getLastRequestNanos() {
+		return mLastRequestNanos;
+	}
+
+	@Override
+	public long getLastRttNanos() {
+		// the replies are read on the next ping
+		return 0;
+	}
+
+	@Override
+	public synchronized void close() {
+		if (mChannel == null) return;
+		try {
+			mChannel.close();
+		} catch (IOException e) {
+			Logger.e(TAG, "Error closing ... {}", e.getMessage());
+		}
+		mChannel = null;
+		mAddress = null;
+		mLastReplyNanos = 0;
+		mLastRequestNanos = 0;
+	}
+}
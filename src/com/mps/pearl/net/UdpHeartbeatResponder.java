@@ -0,0 +1,118 @@
+package com.mps.pearl.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+
+import com.mps.pearl.util.Logger;
+
+/**
+ * This class answers the UDP heartbeat datagrams of the Clients on the
+ * Coordinator ( Server Node ). A single thread receives every ping and
+ * sends back an ACTIVE datagram with the same sequence number, reusing
+ * one buffer for all the Clients.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class UdpHeartbeatResponder implements Runnable {
+
+	/**
+	 * A Logger tag
+	 */
+	private final String TAG = UdpHeartbeatResponder.class.getSimpleName();
+
+	/**
+	 * Id of the Coordinator
+	 */
+	private final int mNodeId;
+
+	/**
+	 * Term of the Election which elected the Coordinator
+	 */
+	private final long mTerm;
+
+	/**
+	 * The blocking channel bound to the Coordinator address
+	 */
+	private final DatagramChannel mChannel;
+
+	/**
+	 * Creates a UdpHeartbeatResponder object and binds its channel.
+	 *
+	 * @param nodeId the Id of the Coordinator
+	 * @param ipAddress the String IP Address to listen on
+	 * @param port the port number to listen on
+	 * @throws IOException if the channel can not be bound
+	 */
+	public UdpHeartbeatResponder(int nodeId, String ipAddress, int port) throws IOException {
+		this(nodeId, 0, ipAddress, port);
+	}
+
+	/**
+	 * Creates a UdpHeartbeatResponder object and binds its channel.
+	 *
+	 * @param nodeId the Id of the Coordinator
+	 * @param term the term of the Election which elected the Coordinator
+	 * @param ipAddress the String IP Address to listen on
+	 * @param port the port number to listen on
+	 * @throws IOException if the channel can not be bound
+	 */
+	public UdpHeartbeatResponder(int nodeId, long term, String ipAddress, int port) throws IOException {
+		this.mNodeId = nodeId;
+		this.mTerm = term;
+		this.mChannel = DatagramChannel.open();
+		this.mChannel.socket().setReuseAddress(true);
+		this.mChannel.socket().bind(new InetSocketAddress(ipAddress, port));
+	}
+
+	/**
+	 * This method answers the pings until the responder is stopped.
+	 */
+	@Override
+	public void run() {
+		Logger.d(TAG, "run() : listening {}", mChannel.socket().getLocalSocketAddress());
+		ByteBuffer buffer = ByteBuffer.allocate(UdpHeartbeatChannel.DATAGRAM_SIZE);
+		Message message = new Message();
+		try {
+			while (mChannel.isOpen()) {
+				buffer.clear();
+				SocketAddress client = mChannel.receive(buffer);
+				buffer.flip();
+				try {
+					if (!MessageCodec.decode(buffer, message) || message.getType() != Message.TYPE_PING) continue;
+				} catch (ProtocolException e) {
+					continue;
+				}
+
+				// answer with the sequence number of the ping
+				buffer.clear();
+				MessageCodec.encode(message.set(Message.TYPE_ACTIVE, mNodeId, mTerm, message.getSequence()), buffer);
+				buffer.flip();
+				mChannel.send(buffer, client);
+			}
+		} catch (ClosedChannelException e) {
+			// the responder was stopped
+		} catch (IOException e) {
+			Logger.e(TAG, "run() : {}", e.getMessage());
+		}
+		Logger.d(TAG, "run() : stopped");
+	}
+
+	/**
+	 * This method stops the responder
+	 */
+	public void stop() {
+		try {
+			mChannel.close();
+		} catch (IOException e) {
+			Logger.e(TAG, "Error closing ... {}", e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,465 @@
+package com.mps.pearl.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class implements the background writer of the Logger. The threads
+ * which log publish their records into a lock free ring buffer of reused
+ * entries, and a single writer Thread formats the records and writes them
+ * to the console or to a rolling file.
+ *
+ * A record keeps the message pattern and its arguments, the message is
+ * built by the writer Thread only. A thread which logs never blocks : if
+ * the ring buffer is full, the record is dropped and counted.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class AsyncLogWriter implements Runnable {
+
+	/**
+	 * Time in nanoseconds the writer Thread sleeps when the ring buffer is empty
+	 */
+	private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	/**
+	 * Time in milliseconds to drain the ring buffer when the JVM exits
+	 */
+	private static final long SHUTDOWN_MILLIS = 2000;
+
+	/**
+	 * Names of the log levels, indexed by level
+	 */
+	private static final String[] LEVEL_NAMES = { "DEBUG", "INFO ", "WARN ", "ERROR" };
+
+	/**
+	 * The reused entries of the ring buffer
+	 */
+	private final Entry[] mEntries;
+
+	/**
+	 * Mask to map a sequence number to an entry
+	 */
+	private final int mMask;
+
+	/**
+	 * Sequence number of the next entry to claim by a logging thread
+	 */
+	private final AtomicLong mClaimed = new AtomicLong();
+
+	/**
+	 * Sequence number of the next entry to write by the writer Thread
+	 */
+	private volatile long mConsumed;
+
+	/**
+	 * Number of records dropped as the ring buffer was full
+	 */
+	private final AtomicLong mDropped = new AtomicLong();
+
+	/**
+	 * The writer Thread
+	 */
+	private final Thread mThread;
+
+	/**
+	 * Boolean to indicate the writer Thread sleeps and needs to be woken up
+	 */
+	private volatile boolean isSleeping;
+
+	/**
+	 * Boolean to hold the running state of the writer Thread
+	 */
+	private volatile boolean isRunning = true;
+
+	/**
+	 * Name of the log file, or null to write to the console
+	 */
+	private volatile String mFileName;
+
+	/**
+	 * Size in bytes of a log file before it rolls over
+	 */
+	private volatile long mMaxFileBytes;
+
+	/**
+	 * Number of rolled log files kept next to the log file
+	 */
+	private volatile int mFileCount;
+
+	/**
+	 * Boolean to indicate the writer Thread has to open the configured log file
+	 */
+	private volatile boolean isFileChanged;
+
+	/**
+	 * Writer of the open log file, or null
+	 */
+	private Writer mFileWriter;
+
+	/**
+	 * Number of characters written to the open log file
+	 */
+	private long mFileWritten;
+
+	/**
+	 * The reused line of the writer Thread
+	 */
+	private final StringBuilder mLine = new StringBuilder(256);
+
+	/**
+	 * Formatter of the time of the records, used by the writer Thread only
+	 */
+	private final SimpleDateFormat mDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+	/**
+	 * The reused date of the writer Thread
+	 */
+	private final Date mDate = new Date();
+
+	/**
+	 * Creates an AsyncLogWriter object and starts its writer Thread.
+	 * @param capacity the number of entries of the ring buffer, rounded up to a power of two
+	 */
+	public AsyncLogWriter(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		mEntries = new Entry[size];
+		for (int i = 0; i < size; i++) mEntries[i] = new Entry();
+		mMask = size - 1;
+
+		mThread = new Thread(this, "Logger-Writer");
+		mThread.setDaemon(true);
+		mThread.start();
+
+		// write the pending records before the JVM exits
+		Runtime.getRuntime().addShutdownHook(new Thread("Logger-Shutdown") {
+			@Override
+			public void run() {
+				AsyncLogWriter.this.stop();
+			}
+		});
+	}
+
+	/**
+	 * Publishes a record to the ring buffer
+	 *
+	 * @param level the level of the record
+	 * @param tag the String name of the logging class
+	 * @param pattern the message, where each {} is replaced by the next argument
+	 * @param argCount the number of arguments
+	 * @param arg1 the first argument
+	 * @param arg2 the second argument
+	 * @param arg3 the third argument
+	 * @param throwable the Throwable to print after the message, or null
+	 * @return True, if the record is published, False, if it was dropped
+	 */
+	public boolean publish(int level, String tag, String pattern, int argCount,
+			Object arg1, Object arg2, Object arg3, Throwable throwable) {
+		long sequence;
+		do {
+			sequence = mClaimed.get();
+			if (sequence - mConsumed >= mEntries.length) {
+				mDropped.incrementAndGet();
+				return false;
+			}
+		} while (!mClaimed.compareAndSet(sequence, sequence + 1));
+
+		Entry entry = mEntries[(int) sequence & mMask];
+		entry.level = level;
+		entry.timeMillis = System.currentTimeMillis();
+		entry.thread = Thread.currentThread().getName();
+		entry.tag = tag;
+		entry.pattern = pattern;
+		entry.argCount = argCount;
+		entry.arg1 = arg1;
+		entry.arg2 = arg2;
+		entry.arg3 = arg3;
+		entry.throwable = throwable;
+		// publish the entry to the writer Thread
+		entry.published = sequence + 1;
+
+		if (isSleeping) LockSupport.unpark(mThread);
+		return true;
+	}
+
+	/**
+	 * Sets the log file. The writer Thread closes the former file and opens the new one.
+	 *
+	 * @param fileName the name of the log file, or null to write to the console
+	 * @param maxFileBytes the size in bytes of a log file before it rolls over
+	 * @param fileCount the number of rolled log files to keep
+	 */
+	public void setFile(String fileName, long maxFileBytes, int fileCount) {
+		mMaxFileBytes = Math.max(1024, maxFileBytes);
+		mFileCount = Math.max(0, fileCount);
+		mFileName = fileName;
+		isFileChanged = true;
+		LockSupport.unpark(mThread);
+	}
+
+	/**
+	 * Returns the number of records dropped as the ring buffer was full
+	 * @return the number of dropped records
+	 */
+	public long getDroppedCount() {
+		return mDropped.get();
+	}
+
+	/**
+	 * Stops the writer Thread once the published records are written
+	 */
+	public void stop() {
+		isRunning = false;
+		LockSupport.unpark(mThread);
+		try {
+			mThread.join(SHUTDOWN_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * This method is the entry point of the writer Thread. It writes the
+	 * records in the order of their sequence numbers.
+	 */
+	@Override
+	public void run() {
+		long reportedDropped = 0;
+		while (true) {
+			if (isFileChanged) openFile();
+
+			Entry entry = mEntries[(int) mConsumed & mMask];
+			if (entry.published == mConsumed + 1) {
+				write(entry);
+				entry.clear();
+				mConsumed = mConsumed + 1;
+				continue;
+			}
+
+			long dropped = mDropped.get();
+			if (dropped != reportedDropped) {
+				writeLine(LEVEL_NAMES.length - 1, "[Logger] : " + (dropped - reportedDropped) + " records dropped, the log buffer was full");
+				reportedDropped = dropped;
+			}
+			flush();
+
+			if (!isRunning) break;
+			isSleeping = true;
+			// a record may have been published before the flag was seen
+			if (entry.published != mConsumed + 1) LockSupport.parkNanos(this, IDLE_NANOS);
+			isSleeping = false;
+		}
+		closeFile();
+	}
+
+	/**
+	 * Formats a record into the reused line and writes it
+	 */
+	private void write(Entry entry) {
+		mLine.setLength(0);
+		mDate.setTime(entry.timeMillis);
+		mLine.append(mDateFormat.format(mDate)).append(' ')
+				.append(LEVEL_NAMES[entry.level]).append(' ')
+				.append('(').append(entry.thread).append(") ")
+				.append('[').append(entry.tag).append("] : ");
+
+		// replace each {} by the next argument
+		String pattern = String.valueOf(entry.pattern);
+		int argIndex = 0;
+		int start = 0;
+		int found;
+		while (argIndex < entry.argCount && (found = pattern.indexOf("{}", start)) >= 0) {
+			mLine.append(pattern, start, found);
+			mLine.append(argIndex == 0 ? entry.arg1 : argIndex == 1 ? entry.arg2 : entry.arg3);
+			argIndex++;
+			start = found + 2;
+		}
+		mLine.append(pattern, start, pattern.length());
+
+		writeLine(entry.level, mLine);
+		if (entry.throwable != null) writeThrowable(entry.level, entry.throwable);
+	}
+
+	/**
+	 * Writes a line to the log file, or to the console
+	 */
+	private void writeLine(int level, CharSequence line) {
+		if (mFileWriter == null) {
+			PrintStream console = level == LEVEL_NAMES.length - 1 ? System.err : System.out;
+			console.println(line);
+			return;
+		}
+		try {
+			mFileWriter.append(line).append(System.lineSeparator());
+			mFileWritten += line.length() + 1;
+			if (mFileWritten >= mMaxFileBytes) rollFile();
+		} catch (IOException e) {
+			System.err.println("[Logger] : Error writing " + mFileName + " : " + e.getMessage());
+			closeFile();
+		}
+	}
+
+	/**
+	 * Writes the stack trace of a Throwable
+	 */
+	private void writeThrowable(int level, Throwable throwable) {
+		writeLine(level, throwable.toString());
+		for (StackTraceElement element : throwable.getStackTrace()) {
+			writeLine(level, "\tat " + element);
+		}
+		if (throwable.getCause() != null && throwable.getCause() != throwable) {
+			writeLine(level, "Caused by: " + throwable.getCause());
+		}
+	}
+
+	/**
+	 * Flushes the written lines
+	 */
+	private void flush() {
+		if (mFileWriter == null) return;
+		try {
+			mFileWriter.flush();
+		} catch (IOException e) {
+			System.err.println("[Logger] : Error writing " + mFileName + " : " + e.getMessage());
+			closeFile();
+		}
+	}
+
+	/**
+	 * Opens the configured log file, in append mode
+	 */
+	private void openFile() {
+		isFileChanged = false;
+		closeFile();
+		String fileName = mFileName;
+		if (fileName == null || fileName.isEmpty()) return;
+
+		File file = new File(fileName);
+		try {
+			mFileWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), Charset.forName("UTF-8")));
+			mFileWritten = file.length();
+		} catch (IOException e) {
+			System.err.println("[Logger] : Error opening " + fileName + " : " + e.getMessage());
+			mFileWriter = null;
+		}
+	}
+
+	/**
+	 * Rolls the log file over : file.(n-1) is renamed to file.n, ..., file to file.1
+	 */
+	private void rollFile() {
+		closeFile();
+		String fileName = mFileName;
+		int count = mFileCount;
+		new File(fileName + "." + count).delete();
+		for (int i = count - 1; i >= 1; i--) {
+			File rolled = new File(fileName + "." + i);
+			if (rolled.exists()) rolled.renameTo(new File(fileName + "." + (i + 1)));
+		}
+		File file = new File(fileName);
+		if (count > 0) file.renameTo(new File(fileName + ".1"));
+		else file.delete();
+		openFile();
+	}
+
+	/**
+	 * Closes the open log file
+	 */
+	private void closeFile() {
+		if (mFileWriter == null) return;
+		try {
+			mFileWriter.close();
+		} catch (IOException e) {
+			System.err.println("[Logger] : Error closing " + mFileName + " : " + e.getMessage());
+		}
+		mFileWriter = null;
+	}
+
+	/**
+	 * This class represents a reused entry of the ring buffer
+	 */
+	private static final class Entry {
+
+		/**
+		 * Sequence number + 1 of the published record, written last by the logging thread
+		 */
+		volatile long published;
+
+		/**
+		 * Level of the record
+		 */
+		int level;
+
+		/**
+		 * Time of the record
+		 */
+		long timeMillis;
+
+		/**
+		 * Name of the logging thread
+		 */
+		String thread;
+
+		/**
+		 * String name of the logging class
+		 */
+		String tag;
+
+		/**
+		 * Message, where each {} is replaced by the next argument
+		 */
+		String pattern;
+
+		/**
+		 * Number of arguments
+		 */
+		int argCount;
+
+		/**
+		 * First argument
+		 */
+		Object arg1;
+
+		/**
+		 * Second argument
+		 */
+		Object arg2;
+
+		/**
+		 * Third argument
+		 */
+		Object arg3;
+
+		/**
+		 * Throwable to print after the message, or null
+		 */
+		Throwable throwable;
+
+		/**
+		 * Releases the references of the written record
+		 */
+		void clear() {
+			thread = null;
+			tag = null;
+			pattern = null;
+			arg1 = null;
+			arg2 = null;
+			arg3 = null;
+			throwable = null;
+		}
+	}
+}
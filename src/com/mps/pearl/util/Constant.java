@@ -29,7 +29,527 @@ public interface Constant {
 	
 	/**
 	 * Coordinator Backlog as a  requested maximum length of the queue 
-	 * of incoming connections
+	 * of incoming connections, unless set
 	 */
-	public static final int SERVER_BACKLOG = 10; 
+	public static final int SERVER_BACKLOG = 128; 
+	
+	/**
+	 * Setting name to select the Coordinator ( Server Node ) mode
+	 */
+	public static final String KEY_SERVER_MODE = "server.mode";
+	
+	/**
+	 * Coordinator mode with a Thread for each accepted Client
+	 */
+	public static final String SERVER_MODE_THREAD = "thread";
+	
+	/**
+	 * Coordinator mode with a single Selector event loop for all Clients
+	 */
+	public static final String SERVER_MODE_NIO = "nio";
+	
+	/**
+	 * Setting name to select the channel used by Other Nodes to ping the Coordinator
+	 */
+	public static final String KEY_PING_CHANNEL = "ping.channel";
+	
+	/**
+	 * Ping channel which opens a new connection for each ping
+	 */
+	public static final String PING_CHANNEL_ONESHOT = "oneshot";
+	
+	/**
+	 * Ping channel which keeps its connection to the Coordinator open
+	 */
+	public static final String PING_CHANNEL_PERSISTENT = "persistent";
+	
+	/**
+	 * Setting name of the time to wait for the reply of the Coordinator
+	 */
+	public static final String KEY_PING_TIMEOUT_MILLIS = "ping.timeout.millis";
+	
+	/**
+	 * Time to wait for the reply of the Coordinator
+	 */
+	public static final int PING_TIMEOUT_MILLIS = 2000; // milliseconds
+	
+	/**
+	 * Setting name to select the transport of the heartbeat pings
+	 */
+	public static final String KEY_HEARTBEAT_TRANSPORT = "heartbeat.transport";
+	
+	/**
+	 * Heartbeat pings over TCP connections
+	 */
+	public static final String HEARTBEAT_TRANSPORT_TCP = "tcp";
+	
+	/**
+	 * Heartbeat pings as UDP datagrams
+	 */
+	public static final String HEARTBEAT_TRANSPORT_UDP = "udp";
+	
+	/**
+	 * Setting name of the number of consecutive missing UDP replies to consider the Coordinator unreachable
+	 */
+	public static final String KEY_HEARTBEAT_MAX_MISSED = "heartbeat.udp.missed";
+	
+	/**
+	 * Number of consecutive missing UDP replies to consider the Coordinator unreachable
+	 */
+	public static final int HEARTBEAT_MAX_MISSED = 3;
+	
+	/**
+	 * Setting name to select the execution mode of the Nodes and the Socket handlers
+	 */
+	public static final String KEY_EXECUTION_MODE = "execution.mode";
+	
+	/**
+	 * Execution mode on pooled platform Threads
+	 */
+	public static final String EXECUTION_MODE_PLATFORM = "platform";
+	
+	/**
+	 * Execution mode with a virtual Thread for each task
+	 */
+	public static final String EXECUTION_MODE_VIRTUAL = "virtual";
+	
+	/**
+	 * Setting name of the duration of a tick of the TimingWheel
+	 */
+	public static final String KEY_TIMER_TICK_MILLIS = "timer.tick.millis";
+	
+	/**
+	 * Duration of a tick of the TimingWheel
+	 */
+	public static final long TIMER_TICK_MILLIS = 10; // milliseconds
+	
+	/**
+	 * Number of buckets of the TimingWheel
+	 */
+	public static final int TIMER_WHEEL_SIZE = 512;
+	
+	/**
+	 * Setting name of the fraction of the ping period used to delay each ping at random
+	 */
+	public static final String KEY_PING_JITTER = "ping.jitter";
+	
+	/**
+	 * Fraction of the ping period used to delay each ping at random
+	 */
+	public static final double PING_JITTER = 0.1;
+	
+	/**
+	 * Setting name of the interval between two pings of the Coordinator
+	 */
+	public static final String KEY_PING_INTERVAL_MILLIS = "ping.interval.millis";
+	
+	/**
+	 * Interval between two pings of the Coordinator
+	 */
+	public static final long PING_INTERVAL_MILLIS = CLIENT_PING_EVERY_SECONDS * 1000L; // milliseconds
+	
+	/**
+	 * Setting name of the failure detector used to suspect the Coordinator
+	 */
+	public static final String KEY_FAILURE_DETECTOR = "failure.detector";
+	
+	/**
+	 * Failure detector which adapts to the distribution of the heartbeat intervals
+	 */
+	public static final String FAILURE_DETECTOR_PHI = "phi";
+	
+	/**
+	 * Failure detector which suspects a Node after a fixed timeout
+	 */
+	public static final String FAILURE_DETECTOR_FIXED = "fixed";
+	
+	/**
+	 * Setting name of the phi above which the Coordinator is suspected
+	 */
+	public static final String KEY_FAILURE_PHI_THRESHOLD = "failure.phi.threshold";
+	
+	/**
+	 * Phi above which the Coordinator is suspected
+	 */
+	public static final double FAILURE_PHI_THRESHOLD = 8.0;
+	
+	/**
+	 * Setting name of the number of heartbeat intervals kept for each Node
+	 */
+	public static final String KEY_FAILURE_PHI_WINDOW = "failure.phi.window";
+	
+	/**
+	 * Number of heartbeat intervals kept for each Node
+	 */
+	public static final int FAILURE_PHI_WINDOW = 100;
+	
+	/**
+	 * Setting name of the lower bound of the standard deviation of the heartbeat intervals
+	 */
+	public static final String KEY_FAILURE_PHI_MIN_STD_DEVIATION_MILLIS = "failure.phi.min.stddev.millis";
+	
+	/**
+	 * Lower bound of the standard deviation of the heartbeat intervals
+	 */
+	public static final long FAILURE_PHI_MIN_STD_DEVIATION_MILLIS = 100; // milliseconds
+	
+	/**
+	 * Setting name of the pause tolerated on top of the mean heartbeat interval
+	 */
+	public static final String KEY_FAILURE_PHI_ACCEPTABLE_PAUSE_MILLIS = "failure.phi.pause.millis";
+	
+	/**
+	 * Pause tolerated on top of the mean heartbeat interval, eg a GC pause
+	 */
+	public static final long FAILURE_PHI_ACCEPTABLE_PAUSE_MILLIS = 0; // milliseconds
+	
+	/**
+	 * Setting name of the timeout of the fixed failure detector
+	 */
+	public static final String KEY_FAILURE_FIXED_TIMEOUT_MILLIS = "failure.fixed.timeout.millis";
+	
+	/**
+	 * Timeout of the fixed failure detector
+	 */
+	public static final long FAILURE_FIXED_TIMEOUT_MILLIS = 3 * PING_INTERVAL_MILLIS; // milliseconds
+	
+	/**
+	 * Setting name of the log level : debug, info, warn, error or off
+	 */
+	public static final String KEY_LOG_LEVEL = "log.level";
+	
+	/**
+	 * Log level of the System
+	 */
+	public static final String LOG_LEVEL = "info";
+	
+	/**
+	 * Setting name of the log file, the Logger writes to the console if it is not set
+	 */
+	public static final String KEY_LOG_FILE = "log.file";
+	
+	/**
+	 * Setting name of the size of a log file before it rolls over
+	 */
+	public static final String KEY_LOG_FILE_MAX_BYTES = "log.file.max.bytes";
+	
+	/**
+	 * Size of a log file before it rolls over
+	 */
+	public static final long LOG_FILE_MAX_BYTES = 10 * 1024 * 1024; // bytes
+	
+	/**
+	 * Setting name of the number of rolled log files to keep
+	 */
+	public static final String KEY_LOG_FILE_COUNT = "log.file.count";
+	
+	/**
+	 * Number of rolled log files to keep
+	 */
+	public static final int LOG_FILE_COUNT = 5;
+	
+	/**
+	 * Number of records the Logger buffers for its background writer
+	 */
+	public static final int LOG_BUFFER_SIZE = 8192;
+	
+	/**
+	 * Setting name of the transport between the Nodes : socket or memory
+	 */
+	public static final String KEY_TRANSPORT = "transport";
+	
+	/**
+	 * The Nodes talk over TCP and UDP Sockets
+	 */
+	public static final String TRANSPORT_SOCKET = "socket";
+	
+	/**
+	 * The Nodes talk over the in-memory queues of a single JVM
+	 */
+	public static final String TRANSPORT_MEMORY = "memory";
+	
+	/**
+	 * Setting name of the latency of a link of the memory transport
+	 */
+	public static final String KEY_MEMORY_LATENCY_MILLIS = "memory.latency.millis";
+	
+	/**
+	 * Latency of a link of the memory transport
+	 */
+	public static final long MEMORY_LATENCY_MILLIS = 0; // milliseconds
+	
+	/**
+	 * Setting name of the random latency added to each message of the memory transport
+	 */
+	public static final String KEY_MEMORY_JITTER_MILLIS = "memory.jitter.millis";
+	
+	/**
+	 * Random latency added to each message of the memory transport
+	 */
+	public static final long MEMORY_JITTER_MILLIS = 0; // milliseconds
+	
+	/**
+	 * Setting name of the ratio of messages lost by a link of the memory transport
+	 */
+	public static final String KEY_MEMORY_LOSS = "memory.loss";
+	
+	/**
+	 * Ratio of messages lost by a link of the memory transport, from 0 to 1
+	 */
+	public static final double MEMORY_LOSS = 0.0;
+	
+	/**
+	 * Setting name of the members of the configuration file hosted by this process
+	 */
+	public static final String KEY_MEMBERSHIP_HOSTED = "membership.hosted";
+	
+	/**
+	 * Every member of the configuration file runs a Node in this process
+	 */
+	public static final String HOSTED_ALL = "all";
+	
+	/**
+	 * Only the members whose IP Address is an address of this host run a Node in this process
+	 */
+	public static final String HOSTED_LOCAL = "local";
+	
+	/**
+	 * Members of the configuration file hosted by this process
+	 */
+	public static final String MEMBERSHIP_HOSTED = HOSTED_ALL;
+	
+	/**
+	 * Setting name of the reload of the configuration file once it changes
+	 */
+	public static final String KEY_MEMBERSHIP_WATCH = "membership.watch";
+	
+	/**
+	 * The configuration file is not reloaded while the System runs
+	 */
+	public static final boolean MEMBERSHIP_WATCH = false;
+	
+	/**
+	 * Setting name of the time the configuration file must not change before it is reloaded
+	 */
+	public static final String KEY_MEMBERSHIP_WATCH_SETTLE_MILLIS = "membership.watch.settle.millis";
+	
+	/**
+	 * Time the configuration file must not change before it is reloaded
+	 */
+	public static final long MEMBERSHIP_WATCH_SETTLE_MILLIS = 500; // milliseconds
+	
+	/**
+	 * Setting name of the way the Nodes watch the Coordinator
+	 */
+	public static final String KEY_HEARTBEAT_MODE = "heartbeat.mode";
+	
+	/**
+	 * The Other Nodes ping the Coordinator
+	 */
+	public static final String HEARTBEAT_MODE_PULL = "pull";
+	
+	/**
+	 * The Nodes probe each other and gossip the failures, SWIM style
+	 */
+	public static final String HEARTBEAT_MODE_GOSSIP = "gossip";
+	
+	/**
+	 * The Coordinator pushes a heartbeat to the Other Nodes
+	 */
+	public static final String HEARTBEAT_MODE_PUSH = "push";
+	
+	/**
+	 * Setting name of the number of Nodes asked to probe a Node which did not answer
+	 */
+	public static final String KEY_GOSSIP_INDIRECT_PROBES = "gossip.indirect.probes";
+	
+	/**
+	 * Number of Nodes asked to probe a Node which did not answer
+	 */
+	public static final int GOSSIP_INDIRECT_PROBES = 3;
+	
+	/**
+	 * Setting name of the multiplier of the time a Node stays suspected before it is declared dead
+	 */
+	public static final String KEY_GOSSIP_SUSPECT_MULTIPLIER = "gossip.suspect.multiplier";
+	
+	/**
+	 * A Node stays suspected for multiplier x log10(Nodes) probe periods before it is declared dead
+	 */
+	public static final int GOSSIP_SUSPECT_MULTIPLIER = 4;
+	
+	/**
+	 * Setting name of the multiplier of the number of times an update is gossiped
+	 */
+	public static final String KEY_GOSSIP_RETRANSMIT_MULTIPLIER = "gossip.retransmit.multiplier";
+	
+	/**
+	 * An update is piggybacked on multiplier x log10(Nodes) messages
+	 */
+	public static final int GOSSIP_RETRANSMIT_MULTIPLIER = 4;
+	
+	/**
+	 * Max number of updates piggybacked on a gossip message
+	 */
+	public static final int GOSSIP_MAX_UPDATES = 16;
+	
+	/**
+	 * Setting name of the time a reply of the Coordinator holds its lease
+	 */
+	public static final String KEY_LEASE_MILLIS = "lease.millis";
+	
+	/**
+	 * Default lease, in ping intervals : a single missed ping does not let the lease expire
+	 */
+	public static final int LEASE_PING_INTERVALS = 2;
+	
+	/**
+	 * Setting name of the bound of the drift rate of the clocks of the Nodes
+	 */
+	public static final String KEY_LEASE_DRIFT = "lease.drift";
+	
+	/**
+	 * The clocks of two Nodes drift apart by 1% of the elapsed time at most
+	 */
+	public static final double LEASE_DRIFT = 0.01;
+	
+	/**
+	 * Setting name of the number of election groups
+	 */
+	public static final String KEY_ELECTION_GROUPS = "election.groups";
+	
+	/**
+	 * No election group, the Nodes take part in the Election of the System only
+	 */
+	public static final int ELECTION_GROUPS = 0;
+	
+	/**
+	 * Setting name of the number of Nodes of an election group
+	 */
+	public static final String KEY_ELECTION_GROUP_SIZE = "election.group.size";
+	
+	/**
+	 * Number of Nodes of an election group
+	 */
+	public static final int ELECTION_GROUP_SIZE = 5;
+	
+	/**
+	 * Ping intervals without heartbeat after which the Coordinator of an election group is missed
+	 */
+	public static final int GROUP_TIMEOUT_PING_INTERVALS = 3;
+	
+	/**
+	 * Setting name of the file of the term log, no term log if not set
+	 */
+	public static final String KEY_TERM_LOG = "term.log";
+	
+	/**
+	 * Setting name of the interval in milliseconds between two forces of the term log to the disk
+	 */
+	public static final String KEY_TERM_LOG_SYNC_MILLIS = "term.log.sync.millis";
+	
+	/**
+	 * The appended records of the term log are forced to the disk every 10 milliseconds
+	 */
+	public static final long TERM_LOG_SYNC_MILLIS = 10;
+	
+	/**
+	 * Size in bytes of the mapped file of the term log, 32768 records
+	 */
+	public static final int TERM_LOG_SIZE = 1 << 20;
+	
+	/**
+	 * Setting name of the failover once the Coordinator is terminated
+	 */
+	public static final String KEY_FAILOVER_MODE = "failover.mode";
+	
+	/**
+	 * The highest running Node probes the terminated Coordinator once and claims its role
+	 */
+	public static final String FAILOVER_MODE_FAST = "fast";
+	
+	/**
+	 * The running Nodes elect the new Coordinator with the Bully Algorithm
+	 */
+	public static final String FAILOVER_MODE_BULLY = "bully";
+	
+	/**
+	 * Ping intervals the Other Nodes wait for the claim of the successor before they begin an Election
+	 */
+	public static final int FAILOVER_WAIT_PING_INTERVALS = 2;
+	
+	/**
+	 * Setting name of the time in milliseconds to wait for a TCP connection
+	 */
+	public static final String KEY_CONNECT_TIMEOUT_MILLIS = "connect.timeout.millis";
+	
+	/**
+	 * Time in milliseconds to wait for a TCP connection, within the deadline of the operation
+	 */
+	public static final int CONNECT_TIMEOUT_MILLIS = 1000;
+	
+	/**
+	 * Setting name of the time in milliseconds the Coordinator waits for the next message of a Client
+	 */
+	public static final String KEY_SERVER_IDLE_TIMEOUT_MILLIS = "server.idle.timeout.millis";
+	
+	/**
+	 * Ping intervals the Coordinator waits for the next message of a Client, unless set, before it closes the connection
+	 */
+	public static final int SERVER_IDLE_PING_INTERVALS = 3;
+	
+	/**
+	 * Setting name of the requested maximum length of the queue of incoming connections
+	 */
+	public static final String KEY_SERVER_BACKLOG = "server.backlog";
+	
+	/**
+	 * Setting name of the number of pings the Coordinator serves at once
+	 */
+	public static final String KEY_SERVER_MAX_INFLIGHT = "server.max.inflight";
+	
+	/**
+	 * Number of pings the Coordinator serves at once, unless set
+	 */
+	public static final int SERVER_MAX_INFLIGHT = 256;
+	
+	/**
+	 * Setting name of the time in milliseconds a Client waits after a busy reply of the Coordinator
+	 */
+	public static final String KEY_SERVER_BUSY_RETRY_MILLIS = "server.busy.retry.millis";
+	
+	/**
+	 * Time in milliseconds a Client waits after a busy reply, a random time up to as much is added
+	 */
+	public static final int SERVER_BUSY_RETRY_MILLIS = 100;
+	
+	/**
+	 * Setting name of the time in seconds after which the Coordinator is aborted, 0 never aborts it
+	 */
+	public static final String KEY_SERVER_ABORT_SECONDS = "server.abort.seconds";
+	
+	/**
+	 * Setting name of the Id of the single Node a process runs, set by the second argument of App
+	 */
+	public static final String KEY_NODE_ID = "node.id";
+	
+	/**
+	 * Setting name of the time in milliseconds a Node waits for an answer to its Election messages
+	 */
+	public static final String KEY_ELECTION_ANSWER_TIMEOUT_MILLIS = "election.answer.timeout.millis";
+	
+	/**
+	 * Time in milliseconds a Node waits for an answer to its Election messages, unless set
+	 */
+	public static final long ELECTION_ANSWER_TIMEOUT_MILLIS = 1000;
+	
+	/**
+	 * Number of answer timeouts a Node waits for the Coordinator message, once a higher Node answered
+	 */
+	public static final int ELECTION_COORDINATOR_WAIT_ANSWERS = 3;
+	
+	/**
+	 * Number of times a Node resends its Election and Coordinator messages, spread over an answer timeout
+	 */
+	public static final int ELECTION_RETRANSMITS = 2;
 }
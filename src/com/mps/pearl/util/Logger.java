@@ -1,46 +1,334 @@
-package com.mps.pearl.util;
-
-/**
- * 
- * This class implements Logger. It provide advance debugging 
- * property to the Application.
- * 
- * @author msingh
- * @version 1.0 20 Jan, 2014
- *
- */
-
-public class Logger {
-	
-	/**
-	 * A debug state
-	 */
-	public static final boolean DEBUG = true;
-	
-	/**
-	 * Allocates a new Logger object.
-	 */
-	public Logger() {
-		// TODO Auto-generated constructor stub
-	}
-	
-	/**
-	 * This method is designed to debug verbose messages
-	 * 
-	 * @param tag the String name of the debugging class
-	 * @param message the String debugging message 
-	 */
-	public static void d(String tag, String message){
-		System.out.println("[" + tag + "] : " + message);
-	}
-	
-	/**
-	 * This method is designed to debug Error messages
-	 * 
-	 * @param tag the String name of the debugging class
-	 * @param message the String debugging message 
-	 */
-	public static void e(String tag, String message){
-		System.err.println("[" + tag + "] : " + message);
-	}
-}
+package com.mps.pearl.util;
+
+/**
+ * 
+ * This class implements Logger. It provide advance debugging 
+ * property to the Application.
+ * 
+ * The log level is set at runtime ( log.level setting ). A message is given 
+ * as a pattern and up to three arguments, each {} of the pattern is replaced 
+ * by the next argument. The message is built by the background writer of the 
+ * Logger, never by the calling thread, so a message below the log level is 
+ * never formatted. Its arguments are still evaluated, and primitives boxed, 
+ * by the calling thread, so a call on the path of every ping is guarded : 
+ * 
+ * if(Logger.isDebugEnabled())Logger.d(TAG, "ping() : {} missing replies from {}", missed, address);
+ * 
+ * Records are written to the console, or to a rolling file ( log.file setting ).
+ * 
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class Logger {
+	
+	/**
+	 * Level of the debugging messages
+	 */
+	public static final int LEVEL_DEBUG = 0;
+	
+	/**
+	 * Level of the informative messages
+	 */
+	public static final int LEVEL_INFO = 1;
+	
+	/**
+	 * Level of the warning messages
+	 */
+	public static final int LEVEL_WARN = 2;
+	
+	/**
+	 * Level of the error messages
+	 */
+	public static final int LEVEL_ERROR = 3;
+	
+	/**
+	 * Level which disables all the messages
+	 */
+	public static final int LEVEL_OFF = 4;
+	
+	/**
+	 * Names of the levels in the Settings, indexed by level
+	 */
+	private static final String[] LEVEL_NAMES = { "debug", "info", "warn", "error", "off" };
+	
+	/**
+	 * The current log level
+	 */
+	private static volatile int sLevel = levelOf(Constant.LOG_LEVEL);
+	
+	/**
+	 * The background writer of the records
+	 */
+	private static final AsyncLogWriter WRITER = new AsyncLogWriter(Constant.LOG_BUFFER_SIZE);
+	
+	/**
+	 * Allocates a new Logger object.
+	 */
+	private Logger() {
+		// static methods only
+	}
+	
+	/**
+	 * This method applies the log settings : log.level, log.file, 
+	 * log.file.max.bytes and log.file.count
+	 */
+	public static void configure() {
+		Settings settings = Settings.getInstance();
+		setLevel(levelOf(settings.getString(Constant.KEY_LOG_LEVEL, Constant.LOG_LEVEL)));
+		WRITER.setFile(settings.getString(Constant.KEY_LOG_FILE, null),
+				settings.getLong(Constant.KEY_LOG_FILE_MAX_BYTES, Constant.LOG_FILE_MAX_BYTES),
+				settings.getInt(Constant.KEY_LOG_FILE_COUNT, Constant.LOG_FILE_COUNT));
+	}
+	
+	/**
+	 * Returns the level of a level name
+	 * 
+	 * @param name the name of the level, eg debug
+	 * @return the level, LEVEL_INFO if the name is unknown
+	 */
+	public static int levelOf(String name) {
+		for(int level = 0 ; level < LEVEL_NAMES.length ; level++){
+			if(LEVEL_NAMES[level].equalsIgnoreCase(name)) return level;
+		}
+		return LEVEL_INFO;
+	}
+	
+	/**
+	 * Set the log level
+	 * @param level the lowest level of the written messages
+	 */
+	public static void setLevel(int level) {
+		sLevel = level;
+	}
+	
+	/**
+	 * Returns the log level
+	 * @return the lowest level of the written messages
+	 */
+	public static int getLevel() {
+		return sLevel;
+	}
+	
+	/**
+	 * Returns True, if the messages of a level are written
+	 * @param level the level of the messages
+	 * @return True, if the messages of the level are written
+	 */
+	public static boolean isEnabled(int level) {
+		return level >= sLevel;
+	}
+	
+	/**
+	 * Returns True, if the debugging messages are written. It guards 
+	 * a message which needs more than three arguments.
+	 * @return True, if the debugging messages are written
+	 */
+	public static boolean isDebugEnabled() {
+		return LEVEL_DEBUG >= sLevel;
+	}
+	
+	/**
+	 * Returns the number of messages dropped as the Logger could not keep up
+	 * @return the number of dropped messages
+	 */
+	public static long getDroppedCount() {
+		return WRITER.getDroppedCount();
+	}
+	
+	/**
+	 * This method is designed to debug verbose messages
+	 * 
+	 * @param tag the String name of the debugging class
+	 * @param message the String debugging message 
+	 */
+	public static void d(String tag, String message){
+		if(LEVEL_DEBUG >= sLevel) WRITER.publish(LEVEL_DEBUG, tag, message, 0, null, null, null, null);
+	}
+	
+	/**
+	 * This method is designed to debug verbose messages
+	 * 
+	 * @param tag the String name of the debugging class
+	 * @param pattern the String debugging message with a {} 
+	 * @param arg the argument of the message
+	 */
+	public static void d(String tag, String pattern, Object arg){
+		if(LEVEL_DEBUG >= sLevel) WRITER.publish(LEVEL_DEBUG, tag, pattern, 1, arg, null, null, null);
+	}
+	
+	/**
+	 * This method is designed to debug verbose messages
+	 * 
+	 * @param tag the String name of the debugging class
+	 * @param pattern the String debugging message with two {} 
+	 * @param arg1 the first argument of the message
+	 * @param arg2 the second argument of the message
+	 */
+	public static void d(String tag, String pattern, Object arg1, Object arg2){
+		if(LEVEL_DEBUG >= sLevel) WRITER.publish(LEVEL_DEBUG, tag, pattern, 2, arg1, arg2, null, null);
+	}
+	
+	/**
+	 * This method is designed to debug verbose messages
+	 * 
+	 * @param tag the String name of the debugging class
+	 * @param pattern the String debugging message with three {} 
+	 * @param arg1 the first argument of the message
+	 * @param arg2 the second argument of the message
+	 * @param arg3 the third argument of the message
+	 */
+	public static void d(String tag, String pattern, Object arg1, Object arg2, Object arg3){
+		if(LEVEL_DEBUG >= sLevel) WRITER.publish(LEVEL_DEBUG, tag, pattern, 3, arg1, arg2, arg3, null);
+	}
+	
+	/**
+	 * This method is designed to log informative messages
+	 * 
+	 * @param tag the String name of the logging class
+	 * @param message the String message 
+	 */
+	public static void i(String tag, String message){
+		if(LEVEL_INFO >= sLevel) WRITER.publish(LEVEL_INFO, tag, message, 0, null, null, null, null);
+	}
+	
+	/**
+	 * This method is designed to log informative messages
+	 * 
+	 * @param tag the String name of the logging class
+	 * @param pattern the String message with a {} 
+	 * @param arg the argument of the message
+	 */
+	public static void i(String tag, String pattern, Object arg){
+		if(LEVEL_INFO >= sLevel) WRITER.publish(LEVEL_INFO, tag, pattern, 1, arg, null, null, null);
+	}
+	
+	/**
+	 * This method is designed to log informative messages
+	 * 
+	 * @param tag the String name of the logging class
+	 * @param pattern the String message with two {} 
+	 * @param arg1 the first argument of the message
+	 * @param arg2 the second argument of the message
+	 */
+	public static void i(String tag, String pattern, Object arg1, Object arg2){
+		if(LEVEL_INFO >= sLevel) WRITER.publish(LEVEL_INFO, tag, pattern, 2, arg1, arg2, null, null);
+	}
+	
+	/**
+	 * This method is designed to log informative messages
+	 * 
+	 * @param tag the String name of the logging class
+	 * @param pattern the String message with three {} 
+	 * @param arg1 the first argument of the message
+	 * @param arg2 the second argument of the message
+	 * @param arg3 the third argument of the message
+	 */
+	public static void i(String tag, String pattern, Object arg1, Object arg2, Object arg3){
+		if(LEVEL_INFO >= sLevel) WRITER.publish(LEVEL_INFO, tag, pattern, 3, arg1, arg2, arg3, null);
+	}
+	
+	/**
+	 * This method is designed to log warning messages
+	 * 
+	 * @param tag the String name of the logging class
+	 * @param message the String message 
+	 */
+	public static void w(String tag, String message){
+		if(LEVEL_WARN >= sLevel) WRITER.publish(LEVEL_WARN, tag, message, 0, null, null, null, null);
+	}
+	
+	/**
+	 * This method is designed to log warning messages
+	 * 
+	 * @param tag the String name of the logging class
+	 * @param pattern the String message with a {} 
+	 * @param arg the argument of the message
+	 */
+	public static void w(String tag, String pattern, Object arg){
+		if(LEVEL_WARN >= sLevel) WRITER.publish(LEVEL_WARN, tag, pattern, 1, arg, null, null, null);
+	}
+	
+	/**
+	 * This method is designed to log warning messages
+	 * 
+	 * @param tag the String name of the logging class
+	 * @param pattern the String message with two {} 
+	 * @param arg1 the first argument of the message
+	 * @param arg2 the second argument of the message
+	 */
+	public static void w(String tag, String pattern, Object arg1, Object arg2){
+		if(LEVEL_WARN >= sLevel) WRITER.publish(LEVEL_WARN, tag, pattern, 2, arg1, arg2, null, null);
+	}
+	
+	/**
+	 * This method is designed to log warning messages
+	 * 
+	 * @param tag the String name of the logging class
+	 * @param pattern the String message with three {} 
+	 * @param arg1 the first argument of the message
+	 * @param arg2 the second argument of the message
+	 * @param arg3 the third argument of the message
+	 */
+	public static void w(String tag, String pattern, Object arg1, Object arg2, Object arg3){
+		if(LEVEL_WARN >= sLevel) WRITER.publish(LEVEL_WARN, tag, pattern, 3, arg1, arg2, arg3, null);
+	}
+	
+	/**
+	 * This method is designed to debug Error messages
+	 * 
+	 * @param tag the String name of the debugging class
+	 * @param message the String debugging message 
+	 */
+	public static void e(String tag, String message){
+		if(LEVEL_ERROR >= sLevel) WRITER.publish(LEVEL_ERROR, tag, message, 0, null, null, null, null);
+	}
+	
+	/**
+	 * This method is designed to debug Error messages
+	 * 
+	 * @param tag the String name of the debugging class
+	 * @param message the String debugging message 
+	 * @param throwable the Throwable which stack trace is written after the message
+	 */
+	public static void e(String tag, String message, Throwable throwable){
+		if(LEVEL_ERROR >= sLevel) WRITER.publish(LEVEL_ERROR, tag, message, 0, null, null, null, throwable);
+	}
+	
+	/**
+	 * This method is designed to debug Error messages
+	 * 
+	 * @param tag the String name of the debugging class
+	 * @param pattern the String debugging message with a {} 
+	 * @param arg the argument of the message
+	 */
+	public static void e(String tag, String pattern, Object arg){
+		if(LEVEL_ERROR >= sLevel) WRITER.publish(LEVEL_ERROR, tag, pattern, 1, arg, null, null, null);
+	}
+	
+	/**
+	 * This method is designed to debug Error messages
+	 * 
+	 * @param tag the String name of the debugging class
+	 * @param pattern the String debugging message with two {} 
+	 * @param arg1 the first argument of the message
+	 * @param arg2 the second argument of the message
+	 */
+	public static void e(String tag, String pattern, Object arg1, Object arg2){
+		if(LEVEL_ERROR >= sLevel) WRITER.publish(LEVEL_ERROR, tag, pattern, 2, arg1, arg2, null, null);
+	}
+	
+	/**
+	 * This method is designed to debug Error messages
+	 * 
+	 * @param tag the String name of the debugging class
+	 * @param pattern the String debugging message with three {} 
+	 * @param arg1 the first argument of the message
+	 * @param arg2 the second argument of the message
+	 * @param arg3 the third argument of the message
+	 */
+	public static void e(String tag, String pattern, Object arg1, Object arg2, Object arg3){
+		if(LEVEL_ERROR >= sLevel) WRITER.publish(LEVEL_ERROR, tag, pattern, 3, arg1, arg2, arg3, null);
+	}
+}
@@ -0,0 +1,118 @@
+package com.mps.pearl.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class holds the runtime settings of the System. Settings are
+ * key / value pairs read from the configuration file next to the set
+ * of Nodes. A setting which is not configured falls back to the default
+ * value given by the caller, normally a value from {@link Constant}.
+ *
+ * eg: server.mode nio
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class Settings {
+
+	/**
+	 * A Logger tag
+	 */
+	private final String TAG = Settings.class.getSimpleName();
+
+	/**
+	 * An instance of Settings class
+	 */
+	private static Settings INSTANCE;
+
+	/**
+	 * A Map<String,String> with setting name as Key and setting value as value
+	 */
+	private final Map<String,String> mProperties;
+
+	/**
+	 * Creates a Settings object.
+	 */
+	private Settings(){
+		// private to hold single instance
+		mProperties = new ConcurrentHashMap<String,String>();
+	}
+
+	/**
+	 * Returns the unique Settings object associated with this System, if any.
+	 * @return the instance of Settings
+	 */
+	public static synchronized Settings getInstance(){
+		if(INSTANCE == null)
+			INSTANCE = new Settings();
+		return INSTANCE;
+	}
+
+	/**
+	 * Set the value of a setting
+	 * @param key the String name of the setting
+	 * @param value the String value of the setting
+	 */
+	public void set(String key, String value){
+		Logger.d(TAG, "set() : {} = {}", key, value);
+		mProperties.put(key, value);
+	}
+
+	/**
+	 * Returns the String value of a setting
+	 * @param key the String name of the setting
+	 * @param defaultValue the value returned if the setting is not configured
+	 * @return the configured value, or defaultValue
+	 */
+	public String getString(String key, String defaultValue){
+		String value = mProperties.get(key);
+		return value == null ? defaultValue : value;
+	}
+
+	/**
+	 * Returns the integer value of a setting
+	 * @param key the String name of the setting
+	 * @param defaultValue the value returned if the setting is not configured
+	 * @return the configured value, or defaultValue
+	 */
+	public int getInt(String key, int defaultValue){
+		String value = mProperties.get(key);
+		return value == null ? defaultValue : Integer.parseInt(value);
+	}
+
+	/**
+	 * Returns the long value of a setting
+	 * @param key the String name of the setting
+	 * @param defaultValue the value returned if the setting is not configured
+	 * @return the configured value, or defaultValue
+	 */
+	public long getLong(String key, long defaultValue){
+		String value = mProperties.get(key);
+		return value == null ? defaultValue : Long.parseLong(value);
+	}
+
+	/**
+	 * Returns the double value of a setting
+	 * @param key the String name of the setting
+	 * @param defaultValue the value returned if the setting is not configured
+	 * @return the configured value, or defaultValue
+	 */
+	public double getDouble(String key, double defaultValue){
+		String value = mProperties.get(key);
+		return value == null ? defaultValue : Double.parseDouble(value);
+	}
+
+	/**
+	 * Returns the boolean value of a setting
+	 * @param key the String name of the setting
+	 * @param defaultValue the value returned if the setting is not configured
+	 * @return the configured value, or defaultValue
+	 */
+	public boolean getBoolean(String key, boolean defaultValue){
+		String value = mProperties.get(key);
+		return value == null ? defaultValue : Boolean.parseBoolean(value);
+	}
+}
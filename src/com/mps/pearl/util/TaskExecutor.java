@@ -0,0 +1,129 @@
+package com.mps.pearl.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class runs the tasks of the System, the roles of the Nodes and the
+ * Socket handlers, behind a single executor. The execution mode is chosen
+ * in the configuration file :
+ *
+ * platform - each task runs on a pooled platform Thread
+ * virtual  - each task runs on its own virtual Thread, so blocking Socket
+ *            calls do not hold a platform Thread
+ *
+ * Virtual Threads need a Java runtime which provides them. On an older
+ * runtime the virtual mode falls back to platform Threads.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class TaskExecutor {
+
+	/**
+	 * A Logger tag
+	 */
+	private final String TAG = TaskExecutor.class.getSimpleName();
+
+	/**
+	 * An instance of TaskExecutor class
+	 */
+	private static final TaskExecutor INSTANCE = new TaskExecutor(
+			Settings.getInstance().getString(Constant.KEY_EXECUTION_MODE, Constant.EXECUTION_MODE_PLATFORM));
+
+	/**
+	 * The executor which runs the tasks
+	 */
+	private final ExecutorService mExecutor;
+
+	/**
+	 * The execution mode in use
+	 */
+	private final String mMode;
+
+	/**
+	 * Returns the unique TaskExecutor object associated with this System, if any.
+	 * @return the instance of TaskExecutor
+	 */
+	public static TaskExecutor getInstance(){
+		return INSTANCE;
+	}
+
+	/**
+	 * Creates a TaskExecutor object.
+	 * @param mode the execution mode, platform or virtual
+	 */
+	public TaskExecutor(String mode) {
+		ExecutorService executor = null;
+		if (Constant.EXECUTION_MODE_VIRTUAL.equals(mode)) {
+			executor = newVirtualThreadExecutor();
+			if (executor == null) {
+				Logger.e(TAG, "Virtual Threads are not supported by this Java runtime, using platform Threads");
+				mode = Constant.EXECUTION_MODE_PLATFORM;
+			}
+		}
+		if (executor == null) {
+			executor = Executors.newCachedThreadPool(new ThreadFactory() {
+				private final AtomicInteger mCount = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable task) {
+					return new Thread(task, "Node-Thread-" + mCount.incrementAndGet());
+				}
+			});
+		}
+		this.mExecutor = executor;
+		this.mMode = mode;
+		Logger.d(TAG, "TaskExecutor() : mode {}", mMode);
+	}
+
+	/**
+	 * Returns an executor which starts a virtual Thread for each task, or
+	 * null if the Java runtime has no virtual Threads, or rejects them as a
+	 * preview feature which is not enabled
+	 * @return the executor, or null
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (InvocationTargetException e) {
+			// the factory itself failed, the invoke wraps what it threw
+			if (e.getCause() instanceof UnsupportedOperationException) return null;
+			throw new IllegalStateException("Virtual Threads could not be started", e.getCause());
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Submits a task to run
+	 * @param task the Runnable task
+	 * @return the Future of the task
+	 */
+	public Future<?> submit(Runnable task) {
+		return mExecutor.submit(task);
+	}
+
+	/**
+	 * Returns the execution mode in use
+	 * @return the execution mode, platform or virtual
+	 */
+	public String getMode() {
+		return mMode;
+	}
+
+	/**
+	 * Stops the executor, running tasks are interrupted
+	 */
+	public void shutdown() {
+		mExecutor.shutdownNow();
+	}
+}
@@ -0,0 +1,362 @@
+package com.mps.pearl.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class implements a hashed timing wheel which drives the timers of
+ * all the Nodes of the System from a single Thread. A timer is placed in
+ * the bucket of the tick it expires in, and it carries the number of
+ * rounds of the wheel it still has to wait, so scheduling and cancelling
+ * a timer are O(1) whatever the number of timers.
+ *
+ * The wheel works on the monotonic clock, System.nanoTime(), so a change
+ * of the wall clock does not move the timers. Expired timers are run by
+ * the TaskExecutor, the wheel Thread only keeps the time.
+ *
+ * @author msingh
+ * @version 1.1
+ *
+ */
+
+public class TimingWheel {
+
+	/**
+	 * A Logger tag
+	 */
+	private final String TAG = TimingWheel.class.getSimpleName();
+
+	/**
+	 * An instance of TimingWheel class
+	 */
+	private static final TimingWheel INSTANCE = new TimingWheel(
+			Settings.getInstance().getLong(Constant.KEY_TIMER_TICK_MILLIS, Constant.TIMER_TICK_MILLIS), Constant.TIMER_WHEEL_SIZE);
+
+	/**
+	 * Duration of a tick in nanoseconds
+	 */
+	private final long mTickNanos;
+
+	/**
+	 * Buckets of the wheel, each one is the head of a list of timers
+	 */
+	private final Timeout[] mWheel;
+
+	/**
+	 * Mask to map a tick to a bucket, the size of the wheel is a power of two
+	 */
+	private final int mMask;
+
+	/**
+	 * Timers scheduled since the last tick, added to the wheel by the wheel Thread
+	 */
+	private final Queue<Timeout> mPendingTimeouts = new ConcurrentLinkedQueue<Timeout>();
+
+	/**
+	 * Timers cancelled since the last tick, removed from the wheel by the wheel Thread
+	 */
+	private final Queue<Timeout> mCancelledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+
+	/**
+	 * Start time of the wheel
+	 */
+	private final long mStartNanos;
+
+	/**
+	 * The Thread which turns the wheel
+	 */
+	private final Thread mWorker;
+
+	/**
+	 * Boolean to hold the running state of the wheel
+	 */
+	private volatile boolean isRunning = true;
+
+	/**
+	 * Returns the unique TimingWheel object associated with this System, if any.
+	 * @return the instance of TimingWheel
+	 */
+	public static TimingWheel getInstance(){
+		return INSTANCE;
+	}
+
+	/**
+	 * Creates a TimingWheel object and starts its Thread.
+	 *
+	 * @param tickMillis duration of a tick in milliseconds
+	 * @param wheelSize number of buckets of the wheel, rounded up to a power of two
+	 */
+	public TimingWheel(long tickMillis, int wheelSize) {
+		this.mTickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+		int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+		this.mWheel = new Timeout[size];
+		this.mMask = size - 1;
+		this.mStartNanos = System.nanoTime();
+
+		this.mWorker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				turn();
+			}
+		}, "TimingWheel");
+		this.mWorker.start();
+	}
+
+	/**
+	 * Schedules a task to run once after a delay
+	 *
+	 * @param task the Runnable task
+	 * @param delayMillis the delay in milliseconds
+	 * @return the Timeout to cancel the task
+	 */
+	public Timeout schedule(Runnable task, long delayMillis) {
+		return add(new Timeout(task, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis), 0, 0));
+	}
+
+	/**
+	 * Schedules a task to run repeatedly at a fixed rate. Each run is delayed
+	 * by a random part of the period, up to the jitter, so the timers of many
+	 * Nodes with the same period do not all fire at the same instant. The
+	 * jitter does not add up, the runs keep the fixed rate.
+	 *
+	 * A run is skipped if the previous run of the task is not finished.
+	 *
+	 * @param task the Runnable task
+	 * @param initialDelayMillis the delay of the first run in milliseconds
+	 * @param periodMillis the period in milliseconds
+	 * @param jitter the fraction of the period, between 0 and 1, to delay each run
+	 * @return the Timeout to cancel the task
+	 */
+	public Timeout scheduleAtFixedRate(Runnable task, long initialDelayMillis, long periodMillis, double jitter) {
+		long periodNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, periodMillis));
+		long jitterNanos = (long) (periodNanos * Math.min(1, Math.max(0, jitter)));
+		return add(new Timeout(task, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(initialDelayMillis), periodNanos, jitterNanos));
+	}
+
+	/**
+	 * Stops the wheel, the pending timers are dropped
+	 */
+	public void stop() {
+		isRunning = false;
+		mWorker.interrupt();
+	}
+
+	/**
+	 * Queues a timer to be placed on the wheel at the next tick
+	 */
+	private Timeout add(Timeout timeout) {
+		timeout.deadline = timeout.baseDeadline + jitter(timeout.jitterNanos);
+		mPendingTimeouts.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Returns a random delay up to the jitter
+	 */
+	private static long jitter(long jitterNanos) {
+		return jitterNanos > 0 ? ThreadLocalRandom.current().nextLong(jitterNanos) : 0;
+	}
+
+	/**
+	 * This method turns the wheel, one bucket for each tick
+	 */
+	private void turn() {
+		long tick = 0;
+		while (isRunning) {
+			// wait for the end of the tick on the monotonic clock
+			long tickDeadline = mStartNanos + (tick + 1) * mTickNanos;
+			long sleep = tickDeadline - System.nanoTime();
+			if (sleep > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(sleep);
+				} catch (InterruptedException e) {
+					if (!isRunning) return;
+				}
+				continue;
+			}
+
+			removeCancelled();
+			transferPending(tick);
+			expire(tick);
+			tick++;
+		}
+	}
+
+	/**
+	 * Places the pending timers in the bucket of the tick they expire in
+	 */
+	private void transferPending(long currentTick) {
+		Timeout timeout;
+		while ((timeout = mPendingTimeouts.poll()) != null) {
+			if (timeout.isCancelled()) continue;
+
+			long expireTick = Math.max(currentTick, (timeout.deadline - mStartNanos + mTickNanos - 1) / mTickNanos);
+			timeout.remainingRounds = (expireTick - currentTick) / mWheel.length;
+
+			int index = (int) (expireTick & mMask);
+			timeout.bucket = index;
+			timeout.next = mWheel[index];
+			timeout.prev = null;
+			if (mWheel[index] != null) mWheel[index].prev = timeout;
+			mWheel[index] = timeout;
+		}
+	}
+
+	/**
+	 * Removes the cancelled timers from their buckets
+	 */
+	private void removeCancelled() {
+		Timeout timeout;
+		while ((timeout = mCancelledTimeouts.poll()) != null) {
+			if (timeout.bucket >= 0) unlink(timeout);
+		}
+	}
+
+	/**
+	 * Runs the timers of the bucket of a tick which have no round left
+	 */
+	private void expire(long tick) {
+		Timeout timeout = mWheel[(int) (tick & mMask)];
+		while (timeout != null) {
+			Timeout next = timeout.next;
+			if (timeout.remainingRounds <= 0) {
+				unlink(timeout);
+				if (!timeout.isCancelled()) fire(timeout);
+			} else {
+				timeout.remainingRounds--;
+			}
+			timeout = next;
+		}
+	}
+
+	/**
+	 * Runs an expired timer on the TaskExecutor and schedules its next run
+	 */
+	private void fire(final Timeout timeout) {
+		if (timeout.periodNanos > 0) {
+			timeout.baseDeadline += timeout.periodNanos;
+			add(timeout);
+		}
+
+		// a periodic task is skipped while its previous run is not finished
+		if (!timeout.running.compareAndSet(false, true)) return;
+		try {
+			TaskExecutor.getInstance().submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (!timeout.isCancelled()) timeout.task.run();
+					} catch (RuntimeException e) {
+						Logger.e(TAG, "fire() : {}", e);
+					} finally {
+						timeout.running.set(false);
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			timeout.running.set(false);
+			Logger.e(TAG, "fire() : {}", e);
+		}
+	}
+
+	/**
+	 * Removes a timer from its bucket
+	 */
+	private void unlink(Timeout timeout) {
+		if (timeout.prev != null) timeout.prev.next = timeout.next;
+		else if (mWheel[timeout.bucket] == timeout) mWheel[timeout.bucket] = timeout.next;
+		if (timeout.next != null) timeout.next.prev = timeout.prev;
+		timeout.prev = null;
+		timeout.next = null;
+		timeout.bucket = -1;
+	}
+
+	/**
+	 * This class represents a timer scheduled on the wheel. The links and
+	 * the rounds of a timer are only touched by the wheel Thread.
+	 */
+	public class Timeout {
+
+		/**
+		 * The task to run
+		 */
+		private final Runnable task;
+
+		/**
+		 * Period of a repeated task in nanoseconds, or 0
+		 */
+		private final long periodNanos;
+
+		/**
+		 * Max random delay of each run in nanoseconds
+		 */
+		private final long jitterNanos;
+
+		/**
+		 * Boolean to hold the running state of the task
+		 */
+		private final AtomicBoolean running = new AtomicBoolean();
+
+		/**
+		 * Boolean to hold the cancelled state of the timer
+		 */
+		private volatile boolean cancelled;
+
+		/**
+		 * Deadline of the run without the jitter
+		 */
+		private long baseDeadline;
+
+		/**
+		 * Deadline of the next run
+		 */
+		private long deadline;
+
+		/**
+		 * Number of rounds of the wheel before the timer expires
+		 */
+		private long remainingRounds;
+
+		/**
+		 * Index of the bucket of the timer, or -1
+		 */
+		private int bucket = -1;
+
+		/**
+		 * Previous timer of the bucket
+		 */
+		private Timeout prev;
+
+		/**
+		 * Next timer of the bucket
+		 */
+		private Timeout next;
+
+		private Timeout(Runnable task, long deadline, long periodNanos, long jitterNanos) {
+			this.task = task;
+			this.baseDeadline = deadline;
+			this.periodNanos = periodNanos;
+			this.jitterNanos = jitterNanos;
+		}
+
+		/**
+		 * Cancels the timer, a running task is not interrupted
+		 */
+		public void cancel() {
+			if (cancelled) return;
+			cancelled = true;
+			mCancelledTimeouts.add(this);
+		}
+
+		/**
+		 * Returns the cancelled state of the timer
+		 * @return True, if the timer is cancelled
+		 */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+	}
+}